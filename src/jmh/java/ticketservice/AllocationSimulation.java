@@ -0,0 +1,246 @@
+package ticketservice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Simulate an on-sale against each allocation strategy, to compare how
+ * much of the venue they sell and what each search costs.
+ *
+ * Requests take their party sizes from a mix, in order.  Each hold
+ * stays open while the next HOLD_WINDOW holds are made, then is either
+ * reserved or abandoned (its seats freed), as customers do.  The sale
+ * ends after enough requests to fill the venue several times over, so
+ * it runs well past the point where the venue is full.  Every strategy
+ * sees the same requests and the same abandonments.  A refusal counts
+ * as fragmented if enough seats were open, just not together.
+ *
+ * The mixes are the benchmarks' party size distributions ("small",
+ * "mixed" and "groups"), or recorded party sizes passed as files, one
+ * size per line (lines starting with '#' are skipped):
+ * <pre>
+ * $ ./gradlew simulate -PsimArgs='party-sizes.txt'
+ * </pre>
+ */
+public final class AllocationSimulation {
+
+    /** The number of holds made before the oldest one is reserved or abandoned. */
+    private static final int HOLD_WINDOW = 64;
+
+    /** The fraction of holds that are abandoned rather than reserved. */
+    private static final double ABANDON_RATE = 0.25;
+
+    /** The number of times the requests could fill the venue. */
+    private static final int FILLS = 3;
+
+    /** The number of runs per case; the timing is from the last, once the JIT has warmed up. */
+    private static final int RUNS = 20;
+
+    /** The venue sizes simulated. */
+    private static final String[] VENUE_SIZES = {"30x50", "100x200"};
+
+    /**
+     * Make the default constructor private.
+     */
+    private AllocationSimulation() {
+        super();
+    }
+
+    /**
+     * Run the simulation for each mix and venue, and print a table.
+     *
+     * @param args files of recorded party sizes (the built-in mixes if none)
+     * @throws IOException if a file can't be read
+     */
+    public static void main(final String[] args) throws IOException {
+
+        final Map<String, int[]> mixes = new LinkedHashMap<>();
+        if (args.length == 0) {
+            for (String name : new String[] {"small", "mixed", "groups"}) {
+                mixes.put(name, BenchmarkSupport.partySizes(name, 42L));
+            }
+        } else {
+            for (String arg : args) {
+                final Path file = Paths.get(arg);
+                mixes.put(file.getFileName().toString(), readMix(file));
+            }
+        }
+
+        final Map<String, Function<Venue, SeatAllocator>> allocators = new LinkedHashMap<>();
+        allocators.put("first-fit", FirstFitAllocator::new);
+        allocators.put("best-fit", BestFitAllocator::new);
+        allocators.put("best-seat", BestSeatAllocator::new);
+
+        System.out.printf("%-12s %-8s %-10s %8s %9s %11s %11s %10s%n", "mix", "venue", "allocator",
+                "sold %", "refused %", "frag. ref.", "avg search", "ns/search");
+        for (Map.Entry<String, int[]> mix : mixes.entrySet()) {
+            for (String venueSize : VENUE_SIZES) {
+                for (Map.Entry<String, Function<Venue, SeatAllocator>> allocator : allocators.entrySet()) {
+                    Result result = null;
+                    for (int run = 0; run < RUNS; ++run) {
+                        result = simulate(BenchmarkSupport.venue(venueSize), allocator.getValue(), mix.getValue());
+                    }
+                    System.out.printf("%-12s %-8s %-10s %8.2f %9.2f %11d %11.2f %10.0f%n", mix.getKey(), venueSize,
+                            allocator.getKey(), result.getSoldPercent(), result.getRefusedPercent(),
+                            result.fragmentedRefusals, result.getAverageSearchLength(), result.getNanosPerSearch());
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulate one on-sale.
+     *
+     * @param venue the venue
+     * @param factory creates the allocator
+     * @param mix the party sizes, used in order (and repeated if needed)
+     * @return the outcome
+     */
+    static Result simulate(final Venue venue, final Function<Venue, SeatAllocator> factory, final int[] mix) {
+
+        final SeatAllocator allocator = factory.apply(venue);
+        final Random random = new Random(7L);
+        final ArrayDeque<int[]> window = new ArrayDeque<>(HOLD_WINDOW + 1);
+        final Result result = new Result(venue.getNumberOfSeats());
+        int open = venue.getNumberOfSeats();
+        long requested = 0L;
+
+        for (int index = 0; requested < (long) FILLS * venue.getNumberOfSeats(); ++index) {
+
+            // Ask the allocator for the next party's seats
+            final int partySize = mix[index % mix.length];
+            requested += partySize;
+            ++result.requests;
+            final long start = System.nanoTime();
+            final int seat = allocator.findSeats(partySize);
+            result.searchNanos += System.nanoTime() - start;
+            result.searchLength += allocator.getLastSearchLength();
+
+            if (seat < 0) {
+                ++result.refused;
+                if (partySize <= open) {
+                    ++result.fragmentedRefusals;
+                }
+            } else {
+                allocator.markUsed(seat, partySize);
+                open -= partySize;
+                window.addLast(new int[] {seat, partySize});
+            }
+
+            // The oldest hold is reserved or abandoned
+            if (window.size() > HOLD_WINDOW) {
+                open += settle(allocator, window.removeFirst(), random, result);
+            }
+        }
+
+        while (!window.isEmpty()) {
+            settle(allocator, window.removeFirst(), random, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Helper method to reserve or abandon a hold.
+     *
+     * @param allocator the allocator
+     * @param hold the first seat and number of seats
+     * @param random decides whether the hold is abandoned
+     * @param result counts the seats sold
+     * @return the number of seats freed
+     */
+    private static int settle(final SeatAllocator allocator, final int[] hold,
+                              final Random random, final Result result) {
+        if (random.nextDouble() < ABANDON_RATE) {
+            allocator.markFree(hold[0], hold[1]);
+            return hold[1];
+        }
+
+        result.seatsSold += hold[1];
+        return 0;
+    }
+
+    /**
+     * Helper method to read recorded party sizes from a file.
+     *
+     * @param file the file, with one party size per line
+     * @return the party sizes
+     * @throws IOException if the file can't be read, or has no party sizes
+     */
+    private static int[] readMix(final Path file) throws IOException {
+
+        final List<Integer> sizes = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            final String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                sizes.add(Integer.parseInt(trimmed));
+            }
+        }
+
+        if (sizes.isEmpty()) {
+            throw new IOException("No party sizes in " + file);
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The outcome of one simulated on-sale.
+     */
+    static final class Result {
+
+        /** The number of seats in the venue. */
+        private final int numSeats;
+
+        /** The number of requests made. */
+        private long requests;
+
+        /** The number of requests refused. */
+        private long refused;
+
+        /** The number of requests refused although enough seats were open. */
+        private long fragmentedRefusals;
+
+        /** The number of seats reserved. */
+        private long seatsSold;
+
+        /** The total search length reported by the allocator. */
+        private long searchLength;
+
+        /** The total time spent searching (nanoseconds). */
+        private long searchNanos;
+
+        /**
+         * Constructor taking the number of seats in the venue.
+         *
+         * @param numSeats the number of seats
+         */
+        Result(final int numSeats) {
+            this.numSeats = numSeats;
+        }
+
+        public double getSoldPercent() {
+            return (100.0 * seatsSold) / numSeats;
+        }
+
+        public double getRefusedPercent() {
+            return (100.0 * refused) / requests;
+        }
+
+        public double getAverageSearchLength() {
+            return (double) searchLength / requests;
+        }
+
+        public double getNanosPerSearch() {
+            return (double) searchNanos / requests;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ticketservice;
+
+import java.util.Random;
+
+/**
+ * Helper methods shared by the benchmarks: parsing the parameters,
+ * creating the service, and filling the venue to a given level.
+ */
+final class BenchmarkSupport {
+
+    /** The email used for every benchmark request. */
+    static final String EMAIL = "bench@example.com";
+
+    /** The number of party sizes generated for each thread; they're used round-robin. */
+    static final int PARTY_SIZE_COUNT = 1024;
+
+    /**
+     * Make the default constructor private.
+     */
+    private BenchmarkSupport() {
+        super();
+    }
+
+    /**
+     * Create a venue from a size such as "30x50" (rows x seats per row).
+     *
+     * @param size the venue size
+     * @return the venue
+     */
+    static Venue venue(final String size) {
+        final String[] parts = size.split("x");
+        return new Venue(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Create a service.
+     *
+     * @param implementation "monitor", "zerogarbage", "striped", "atomic" or "eventloop"
+     * @param holdTimeout the hold timeout (milliseconds)
+     * @param venue the venue
+     * @return the service
+     */
+    static TicketService service(final String implementation, final long holdTimeout, final Venue venue) {
+        switch (implementation) {
+            case "monitor":
+                return new TicketServiceImpl(holdTimeout, venue);
+            case "zerogarbage":
+                final TicketServiceImpl service = new TicketServiceImpl(holdTimeout, venue);
+                service.setZeroGarbage(true);
+                return service;
+            case "striped":
+                return new StripedTicketService(holdTimeout, venue, 1);
+            case "atomic":
+                return new AtomicTicketService(holdTimeout, venue);
+            case "eventloop":
+                return new EventLoopTicketService(new TicketServiceImpl(holdTimeout, venue));
+            default:
+                throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        }
+    }
+
+    /**
+     * Fill a venue with reservations, leaving free gaps between them.
+     * Each gap is held (not reserved) until the next run of seats is
+     * placed after it, and the gap holds are left to expire at the end.
+     * <ul>
+     *   <li>empty: no reservations</li>
+     *   <li>half: reserved runs of 10-50 seats, with free gaps of 10-50 seats</li>
+     *   <li>fragmented95: reserved runs of 20-60 seats, with free gaps of 1-3 seats</li>
+     * </ul>
+     *
+     * @param service the service
+     * @param fill the fill level
+     * @param holdTimeout the service's hold timeout (milliseconds)
+     */
+    static void fill(final TicketService service, final String fill, final long holdTimeout) {
+
+        final int minRun;
+        final int maxRun;
+        final int minGap;
+        final int maxGap;
+        switch (fill) {
+            case "empty":
+                return;
+            case "half":
+                minRun = 10;
+                maxRun = 50;
+                minGap = 10;
+                maxGap = 50;
+                break;
+            case "fragmented95":
+                minRun = 20;
+                maxRun = 60;
+                minGap = 1;
+                maxGap = 3;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown fill level: " + fill);
+        }
+
+        final Random random = new Random(17L);
+        while (true) {
+
+            // Reserve a run of seats.  If the hold expired before we reserved it, try again.
+            final int run = minRun + random.nextInt(maxRun - minRun + 1);
+            final SeatHold hold = service.findAndHoldSeats(run, EMAIL);
+            if (hold == null) {
+                break;
+            } else if (service.reserveSeats(hold.getId(), EMAIL) == null) {
+                continue;
+            }
+
+            // Hold the gap, so the next run goes after it
+            final int gap = minGap + random.nextInt(maxGap - minGap + 1);
+            if (service.findAndHoldSeats(gap, EMAIL) == null) {
+                break;
+            }
+        }
+
+        // Wait for the gap holds to expire
+        try {
+            Thread.sleep(2L * holdTimeout + 10L);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        service.numSeatsAvailable();
+    }
+
+    /**
+     * Generate party sizes from a distribution.
+     * <ul>
+     *   <li>small: 1-8 seats, mostly pairs (most on-sale traffic)</li>
+     *   <li>mixed: 1-20 seats, uniformly</li>
+     *   <li>groups: 10-50 seats, uniformly</li>
+     * </ul>
+     *
+     * @param distribution the distribution name
+     * @param seed the random seed
+     * @return the party sizes
+     */
+    static int[] partySizes(final String distribution, final long seed) {
+
+        final Random random = new Random(seed);
+        final int[] sizes = new int[PARTY_SIZE_COUNT];
+        for (int i = 0; i < sizes.length; ++i) {
+            switch (distribution) {
+                case "small":
+                    sizes[i] = random.nextBoolean() ? 2 : (1 + random.nextInt(8));
+                    break;
+                case "mixed":
+                    sizes[i] = 1 + random.nextInt(20);
+                    break;
+                case "groups":
+                    sizes[i] = 10 + random.nextInt(41);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown party size distribution: " + distribution);
+            }
+        }
+
+        return sizes;
+    }
+}
@@ -0,0 +1,102 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark findAndHoldSeats through the event registry, with each thread
+ * working on its own event ("spread") or every thread on the same event
+ * ("single").  Run with several threads (-t) to see how throughput scales
+ * when load is spread across events.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventRegistryBenchmark {
+
+    /** The hold timeout; short, so the benchmark's holds free up their seats again. */
+    private static final long HOLD_TIMEOUT = 1L;
+
+    /** "spread" for an event per thread, or "single" for one event shared by all threads. */
+    @Param({"spread", "single"})
+    private String events;
+
+    /** The registry under test. */
+    private EventRegistry registry;
+
+    /**
+     * Create the registry.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new EventRegistry(eventId -> new TicketServiceImpl(HOLD_TIMEOUT, BenchmarkSupport.venue("30x50")));
+    }
+
+    /**
+     * Close the registry.
+     *
+     * @throws IOException never, since the services aren't persistent
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        registry.close();
+    }
+
+    /**
+     * Each thread's event and party sizes.
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+
+        /** The event this thread calls. */
+        String eventId;
+
+        /** The party sizes, used round-robin. */
+        int[] sizes;
+
+        /** The index of the next party size. */
+        int next;
+
+        /**
+         * Pick the thread's event.
+         *
+         * @param benchmark the benchmark state, for the event mode
+         * @param thread the thread parameters
+         */
+        @Setup(Level.Trial)
+        public void setUp(final EventRegistryBenchmark benchmark, final ThreadParams thread) {
+            eventId = "spread".equals(benchmark.events) ? ("event-" + thread.getThreadIndex()) : "event-0";
+            sizes = BenchmarkSupport.partySizes("small", thread.getThreadIndex());
+        }
+    }
+
+    /**
+     * Hold seats at the thread's event.
+     *
+     * @param caller the thread's event and party sizes
+     * @return the hold
+     */
+    @Benchmark
+    public SeatHold findAndHoldSeats(final Caller caller) {
+        final int size = caller.sizes[caller.next++ & (BenchmarkSupport.PARTY_SIZE_COUNT - 1)];
+        return registry.findAndHoldSeats(caller.eventId, size, BenchmarkSupport.EMAIL);
+    }
+}
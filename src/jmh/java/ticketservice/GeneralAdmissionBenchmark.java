@@ -0,0 +1,94 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark holds on a general-admission section shared by all threads
+ * (run with -t to add contention).  Each operation holds a small party
+ * and releases it again, so the section never sells out.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneralAdmissionBenchmark {
+
+    /** The hold timeout; long enough that no hold expires during an iteration. */
+    private static final long HOLD_TIMEOUT = 60_000L;
+
+    /** The number of places in the section. */
+    @Param({"50000"})
+    private int capacity;
+
+    /** The section under test. */
+    private GeneralAdmissionSection section;
+
+    /**
+     * Each thread's party sizes.
+     */
+    @State(Scope.Thread)
+    public static class Parties {
+
+        /** The party sizes, used round-robin. */
+        private int[] sizes;
+
+        /** The index of the next party size. */
+        private int next;
+
+        /**
+         * Generate this thread's party sizes.
+         *
+         * @param threadParams the thread's parameters
+         */
+        @Setup(Level.Trial)
+        public void setUp(final ThreadParams threadParams) {
+            sizes = BenchmarkSupport.partySizes("small", threadParams.getThreadIndex());
+        }
+
+        /**
+         * Get the next party size.
+         *
+         * @return the number of places to hold
+         */
+        int nextSize() {
+            next = (next + 1) & (BenchmarkSupport.PARTY_SIZE_COUNT - 1);
+            return sizes[next];
+        }
+    }
+
+    /**
+     * Create the section, with a stripe per processor.
+     */
+    @Setup
+    public void setUp() {
+        section = new GeneralAdmissionSection(0, capacity, HOLD_TIMEOUT);
+    }
+
+    /**
+     * Hold a party's places, then release them.
+     *
+     * @param parties this thread's party sizes
+     * @return whether the hold was released
+     */
+    @Benchmark
+    public boolean holdAndRelease(final Parties parties) {
+        final SeatHold hold = section.findAndHoldPlaces(parties.nextSize(), BenchmarkSupport.EMAIL);
+        return section.releaseHold(hold.getId(), BenchmarkSupport.EMAIL);
+    }
+}
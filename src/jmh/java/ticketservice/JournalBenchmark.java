@@ -0,0 +1,125 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the cost of each journal durability level on reserveSeats.
+ * As in ReserveSeatsBenchmark, each measurement is a single shot over a
+ * batch of holds made in the iteration's setup.  The service is shared,
+ * so with several threads (-t) the SYNC level shows the effect of group
+ * commit: threads waiting for the disk share one force.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = JournalBenchmark.BATCH_SIZE)
+@Measurement(iterations = 30, batchSize = JournalBenchmark.BATCH_SIZE)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    /** The number of reservations each thread makes in a measurement. */
+    static final int BATCH_SIZE = 256;
+
+    /** The hold timeout; long enough that no hold expires during an iteration. */
+    private static final long HOLD_TIMEOUT = 60_000L;
+
+    /** The durability level, or "none" for a service without a journal. */
+    @Param({"none", "OS_BUFFERED", "BATCHED", "SYNC"})
+    private String durability;
+
+    /** The journal file for the iteration. */
+    private Path file;
+
+    /** The service under test, rebuilt for each iteration. */
+    private TicketServiceImpl service;
+
+    /** The IDs of the holds to reserve; each thread has its own slice. */
+    private int[] holdIds;
+
+    /**
+     * Create a fresh service and journal for the iteration, and hold
+     * a batch of seats for each thread.
+     *
+     * @param params the benchmark parameters, for the number of threads
+     * @throws IOException if the journal can't be created
+     */
+    @Setup(Level.Iteration)
+    public void setUp(final BenchmarkParams params) throws IOException {
+        final Venue venue = BenchmarkSupport.venue("200x500");
+        if ("none".equals(durability)) {
+            service = new TicketServiceImpl(HOLD_TIMEOUT, venue);
+        } else {
+            file = Files.createTempFile("ticketservice-journal", ".bin");
+            service = new TicketServiceImpl(HOLD_TIMEOUT, venue, file, Durability.valueOf(durability));
+        }
+
+        holdIds = new int[BATCH_SIZE * params.getThreads()];
+        for (int i = 0; i < holdIds.length; ++i) {
+            holdIds[i] = service.findAndHoldSeats(1 + (i % 4), BenchmarkSupport.EMAIL).getId();
+        }
+    }
+
+    /**
+     * Close the service and delete the journal.
+     *
+     * @throws IOException if the journal can't be closed
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        service.close();
+        if (file != null) {
+            Files.delete(file);
+            file = null;
+        }
+    }
+
+    /**
+     * The position of each thread in its slice of holds.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /** The index of the next hold to reserve, within the thread's slice. */
+        int next;
+
+        /**
+         * Start the thread's slice again for the iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            next = 0;
+        }
+    }
+
+    /**
+     * Reserve the thread's next hold.
+     *
+     * @param cursor the thread's position
+     * @param thread the thread parameters, for the thread's slice
+     * @return the confirmation code
+     */
+    @Benchmark
+    public String reserveSeats(final Cursor cursor, final ThreadParams thread) {
+        final int id = holdIds[thread.getThreadIndex() * BATCH_SIZE + cursor.next++];
+        return service.reserveSeats(id, BenchmarkSupport.EMAIL);
+    }
+}
@@ -0,0 +1,103 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark restarting a persistent service for a sold-out 100,000 seat
+ * event (50,000 reservations of two seats), from the journal alone or
+ * from a snapshot.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+    /** The hold timeout. */
+    private static final long HOLD_TIMEOUT = 60_000L;
+
+    /** The venue size. */
+    private static final String VENUE_SIZE = "200x500";
+
+    /** "journal" to replay every change, or "snapshot" to load a snapshot taken after the sale. */
+    @Param({"journal", "snapshot"})
+    private String restartFrom;
+
+    /** The directory holding the journal and snapshot. */
+    private Path directory;
+
+    /** The journal file. */
+    private Path file;
+
+    /**
+     * Sell out the venue, and take a snapshot if needed.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ticketservice-recovery");
+        file = directory.resolve("journal.bin");
+        try (TicketServiceImpl service = new TicketServiceImpl(HOLD_TIMEOUT,
+                BenchmarkSupport.venue(VENUE_SIZE), file, Durability.OS_BUFFERED)) {
+            SeatHold hold = service.findAndHoldSeats(2, BenchmarkSupport.EMAIL);
+            while (hold != null) {
+                service.reserveSeats(hold.getId(), BenchmarkSupport.EMAIL);
+                hold = service.findAndHoldSeats(2, BenchmarkSupport.EMAIL);
+            }
+
+            if ("snapshot".equals(restartFrom)) {
+                service.takeSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Delete the journal and snapshot.
+     *
+     * @throws IOException if the files can't be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Restart the service.
+     *
+     * @return the number of open seats, which should be zero
+     * @throws IOException if the journal can't be read
+     */
+    @Benchmark
+    public int restart() throws IOException {
+        try (TicketServiceImpl service = new TicketServiceImpl(HOLD_TIMEOUT,
+                BenchmarkSupport.venue(VENUE_SIZE), file, Durability.OS_BUFFERED)) {
+            return service.numSeatsAvailable();
+        }
+    }
+}
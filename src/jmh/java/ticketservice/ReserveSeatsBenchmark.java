@@ -0,0 +1,78 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark reserveSeats.  A reservation uses up its hold, so each
+ * measurement is a single shot over a batch of holds made in the
+ * iteration's setup; the score is the time for the whole batch of
+ * BATCH_SIZE reservations.  Each thread gets its own service, so this
+ * measures the uncontended path; TicketServiceBenchmark covers contention.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20, batchSize = ReserveSeatsBenchmark.BATCH_SIZE)
+@Measurement(iterations = 50, batchSize = ReserveSeatsBenchmark.BATCH_SIZE)
+@Fork(1)
+@State(Scope.Thread)
+public class ReserveSeatsBenchmark {
+
+    /** The number of reservations in each measurement. */
+    static final int BATCH_SIZE = 256;
+
+    /** The hold timeout; long enough that no hold expires during an iteration. */
+    private static final long HOLD_TIMEOUT = 60_000L;
+
+    /** The service implementation. */
+    @Param({"monitor", "zerogarbage", "striped", "atomic", "eventloop"})
+    private String implementation;
+
+    /** The venue size, as rows x seats per row. */
+    @Param({"100x200", "200x500"})
+    private String venueSize;
+
+    /** The service under test, rebuilt for each iteration. */
+    private TicketService service;
+
+    /** The IDs of the holds to reserve. */
+    private final int[] holdIds = new int[BATCH_SIZE];
+
+    /** The index of the next hold to reserve. */
+    private int next;
+
+    /**
+     * Create a fresh service for the iteration, and hold a batch of small blocks of seats.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        service = BenchmarkSupport.service(implementation, HOLD_TIMEOUT, BenchmarkSupport.venue(venueSize));
+        final int[] sizes = BenchmarkSupport.partySizes("small", 3L);
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            holdIds[i] = service.findAndHoldSeats(sizes[i], BenchmarkSupport.EMAIL).getId();
+        }
+        next = 0;
+    }
+
+    /**
+     * Reserve the next hold.
+     *
+     * @return the confirmation code
+     */
+    @Benchmark
+    public String reserveSeats() {
+        return service.reserveSeats(holdIds[next++], BenchmarkSupport.EMAIL);
+    }
+}
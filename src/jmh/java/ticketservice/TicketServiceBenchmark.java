@@ -0,0 +1,124 @@
+package ticketservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the steady-state hot paths: findAndHoldSeats and
+ * numSeatsAvailable, across implementations, venue sizes, fill levels
+ * and party sizes.  Run with -t to vary the thread count, and with
+ * -prof gc (the default for the Gradle jmh task) for allocation rates.
+ *
+ * The holds made by the benchmark expire after holdTimeout milliseconds,
+ * so the venue settles at the reserved fill level plus whatever was held
+ * in the last holdTimeout; with the default of 1 ms, that's a few hundred
+ * holds at most.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketServiceBenchmark {
+
+    /** The service implementation. */
+    @Param({"monitor", "zerogarbage", "striped", "atomic", "eventloop"})
+    private String implementation;
+
+    /** The venue size, as rows x seats per row (1,500, 20,000 and 100,000 seats). */
+    @Param({"30x50", "100x200", "200x500"})
+    private String venueSize;
+
+    /** How full the venue is with reservations before the benchmark starts. */
+    @Param({"empty", "half", "fragmented95"})
+    private String fill;
+
+    /** The distribution of party sizes. */
+    @Param({"small", "mixed"})
+    private String partySizes;
+
+    /** The hold timeout (milliseconds). */
+    @Param({"1"})
+    private long holdTimeout;
+
+    /** The service under test. */
+    private TicketService service;
+
+    /**
+     * Create the service and fill the venue.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = BenchmarkSupport.service(implementation, holdTimeout, BenchmarkSupport.venue(venueSize));
+        BenchmarkSupport.fill(service, fill, holdTimeout);
+    }
+
+    /**
+     * The party sizes for one thread.
+     */
+    @State(Scope.Thread)
+    public static class Parties {
+
+        /** The party sizes, used round-robin. */
+        private int[] sizes;
+
+        /** The index of the next party size. */
+        private int next;
+
+        /**
+         * Generate this thread's party sizes.
+         *
+         * @param benchmark the benchmark state
+         * @param threadParams the thread's parameters
+         */
+        @Setup(Level.Trial)
+        public void setUp(final TicketServiceBenchmark benchmark, final ThreadParams threadParams) {
+            sizes = BenchmarkSupport.partySizes(benchmark.partySizes, threadParams.getThreadIndex());
+        }
+
+        /**
+         * Get the next party size.
+         *
+         * @return the number of seats to hold
+         */
+        int nextSize() {
+            next = (next + 1) & (BenchmarkSupport.PARTY_SIZE_COUNT - 1);
+            return sizes[next];
+        }
+    }
+
+    /**
+     * Find and hold seats for the next party.
+     *
+     * @param parties this thread's party sizes
+     * @return the hold, or null
+     */
+    @Benchmark
+    public SeatHold findAndHoldSeats(final Parties parties) {
+        return service.findAndHoldSeats(parties.nextSize(), BenchmarkSupport.EMAIL);
+    }
+
+    /**
+     * Get the number of available seats.
+     *
+     * @return the number of available seats
+     */
+    @Benchmark
+    public int numSeatsAvailable() {
+        return service.numSeatsAvailable();
+    }
+}
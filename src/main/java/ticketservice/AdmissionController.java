@@ -0,0 +1,456 @@
+package ticketservice;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An admission layer in front of a ticket service, acting as a virtual
+ * waiting room for on-sale spikes.
+ *
+ * At most maxConcurrent calls to findAndHoldSeats() run in the service
+ * at once.  Callers beyond that wait in a FIFO queue of at most maxQueued
+ * entries, and are admitted one at a time as earlier calls finish; once
+ * the queue is full, further callers are turned away at once.  A waiting
+ * customer's place in the queue can be read (by email) while they wait.
+ *
+ * Requests are also turned away, without reaching the service's lock or
+ * its search for seats, when fewer seats are open than requested.  The
+ * number of open seats is cached, and read from the service at most every
+ * REFRESH_MILLIS, or straight away after a hold fails.  When the cache
+ * shows the venue sold out, everyone waiting in the queue is turned away
+ * as their turn comes, rather than being admitted.  Seats released later
+ * by expired holds are seen on the next refresh; seats given back through
+ * releaseHold() or cancelReservation() refresh the cache straight away.
+ *
+ * Reservations, releases, cancellations, extensions and
+ * numSeatsAvailable() go straight to the service, since they don't
+ * search for seats.  Turned-away requests return null, like
+ * failed holds, and are counted by reason.
+ *
+ * @author Mike Wallace
+ */
+public class AdmissionController implements TicketService {
+
+    /** How often the cached number of open seats is read from the service. */
+    private static final long REFRESH_MILLIS = 10L;
+
+    /** A ticket's state while it's in the queue. */
+    private static final int WAITING = 0;
+
+    /** A ticket's state once it's been admitted to the service. */
+    private static final int ADMITTED = 1;
+
+    /** A ticket's state once it's been turned away because the seats ran out. */
+    private static final int REJECTED = 2;
+
+    /** A ticket's state once its caller stopped waiting (it's skipped when its turn comes). */
+    private static final int ABANDONED = 3;
+
+    /** The service that admitted requests are passed to. */
+    private final TicketService service;
+
+    /** The most calls to findAndHoldSeats() run in the service at once. */
+    private final int maxConcurrent;
+
+    /** The most callers waiting in the queue. */
+    private final int maxQueued;
+
+    /** The callers waiting to be admitted, in order of arrival.  Guarded by this. */
+    private final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+
+    /** The queued tickets of each customer in order, by lower-case email.  Changed under this. */
+    private final ConcurrentMap<String, Queue<Ticket>> waitingByEmail = new ConcurrentHashMap<>();
+
+    /** The number of calls running in the service.  Guarded by this. */
+    private int active;
+
+    /** The number given to the next ticket.  Guarded by this. */
+    private long nextTicket;
+
+    /** The number of the ticket at the front of the queue (or the next ticket if it's empty). */
+    private volatile long headTicket;
+
+    /** The cached number of open seats. */
+    private volatile int seatsAvailable = Integer.MAX_VALUE;
+
+    /** The System.nanoTime() at which the cached number of open seats is next read. */
+    private final AtomicLong nextRefresh = new AtomicLong(System.nanoTime());
+
+    /** The number of requests admitted to the service. */
+    private final LongAdder admitted = new LongAdder();
+
+    /** The number of requests turned away, indexed by FailureReason ordinal. */
+    private final LongAdder[] rejected = new LongAdder[FailureReason.values().length];
+
+    /**
+     * Constructor taking the service and the limits.
+     *
+     * @param service the service to pass admitted requests to
+     * @param maxConcurrent the most calls to findAndHoldSeats() run in the service at once
+     * @param maxQueued the most callers waiting in the queue (0 for no queue)
+     */
+    public AdmissionController(final TicketService service, final int maxConcurrent, final int maxQueued) {
+
+        if (service == null) {
+            throw new IllegalArgumentException("Illegal argument to AdmissionController c'tor: service is required");
+        } else if (maxConcurrent < 1) {
+            throw new IllegalArgumentException(
+                    "Illegal argument to AdmissionController c'tor: maxConcurrent must be positive");
+        } else if (maxQueued < 0) {
+            throw new IllegalArgumentException(
+                    "Illegal argument to AdmissionController c'tor: maxQueued can't be negative");
+        }
+
+        this.service = service;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        for (int index = 0; index < rejected.length; ++index) {
+            rejected[index] = new LongAdder();
+        }
+    }
+
+    @Override
+    public int numSeatsAvailable() {
+        return service.numSeatsAvailable();
+    }
+
+    /**
+     * Find and hold seats, once admitted.  Waits in the queue if the
+     * service is at its concurrency cap.
+     *
+     * @param numSeats      the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return the hold, or null if it failed or the request was turned away
+     */
+    @Override
+    public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
+
+        // Leave invalid input to the service, which checks it without its lock
+        if ((numSeats < 1) || (customerEmail == null)) {
+            return service.findAndHoldSeats(numSeats, customerEmail);
+        }
+
+        if (!hasSeats(numSeats)) {
+            rejected[FailureReason.NOT_ENOUGH_SEATS.ordinal()].increment();
+            return null;
+        }
+
+        if (!awaitAdmission(numSeats, customerEmail)) {
+            return null;
+        }
+
+        try {
+            // The seats may have gone while the caller waited
+            if (!hasSeats(numSeats)) {
+                rejected[FailureReason.NOT_ENOUGH_SEATS.ordinal()].increment();
+                return null;
+            }
+
+            admitted.increment();
+            final SeatHold hold = service.findAndHoldSeats(numSeats, customerEmail);
+            if (hold == null) {
+                refresh(System.nanoTime());
+            }
+            return hold;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+        return service.reserveSeats(seatHoldId, customerEmail);
+    }
+
+    /**
+     * Release a hold in the service, and refresh the number of open seats
+     * if it was released.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released
+     */
+    @Override
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+        final boolean released = service.releaseHold(seatHoldId, customerEmail);
+        if (released) {
+            refresh(System.nanoTime());
+        }
+        return released;
+    }
+
+    /**
+     * Cancel a reservation in the service, and refresh the number of open
+     * seats if it was cancelled.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled
+     */
+    @Override
+    public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+        final boolean cancelled = service.cancelReservation(confirmationCode, customerEmail);
+        if (cancelled) {
+            refresh(System.nanoTime());
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean extendHold(final int seatHoldId, final String customerEmail) {
+        return service.extendHold(seatHoldId, customerEmail);
+    }
+
+    /**
+     * Get a waiting customer's place in the queue.
+     *
+     * @param customerEmail the customer's email
+     * @return the place of the customer's first waiting request (1 for the
+     *         front of the queue), or 0 if they aren't waiting
+     */
+    public int getQueuePosition(final String customerEmail) {
+        final Queue<Ticket> waiting = (customerEmail == null) ? null : waitingByEmail.get(keyFor(customerEmail));
+        if (waiting == null) {
+            return 0;
+        }
+
+        // Skip any tickets that were abandoned but are still queued
+        for (Ticket ticket : waiting) {
+            if (ticket.state == WAITING) {
+                return (int) Math.max(1L, ticket.number - headTicket + 1L);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the number of callers waiting in the queue.
+     *
+     * @return the length of the queue
+     */
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of calls to findAndHoldSeats() running in the service.
+     *
+     * @return the number of active calls
+     */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    /**
+     * Get the number of requests admitted to the service.
+     *
+     * @return the number of admitted requests
+     */
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * Get the number of requests turned away for a reason: QUEUE_FULL, or
+     * NOT_ENOUGH_SEATS.
+     *
+     * @param reason the reason
+     * @return the number of requests turned away
+     */
+    public long getRejected(final FailureReason reason) {
+        return rejected[reason.ordinal()].sum();
+    }
+
+    /**
+     * Helper method to check the cached number of open seats, reading it
+     * from the service if it's due.
+     *
+     * @param numSeats the number of seats requested
+     * @return whether enough seats may be open
+     */
+    private boolean hasSeats(final int numSeats) {
+        final long now = System.nanoTime();
+        final long due = nextRefresh.get();
+        if ((now - due >= 0L) && nextRefresh.compareAndSet(due, now + TimeUnit.MILLISECONDS.toNanos(REFRESH_MILLIS))) {
+            seatsAvailable = service.numSeatsAvailable();
+        }
+        return numSeats <= seatsAvailable;
+    }
+
+    /**
+     * Helper method to read the number of open seats from the service now.
+     *
+     * @param now the System.nanoTime()
+     */
+    private void refresh(final long now) {
+        nextRefresh.set(now + TimeUnit.MILLISECONDS.toNanos(REFRESH_MILLIS));
+        seatsAvailable = service.numSeatsAvailable();
+    }
+
+    /**
+     * Helper method to wait until a request is admitted, counting it if
+     * it's turned away.
+     *
+     * @param numSeats the number of seats requested
+     * @param customerEmail the customer's email
+     * @return whether the request was admitted (false if it was turned away, or the caller was interrupted)
+     */
+    private boolean awaitAdmission(final int numSeats, final String customerEmail) {
+
+        final Ticket ticket;
+        synchronized (this) {
+            if ((active < maxConcurrent) && queue.isEmpty()) {
+                ++active;
+                return true;
+            } else if (queue.size() >= maxQueued) {
+                rejected[FailureReason.QUEUE_FULL.ordinal()].increment();
+                return false;
+            }
+
+            ticket = new Ticket(nextTicket++, customerEmail, numSeats);
+            if (queue.isEmpty()) {
+                headTicket = ticket.number;
+            }
+            queue.addLast(ticket);
+            waitingByEmail.computeIfAbsent(keyFor(customerEmail), key -> new ConcurrentLinkedQueue<>()).add(ticket);
+        }
+
+        while (ticket.state == WAITING) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                abandon(ticket);
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        if (ticket.state != ADMITTED) {
+            rejected[FailureReason.NOT_ENOUGH_SEATS.ordinal()].increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to stop waiting, after an interrupt.  If the ticket was
+     * admitted meanwhile, its place in the service is passed on.
+     *
+     * @param ticket the caller's ticket
+     */
+    private void abandon(final Ticket ticket) {
+        final boolean wasAdmitted;
+        synchronized (this) {
+            wasAdmitted = (ticket.state == ADMITTED);
+            if (ticket.state == WAITING) {
+                ticket.state = ABANDONED;
+            }
+        }
+
+        // Don't call the service with the interrupt set: an interrupt during I/O closes a journal
+        if (wasAdmitted) {
+            release();
+        }
+    }
+
+    /**
+     * Helper method to pass a finished call's place in the service to the
+     * next caller in the queue, turning away any who can't be served.
+     */
+    private void release() {
+        synchronized (this) {
+            Ticket next;
+            while ((next = queue.pollFirst()) != null) {
+                removeWaiting(next);
+                headTicket = queue.isEmpty() ? nextTicket : queue.peekFirst().number;
+                if (next.state == ABANDONED) {
+                    continue;
+                }
+
+                next.state = (next.numSeats > seatsAvailable) ? REJECTED : ADMITTED;
+                LockSupport.unpark(next.waiter);
+                if (next.state == ADMITTED) {
+                    return;
+                }
+            }
+
+            --active;
+        }
+    }
+
+    /**
+     * Helper method to remove a ticket from its customer's queue.  The
+     * tickets leave the main queue in order, so it's at the head.  The
+     * caller must hold the lock.
+     *
+     * @param ticket the ticket
+     */
+    private void removeWaiting(final Ticket ticket) {
+        final String key = keyFor(ticket.email);
+        final Queue<Ticket> waiting = waitingByEmail.get(key);
+        waiting.poll();
+        if (waiting.isEmpty()) {
+            waitingByEmail.remove(key);
+        }
+    }
+
+    /**
+     * Helper method to get the key for an email.
+     *
+     * @param email the customer's email
+     * @return the key
+     */
+    private static String keyFor(final String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "maxConcurrent=" + maxConcurrent +
+                ", maxQueued=" + maxQueued +
+                ", admitted=" + admitted.sum() +
+                '}';
+    }
+
+    /**
+     * A caller's place in the queue.
+     */
+    private static final class Ticket {
+
+        /** The ticket's number, in order of arrival. */
+        private final long number;
+
+        /** The customer's email. */
+        private final String email;
+
+        /** The number of seats requested. */
+        private final int numSeats;
+
+        /** The waiting thread. */
+        private final Thread waiter = Thread.currentThread();
+
+        /** WAITING, ADMITTED, REJECTED or ABANDONED.  Changed under the controller's lock. */
+        private volatile int state = WAITING;
+
+        /**
+         * Constructor taking the fields.
+         *
+         * @param number the ticket's number
+         * @param email the customer's email
+         * @param numSeats the number of seats requested
+         */
+        Ticket(final long number, final String email, final int numSeats) {
+            this.number = number;
+            this.email = email;
+            this.numSeats = numSeats;
+        }
+    }
+}
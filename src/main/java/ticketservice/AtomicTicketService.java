@@ -0,0 +1,450 @@
+package ticketservice;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free TicketService that claims seats with compare-and-swap on
+ * a bitmap of the venue (one bit per seat, set if held or reserved).
+ *
+ * A hold finds the first run of free seats in the bitmap, then claims it
+ * one word at a time with CAS.  If another thread claims one of the seats
+ * first, the words already claimed are rolled back and the search starts
+ * again after the conflict.  Small parties fit in one or two words, so
+ * most holds are a short scan and a single CAS, and no thread ever waits
+ * for another.
+ *
+ * Whether a claimed seat is held or reserved is tracked by the holds and
+ * reserved maps.  Moving a hold out of the holds map is the single point
+ * where a reservation, a release and an expiry race, so exactly one of
+ * them wins.  Extending a hold replaces its entry in the map with a
+ * renewed copy, so the old copy left in the expiry queue is skipped.
+ *
+ * @author Mike Wallace
+ */
+public class AtomicTicketService implements TicketService {
+
+    /** Default timeout value (in milliseconds) for a seat hold. */
+    private static final long DEFAULT_HOLD_TIMEOUT = 2_000L;
+
+    /** The number of seats tracked by each word of the bitmap. */
+    private static final int SEATS_PER_WORD = Long.SIZE;
+
+    /** The current map of seat holds, keyed by hold ID. */
+    private final Map<Integer, SeatBlock> holds = new ConcurrentHashMap<>(20);
+
+    /** The current map of reserved seats. */
+    private final Map<Integer, SeatBlock> reserved = new ConcurrentHashMap<>(20);
+
+    /** Holds in creation order; all holds share the same timeout, so the oldest expire first. */
+    private final Queue<SeatBlock> expiryQueue = new ConcurrentLinkedQueue<>();
+
+    /** Set while a thread is releasing expired holds, so only one thread does it at a time. */
+    private final AtomicBoolean releasing = new AtomicBoolean();
+
+    /** The maximum age for a seat hold before the seats become available again. */
+    private final long holdTimeout;
+
+    /** The number of seats in the venue. */
+    private final int numSeats;
+
+    /** One bit per seat, set if the seat is held or reserved. */
+    private final AtomicLongArray claimed;
+
+    /** The number of open seats in the venue. */
+    private final AtomicInteger seatsAvailable;
+
+    /** The ID of the next hold. */
+    private final AtomicInteger holdId = new AtomicInteger(Integer.MIN_VALUE);
+
+    /**
+     * Public constructor.  Uses the default hold timeout and venue.
+     */
+    public AtomicTicketService() {
+        this(DEFAULT_HOLD_TIMEOUT, new Venue());
+    }
+
+    /**
+     * Constructor taking the timeout value (in milliseconds) for
+     * a seat hold.
+     *
+     * @param holdTimeout the length of time a seat can be held (milliseconds)
+     * @param venue the venue customers are buying tickets for
+     */
+    public AtomicTicketService(final long holdTimeout, final Venue venue) {
+
+        this.holdTimeout = holdTimeout;
+        numSeats = venue.getNumberOfSeats();
+        seatsAvailable = new AtomicInteger(numSeats);
+
+        // Mark the bits past the last seat as claimed, so no run can extend past the end of the venue
+        final int numWords = (numSeats + SEATS_PER_WORD - 1) / SEATS_PER_WORD;
+        claimed = new AtomicLongArray(numWords);
+        final int lastBits = numSeats % SEATS_PER_WORD;
+        if (lastBits != 0) {
+            claimed.set(numWords - 1, -1L << lastBits);
+        }
+    }
+
+    /**
+     * The number of seats in the venue that are neither held nor reserved
+     *
+     * @return the number of tickets available in the venue
+     */
+    @Override
+    public int numSeatsAvailable() {
+        releaseExpiredHolds();
+        return seatsAvailable.get();
+    }
+
+    /**
+     * Find and hold the best available seats for a customer.
+     *
+     * @param numSeats      the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return a SeatHold object identifying the specific seats and related information
+     */
+    @Override
+    public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
+
+        // Check the input
+        if (customerEmail == null) {
+            return null;
+        } else if ((numSeats < 1) || (numSeats > this.numSeats)) {
+            return null;
+        }
+
+        releaseExpiredHolds();
+
+        // Find a run of free seats and try to claim it; on a conflict, search again after the conflict
+        int fromSeat = 0;
+        while (seatsAvailable.get() >= numSeats) {
+            final int startingSeat = findFreeRun(fromSeat, numSeats);
+            if (startingSeat < 0) {
+                return null;
+            }
+
+            final int conflict = claim(startingSeat, numSeats);
+            if (conflict < 0) {
+
+                // We own the seats, so publish the hold
+                seatsAvailable.addAndGet(-numSeats);
+                final int id = holdId.getAndIncrement();
+                final SeatBlock block = new SeatBlock(id, customerEmail, startingSeat, numSeats);
+                holds.put(id, block);
+                expiryQueue.add(block);
+                return new SeatHold(id);
+            }
+
+            fromSeat = conflict + 1;
+        }
+
+        return null;
+    }
+
+    /**
+     * Commit seats held for a specific customer
+     *
+     * @param seatHoldId    the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return a reservation confirmation code
+     */
+    @Override
+    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+
+        // Check if the customer has a live seat-hold with the provided ID
+        final SeatBlock block = findHold(seatHoldId, customerEmail);
+        if (block == null) {
+            return null;
+        }
+
+        // Take the hold out of the map; if that fails, it expired or was reserved by another thread
+        if (!holds.remove(seatHoldId, block)) {
+            return null;
+        }
+        reserved.put(seatHoldId, block);
+
+        // Return the reservation ID (reuse the hold ID)
+        return Integer.toString(block.getId());
+    }
+
+    /**
+     * Release a hold before it times out, so its seats are available
+     * again straight away.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released
+     */
+    @Override
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+        final SeatBlock block = findHold(seatHoldId, customerEmail);
+        return (block != null) && release(block);
+    }
+
+    /**
+     * Cancel a reservation, so its seats are available again straight
+     * away.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled
+     */
+    @Override
+    public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+
+        // Check the input
+        final long code = TicketServiceImpl.parseConfirmationCode(confirmationCode);
+        if ((customerEmail == null) || (code == TicketServiceImpl.NO_RESERVATION)) {
+            return false;
+        }
+
+        // Take the reservation out of the map; if that fails, another thread cancelled it
+        final SeatBlock block = reserved.get((int) code);
+        if ((block == null) || !customerEmail.equalsIgnoreCase(block.getEmail()) ||
+                !reserved.remove(block.getId(), block)) {
+            return false;
+        }
+
+        unclaim(block.getStartingSeat(), block.getStartingSeat() + block.getNumberSeats());
+        seatsAvailable.addAndGet(block.getNumberSeats());
+        return true;
+    }
+
+    /**
+     * Extend a hold, so its timeout starts again from now.  The hold's
+     * entry is replaced with a renewed copy, which joins the back of the
+     * expiry queue.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was extended
+     */
+    @Override
+    public boolean extendHold(final int seatHoldId, final String customerEmail) {
+        final SeatBlock block = findHold(seatHoldId, customerEmail);
+        if (block == null) {
+            return false;
+        }
+
+        // Swap in the renewed hold; if that fails, it expired or was reserved, released or extended
+        final SeatBlock renewed = new SeatBlock(seatHoldId, block.getEmail(), block.getStartingSeat(),
+                block.getNumberSeats(), System.currentTimeMillis());
+        if (!holds.replace(seatHoldId, block, renewed)) {
+            return false;
+        }
+        expiryQueue.add(renewed);
+        return true;
+    }
+
+    /**
+     * Helper method to find a customer's hold.  An expired hold is
+     * released, and not returned.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return the hold, or null if there's no such hold for the customer
+     */
+    private SeatBlock findHold(final int seatHoldId, final String customerEmail) {
+        if (customerEmail == null) {
+            return null;
+        }
+
+        final SeatBlock block = holds.get(seatHoldId);
+        if (block == null) {
+            return null;
+        } else if (block.getAge() >= holdTimeout) {
+            // The seat hold has expired, so release it (unless another thread beat us to it)
+            release(block);
+            return null;
+        } else if (!customerEmail.equalsIgnoreCase(block.getEmail())) {
+            // The customer email does not match
+            return null;
+        }
+
+        return block;
+    }
+
+    /**
+     * Helper method to release the holds that have expired.  Only one
+     * thread does this at a time; the others carry on without waiting.
+     */
+    private void releaseExpiredHolds() {
+
+        if (!releasing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            SeatBlock block = expiryQueue.peek();
+            while ((block != null) && (block.getAge() >= holdTimeout)) {
+                expiryQueue.poll();
+                release(block);
+                block = expiryQueue.peek();
+            }
+        } finally {
+            releasing.set(false);
+        }
+    }
+
+    /**
+     * Helper method to release the seats of a hold, if it's still in the
+     * holds map.  Removing it from the map decides the race with
+     * reserveSeats(); a copy replaced by extendHold() is no longer in the
+     * map, so it's skipped.
+     *
+     * @param block the hold
+     * @return whether this call released the hold
+     */
+    private boolean release(final SeatBlock block) {
+        if (holds.remove(block.getId(), block)) {
+            unclaim(block.getStartingSeat(), block.getStartingSeat() + block.getNumberSeats());
+            seatsAvailable.addAndGet(block.getNumberSeats());
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Helper method to find the first run of free seats in the bitmap.
+     * The bitmap may change while it's read, so the result is only a
+     * candidate for claim().
+     *
+     * @param fromSeat the first seat to consider
+     * @param count the number of consecutive seats needed
+     * @return the first seat of the run, or -1 if no run was found
+     */
+    private int findFreeRun(final int fromSeat, final int count) {
+
+        int runStart = fromSeat;
+        int runLength = 0;
+        for (int seat = fromSeat; seat < numSeats; ) {
+            final long bits = claimed.get(seat / SEATS_PER_WORD);
+            final int offset = seat % SEATS_PER_WORD;
+
+            if ((offset == 0) && (bits == 0L)) {
+                // The whole word is free
+                runLength += SEATS_PER_WORD;
+                seat += SEATS_PER_WORD;
+            } else if ((offset == 0) && (bits == -1L)) {
+                // The whole word is claimed
+                runLength = 0;
+                seat += SEATS_PER_WORD;
+                runStart = seat;
+            } else if ((bits & (1L << offset)) == 0L) {
+                ++runLength;
+                ++seat;
+            } else {
+                runLength = 0;
+                ++seat;
+                runStart = seat;
+            }
+
+            if (runLength >= count) {
+                return runStart;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Helper method to claim a run of seats, one word at a time.  If any
+     * seat is already claimed, the words claimed so far are rolled back.
+     *
+     * @param startingSeat the first seat of the run
+     * @param count the number of seats
+     * @return -1 if the seats were claimed, or else a seat that was already claimed
+     */
+    private int claim(final int startingSeat, final int count) {
+
+        final int endSeat = startingSeat + count;
+        int seat = startingSeat;
+        while (seat < endSeat) {
+            final int word = seat / SEATS_PER_WORD;
+            final int wordEnd = Math.min(endSeat, (word + 1) * SEATS_PER_WORD);
+            final long mask = wordMask(seat, wordEnd);
+
+            // Set the bits for this word, unless one of them is already set
+            long bits = claimed.get(word);
+            while ((bits & mask) == 0L) {
+                if (claimed.compareAndSet(word, bits, bits | mask)) {
+                    break;
+                }
+                bits = claimed.get(word);
+            }
+
+            if ((bits & mask) != 0L) {
+                // Conflict: give back what we claimed, and report the last claimed seat in the way
+                unclaim(startingSeat, seat);
+                return word * SEATS_PER_WORD + (SEATS_PER_WORD - 1 - Long.numberOfLeadingZeros(bits & mask));
+            }
+
+            seat = wordEnd;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Helper method to clear the bits for a run of seats.
+     *
+     * @param startingSeat the first seat of the run
+     * @param endSeat one past the last seat of the run
+     */
+    private void unclaim(final int startingSeat, final int endSeat) {
+
+        int seat = startingSeat;
+        while (seat < endSeat) {
+            final int word = seat / SEATS_PER_WORD;
+            final int wordEnd = Math.min(endSeat, (word + 1) * SEATS_PER_WORD);
+            final long mask = wordMask(seat, wordEnd);
+
+            long bits = claimed.get(word);
+            while (!claimed.compareAndSet(word, bits, bits & ~mask)) {
+                bits = claimed.get(word);
+            }
+
+            seat = wordEnd;
+        }
+    }
+
+    /**
+     * Helper method to get the bit mask for a range of seats within one word.
+     *
+     * @param fromSeat the first seat
+     * @param toSeat one past the last seat (in the same word as fromSeat)
+     * @return the bit mask
+     */
+    private static long wordMask(final int fromSeat, final int toSeat) {
+        final int from = fromSeat % SEATS_PER_WORD;
+        final int bits = toSeat - fromSeat;
+        return ((bits == SEATS_PER_WORD) ? -1L : ((1L << bits) - 1L)) << from;
+    }
+
+    /**
+     * Helper method to get the hold information by ID.
+     *
+     * @param hold the hold key
+     * @return the corresponding value in the hold map, or null
+     */
+    public SeatBlock getHoldById(final SeatHold hold) {
+        return holds.get(hold.getId());
+    }
+
+    /**
+     * Helper method to get the reserve information by ID.
+     *
+     * @param reservedId the reserve key
+     * @return the corresponding value in the reserved map, or null
+     */
+    public SeatBlock getReservedById(final int reservedId) {
+        return reserved.get(reservedId);
+    }
+}
@@ -0,0 +1,339 @@
+package ticketservice;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * An allocation strategy that places each party in the smallest free run
+ * that fits it, to leave fewer small gaps than first-fit.  Like a memory
+ * allocator, it keeps the free runs on segregated free lists ("bins")
+ * keyed by run length: one bin for each length up to 63 seats, then one
+ * for each power of two.  A bitmap of the non-empty bins finds the
+ * smallest bin that can fit a party in a word or two, so an exact bin is
+ * found without a scan; only the power-of-two bins are scanned for their
+ * smallest run.  The party takes the start of the run it's placed in,
+ * and the rest of the run goes back on the list for its new length.
+ *
+ * Each run records its length at its first seat and its first seat at
+ * its last seat (boundary tags), so freed seats are merged with the runs
+ * on either side in constant time.  Within a bin, the most recently
+ * added run is used first.
+ *
+ * Since the venue is treated as one line of seats, a block may span two
+ * or more rows, as with FirstFitAllocator.
+ */
+public final class BestFitAllocator implements SeatAllocator {
+
+    /** Run lengths below this have a bin each. */
+    private static final int EXACT_BINS = 64;
+
+    /** The number of bins: the exact bins, then one per power of two from EXACT_BINS up. */
+    private static final int NUM_BINS = EXACT_BINS + Integer.numberOfLeadingZeros(EXACT_BINS);
+
+    /** Marks the end of a free list. */
+    private static final int NIL = -1;
+
+    /** The number of seats in the venue. */
+    private final int numSeats;
+
+    /** Which seats are free. */
+    private final BitSet free;
+
+    /** The length of each free run, at the run's first seat. */
+    private final int[] runLength;
+
+    /** The first seat of each free run, at the run's last seat. */
+    private final int[] runHead;
+
+    /** The next run in the same bin, at each run's first seat. */
+    private final int[] nextRun;
+
+    /** The previous run in the same bin, at each run's first seat. */
+    private final int[] prevRun;
+
+    /** The first run in each bin. */
+    private final int[] binHeads = new int[NUM_BINS];
+
+    /** Bitmap of the non-empty bins. */
+    private final long[] binMap = new long[(NUM_BINS + 63) >>> 6];
+
+    /** The number of bins and runs examined by the last search. */
+    private int lastSearchLength;
+
+    /**
+     * Constructor taking the venue.  All seats start as free.
+     *
+     * @param venue the venue to allocate seats in
+     */
+    public BestFitAllocator(final Venue venue) {
+        numSeats = venue.getNumberOfSeats();
+        free = new BitSet(numSeats);
+        runLength = new int[numSeats];
+        runHead = new int[numSeats];
+        nextRun = new int[numSeats];
+        prevRun = new int[numSeats];
+        rebuild(seat -> true);
+    }
+
+    @Override
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    /**
+     * Find the smallest run of open seats that fits the party, and return
+     * its first seat.
+     *
+     * @param numSeats the number of seats needed
+     * @return the first seat of the block, or -1 if there's no run long enough
+     */
+    @Override
+    public int findSeats(final int numSeats) {
+
+        lastSearchLength = 0;
+        if (numSeats < 1) {
+            return -1;
+        }
+
+        for (int bin = findBin(binFor(numSeats)); bin >= 0; bin = findBin(bin + 1)) {
+
+            // Every run in an exact bin is the same length, so the first one will do
+            if (bin < EXACT_BINS) {
+                ++lastSearchLength;
+                return binHeads[bin];
+            }
+
+            // Otherwise take the smallest run in the bin that fits, if any
+            int best = NIL;
+            for (int run = binHeads[bin]; run != NIL; run = nextRun[run]) {
+                ++lastSearchLength;
+                if ((runLength[run] >= numSeats) && ((best == NIL) || (runLength[run] < runLength[best]))) {
+                    best = run;
+                }
+            }
+            if (best != NIL) {
+                return best;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void markUsed(final int startingSeat, final int numberSeats) {
+
+        checkRange(startingSeat, numberSeats);
+
+        // Split every free run that overlaps the block, keeping the parts outside it
+        final int endSeat = startingSeat + numberSeats;
+        for (int seat = nextFree(startingSeat, endSeat); seat >= 0; seat = nextFree(seat, endSeat)) {
+            final int head = findHead(seat);
+            final int tail = head + runLength[head];
+            removeRun(head);
+            if (head < startingSeat) {
+                addRun(head, startingSeat - head);
+            }
+            if (tail > endSeat) {
+                addRun(endSeat, tail - endSeat);
+            }
+            free.clear(Math.max(head, startingSeat), Math.min(tail, endSeat));
+            seat = tail;
+        }
+    }
+
+    @Override
+    public void markFree(final int startingSeat, final int numberSeats) {
+
+        checkRange(startingSeat, numberSeats);
+        if (numberSeats == 0) {
+            return;
+        }
+
+        // Take out every free run touching the block, including the ones either side of it
+        final int endSeat = startingSeat + numberSeats;
+        int from = startingSeat;
+        int to = endSeat;
+        if ((startingSeat > 0) && free.get(startingSeat - 1)) {
+            // The tag is only valid if the seat before the block ends its run
+            from = free.get(startingSeat) ? findHead(startingSeat - 1) : runHead[startingSeat - 1];
+        }
+        for (int seat = nextFree(from, Math.min(numSeats, endSeat + 1)); seat >= 0;
+             seat = nextFree(seat, Math.min(numSeats, endSeat + 1))) {
+            final int head = findHead(seat);
+            to = Math.max(to, head + runLength[head]);
+            removeRun(head);
+            seat = head + runLength[head];
+        }
+
+        // Then put back one run covering them all
+        free.set(startingSeat, endSeat);
+        addRun(from, to - from);
+    }
+
+    @Override
+    public void rebuild(final IntPredicate isFree) {
+
+        Arrays.fill(binHeads, NIL);
+        Arrays.fill(binMap, 0L);
+        free.clear();
+        int head = NIL;
+        for (int seat = 0; seat <= numSeats; ++seat) {
+            final boolean open = (seat < numSeats) && isFree.test(seat);
+            if (open && (head == NIL)) {
+                head = seat;
+            } else if (!open && (head != NIL)) {
+                free.set(head, seat);
+                addRun(head, seat - head);
+                head = NIL;
+            }
+        }
+    }
+
+    /**
+     * Get the number of bins and runs examined by the last search.
+     *
+     * @return the length of the last search
+     */
+    @Override
+    public int getLastSearchLength() {
+        return lastSearchLength;
+    }
+
+    /**
+     * Get the longest run of free seats, from the highest non-empty bin.
+     * This is exact below EXACT_BINS seats; above, it's the top of the
+     * bin's range.
+     *
+     * @return the longest run of free seats, or an upper bound on it
+     */
+    @Override
+    public int getLongestRun() {
+        for (int word = binMap.length - 1; word >= 0; --word) {
+            if (binMap[word] != 0L) {
+                final int bin = (word << 6) + 63 - Long.numberOfLeadingZeros(binMap[word]);
+                return (bin < EXACT_BINS) ? bin : Math.min(numSeats, (EXACT_BINS << (bin - EXACT_BINS + 1)) - 1);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Helper method to get the bin for a run length.
+     *
+     * @param length the run length
+     * @return the bin index
+     */
+    private static int binFor(final int length) {
+        if (length < EXACT_BINS) {
+            return length;
+        }
+
+        // One bin per power of two: [64, 128) is EXACT_BINS, [128, 256) the next, and so on
+        return EXACT_BINS + Integer.numberOfLeadingZeros(EXACT_BINS) - Integer.numberOfLeadingZeros(length);
+    }
+
+    /**
+     * Helper method to find the first non-empty bin at or after a given bin.
+     *
+     * @param fromBin the first bin to consider
+     * @return the bin, or -1 if they're all empty
+     */
+    private int findBin(final int fromBin) {
+        for (int word = fromBin >>> 6; word < binMap.length; ++word) {
+            ++lastSearchLength;
+            final long bits = (word == (fromBin >>> 6)) ? (binMap[word] & (-1L << (fromBin & 63))) : binMap[word];
+            if (bits != 0L) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Helper method to find the next free seat in a range.
+     *
+     * @param fromSeat the first seat to consider
+     * @param endSeat the seat after the last one to consider
+     * @return the free seat, or -1 if there's none in the range
+     */
+    private int nextFree(final int fromSeat, final int endSeat) {
+        final int seat = free.nextSetBit(fromSeat);
+        return ((seat >= 0) && (seat < endSeat)) ? seat : -1;
+    }
+
+    /**
+     * Helper method to find the first seat of the free run containing a seat.
+     *
+     * @param seat a free seat
+     * @return the first seat of its run
+     */
+    private int findHead(final int seat) {
+        if ((seat == 0) || !free.get(seat - 1)) {
+            return seat;
+        }
+        return free.previousClearBit(seat - 1) + 1;
+    }
+
+    /**
+     * Helper method to add a free run to the front of its bin.
+     *
+     * @param head the first seat of the run
+     * @param length the number of seats in the run
+     */
+    private void addRun(final int head, final int length) {
+        final int bin = binFor(length);
+        runLength[head] = length;
+        runHead[head + length - 1] = head;
+        prevRun[head] = NIL;
+        nextRun[head] = binHeads[bin];
+        if (binHeads[bin] != NIL) {
+            prevRun[binHeads[bin]] = head;
+        }
+        binHeads[bin] = head;
+        binMap[bin >>> 6] |= 1L << (bin & 63);
+    }
+
+    /**
+     * Helper method to remove a free run from its bin.
+     *
+     * @param head the first seat of the run
+     */
+    private void removeRun(final int head) {
+        final int bin = binFor(runLength[head]);
+        if (prevRun[head] == NIL) {
+            binHeads[bin] = nextRun[head];
+            if (binHeads[bin] == NIL) {
+                binMap[bin >>> 6] &= ~(1L << (bin & 63));
+            }
+        } else {
+            nextRun[prevRun[head]] = nextRun[head];
+        }
+        if (nextRun[head] != NIL) {
+            prevRun[nextRun[head]] = prevRun[head];
+        }
+    }
+
+    /**
+     * Helper method to validate a block of seats.
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    private void checkRange(final int startingSeat, final int numberSeats) {
+        if ((startingSeat < 0) || (numberSeats < 0) || (startingSeat + numberSeats > numSeats)) {
+            throw new IndexOutOfBoundsException("Seat block [" + startingSeat + ", " +
+                    (startingSeat + numberSeats) + ") is outside the venue");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BestFitAllocator{" +
+                "numSeats=" + numSeats +
+                ", freeSeats=" + free.cardinality() +
+                '}';
+    }
+}
@@ -0,0 +1,289 @@
+package ticketservice;
+
+import java.util.function.IntPredicate;
+
+/**
+ * An allocation strategy that keeps each block within one row, and
+ * chooses the best block by a precomputed ranking of the seats: front
+ * rows first, and seats near the center of a row before seats near
+ * the aisles (see SeatRanking).
+ *
+ * Each row has its own index of free runs, and a tree over the rows
+ * holds the longest free run in each, so rows that can't fit the party
+ * are skipped without looking at them.  Within a row, the block score
+ * is lowest for the centered block and rises on either side, so the
+ * best free block is the nearest one to the center on the left or on
+ * the right; both are found with a directional search of the row's
+ * index.  Rows are visited front to back, and the search stops once a
+ * row's best possible score is no better than the best block found.
+ *
+ * Parties larger than a row can't be seated.
+ */
+public final class BestSeatAllocator implements SeatAllocator {
+
+    /** The number of rows in the venue. */
+    private final int numRows;
+
+    /** The number of seats in each row. */
+    private final int numCols;
+
+    /** The seat ranking. */
+    private final SeatRanking ranking;
+
+    /** Index of the free runs in each row. */
+    private final FreeSeatIndex[] rows;
+
+    /** The number of leaves in the row tree (a power of two, at least numRows). */
+    private final int rowTreeSize;
+
+    /** Max tree of the longest free run in each row. */
+    private final int[] rowLongest;
+
+    /** The number of rows evaluated by the last search. */
+    private int lastSearchLength;
+
+    /**
+     * Constructor taking the venue.  Moving back one row costs as much
+     * as moving a quarter of a row away from the center.
+     *
+     * @param venue the venue to allocate seats in
+     */
+    public BestSeatAllocator(final Venue venue) {
+        this(venue, Math.max(1, venue.getNumCols() / 2));
+    }
+
+    /**
+     * Constructor taking the venue and the row weight.
+     *
+     * @param venue the venue to allocate seats in
+     * @param rowWeight the score per seat for each row back from the front,
+     *                  in units of half a seat away from the center
+     */
+    public BestSeatAllocator(final Venue venue, final int rowWeight) {
+
+        numRows = venue.getNumRows();
+        numCols = venue.getNumCols();
+        ranking = new SeatRanking(venue, rowWeight);
+
+        rows = new FreeSeatIndex[numRows];
+        for (int row = 0; row < numRows; ++row) {
+            rows[row] = new FreeSeatIndex(numCols);
+        }
+
+        int leaves = 1;
+        while (leaves < numRows) {
+            leaves <<= 1;
+        }
+        rowTreeSize = leaves;
+        rowLongest = new int[2 * rowTreeSize];
+        rebuildRowTree();
+    }
+
+    @Override
+    public int getNumSeats() {
+        return numRows * numCols;
+    }
+
+    /**
+     * Get the quality score of a seat (lower is better).
+     *
+     * @param seatId the seat number
+     * @return the seat's score
+     */
+    public int getSeatScore(final int seatId) {
+        return ranking.getSeatScore(seatId);
+    }
+
+    /**
+     * Find the best-ranked block of open seats within one row.
+     *
+     * @param numSeats the number of seats needed
+     * @return the first seat of the block, or -1 if no row has enough open seats together
+     */
+    @Override
+    public int findSeats(final int numSeats) {
+
+        lastSearchLength = 0;
+        if ((numSeats < 1) || (numSeats > numCols)) {
+            return -1;
+        }
+
+        int bestSeat = -1;
+        long bestScore = Long.MAX_VALUE;
+        int row = findRow(numSeats, 0);
+        while ((row >= 0) && (ranking.getLowerBound(row, numSeats) < bestScore)) {
+            ++lastSearchLength;
+            final int startCol = findBestInRow(row, numSeats);
+            final long score = ranking.getBlockScore(row, startCol, numSeats);
+            if (score < bestScore) {
+                bestScore = score;
+                bestSeat = row * numCols + startCol;
+            }
+            row = findRow(numSeats, row + 1);
+        }
+
+        return bestSeat;
+    }
+
+    @Override
+    public void markUsed(final int startingSeat, final int numberSeats) {
+        mark(startingSeat, numberSeats, false);
+    }
+
+    @Override
+    public void markFree(final int startingSeat, final int numberSeats) {
+        mark(startingSeat, numberSeats, true);
+    }
+
+    @Override
+    public void rebuild(final IntPredicate free) {
+        for (int row = 0; row < numRows; ++row) {
+            final int rowStart = row * numCols;
+            rows[row].rebuild(col -> free.test(rowStart + col));
+        }
+        rebuildRowTree();
+    }
+
+    /**
+     * Get the number of rows evaluated by the last search.
+     *
+     * @return the length of the last search
+     */
+    @Override
+    public int getLastSearchLength() {
+        return lastSearchLength;
+    }
+
+    /**
+     * Get the longest run of free seats in any row.
+     *
+     * @return the longest run of free seats in a row
+     */
+    @Override
+    public int getLongestRun() {
+        return rowLongest[1];
+    }
+
+    /**
+     * Helper method to find the best free block in a row, which must have
+     * a free run long enough.
+     *
+     * @param row the row
+     * @param count the number of seats
+     * @return the first seat of the block, within the row
+     */
+    private int findBestInRow(final int row, final int count) {
+
+        final FreeSeatIndex index = rows[row];
+        final int ideal = ranking.getIdealStart(count);
+        final int right = index.findFirstFit(count, ideal);
+        final int left = index.findLastFit(count, ideal);
+        if (left < 0) {
+            return right;
+        } else if ((right < 0) || (left == right)) {
+            return left;
+        }
+
+        return (ranking.getBlockScore(row, left, count) <= ranking.getBlockScore(row, right, count)) ? left : right;
+    }
+
+    /**
+     * Helper method to find the first row, at or after a given row, with
+     * a free run of at least the given length.
+     *
+     * @param count the length of the free run
+     * @param fromRow the first row to consider
+     * @return the row, or -1 if there's no such row
+     */
+    private int findRow(final int count, final int fromRow) {
+        return (fromRow < numRows) ? findRow(1, 0, rowTreeSize, fromRow, count) : -1;
+    }
+
+    /**
+     * Helper method to search the rows under a node of the row tree.
+     *
+     * @param node the tree node
+     * @param nodeStart the first row covered by the node
+     * @param length the number of rows covered by the node
+     * @param fromRow the first row to consider
+     * @param count the length of the free run
+     * @return the row, or -1 if it's not under this node
+     */
+    private int findRow(final int node, final int nodeStart, final int length,
+                        final int fromRow, final int count) {
+
+        if ((nodeStart + length <= fromRow) || (rowLongest[node] < count)) {
+            return -1;
+        } else if (length == 1) {
+            return nodeStart;
+        }
+
+        final int half = length >> 1;
+        final int found = findRow(2 * node, nodeStart, half, fromRow, count);
+        return (found >= 0) ? found : findRow(2 * node + 1, nodeStart + half, half, fromRow, count);
+    }
+
+    /**
+     * Helper method to mark a block of seats, which may span rows, as
+     * free or used.
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     * @param free whether the seats become free
+     */
+    private void mark(final int startingSeat, final int numberSeats, final boolean free) {
+
+        if ((startingSeat < 0) || (numberSeats < 0) || (startingSeat + numberSeats > getNumSeats())) {
+            throw new IndexOutOfBoundsException("Seat block [" + startingSeat + ", " +
+                    (startingSeat + numberSeats) + ") is outside the venue");
+        }
+
+        final int endSeat = startingSeat + numberSeats;
+        int seat = startingSeat;
+        while (seat < endSeat) {
+            final int row = seat / numCols;
+            final int rowEnd = Math.min(endSeat, (row + 1) * numCols);
+            if (free) {
+                rows[row].markFree(seat - row * numCols, rowEnd - seat);
+            } else {
+                rows[row].markUsed(seat - row * numCols, rowEnd - seat);
+            }
+            updateRow(row);
+            seat = rowEnd;
+        }
+    }
+
+    /**
+     * Helper method to update the row tree after a row changes.
+     *
+     * @param row the row
+     */
+    private void updateRow(final int row) {
+        int node = rowTreeSize + row;
+        rowLongest[node] = rows[row].getLongestRun();
+        for (node >>= 1; node >= 1; node >>= 1) {
+            rowLongest[node] = Math.max(rowLongest[2 * node], rowLongest[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Helper method to rebuild the whole row tree.
+     */
+    private void rebuildRowTree() {
+        for (int row = 0; row < numRows; ++row) {
+            rowLongest[rowTreeSize + row] = rows[row].getLongestRun();
+        }
+        for (int node = rowTreeSize - 1; node >= 1; --node) {
+            rowLongest[node] = Math.max(rowLongest[2 * node], rowLongest[2 * node + 1]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BestSeatAllocator{" +
+                "numRows=" + numRows +
+                ", numCols=" + numCols +
+                ", ranking=" + ranking +
+                '}';
+    }
+}
@@ -0,0 +1,241 @@
+package ticketservice;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of each customer's holds, by email.  Emails are matched ignoring
+ * case, as reserveSeats() does.  (Reservations are indexed by customer in
+ * the off-heap ReservationStore.)
+ *
+ * Each customer's entry is immutable, and is replaced on every change, so
+ * the index can be read from any thread without the service's lock.
+ * Changes are expected to be made under the service's lock, in the order
+ * the holds change.  A customer with no holds is dropped from the index.
+ */
+final class CustomerIndex {
+
+    /** An empty list of blocks. */
+    private static final SeatBlock[] NO_BLOCKS = new SeatBlock[0];
+
+    /** The entry for a customer with no holds. */
+    private static final Entry EMPTY = new Entry(NO_BLOCKS, 0);
+
+    /** Each customer's entry, by lower-case email. */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Get the number of holds a customer has.
+     *
+     * @param email the customer's email
+     * @return the number of holds
+     */
+    public int getNumHolds(final String email) {
+        return getEntry(email).holds.length;
+    }
+
+    /**
+     * Get the number of seats a customer has on hold.
+     *
+     * @param email the customer's email
+     * @return the number of seats held
+     */
+    public int getHeldSeats(final String email) {
+        return getEntry(email).heldSeats;
+    }
+
+    /**
+     * Get a customer's holds, oldest first.
+     *
+     * @param email the customer's email
+     * @return the holds
+     */
+    public List<SeatBlock> getHolds(final String email) {
+        return Collections.unmodifiableList(Arrays.asList(getEntry(email).holds));
+    }
+
+    /**
+     * Get the number of customers with holds.
+     *
+     * @return the number of customers
+     */
+    public int getNumCustomers() {
+        return entries.size();
+    }
+
+    /**
+     * Add a hold to its customer's entry.
+     *
+     * @param block the hold
+     */
+    public void addHold(final SeatBlock block) {
+        final Entry entry = getEntry(block.getEmail());
+        update(block.getEmail(), new Entry(append(entry.holds, block), entry.heldSeats + block.getNumberSeats()));
+    }
+
+    /**
+     * Remove a hold from its customer's entry, when it's reserved or released.
+     *
+     * @param block the hold
+     */
+    public void removeHold(final SeatBlock block) {
+        removeHold(block.getEmail(), block.getId());
+    }
+
+    /**
+     * Remove a hold from its customer's entry, by ID.
+     *
+     * @param email the customer's email
+     * @param id the hold ID
+     */
+    public void removeHold(final String email, final int id) {
+        final Entry entry = getEntry(email);
+        for (int index = 0; index < entry.holds.length; ++index) {
+            if (entry.holds[index].getId() == id) {
+                update(email, new Entry(remove(entry.holds, index),
+                        entry.heldSeats - entry.holds[index].getNumberSeats()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replace a hold in its customer's entry with a newer copy of it (with
+     * the same ID and seats), e.g. when it's extended, keeping its place.
+     *
+     * @param block the new copy of the hold
+     */
+    public void replaceHold(final SeatBlock block) {
+        final Entry entry = getEntry(block.getEmail());
+        for (int index = 0; index < entry.holds.length; ++index) {
+            if (entry.holds[index].getId() == block.getId()) {
+                final SeatBlock[] copy = entry.holds.clone();
+                copy[index] = block;
+                update(block.getEmail(), new Entry(copy, entry.heldSeats));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop every customer from the index.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Helper method to get a customer's entry.
+     *
+     * @param email the customer's email
+     * @return the entry, or an empty one if the customer isn't in the index
+     */
+    private Entry getEntry(final String email) {
+        final Entry entry = (email == null) ? null : entries.get(keyFor(email));
+        return (entry == null) ? EMPTY : entry;
+    }
+
+    /**
+     * Helper method to replace a customer's entry, dropping it if it's empty.
+     *
+     * @param email the customer's email
+     * @param entry the new entry
+     */
+    private void update(final String email, final Entry entry) {
+        if (entry.holds.length == 0) {
+            entries.remove(keyFor(email));
+        } else {
+            entries.put(keyFor(email), entry);
+        }
+    }
+
+    /**
+     * Get a hash code for an email that's the same for any emails that
+     * match ignoring case, without making a lower-case copy.
+     *
+     * @param email the customer's email
+     * @return the hash code
+     */
+    static int hashIgnoreCase(final String email) {
+        int hash = 0;
+        for (int index = 0; index < email.length(); ++index) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(email.charAt(index)));
+        }
+        return hash;
+    }
+
+    /**
+     * Helper method to get the index key for an email.
+     *
+     * @param email the customer's email
+     * @return the key
+     */
+    private static String keyFor(final String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Helper method to copy an array of blocks with one more at the end.
+     *
+     * @param blocks the blocks
+     * @param block the block to add
+     * @return the new array
+     */
+    private static SeatBlock[] append(final SeatBlock[] blocks, final SeatBlock block) {
+        final SeatBlock[] copy = Arrays.copyOf(blocks, blocks.length + 1);
+        copy[blocks.length] = block;
+        return copy;
+    }
+
+    /**
+     * Helper method to copy an array of blocks without one of them.
+     *
+     * @param blocks the blocks
+     * @param index the index of the block to remove
+     * @return the new array
+     */
+    private static SeatBlock[] remove(final SeatBlock[] blocks, final int index) {
+        if (blocks.length == 1) {
+            return NO_BLOCKS;
+        }
+
+        final SeatBlock[] copy = new SeatBlock[blocks.length - 1];
+        System.arraycopy(blocks, 0, copy, 0, index);
+        System.arraycopy(blocks, index + 1, copy, index, blocks.length - index - 1);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerIndex{" +
+                "customers=" + entries.size() +
+                '}';
+    }
+
+    /**
+     * A customer's holds.  Never changed once it's in the index.
+     */
+    private static final class Entry {
+
+        /** The customer's holds, oldest first. */
+        private final SeatBlock[] holds;
+
+        /** The number of seats across the holds. */
+        private final int heldSeats;
+
+        /**
+         * Constructor taking the fields.
+         *
+         * @param holds the holds
+         * @param heldSeats the number of seats across the holds
+         */
+        Entry(final SeatBlock[] holds, final int heldSeats) {
+            this.holds = holds;
+            this.heldSeats = heldSeats;
+        }
+    }
+}
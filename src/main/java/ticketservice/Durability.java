@@ -0,0 +1,26 @@
+package ticketservice;
+
+/**
+ * How far a journaled change is persisted before the call that made
+ * it returns.
+ */
+public enum Durability {
+
+    /**
+     * Written and forced to disk before the call returns.  Callers that
+     * commit at the same time share one force (group commit).
+     */
+    SYNC,
+
+    /**
+     * Written and forced to disk by a background group commit every few
+     * milliseconds.  A crash can lose the changes since the last commit.
+     */
+    BATCHED,
+
+    /**
+     * Written to the operating system before the call returns, but never
+     * forced.  Survives a crash of the process, but not of the machine.
+     */
+    OS_BUFFERED
+}
@@ -0,0 +1,620 @@
+package ticketservice;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs every call into a TicketServiceImpl on one dedicated thread, fed
+ * by a bounded ring buffer, so callers never contend for the service's
+ * lock.  The async methods return a future; the TicketService methods
+ * wait for it.
+ *
+ * The ring is a fixed array of request slots, reused as it wraps, in the
+ * style of the LMAX Disruptor.  A caller claims the next sequence number
+ * with compare-and-swap, fills in that slot, and publishes it.  If the
+ * ring is full, the caller waits for the event loop to free a slot, so a
+ * burst of requests is held back at the ring rather than queued without
+ * limit.  The event loop takes every published request in one pass, and
+ * serves each run of consecutive holds (or reservations) as one batch,
+ * so a busy ring costs one lock, one expiry pass and one journal wait
+ * per batch rather than per request.  Requests are served in the order
+ * their slots were claimed.
+ *
+ * A request that throws fails only its own future (or its batch's).  If
+ * the event loop itself dies (e.g. on an Error), every request in the
+ * ring is failed with the error and the ring is closed, so later callers
+ * get a RejectedExecutionException rather than waiting forever.
+ *
+ * Futures are completed on the event loop thread, so work chained onto
+ * them should use the *Async methods of CompletableFuture if it's more
+ * than a few steps.  The wrapped service may still be read directly
+ * (e.g. getMetrics()), but changes should go through the event loop.
+ *
+ * @author Mike Wallace
+ */
+public class EventLoopTicketService implements TicketService, Closeable {
+
+    /** The default number of slots in the ring. */
+    private static final int DEFAULT_RING_SIZE = 1024;
+
+    /** Set in the claim sequence once the service is closed, so no more slots are claimed. */
+    private static final long CLOSED = 1L << 62;
+
+    /** The number of times the event loop yields, when the ring is empty, before it parks. */
+    private static final int IDLE_YIELDS = 100;
+
+    /** How long the event loop parks when the ring is empty (nanoseconds). */
+    private static final long IDLE_PARK_NANOS = 100_000L;
+
+    /** How long a caller parks while the ring is full (nanoseconds). */
+    private static final long FULL_PARK_NANOS = 1_000L;
+
+    /** The slot type for numSeatsAvailable(). */
+    private static final int AVAILABLE = 0;
+
+    /** The slot type for findAndHoldSeats(). */
+    private static final int HOLD = 1;
+
+    /** The slot type for reserveSeats(). */
+    private static final int RESERVE = 2;
+
+    /** The slot type for releaseHold(). */
+    private static final int RELEASE = 3;
+
+    /** The slot type for cancelReservation(). */
+    private static final int CANCEL = 4;
+
+    /** The slot type for extendHold(). */
+    private static final int EXTEND = 5;
+
+    /** The service that every request is run against. */
+    private final TicketServiceImpl service;
+
+    /** The request slots. */
+    private final Slot[] slots;
+
+    /** The sequence number last published in each slot (-1 if none). */
+    private final AtomicLongArray published;
+
+    /** Mask to turn a sequence number into a slot index. */
+    private final int mask;
+
+    /** The next sequence number to claim, with CLOSED set once the service is closed. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** The next sequence number the event loop will serve; the slots before it are free. */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /** The event loop thread. */
+    private final Thread thread;
+
+    /** Whether the event loop is parked waiting for requests. */
+    private volatile boolean idle;
+
+    /** The hold requests of the current batch.  Only used by the event loop. */
+    private final List<HoldRequest> holdBatch = new ArrayList<>();
+
+    /** The reserve requests of the current batch.  Only used by the event loop. */
+    private final List<ReserveRequest> reserveBatch = new ArrayList<>();
+
+    /**
+     * Constructor taking the service, with the default ring size.
+     *
+     * @param service the service to run requests against
+     */
+    public EventLoopTicketService(final TicketServiceImpl service) {
+        this(service, DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * Constructor taking the service and the ring size, which starts the
+     * event loop thread.
+     *
+     * @param service the service to run requests against
+     * @param ringSize the number of request slots (a power of two)
+     */
+    public EventLoopTicketService(final TicketServiceImpl service, final int ringSize) {
+
+        if (service == null) {
+            throw new IllegalArgumentException("Illegal argument to EventLoopTicketService c'tor: service is required");
+        } else if ((ringSize < 1) || (Integer.bitCount(ringSize) != 1)) {
+            throw new IllegalArgumentException(
+                    "Illegal argument to EventLoopTicketService c'tor: ringSize must be a power of two");
+        }
+
+        this.service = service;
+        slots = new Slot[ringSize];
+        published = new AtomicLongArray(ringSize);
+        for (int index = 0; index < ringSize; ++index) {
+            slots[index] = new Slot();
+            published.set(index, -1L);
+        }
+        mask = ringSize - 1;
+
+        thread = new Thread(this::run, "ticketservice-event-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the service that requests are run against.
+     *
+     * @return the service
+     */
+    public TicketServiceImpl getService() {
+        return service;
+    }
+
+    /**
+     * Get the number of slots in the ring.
+     *
+     * @return the ring size
+     */
+    public int getRingSize() {
+        return slots.length;
+    }
+
+    /**
+     * Get the number of seats available, once the requests ahead of this
+     * one have been served.
+     *
+     * @return the number of seats available
+     */
+    public CompletableFuture<Integer> numSeatsAvailableAsync() {
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final long sequence = claim(future);
+        if (sequence >= 0L) {
+            final Slot slot = slots[(int) sequence & mask];
+            slot.type = AVAILABLE;
+            slot.countFuture = future;
+            publish(sequence);
+        }
+        return future;
+    }
+
+    /**
+     * Find and hold seats on the event loop.
+     *
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return the hold (null if it failed)
+     */
+    public CompletableFuture<SeatHold> findAndHoldSeatsAsync(final int numSeats, final String customerEmail) {
+        final CompletableFuture<SeatHold> future = new CompletableFuture<>();
+        final long sequence = claim(future);
+        if (sequence >= 0L) {
+            final Slot slot = slots[(int) sequence & mask];
+            slot.type = HOLD;
+            slot.number = numSeats;
+            slot.email = customerEmail;
+            slot.holdFuture = future;
+            publish(sequence);
+        }
+        return future;
+    }
+
+    /**
+     * Commit the seats of a hold on the event loop.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return the reservation confirmation code (null if it failed)
+     */
+    public CompletableFuture<String> reserveSeatsAsync(final int seatHoldId, final String customerEmail) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final long sequence = claim(future);
+        if (sequence >= 0L) {
+            final Slot slot = slots[(int) sequence & mask];
+            slot.type = RESERVE;
+            slot.number = seatHoldId;
+            slot.email = customerEmail;
+            slot.reserveFuture = future;
+            publish(sequence);
+        }
+        return future;
+    }
+
+    /**
+     * Release a hold on the event loop.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released
+     */
+    public CompletableFuture<Boolean> releaseHoldAsync(final int seatHoldId, final String customerEmail) {
+        return submitChange(RELEASE, seatHoldId, null, customerEmail);
+    }
+
+    /**
+     * Cancel a reservation on the event loop.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled
+     */
+    public CompletableFuture<Boolean> cancelReservationAsync(final String confirmationCode,
+                                                             final String customerEmail) {
+        return submitChange(CANCEL, 0, confirmationCode, customerEmail);
+    }
+
+    /**
+     * Extend a hold on the event loop.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was extended
+     */
+    public CompletableFuture<Boolean> extendHoldAsync(final int seatHoldId, final String customerEmail) {
+        return submitChange(EXTEND, seatHoldId, null, customerEmail);
+    }
+
+    @Override
+    public int numSeatsAvailable() {
+        return numSeatsAvailableAsync().join();
+    }
+
+    @Override
+    public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
+        return findAndHoldSeatsAsync(numSeats, customerEmail).join();
+    }
+
+    @Override
+    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+        return reserveSeatsAsync(seatHoldId, customerEmail).join();
+    }
+
+    @Override
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+        return releaseHoldAsync(seatHoldId, customerEmail).join();
+    }
+
+    @Override
+    public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+        return cancelReservationAsync(confirmationCode, customerEmail).join();
+    }
+
+    @Override
+    public boolean extendHold(final int seatHoldId, final String customerEmail) {
+        return extendHoldAsync(seatHoldId, customerEmail).join();
+    }
+
+    /**
+     * Stop taking requests, and stop the event loop once it has served
+     * the requests already in the ring.  Doesn't close the service.
+     */
+    @Override
+    public void close() {
+
+        markClosed();
+
+        // Don't interrupt the event loop: an interrupt during I/O closes the journal
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method to submit a release, cancellation or extension.
+     *
+     * @param type the slot type
+     * @param seatHoldId the seat hold identifier (for a release or extension)
+     * @param confirmationCode the confirmation code (for a cancellation)
+     * @param customerEmail the customer's email
+     * @return whether the change was made
+     */
+    private CompletableFuture<Boolean> submitChange(final int type, final int seatHoldId,
+                                                    final String confirmationCode, final String customerEmail) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final long sequence = claim(future);
+        if (sequence >= 0L) {
+            final Slot slot = slots[(int) sequence & mask];
+            slot.type = type;
+            slot.number = seatHoldId;
+            slot.code = confirmationCode;
+            slot.email = customerEmail;
+            slot.changeFuture = future;
+            publish(sequence);
+        }
+        return future;
+    }
+
+    /**
+     * Helper method to stop slots being claimed.
+     *
+     * @return the sequence number after the last slot claimed
+     */
+    private long markClosed() {
+        long current = claimed.get();
+        while (((current & CLOSED) == 0L) && !claimed.compareAndSet(current, current | CLOSED)) {
+            current = claimed.get();
+        }
+        return current & ~CLOSED;
+    }
+
+    /**
+     * Helper method to claim the next slot, waiting while the ring is full.
+     *
+     * @param future completed exceptionally if the service is closed
+     * @return the slot's sequence number, or -1 if the service is closed
+     */
+    private long claim(final CompletableFuture<?> future) {
+        while (true) {
+            final long next = claimed.get();
+            if ((next & CLOSED) != 0L) {
+                future.completeExceptionally(new RejectedExecutionException("The event loop is closed"));
+                return -1L;
+            } else if (next - consumed.get() >= slots.length) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            } else if (claimed.compareAndSet(next, next + 1L)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Helper method to publish a filled-in slot, and wake the event loop
+     * if it's parked.
+     *
+     * @param sequence the slot's sequence number
+     */
+    private void publish(final long sequence) {
+        published.set((int) sequence & mask, sequence);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * The event loop: serve every published request in order, until the
+     * service is closed and the ring is empty.
+     */
+    private void run() {
+
+        long next = 0L;
+        int yields = 0;
+        while (true) {
+            long end = next;
+            while ((end - next < slots.length) && (published.get((int) end & mask) == end)) {
+                ++end;
+            }
+
+            if (end > next) {
+                try {
+                    serve(next, end);
+                } catch (Throwable t) {
+                    failAll(next, t);
+                    throw t;
+                }
+                next = end;
+                consumed.set(next);
+                yields = 0;
+            } else if (claimed.get() == (next | CLOSED)) {
+                return;
+            } else if (yields < IDLE_YIELDS) {
+                // A request is often only a moment away under load, so yield before parking
+                ++yields;
+                Thread.yield();
+            } else {
+                // Check again after setting the flag, so a publish can't be missed
+                idle = true;
+                if ((published.get((int) next & mask) != next) && (claimed.get() != (next | CLOSED))) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    /**
+     * Helper method to close the ring when the event loop dies, and fail
+     * every request in it, waiting for any claimed slot still being filled in.
+     *
+     * @param from the sequence number of the first request not yet served
+     * @param t the error that stopped the event loop
+     */
+    private void failAll(final long from, final Throwable t) {
+        final long end = markClosed();
+        for (long sequence = from; sequence < end; ++sequence) {
+            while (published.get((int) sequence & mask) != sequence) {
+                Thread.yield();
+            }
+            final Slot slot = slots[(int) sequence & mask];
+            slot.fail(t);
+            slot.clear();
+        }
+        consumed.set(end);
+    }
+
+    /**
+     * Helper method to serve a range of requests, batching each run of
+     * holds or reservations.  Releases, cancellations and extensions are
+     * served one at a time.
+     *
+     * @param from the first sequence number
+     * @param end the sequence number after the last
+     */
+    private void serve(final long from, final long end) {
+
+        long sequence = from;
+        while (sequence < end) {
+            final int type = slots[(int) sequence & mask].type;
+            long last = sequence + 1L;
+            while ((last < end) && (slots[(int) last & mask].type == type)) {
+                ++last;
+            }
+
+            try {
+                if (type == HOLD) {
+                    serveHolds(sequence, last);
+                } else if (type == RESERVE) {
+                    serveReservations(sequence, last);
+                } else if (type != AVAILABLE) {
+                    serveChanges(sequence, last);
+                } else {
+                    final Integer available = service.numSeatsAvailable();
+                    for (long index = sequence; index < last; ++index) {
+                        slots[(int) index & mask].countFuture.complete(available);
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (long index = sequence; index < last; ++index) {
+                    slots[(int) index & mask].fail(e);
+                }
+            }
+
+            for (long index = sequence; index < last; ++index) {
+                slots[(int) index & mask].clear();
+            }
+            sequence = last;
+        }
+    }
+
+    /**
+     * Helper method to serve a run of hold requests as one batch.
+     *
+     * @param from the first sequence number
+     * @param end the sequence number after the last
+     */
+    private void serveHolds(final long from, final long end) {
+
+        holdBatch.clear();
+        for (long index = from; index < end; ++index) {
+            final Slot slot = slots[(int) index & mask];
+            holdBatch.add(new HoldRequest(slot.number, slot.email));
+        }
+
+        final List<SeatHold> holds = service.findAndHoldSeatsBatch(holdBatch);
+        for (long index = from; index < end; ++index) {
+            slots[(int) index & mask].holdFuture.complete(holds.get((int) (index - from)));
+        }
+    }
+
+    /**
+     * Helper method to serve a run of reserve requests as one batch.
+     *
+     * @param from the first sequence number
+     * @param end the sequence number after the last
+     */
+    private void serveReservations(final long from, final long end) {
+
+        reserveBatch.clear();
+        for (long index = from; index < end; ++index) {
+            final Slot slot = slots[(int) index & mask];
+            reserveBatch.add(new ReserveRequest(slot.number, slot.email));
+        }
+
+        final List<String> codes = service.reserveSeatsBatch(reserveBatch);
+        for (long index = from; index < end; ++index) {
+            slots[(int) index & mask].reserveFuture.complete(codes.get((int) (index - from)));
+        }
+    }
+
+    /**
+     * Helper method to serve a run of releases, cancellations or extensions.
+     * A request that throws fails on its own; the rest are still served.
+     *
+     * @param from the first sequence number
+     * @param end the sequence number after the last
+     */
+    private void serveChanges(final long from, final long end) {
+        for (long index = from; index < end; ++index) {
+            final Slot slot = slots[(int) index & mask];
+            try {
+                final boolean done;
+                if (slot.type == RELEASE) {
+                    done = service.releaseHold(slot.number, slot.email);
+                } else if (slot.type == CANCEL) {
+                    done = service.cancelReservation(slot.code, slot.email);
+                } else {
+                    done = service.extendHold(slot.number, slot.email);
+                }
+                slot.changeFuture.complete(done);
+            } catch (RuntimeException e) {
+                slot.fail(e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopTicketService{" +
+                "ringSize=" + slots.length +
+                ", claimed=" + (claimed.get() & ~CLOSED) +
+                ", consumed=" + consumed.get() +
+                '}';
+    }
+
+    /**
+     * A request slot in the ring.  Filled in by the caller that claims it,
+     * then read and cleared by the event loop.
+     */
+    private static final class Slot {
+
+        /** The request type: AVAILABLE, HOLD, RESERVE, RELEASE, CANCEL or EXTEND. */
+        private int type;
+
+        /** The number of seats (for a hold) or the hold ID (for a reservation, release or extension). */
+        private int number;
+
+        /** The confirmation code (for a cancellation). */
+        private String code;
+
+        /** The customer's email. */
+        private String email;
+
+        /** The result of numSeatsAvailable(). */
+        private CompletableFuture<Integer> countFuture;
+
+        /** The result of findAndHoldSeats(). */
+        private CompletableFuture<SeatHold> holdFuture;
+
+        /** The result of reserveSeats(). */
+        private CompletableFuture<String> reserveFuture;
+
+        /** The result of releaseHold(), cancelReservation() or extendHold(). */
+        private CompletableFuture<Boolean> changeFuture;
+
+        /**
+         * Complete the slot's future with an error, unless it was already
+         * completed (and cleared).
+         *
+         * @param e the error
+         */
+        void fail(final Throwable e) {
+            final CompletableFuture<?> future;
+            if (type == HOLD) {
+                future = holdFuture;
+            } else if (type == RESERVE) {
+                future = reserveFuture;
+            } else if (type == AVAILABLE) {
+                future = countFuture;
+            } else {
+                future = changeFuture;
+            }
+            if (future != null) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Drop the slot's references, so a served request can be collected.
+         */
+        void clear() {
+            email = null;
+            code = null;
+            countFuture = null;
+            holdFuture = null;
+            reserveFuture = null;
+            changeFuture = null;
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package ticketservice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A registry of ticket services, one per event, with calls routed by
+ * event ID.
+ *
+ * Each event has its own service (and so its own lock), so calls for
+ * different events never wait for each other.  Events are split across
+ * shards by event ID.  Each shard has its own map of events and its own
+ * worker thread, which releases expired holds for the shard's events
+ * and evicts idle ones, so housekeeping for one shard doesn't touch the
+ * others.
+ *
+ * Events are created on first use by a factory, and may be dropped
+ * explicitly or evicted once idle.  An idle event is only evicted if
+ * nothing would be lost: it has no holds, and its service is persistent
+ * or has no reservations.  The factory creates it again on the next call.
+ *
+ * Each event counts the calls using it.  Eviction only happens when no
+ * call is using the event, and marks it so none can start; the service
+ * is closed before the event leaves the map, so a call that comes in
+ * meanwhile waits, and its replacement never opens a journal that's
+ * still open.
+ *
+ * @author Mike Wallace
+ */
+public class EventRegistry implements Closeable {
+
+    /** How often each shard's worker releases expired holds and evicts idle events. */
+    private static final long SWEEP_PERIOD_MILLIS = 100L;
+
+    /** The count of an event's users once it's being evicted. */
+    private static final int EVICTED = -1;
+
+    /** The shards of the registry. */
+    private final Shard[] shards;
+
+    /** Creates the service for an event, or returns null if there's no such event. */
+    private final Function<String, TicketServiceImpl> factory;
+
+    /** How long an event must go without calls before it's evicted (0 to never evict). */
+    private final long idleMillis;
+
+    /**
+     * Constructor taking the factory for the events' services.  Uses one
+     * shard per processor, and never evicts idle events.
+     *
+     * @param factory creates the service for an event ID, or returns null if there's no such event
+     */
+    public EventRegistry(final Function<String, TicketServiceImpl> factory) {
+        this(Runtime.getRuntime().availableProcessors(), 0L, factory);
+    }
+
+    /**
+     * Constructor taking the number of shards and the idle timeout.
+     *
+     * @param numShards the number of shards
+     * @param idleMillis how long an event must go without calls before it's evicted (0 to never evict)
+     * @param factory creates the service for an event ID, or returns null if there's no such event
+     */
+    public EventRegistry(final int numShards, final long idleMillis,
+                         final Function<String, TicketServiceImpl> factory) {
+
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Illegal argument to EventRegistry c'tor: numShards must be positive");
+        } else if (idleMillis < 0L) {
+            throw new IllegalArgumentException("Illegal argument to EventRegistry c'tor: idleMillis can't be negative");
+        } else if (factory == null) {
+            throw new IllegalArgumentException("Illegal argument to EventRegistry c'tor: factory is required");
+        }
+
+        this.factory = factory;
+        this.idleMillis = idleMillis;
+        shards = new Shard[numShards];
+        for (int index = 0; index < numShards; ++index) {
+            shards[index] = new Shard(index);
+        }
+    }
+
+    /**
+     * Get the number of shards, each with its own worker thread.
+     *
+     * @return the number of shards
+     */
+    public int getNumShards() {
+        return shards.length;
+    }
+
+    /**
+     * Get the shard an event is pinned to.
+     *
+     * @param eventId the event ID
+     * @return the shard index
+     */
+    public int getShardForEvent(final String eventId) {
+
+        // Spread the hash, so IDs that differ only in their last characters still land on different shards
+        final int hash = eventId.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Get the service for an event, creating it if needed.  The registry
+     * can't tell when the caller is done with the service, so if the
+     * event is idle it may be evicted, and the service closed, while the
+     * caller still has it; the routed methods below are safe from that.
+     *
+     * @param eventId the event ID
+     * @return the event's service, or null if there's no such event
+     */
+    public TicketServiceImpl getService(final String eventId) {
+        return call(eventId, service -> service);
+    }
+
+    /**
+     * The number of seats for an event that are neither held nor reserved.
+     *
+     * @param eventId the event ID
+     * @return the number of tickets available for the event, or 0 if there's no such event
+     */
+    public int numSeatsAvailable(final String eventId) {
+        final Integer available = call(eventId, TicketServiceImpl::numSeatsAvailable);
+        return (available == null) ? 0 : available;
+    }
+
+    /**
+     * Find and hold the best available seats for a customer at an event.
+     *
+     * @param eventId the event ID
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return a SeatHold object identifying the specific seats, or null
+     */
+    public SeatHold findAndHoldSeats(final String eventId, final int numSeats, final String customerEmail) {
+        return call(eventId, service -> service.findAndHoldSeats(numSeats, customerEmail));
+    }
+
+    /**
+     * Commit seats held for a specific customer at an event.
+     *
+     * @param eventId the event ID
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return a reservation confirmation code, or null
+     */
+    public String reserveSeats(final String eventId, final int seatHoldId, final String customerEmail) {
+        return call(eventId, service -> service.reserveSeats(seatHoldId, customerEmail));
+    }
+
+    /**
+     * The number of seats that are neither held nor reserved, across all
+     * the events currently in the registry.
+     *
+     * @return the number of tickets available
+     */
+    public long numSeatsAvailable() {
+        long total = 0L;
+        for (Shard shard : shards) {
+            for (Event event : shard.events.values()) {
+                if (event.acquire()) {
+                    try {
+                        total += event.service.numSeatsAvailable();
+                    } finally {
+                        event.release();
+                    }
+                }
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the number of available seats for each event currently in the registry.
+     *
+     * @return the number of tickets available, by event ID
+     */
+    public Map<String, Integer> getSeatsAvailableByEvent() {
+        final Map<String, Integer> available = new HashMap<>(getNumEvents() * 2);
+        for (Shard shard : shards) {
+            for (Event event : shard.events.values()) {
+                if (event.acquire()) {
+                    try {
+                        available.put(event.eventId, event.service.numSeatsAvailable());
+                    } finally {
+                        event.release();
+                    }
+                }
+            }
+        }
+
+        return available;
+    }
+
+    /**
+     * Get the number of events currently in the registry.
+     *
+     * @return the number of events
+     */
+    public int getNumEvents() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.events.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Remove an event from the registry and close its service, once the
+     * calls using it have finished.  A later call for the event creates
+     * it again.
+     *
+     * @param eventId the event ID
+     * @return whether the event was in the registry
+     * @throws IOException if the service's journal can't be closed
+     */
+    public boolean dropEvent(final String eventId) throws IOException {
+        if (eventId == null) {
+            return false;
+        }
+
+        final Shard shard = shards[getShardForEvent(eventId)];
+        final Event event = shard.events.get(eventId);
+        if (event == null) {
+            return false;
+        }
+
+        // Wait for the calls using the event; if it's evicted or dropped meanwhile, that call closes it
+        while (!event.tryEvict()) {
+            if (event.isEvicted()) {
+                return false;
+            }
+            Thread.yield();
+        }
+
+        shard.evict(event);
+        return true;
+    }
+
+    /**
+     * Stop the shards' workers, and close every event's service.
+     *
+     * @throws IOException if a service's journal can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+
+        // Don't interrupt the workers: an interrupt during I/O closes a journal
+        for (Shard shard : shards) {
+            shard.worker.shutdown();
+        }
+
+        IOException failure = null;
+        for (Shard shard : shards) {
+            try {
+                shard.worker.awaitTermination(1L, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            final List<Event> events = new ArrayList<>(shard.events.values());
+            shard.events.clear();
+            for (Event event : events) {
+                try {
+                    event.service.close();
+                } catch (IOException ioe) {
+                    failure = (failure == null) ? ioe : failure;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Helper method to make a call on an event's service, creating the
+     * event if needed.  The event can't be evicted during the call.
+     *
+     * @param eventId the event ID
+     * @param call the call to make
+     * @param <T> the type of the call's result
+     * @return the result of the call, or null if there's no such event
+     */
+    private <T> T call(final String eventId, final Function<TicketServiceImpl, T> call) {
+        final Event event = getEvent(eventId);
+        if (event == null) {
+            return null;
+        }
+
+        try {
+            return call.apply(event.service);
+        } finally {
+            event.release();
+        }
+    }
+
+    /**
+     * Helper method to find an event, creating it if needed, and note that
+     * it's in use.  The caller must call release() on the event when it's
+     * done.  If the event is being evicted, this waits until it has left
+     * the map, and creates it again.
+     *
+     * @param eventId the event ID
+     * @return the event, or null if there's no such event
+     */
+    private Event getEvent(final String eventId) {
+
+        if (eventId == null) {
+            return null;
+        }
+
+        final Map<String, Event> events = shards[getShardForEvent(eventId)].events;
+        while (true) {
+            Event event = events.get(eventId);
+            if (event == null) {
+                event = events.computeIfAbsent(eventId, id -> {
+                    final TicketServiceImpl service = factory.apply(id);
+                    return (service == null) ? null : new Event(id, service);
+                });
+                if (event == null) {
+                    return null;
+                }
+            }
+
+            if (event.acquire()) {
+                event.lastAccess = System.currentTimeMillis();
+                return event;
+            }
+
+            // The event is being evicted; its service is closed before it leaves the map
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventRegistry{" +
+                "shards=" + shards.length +
+                ", events=" + getNumEvents() +
+                ", idleMillis=" + idleMillis +
+                '}';
+    }
+
+    /**
+     * An event in the registry.
+     */
+    private static final class Event {
+
+        /** The event ID. */
+        private final String eventId;
+
+        /** The event's service. */
+        private final TicketServiceImpl service;
+
+        /** The time of the last call for the event (milliseconds). */
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        /** The number of calls using the event, or EVICTED once it's being evicted. */
+        private final AtomicInteger users = new AtomicInteger();
+
+        /**
+         * Constructor taking the event ID and service.
+         *
+         * @param eventId the event ID
+         * @param service the event's service
+         */
+        Event(final String eventId, final TicketServiceImpl service) {
+            this.eventId = eventId;
+            this.service = service;
+        }
+
+        /**
+         * Note that a call is using the event, unless it's being evicted.
+         *
+         * @return whether the call may use the event
+         */
+        boolean acquire() {
+            int count = users.get();
+            while (count != EVICTED) {
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                count = users.get();
+            }
+
+            return false;
+        }
+
+        /**
+         * Note that a call has finished with the event.
+         */
+        void release() {
+            users.decrementAndGet();
+        }
+
+        /**
+         * Mark the event as being evicted, if no call is using it.  No call
+         * can start on it afterwards.
+         *
+         * @return whether the event was marked
+         */
+        boolean tryEvict() {
+            return users.compareAndSet(0, EVICTED);
+        }
+
+        /**
+         * Let calls use the event again, after tryEvict() marked it but it
+         * turned out to be busy.
+         */
+        void cancelEvict() {
+            users.set(0);
+        }
+
+        /**
+         * Check if the event is being (or has been) evicted.
+         *
+         * @return whether the event is marked as evicted
+         */
+        boolean isEvicted() {
+            return users.get() == EVICTED;
+        }
+    }
+
+    /**
+     * A shard of the registry: a map of events, and a worker thread that
+     * looks after them.
+     */
+    private final class Shard {
+
+        /** The shard's events, by ID. */
+        private final Map<String, Event> events = new ConcurrentHashMap<>();
+
+        /** The shard's worker thread. */
+        private final ScheduledExecutorService worker;
+
+        /**
+         * Constructor taking the shard's index, used to name its worker.
+         *
+         * @param index the shard index
+         */
+        Shard(final int index) {
+            worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "ticketservice-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            worker.scheduleWithFixedDelay(() -> {
+                try {
+                    sweep();
+                } catch (IOException | RuntimeException e) {
+                    // Keep the worker running, and hand the failure to the thread's uncaught exception handler
+                    // (the default handler, if one is set)
+                    final Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }, SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Release the expired holds of the shard's events, and evict the
+         * idle ones that no call is using.
+         *
+         * @throws IOException if an evicted service's journal can't be closed
+         */
+        private void sweep() throws IOException {
+
+            final long now = System.currentTimeMillis();
+            for (Event event : events.values()) {
+                // Skip an event that dropEvent() is evicting, since its service may already be closed
+                if (!event.acquire()) {
+                    continue;
+                }
+                try {
+                    event.service.reapExpiredHolds();
+                } finally {
+                    event.release();
+                }
+
+                // Only touch the service again once it's marked, so it can't be closed meanwhile
+                if ((idleMillis > 0L) && (now - event.lastAccess >= idleMillis) && event.tryEvict()) {
+                    // No call can start now, so check again in case one came and went before the mark
+                    if (isIdle(event, System.currentTimeMillis())) {
+                        evict(event);
+                    } else {
+                        event.cancelEvict();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Check if an event has gone without calls for the idle timeout, and
+         * could be evicted without losing anything.  The event must be marked
+         * by tryEvict(), so its service isn't closed under the check.
+         *
+         * @param event the event
+         * @param now the current time
+         * @return whether the event is idle
+         */
+        private boolean isIdle(final Event event, final long now) {
+            return (now - event.lastAccess >= idleMillis) && event.service.isEvictable();
+        }
+
+        /**
+         * Close the service of an event marked by tryEvict(), then remove the
+         * event from the map, so a call waiting for it can create it again.
+         *
+         * @param event the event
+         * @throws IOException if the service's journal can't be closed
+         */
+        private void evict(final Event event) throws IOException {
+            try {
+                event.service.close();
+            } finally {
+                events.remove(event.eventId, event);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ticketservice;
+
+/**
+ * The reasons a hold or reservation can fail.
+ */
+public enum FailureReason {
+
+    /** The customer email was null. */
+    NULL_EMAIL,
+
+    /** The number of seats requested was zero or negative. */
+    INVALID_NUM_SEATS,
+
+    /** The customer already has as many holds, or held seats, as allowed. */
+    CUSTOMER_LIMIT,
+
+    /** The waiting queue in front of the service was full. */
+    QUEUE_FULL,
+
+    /** Fewer seats are open than were requested. */
+    NOT_ENOUGH_SEATS,
+
+    /** Enough seats are open, but not in one block of consecutive seats. */
+    NO_CONTIGUOUS_BLOCK,
+
+    /** There is no hold with the given ID (it was never made, or was already reserved or released). */
+    HOLD_NOT_FOUND,
+
+    /** The hold timed out before it was reserved. */
+    HOLD_EXPIRED,
+
+    /** The customer email doesn't match the one on the hold. */
+    EMAIL_MISMATCH
+}
@@ -0,0 +1,83 @@
+package ticketservice;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The original allocation strategy: the left-most block of open seats,
+ * counting left-to-right along each row, then on to the next row.  Since
+ * it doesn't distinguish between the end of a row and the start of the
+ * next, a block may span two or more rows.
+ */
+public final class FirstFitAllocator implements SeatAllocator {
+
+    /** Index of the open seats. */
+    private final FreeSeatIndex freeSeats;
+
+    /**
+     * Constructor taking the venue.
+     *
+     * @param venue the venue to allocate seats in
+     */
+    public FirstFitAllocator(final Venue venue) {
+        freeSeats = new FreeSeatIndex(venue.getNumberOfSeats());
+    }
+
+    @Override
+    public int getNumSeats() {
+        return freeSeats.getNumSeats();
+    }
+
+    /**
+     * Find the first block of enough consecutive open seats.  If there
+     * aren't enough seats in a row anywhere, this fails without a scan.
+     *
+     * @param numSeats the number of seats needed
+     * @return the first seat of the block, or -1 if there's no such block
+     */
+    @Override
+    public int findSeats(final int numSeats) {
+        return freeSeats.findFirstFit(numSeats);
+    }
+
+    @Override
+    public void markUsed(final int startingSeat, final int numberSeats) {
+        freeSeats.markUsed(startingSeat, numberSeats);
+    }
+
+    @Override
+    public void markFree(final int startingSeat, final int numberSeats) {
+        freeSeats.markFree(startingSeat, numberSeats);
+    }
+
+    @Override
+    public void rebuild(final IntPredicate free) {
+        freeSeats.rebuild(free);
+    }
+
+    /**
+     * Get the number of index nodes visited by the last search.
+     *
+     * @return the length of the last search
+     */
+    @Override
+    public int getLastSearchLength() {
+        return freeSeats.getLastSearchLength();
+    }
+
+    /**
+     * Get the longest run of free seats.
+     *
+     * @return the longest run of free seats
+     */
+    @Override
+    public int getLongestRun() {
+        return freeSeats.getLongestRun();
+    }
+
+    @Override
+    public String toString() {
+        return "FirstFitAllocator{" +
+                "freeSeats=" + freeSeats +
+                '}';
+    }
+}
@@ -0,0 +1,465 @@
+package ticketservice;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Index of the free (open) seats in a venue, used to find blocks of
+ * consecutive free seats without scanning the seat list.
+ *
+ * The index is a segment tree over the seats.  Each node stores the
+ * length of the free run at the start of its range (prefix), at the
+ * end of its range (suffix), and the longest free run anywhere in its
+ * range.  Marking a range of seats as free or used is O(log n) (using
+ * lazy assignment), and finding the first block of N consecutive free
+ * seats is a single walk from the root, so also O(log n).
+ *
+ * This class is not thread-safe; callers are expected to synchronize.
+ */
+final class FreeSeatIndex {
+
+    /** Lazy assignment markers for a node's children. */
+    private static final byte NONE = 0;
+    private static final byte FREE = 1;
+    private static final byte USED = 2;
+
+    /** The number of seats in the index. */
+    private final int numSeats;
+
+    /** The number of leaves in the tree (a power of two, at least numSeats). */
+    private final int size;
+
+    /** Length of the free run at the start of each node's range. */
+    private final int[] prefix;
+
+    /** Length of the free run at the end of each node's range. */
+    private final int[] suffix;
+
+    /** Length of the longest free run in each node's range. */
+    private final int[] longest;
+
+    /** Pending assignment to push down to each node's children. */
+    private final byte[] pending;
+
+    /** The number of nodes visited by the last search. */
+    private int lastSearchLength;
+
+    /** The free run carried from the nodes already visited by a directional search. */
+    private int carry;
+
+    /**
+     * Constructor taking the number of seats.  All seats start as free.
+     *
+     * @param numSeats the number of seats in the venue
+     */
+    FreeSeatIndex(final int numSeats) {
+
+        if (numSeats <= 0) {
+            throw new IllegalArgumentException("Illegal argument to FreeSeatIndex c'tor: the number of seats must be positive");
+        }
+
+        this.numSeats = numSeats;
+        int leaves = 1;
+        while (leaves < numSeats) {
+            leaves <<= 1;
+        }
+        size = leaves;
+
+        prefix = new int[2 * size];
+        suffix = new int[2 * size];
+        longest = new int[2 * size];
+        pending = new byte[2 * size];
+
+        rebuild(seat -> true);
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    /**
+     * Get the number of tree nodes visited by the last search.
+     * A search that's rejected by the root alone counts as one.
+     *
+     * @return the length of the last search
+     */
+    public int getLastSearchLength() {
+        return lastSearchLength;
+    }
+
+    /**
+     * Get the length of the longest run of consecutive free seats.
+     *
+     * @return the longest free run in the venue
+     */
+    public int getLongestRun() {
+        return longest[1];
+    }
+
+    /**
+     * Get the number of consecutive free seats at the start of the venue.
+     *
+     * @return the length of the free run starting at seat 0
+     */
+    public int getLeadingRun() {
+        return prefix[1];
+    }
+
+    /**
+     * Get the number of consecutive free seats at the end of the venue.
+     *
+     * @return the length of the free run ending at the last seat
+     */
+    public int getTrailingRun() {
+        return runEndingBefore(1, 0, size, numSeats);
+    }
+
+    /**
+     * Find the first (lowest-numbered) seat that starts a block of
+     * consecutive free seats of the requested size.
+     *
+     * @param count the number of consecutive seats needed
+     * @return the starting seat of the block, or -1 if there is no such block
+     */
+    public int findFirstFit(final int count) {
+
+        lastSearchLength = 1;
+        if ((count < 1) || (longest[1] < count)) {
+            return -1;
+        }
+
+        // Walk down from the root, preferring the left half, then a run crossing
+        // the middle, then the right half.  This finds the left-most block.
+        int node = 1;
+        int start = 0;
+        int length = size;
+        while (length > 1) {
+            ++lastSearchLength;
+            push(node, length);
+            final int half = length >> 1;
+            final int left = 2 * node;
+            final int right = left + 1;
+            if (longest[left] >= count) {
+                node = left;
+            } else if (suffix[left] + prefix[right] >= count) {
+                return start + half - suffix[left];
+            } else {
+                node = right;
+                start += half;
+            }
+            length = half;
+        }
+
+        return start;
+    }
+
+    /**
+     * Find the first block of consecutive free seats of the requested
+     * size that starts at or after a given seat.
+     *
+     * @param count the number of consecutive seats needed
+     * @param fromSeat the lowest starting seat to consider
+     * @return the starting seat of the block, or -1 if there is no such block
+     */
+    public int findFirstFit(final int count, final int fromSeat) {
+
+        lastSearchLength = 1;
+        if ((count < 1) || (fromSeat < 0) || (fromSeat > numSeats - count) || (longest[1] < count)) {
+            return -1;
+        }
+
+        carry = 0;
+        return firstFitFrom(1, 0, size, fromSeat, count);
+    }
+
+    /**
+     * Find the last block of consecutive free seats of the requested
+     * size that starts at or before a given seat.
+     *
+     * @param count the number of consecutive seats needed
+     * @param maxStart the highest starting seat to consider
+     * @return the starting seat of the block, or -1 if there is no such block
+     */
+    public int findLastFit(final int count, final int maxStart) {
+
+        lastSearchLength = 1;
+        if ((count < 1) || (maxStart < 0) || (longest[1] < count)) {
+            return -1;
+        }
+
+        carry = 0;
+        return lastFitBefore(1, 0, size, Math.min(maxStart + count, numSeats), count);
+    }
+
+    /**
+     * Check if a seat is free.
+     *
+     * @param seatId the seat number
+     * @return whether the seat is free
+     */
+    public boolean isFree(final int seatId) {
+
+        int node = 1;
+        int start = 0;
+        int length = size;
+        while (length > 1) {
+            push(node, length);
+            length >>= 1;
+            node <<= 1;
+            if (seatId >= start + length) {
+                ++node;
+                start += length;
+            }
+        }
+
+        return longest[node] == 1;
+    }
+
+    /**
+     * Mark a block of consecutive seats as free.
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    public void markFree(final int startingSeat, final int numberSeats) {
+        checkRange(startingSeat, numberSeats);
+        assign(1, 0, size, startingSeat, startingSeat + numberSeats, true);
+    }
+
+    /**
+     * Mark a block of consecutive seats as used (held or reserved).
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    public void markUsed(final int startingSeat, final int numberSeats) {
+        checkRange(startingSeat, numberSeats);
+        assign(1, 0, size, startingSeat, startingSeat + numberSeats, false);
+    }
+
+    /**
+     * Set every seat to free or used at once, and rebuild the tree from the
+     * leaves up.  This is O(n), so it's faster than marking each block when
+     * loading a venue with many blocks.
+     *
+     * @param free whether each seat is free
+     */
+    public void rebuild(final IntPredicate free) {
+
+        // The leaves past the end of the venue stay used, so a run can never extend past the last seat
+        Arrays.fill(pending, NONE);
+        for (int seat = 0; seat < numSeats; ++seat) {
+            setNode(size + seat, 1, free.test(seat));
+        }
+        for (int node = size - 1; node >= 1; --node) {
+            pull(node, nodeLength(node));
+        }
+    }
+
+    /**
+     * Helper method to validate a block of seats.
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    private void checkRange(final int startingSeat, final int numberSeats) {
+        if ((startingSeat < 0) || (numberSeats < 0) || (startingSeat + numberSeats > numSeats)) {
+            throw new IndexOutOfBoundsException("Seat block [" + startingSeat + ", " +
+                    (startingSeat + numberSeats) + ") is outside the venue");
+        }
+    }
+
+    /**
+     * Assign free/used to the seats in [from, to) under the given node.
+     *
+     * @param node the tree node
+     * @param nodeStart the first seat covered by the node
+     * @param length the number of seats covered by the node
+     * @param from the first seat to assign
+     * @param to one past the last seat to assign
+     * @param free whether the seats become free
+     */
+    private void assign(final int node, final int nodeStart, final int length,
+                        final int from, final int to, final boolean free) {
+
+        if ((to <= nodeStart) || (from >= nodeStart + length)) {
+            return;
+        } else if ((from <= nodeStart) && (nodeStart + length <= to)) {
+            setNode(node, length, free);
+            return;
+        }
+
+        push(node, length);
+        final int half = length >> 1;
+        assign(2 * node, nodeStart, half, from, to, free);
+        assign(2 * node + 1, nodeStart + half, half, from, to, free);
+        pull(node, length);
+    }
+
+    /**
+     * Search the seats under a node, left to right, for the first block
+     * starting at or after a seat.  The carry is the free run (after
+     * that seat) that ends just before the node.
+     *
+     * @param node the tree node
+     * @param nodeStart the first seat covered by the node
+     * @param length the number of seats covered by the node
+     * @param from the lowest starting seat
+     * @param count the number of consecutive seats needed
+     * @return the starting seat of the block, or -1 if it's not under this node
+     */
+    private int firstFitFrom(final int node, final int nodeStart, final int length,
+                             final int from, final int count) {
+
+        ++lastSearchLength;
+        if (nodeStart + length <= from) {
+            return -1;
+        } else if (nodeStart >= from) {
+            if (carry + prefix[node] >= count) {
+                // The block starts in the carried run and ends in this node
+                return nodeStart - carry;
+            } else if (longest[node] < count) {
+                carry = (prefix[node] == length) ? (carry + length) : suffix[node];
+                return -1;
+            }
+            // Otherwise the block is inside this node, so look in its children
+        }
+
+        push(node, length);
+        final int half = length >> 1;
+        final int found = firstFitFrom(2 * node, nodeStart, half, from, count);
+        return (found >= 0) ? found : firstFitFrom(2 * node + 1, nodeStart + half, half, from, count);
+    }
+
+    /**
+     * Search the seats under a node, right to left, for the last block
+     * ending at or before a seat.  The carry is the free run (before
+     * that seat) that starts just after the node.
+     *
+     * @param node the tree node
+     * @param nodeStart the first seat covered by the node
+     * @param length the number of seats covered by the node
+     * @param to one past the highest seat the block may use
+     * @param count the number of consecutive seats needed
+     * @return the starting seat of the block, or -1 if it's not under this node
+     */
+    private int lastFitBefore(final int node, final int nodeStart, final int length,
+                              final int to, final int count) {
+
+        ++lastSearchLength;
+        final int nodeEnd = nodeStart + length;
+        if (nodeStart >= to) {
+            return -1;
+        } else if (nodeEnd <= to) {
+            if (suffix[node] + carry >= count) {
+                // The block starts in this node and ends in the carried run
+                return nodeEnd + carry - count;
+            } else if (longest[node] < count) {
+                carry = (suffix[node] == length) ? (carry + length) : prefix[node];
+                return -1;
+            }
+            // Otherwise the block is inside this node, so look in its children
+        }
+
+        push(node, length);
+        final int half = length >> 1;
+        final int found = lastFitBefore(2 * node + 1, nodeStart + half, half, to, count);
+        return (found >= 0) ? found : lastFitBefore(2 * node, nodeStart, half, to, count);
+    }
+
+    /**
+     * Get the length of the free run that ends just before a seat,
+     * counting only the seats under the given node.
+     *
+     * @param node the tree node
+     * @param nodeStart the first seat covered by the node
+     * @param length the number of seats covered by the node
+     * @param end the seat after the end of the run
+     * @return the length of the free run
+     */
+    private int runEndingBefore(final int node, final int nodeStart, final int length, final int end) {
+
+        if (end >= nodeStart + length) {
+            return suffix[node];
+        } else if (end <= nodeStart) {
+            return 0;
+        }
+
+        push(node, length);
+        final int half = length >> 1;
+        final int mid = nodeStart + half;
+        if (end <= mid) {
+            return runEndingBefore(2 * node, nodeStart, half, end);
+        }
+
+        // If the run fills the part of the right child before the end, it continues into the left child
+        final int run = runEndingBefore(2 * node + 1, mid, half, end);
+        return (run == end - mid) ? (run + suffix[2 * node]) : run;
+    }
+
+    /**
+     * Set every seat under a node to free or used.
+     *
+     * @param node the tree node
+     * @param length the number of seats covered by the node
+     * @param free whether the seats are free
+     */
+    private void setNode(final int node, final int length, final boolean free) {
+        final int run = free ? length : 0;
+        prefix[node] = run;
+        suffix[node] = run;
+        longest[node] = run;
+        if (length > 1) {
+            pending[node] = free ? FREE : USED;
+        }
+    }
+
+    /**
+     * Push a pending assignment on a node down to its children.
+     *
+     * @param node the tree node
+     * @param length the number of seats covered by the node
+     */
+    private void push(final int node, final int length) {
+        final byte value = pending[node];
+        if (value != NONE) {
+            final int half = length >> 1;
+            setNode(2 * node, half, value == FREE);
+            setNode(2 * node + 1, half, value == FREE);
+            pending[node] = NONE;
+        }
+    }
+
+    /**
+     * Recompute a node's runs from its children.
+     *
+     * @param node the tree node
+     * @param length the number of seats covered by the node
+     */
+    private void pull(final int node, final int length) {
+        final int half = length >> 1;
+        final int left = 2 * node;
+        final int right = left + 1;
+        prefix[node] = (prefix[left] == half) ? (half + prefix[right]) : prefix[left];
+        suffix[node] = (suffix[right] == half) ? (half + suffix[left]) : suffix[right];
+        longest[node] = Math.max(Math.max(longest[left], longest[right]), suffix[left] + prefix[right]);
+    }
+
+    /**
+     * Compute the number of seats covered by a node.
+     *
+     * @param node the tree node
+     * @return the number of leaves under the node
+     */
+    private int nodeLength(final int node) {
+        return size >> (31 - Integer.numberOfLeadingZeros(node));
+    }
+
+    @Override
+    public String toString() {
+        return "FreeSeatIndex{" +
+                "numSeats=" + numSeats +
+                ", longestRun=" + longest[1] +
+                '}';
+    }
+}
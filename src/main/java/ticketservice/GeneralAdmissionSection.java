@@ -0,0 +1,440 @@
+package ticketservice;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A general-admission section of a venue: a number of places that are
+ * all alike, so a ticket is a count rather than a block of seats.
+ *
+ * The section is split into stripes, one per processor.  Each stripe has
+ * a counter of open places, on its own cache line, and its own holds:
+ * a map by ID, a queue in creation order for expiry, and a sequence of
+ * hold IDs with the stripe number in the low bits.  A hold takes places
+ * from the calling thread's stripe with compare-and-swap, moving on to
+ * the next stripes' counters if that one runs short, and puts back what
+ * it took if the section as a whole is short; released places go back
+ * to the releasing thread's stripe.  The hold itself is kept by the
+ * stripe that made it, so threads on different stripes don't share a
+ * counter, map, queue or ID sequence, and the counters take the same
+ * memory whatever the capacity.
+ *
+ * Within a stripe, holds and expiry work as in AtomicTicketService:
+ * taking a hold out of the map decides the race between a reservation,
+ * a release and an expiry.  Reservations are only counted.  Nothing here
+ * takes a lock, and the section isn't journaled.
+ */
+public final class GeneralAdmissionSection {
+
+    /** The spacing of the counters in the counter array (a 64-byte cache line of ints). */
+    private static final int COUNTER_SPACING = 16;
+
+    /** The most stripes a section is split into. */
+    private static final int MAX_STRIPES = 64;
+
+    /** The section number in the venue. */
+    private final int section;
+
+    /** The number of places in the section. */
+    private final int capacity;
+
+    /** The maximum age for a hold before its places become available again. */
+    private final long holdTimeout;
+
+    /** The open places in each stripe, COUNTER_SPACING ints apart. */
+    private final AtomicIntegerArray counters;
+
+    /** The holds of each stripe. */
+    private final Stripe[] stripes;
+
+    /** Mask to turn a hash or hold ID into a stripe number. */
+    private final int stripeMask;
+
+    /** The number of places reserved. */
+    private final LongAdder numReserved = new LongAdder();
+
+    /**
+     * Constructor taking the section's number, capacity and hold timeout.
+     * The section has a stripe per processor.
+     *
+     * @param section the section number in the venue
+     * @param capacity the number of places in the section
+     * @param holdTimeout the length of time places can be held (milliseconds)
+     */
+    GeneralAdmissionSection(final int section, final int capacity, final long holdTimeout) {
+        this(section, capacity, holdTimeout, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor taking the section's number, capacity and hold timeout,
+     * and the number of stripes to aim for.  This is rounded up to a power
+     * of two, but there are never more than MAX_STRIPES, or more stripes
+     * than places.
+     *
+     * @param section the section number in the venue
+     * @param capacity the number of places in the section
+     * @param holdTimeout the length of time places can be held (milliseconds)
+     * @param minStripes the number of stripes to aim for
+     */
+    GeneralAdmissionSection(final int section, final int capacity, final long holdTimeout, final int minStripes) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal argument to GeneralAdmissionSection c'tor: " +
+                    "capacity must be positive");
+        }
+
+        this.section = section;
+        this.capacity = capacity;
+        this.holdTimeout = holdTimeout;
+
+        int numStripes = 1;
+        while ((numStripes < minStripes) && (numStripes < MAX_STRIPES) && (2 * numStripes <= capacity)) {
+            numStripes <<= 1;
+        }
+        stripeMask = numStripes - 1;
+
+        // Share the places out between the stripes
+        counters = new AtomicIntegerArray(numStripes * COUNTER_SPACING);
+        stripes = new Stripe[numStripes];
+        for (int stripe = 0; stripe < numStripes; ++stripe) {
+            counters.set(stripe * COUNTER_SPACING, capacity / numStripes + ((stripe < capacity % numStripes) ? 1 : 0));
+            stripes[stripe] = new Stripe(Integer.numberOfTrailingZeros(numStripes));
+        }
+    }
+
+    public int getSection() {
+        return section;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of places that are neither held nor reserved.  The
+     * counters are read one at a time, so under concurrent holds the
+     * total is approximate.
+     *
+     * @return the number of open places
+     */
+    public int numPlacesAvailable() {
+        reapExpiredHolds();
+        int available = 0;
+        for (int stripe = 0; stripe <= stripeMask; ++stripe) {
+            available += counters.get(stripe * COUNTER_SPACING);
+        }
+        return available;
+    }
+
+    /**
+     * Get the number of places reserved.
+     *
+     * @return the number of places reserved
+     */
+    public int getNumReserved() {
+        return numReserved.intValue();
+    }
+
+    /**
+     * Hold a number of places for a customer.
+     *
+     * @param numPlaces the number of places to hold
+     * @param customerEmail unique identifier for the customer
+     * @return the hold, or null if the input is invalid or there aren't enough places
+     */
+    public SeatHold findAndHoldPlaces(final int numPlaces, final String customerEmail) {
+
+        // Check the input
+        if (customerEmail == null) {
+            return null;
+        } else if ((numPlaces < 1) || (numPlaces > capacity)) {
+            return null;
+        }
+
+        // Release this stripe's expired holds; if that isn't enough, try again after every stripe's
+        final int home = homeStripe();
+        final long now = System.currentTimeMillis();
+        releaseExpiredHolds(stripes[home], now);
+        if (!take(home, numPlaces)) {
+            reapExpiredHolds();
+            if (!take(home, numPlaces)) {
+                return null;
+            }
+        }
+
+        // We own the places, so publish the hold in this stripe
+        final Stripe stripe = stripes[home];
+        final Hold hold = new Hold((stripe.sequence.getAndIncrement() << stripe.shift) | home,
+                customerEmail, numPlaces, now);
+        stripe.holds.put(hold.id, hold);
+        stripe.expiryQueue.add(hold);
+        return new SeatHold(hold.id);
+    }
+
+    /**
+     * Commit places held for a customer.
+     *
+     * @param seatHoldId the hold identifier
+     * @param customerEmail the email address of the customer to which the hold is assigned
+     * @return a reservation confirmation code, or null if there's no such hold
+     */
+    public String reservePlaces(final int seatHoldId, final String customerEmail) {
+        final Hold hold = findHold(seatHoldId, customerEmail);
+
+        // Take the hold out of the map; if that fails, it expired or was reserved by another thread
+        if ((hold == null) || !stripes[seatHoldId & stripeMask].holds.remove(seatHoldId, hold)) {
+            return null;
+        }
+        numReserved.add(hold.numPlaces);
+
+        // The confirmation code names the section, so it can't be mistaken for a reserved seat's
+        return "GA" + section + "-" + seatHoldId;
+    }
+
+    /**
+     * Release a hold before it times out, so its places are available
+     * again straight away.
+     *
+     * @param seatHoldId the hold identifier
+     * @param customerEmail the email address of the customer to which the hold is assigned
+     * @return whether the hold was released
+     */
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+        final Hold hold = findHold(seatHoldId, customerEmail);
+        return (hold != null) && release(hold);
+    }
+
+    /**
+     * Check if nothing has been sold: there are no holds (not even expired
+     * ones that haven't been released yet) and no reservations.
+     *
+     * @return whether the section is unsold
+     */
+    boolean isUnsold() {
+        if (numReserved.sum() != 0L) {
+            return false;
+        }
+
+        for (Stripe stripe : stripes) {
+            if (!stripe.holds.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Release the expired holds of every stripe.
+     */
+    void reapExpiredHolds() {
+        final long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            releaseExpiredHolds(stripe, now);
+        }
+    }
+
+    /**
+     * Helper method to find a customer's hold.  An expired hold is
+     * released, and not returned.
+     *
+     * @param seatHoldId the hold identifier
+     * @param customerEmail the email address of the customer to which the hold is assigned
+     * @return the hold, or null if there's no such hold for the customer
+     */
+    private Hold findHold(final int seatHoldId, final String customerEmail) {
+        if (customerEmail == null) {
+            return null;
+        }
+
+        final Hold hold = stripes[seatHoldId & stripeMask].holds.get(seatHoldId);
+        if (hold == null) {
+            return null;
+        } else if (System.currentTimeMillis() - hold.createdTime >= holdTimeout) {
+            // The hold has expired, so release it (unless another thread beat us to it)
+            release(hold);
+            return null;
+        } else if (!customerEmail.equalsIgnoreCase(hold.email)) {
+            // The customer email does not match
+            return null;
+        }
+
+        return hold;
+    }
+
+    /**
+     * Helper method to release a stripe's holds that have expired, and
+     * drop the ones at the head of its queue that were reserved or
+     * released early.  Only one thread does this for a stripe at a time;
+     * the others carry on without waiting.
+     *
+     * @param stripe the stripe
+     * @param now the current time
+     */
+    private void releaseExpiredHolds(final Stripe stripe, final long now) {
+
+        if (!stripe.releasing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Hold hold = stripe.expiryQueue.peek();
+            while ((hold != null) &&
+                    ((now - hold.createdTime >= holdTimeout) || (stripe.holds.get(hold.id) != hold))) {
+                stripe.expiryQueue.poll();
+                release(hold);
+                hold = stripe.expiryQueue.peek();
+            }
+        } finally {
+            stripe.releasing.set(false);
+        }
+    }
+
+    /**
+     * Helper method to give back the places of a hold, if it's still in
+     * its stripe's holds map.  Removing it from the map decides the race
+     * with reservePlaces().  A hold released early stays in the expiry
+     * queue until it reaches the head.
+     *
+     * @param hold the hold
+     * @return whether this call released the hold
+     */
+    private boolean release(final Hold hold) {
+        if (stripes[hold.id & stripeMask].holds.remove(hold.id, hold)) {
+            counters.getAndAdd(homeStripe() * COUNTER_SPACING, hold.numPlaces);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Helper method to take places from the counters, starting with the
+     * calling thread's.  If the counters run out first, the places taken
+     * are put back, so a hold that fails takes nothing.
+     *
+     * @param home the calling thread's stripe
+     * @param numPlaces the number of places to take
+     * @return whether the places were taken
+     */
+    private boolean take(final int home, final int numPlaces) {
+
+        int needed = numPlaces;
+        for (int offset = 0; (offset <= stripeMask) && (needed > 0); ++offset) {
+            final int index = ((home + offset) & stripeMask) * COUNTER_SPACING;
+            int available = counters.get(index);
+            while (available > 0) {
+                final int taken = Math.min(available, needed);
+                if (counters.compareAndSet(index, available, available - taken)) {
+                    needed -= taken;
+                    break;
+                }
+                available = counters.get(index);
+            }
+        }
+
+        if (needed > 0) {
+            // Not enough places: give back what we took
+            counters.getAndAdd(home * COUNTER_SPACING, numPlaces - needed);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Helper method to get the calling thread's stripe.
+     *
+     * @return the stripe number
+     */
+    private int homeStripe() {
+        // Spread the thread IDs, which are usually consecutive
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask;
+    }
+
+    @Override
+    public String toString() {
+        int numHolds = 0;
+        for (Stripe stripe : stripes) {
+            numHolds += stripe.holds.size();
+        }
+
+        return "GeneralAdmissionSection{" +
+                "section=" + section +
+                ", capacity=" + capacity +
+                ", stripes=" + stripes.length +
+                ", holds=" + numHolds +
+                ", reserved=" + numReserved.sum() +
+                '}';
+    }
+
+    /**
+     * The holds made by one stripe.
+     */
+    private static final class Stripe {
+
+        /** The number of low bits of a hold ID that hold the stripe number. */
+        final int shift;
+
+        /** The stripe's holds, keyed by hold ID. */
+        final Map<Integer, Hold> holds = new ConcurrentHashMap<>(16);
+
+        /** The stripe's holds in creation order; all holds share the same timeout, so the oldest expire first. */
+        final Queue<Hold> expiryQueue = new ConcurrentLinkedQueue<>();
+
+        /** Set while a thread is releasing the stripe's expired holds. */
+        final AtomicBoolean releasing = new AtomicBoolean();
+
+        /** The sequence number of the stripe's next hold (the high bits of its ID). */
+        final AtomicInteger sequence;
+
+        /**
+         * Constructor taking the number of bits for the stripe number.
+         * Hold IDs start at Integer.MIN_VALUE, as in the other services.
+         *
+         * @param shift the number of low bits of a hold ID that hold the stripe number
+         */
+        Stripe(final int shift) {
+            this.shift = shift;
+            sequence = new AtomicInteger(Integer.MIN_VALUE >> shift);
+        }
+    }
+
+    /**
+     * A hold on some places in the section.
+     */
+    private static final class Hold {
+
+        /** The hold ID. */
+        private final int id;
+
+        /** The customer's email. */
+        private final String email;
+
+        /** The number of places held. */
+        private final int numPlaces;
+
+        /** When the hold was made (milliseconds since the epoch). */
+        private final long createdTime;
+
+        /**
+         * Constructor taking the hold's fields.
+         *
+         * @param id the hold ID
+         * @param email the customer's email
+         * @param numPlaces the number of places held
+         * @param createdTime when the hold was made
+         */
+        private Hold(final int id, final String email, final int numPlaces, final long createdTime) {
+            this.id = id;
+            this.email = email;
+            this.numPlaces = numPlaces;
+            this.createdTime = createdTime;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ticketservice;
+
+/**
+ * An immutable copy of a latency histogram.  Values are in nanoseconds
+ * for latencies, and in tree nodes visited for scan lengths.
+ */
+public final class HistogramSnapshot {
+
+    /** The count of values in each bucket. */
+    private final long[] counts;
+
+    /** The number of recorded values. */
+    private final long count;
+
+    /** The sum of the recorded values. */
+    private final long sum;
+
+    /** The smallest recorded value (0 if none). */
+    private final long min;
+
+    /** The largest recorded value (0 if none). */
+    private final long max;
+
+    /**
+     * Constructor taking the histogram's state.  The counts array is
+     * kept, so the caller must not change it afterwards.
+     *
+     * @param counts the count of values in each bucket
+     * @param sum the sum of the recorded values
+     * @param min the smallest recorded value
+     * @param max the largest recorded value
+     */
+    HistogramSnapshot(final long[] counts, final long sum, final long min, final long max) {
+
+        long total = 0L;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        this.counts = counts;
+        this.count = total;
+        this.sum = sum;
+        this.min = (total == 0L) ? 0L : min;
+        this.max = (total == 0L) ? 0L : max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return (count == 0L) ? 0.0 : ((double) sum / count);
+    }
+
+    /**
+     * Get the value at a percentile.  The result is the top of the bucket
+     * holding that value, so it may be up to 1.6% higher than the true value,
+     * but never higher than the largest recorded value.
+     *
+     * @param percentile the percentile (0 to 100)
+     * @return the value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+
+        if (count == 0L) {
+            return 0L;
+        }
+
+        // The rank of the value we want, counting from 1
+        final double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+        final long rank = Math.max(1L, (long) Math.ceil(fraction * count));
+
+        long seen = 0L;
+        for (int index = 0; index < counts.length; ++index) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueFor(index), max);
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{" +
+                "count=" + count +
+                ", mean=" + String.format("%.1f", getMean()) +
+                ", p50=" + getValueAtPercentile(50.0) +
+                ", p99=" + getValueAtPercentile(99.0) +
+                ", p99.9=" + getValueAtPercentile(99.9) +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -0,0 +1,219 @@
+package ticketservice;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A hashed timing wheel of seat-hold deadlines.
+ *
+ * Time is divided into ticks, and each hold is put in the bucket for the
+ * tick of its deadline (modulo the number of buckets).  Advancing the
+ * wheel only visits the buckets for the ticks that have passed since the
+ * last advance, so the cost is proportional to the number of holds that
+ * are due rather than the number of holds outstanding.  Entries are kept
+ * in primitive arrays, so scheduling and expiring don't create garbage
+ * once the buckets have grown to their working size.
+ *
+ * This class is not thread-safe; callers are expected to synchronize.
+ */
+final class HoldExpiryWheel {
+
+    /** The initial capacity of each bucket. */
+    private static final int INITIAL_BUCKET_SIZE = 4;
+
+    /** The length of a tick in milliseconds. */
+    private final long tickMillis;
+
+    /** The buckets of the wheel. */
+    private final Bucket[] buckets;
+
+    /** Mask to map a tick to a bucket (the number of buckets is a power of two). */
+    private final int mask;
+
+    /** The most recent tick the wheel was advanced to. */
+    private long currentTick;
+
+    /** The number of holds in the wheel. */
+    private int size;
+
+    /** A time no later than the earliest deadline in the wheel. */
+    private long nextDeadline = Long.MAX_VALUE;
+
+    /**
+     * Constructor taking the tick length and number of buckets.
+     *
+     * @param tickMillis the length of a tick (milliseconds)
+     * @param numBuckets the number of buckets (rounded up to a power of two)
+     * @param startTime the current time (milliseconds)
+     */
+    HoldExpiryWheel(final long tickMillis, final int numBuckets, final long startTime) {
+
+        if ((tickMillis <= 0L) || (numBuckets <= 0)) {
+            throw new IllegalArgumentException("Illegal argument to HoldExpiryWheel c'tor: tick and buckets must be positive");
+        }
+
+        this.tickMillis = tickMillis;
+        int count = 1;
+        while (count < numBuckets) {
+            count <<= 1;
+        }
+        buckets = new Bucket[count];
+        for (int i = 0; i < count; ++i) {
+            buckets[i] = new Bucket();
+        }
+        mask = count - 1;
+        currentTick = startTime / tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a lower bound on the earliest deadline in the wheel.  Until this
+     * time, advancing the wheel can't expire anything.
+     *
+     * @return a time no later than the earliest deadline, or Long.MAX_VALUE if the wheel is empty
+     */
+    public long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    /**
+     * Add a hold to the wheel.  A deadline that has already passed is
+     * put in the current bucket, so it's released by the next advance.
+     *
+     * @param holdId the hold ID
+     * @param deadline the time the hold expires (milliseconds)
+     */
+    public void schedule(final int holdId, final long deadline) {
+        final long tick = Math.max(deadline / tickMillis, currentTick);
+        buckets[(int) (tick & mask)].add(holdId, deadline);
+        ++size;
+        nextDeadline = Math.min(nextDeadline, deadline);
+    }
+
+    /**
+     * Advance the wheel to the given time, and pass the ID of each hold
+     * whose deadline has been reached to the callback.
+     *
+     * @param now the current time (milliseconds)
+     * @param expired the callback for each expired hold ID
+     * @return the number of expired holds
+     */
+    public int advance(final long now, final IntConsumer expired) {
+
+        if (size == 0) {
+            currentTick = Math.max(currentTick, now / tickMillis);
+            return 0;
+        }
+
+        // Visit each bucket from the last tick up to now, but never more than one full turn.
+        // The current tick's bucket is visited again next time, since it may hold later deadlines.
+        final long nowTick = Math.max(currentTick, now / tickMillis);
+        final long lastTick = Math.min(nowTick, currentTick + mask);
+        int count = 0;
+        for (long tick = currentTick; tick <= lastTick; ++tick) {
+            count += buckets[(int) (tick & mask)].expire(now, expired);
+        }
+
+        currentTick = nowTick;
+        size -= count;
+        if (now >= nextDeadline) {
+            nextDeadline = findNextDeadline(now);
+        }
+
+        return count;
+    }
+
+    /**
+     * Helper method to compute a lower bound on the earliest deadline,
+     * from the first non-empty bucket at or after the current tick.
+     * Every deadline left in the wheel is after the given time.
+     *
+     * @param now the current time (milliseconds)
+     * @return a time no later than the earliest deadline
+     */
+    private long findNextDeadline(final long now) {
+
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        for (long tick = currentTick; tick <= currentTick + mask; ++tick) {
+            if (buckets[(int) (tick & mask)].count > 0) {
+                return Math.max(tick * tickMillis, now + 1L);
+            }
+        }
+
+        return now + 1L;
+    }
+
+    @Override
+    public String toString() {
+        return "HoldExpiryWheel{" +
+                "tickMillis=" + tickMillis +
+                ", buckets=" + buckets.length +
+                ", size=" + size +
+                '}';
+    }
+
+    /**
+     * The holds whose deadlines fall in one slot of the wheel.
+     */
+    private static final class Bucket {
+
+        /** The hold IDs. */
+        private int[] holdIds = new int[INITIAL_BUCKET_SIZE];
+
+        /** The deadline of each hold. */
+        private long[] deadlines = new long[INITIAL_BUCKET_SIZE];
+
+        /** The number of holds in the bucket. */
+        private int count;
+
+        /**
+         * Add a hold to the bucket.
+         *
+         * @param holdId the hold ID
+         * @param deadline the time the hold expires
+         */
+        void add(final int holdId, final long deadline) {
+            if (count == holdIds.length) {
+                holdIds = Arrays.copyOf(holdIds, count * 2);
+                deadlines = Arrays.copyOf(deadlines, count * 2);
+            }
+            holdIds[count] = holdId;
+            deadlines[count] = deadline;
+            ++count;
+        }
+
+        /**
+         * Remove the holds that have expired, and pass each to the callback.
+         *
+         * @param now the current time
+         * @param expired the callback for each expired hold ID
+         * @return the number of expired holds
+         */
+        int expire(final long now, final IntConsumer expired) {
+            int removed = 0;
+            int index = 0;
+            while (index < count) {
+                if (deadlines[index] <= now) {
+                    final int holdId = holdIds[index];
+
+                    // Move the last entry into this slot, and check it next
+                    --count;
+                    holdIds[index] = holdIds[count];
+                    deadlines[index] = deadlines[count];
+                    ++removed;
+                    expired.accept(holdId);
+                } else {
+                    ++index;
+                }
+            }
+
+            return removed;
+        }
+    }
+}
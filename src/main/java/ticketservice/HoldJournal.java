@@ -0,0 +1,774 @@
+package ticketservice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of holds, reservations and releases.
+ *
+ * Each change is appended as a compact binary record: the payload length,
+ * a CRC32 of the payload, then the payload (record type, sequence number
+ * and fields).  Records are collected in a buffer and written to a
+ * FileChannel, and forced to disk according to the durability level.
+ * Forcing happens outside the journal's monitor, so other threads keep
+ * appending while one waits for the disk, and the next force covers all
+ * of their records (group commit).
+ *
+ * Opening a journal replays its records.  A torn or corrupt record at the
+ * end (from a crash in the middle of a write) ends the replay, and the
+ * file is truncated there.  Once a snapshot covers the records up to a
+ * sequence number, compact() drops them from the file.
+ *
+ * Appends are thread-safe, but callers are expected to append in the
+ * order the changes were made, i.e. while holding the service's lock.
+ */
+final class HoldJournal implements Closeable {
+
+    /** Record types. */
+    static final byte HOLD = 1;
+    static final byte RESERVE = 2;
+    static final byte RELEASE = 3;
+    static final byte SPLIT_HOLD = 4;
+    static final byte CANCEL = 5;
+    static final byte EXTEND = 6;
+
+    /** How often the background committer forces the journal, for BATCHED durability. */
+    static final long GROUP_COMMIT_MILLIS = 10L;
+
+    /** The size of the write buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The size of the record header (payload length and CRC). */
+    private static final int HEADER_SIZE = 8;
+
+    /** The size of a payload without its fields (type and sequence). */
+    private static final int PAYLOAD_PREFIX_SIZE = 1 + 8;
+
+    /** The size of a hold payload, not counting the email bytes. */
+    private static final int HOLD_SIZE = PAYLOAD_PREFIX_SIZE + 4 + 4 + 4 + 8 + 4;
+
+    /** The size of a split hold payload, not counting the segments or the email bytes. */
+    private static final int SPLIT_HOLD_SIZE = PAYLOAD_PREFIX_SIZE + 4 + 8 + 4 + 4;
+
+    /** The size of a release or cancel payload. */
+    private static final int ID_SIZE = PAYLOAD_PREFIX_SIZE + 4;
+
+    /** The size of a reserve payload. */
+    private static final int RESERVE_SIZE = PAYLOAD_PREFIX_SIZE + 4 + 8;
+
+    /** The size of an extend payload. */
+    private static final int EXTEND_SIZE = PAYLOAD_PREFIX_SIZE + 4 + 8;
+
+    /** The largest payload accepted on replay; anything larger is corrupt. */
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    /** Callback for the records read on replay. */
+    interface RecordHandler {
+
+        /**
+         * Replay a hold.
+         *
+         * @param id the hold ID
+         * @param email the customer's email
+         * @param startingSeat the first seat of the hold
+         * @param numberSeats the number of seats
+         * @param createdTime the time the hold was made (milliseconds)
+         */
+        void hold(int id, String email, int startingSeat, int numberSeats, long createdTime);
+
+        /**
+         * Replay a hold made of several runs of seats.
+         *
+         * @param id the hold ID
+         * @param email the customer's email
+         * @param segments the first seat and number of seats of each run, in pairs
+         * @param createdTime the time the hold was made (milliseconds)
+         */
+        void splitHold(int id, String email, int[] segments, long createdTime);
+
+        /**
+         * Replay the reservation of a hold.
+         *
+         * @param id the hold ID
+         * @param reservedTime the time the hold was reserved (milliseconds)
+         */
+        void reserve(int id, long reservedTime);
+
+        /**
+         * Replay the release of a hold.
+         *
+         * @param id the hold ID
+         */
+        void release(int id);
+
+        /**
+         * Replay the cancellation of a reservation.
+         *
+         * @param id the reservation ID
+         */
+        void cancel(int id);
+
+        /**
+         * Replay the extension of a hold.
+         *
+         * @param id the hold ID
+         * @param createdTime the time the hold's timeout restarts from (milliseconds)
+         */
+        void extend(int id, long createdTime);
+    }
+
+    /** The journal file. */
+    private final Path file;
+
+    /** The open journal file; replaced when the journal is compacted. */
+    private FileChannel channel;
+
+    /** How far records are persisted before a caller's await() returns. */
+    private final Durability durability;
+
+    /** Records waiting to be written. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Checksum of each record's payload. */
+    private final CRC32 crc = new CRC32();
+
+    /** Held by the thread writing and forcing the journal, so only one does it at a time. */
+    private final Object commitLock = new Object();
+
+    /** The background committer, for BATCHED durability. */
+    private final ScheduledExecutorService committer;
+
+    /** The sequence number of the last record appended. */
+    private long lastSequence;
+
+    /** The sequence number of the last record written to the file. */
+    private volatile long writtenSequence;
+
+    /** The sequence number of the last record forced to disk. */
+    private volatile long durableSequence;
+
+    /** The first failure of the background committer, rethrown by await() and close(). */
+    private volatile UncheckedIOException commitFailure;
+
+    /** The sequence number of the last record read on replay, to check they're in order. */
+    private long replayedSequence;
+
+    /**
+     * Constructor taking the journal file.  If the file exists, its
+     * records are passed to the handler before the constructor returns,
+     * except for those already covered by a snapshot.
+     *
+     * @param file the journal file
+     * @param durability how far records are persisted before await() returns
+     * @param startSequence the sequence number of the last record covered by a snapshot (0 if none)
+     * @param handler the callback for the records already in the journal
+     * @throws IOException if the file can't be opened or read
+     */
+    HoldJournal(final Path file, final Durability durability, final long startSequence,
+                final RecordHandler handler) throws IOException {
+
+        this.file = file;
+        this.durability = durability;
+        lastSequence = startSequence;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            replay(handler);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        writtenSequence = lastSequence;
+        durableSequence = lastSequence;
+
+        if (durability == Durability.BATCHED) {
+            committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "ticketservice-journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(() -> {
+                try {
+                    commit(getLastSequence(), true);
+                } catch (UncheckedIOException uioe) {
+                    // Keep trying, but report only the first failure, and keep it for the callers
+                    if (commitFailure == null) {
+                        commitFailure = uioe;
+                        final Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, uioe);
+                    }
+                }
+            }, GROUP_COMMIT_MILLIS, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Get the sequence number of the last record appended.
+     *
+     * @return the last sequence number, or 0 if the journal is empty
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Get the sequence number of the last record forced to disk.
+     *
+     * @return the last durable sequence number
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Get the position in the file just after the last record appended,
+     * counting records that are still buffered.
+     *
+     * @return the end of the last record
+     */
+    public synchronized long getEndPosition() {
+        try {
+            return channel.position() + buffer.position();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to read the journal position", ioe);
+        }
+    }
+
+    /**
+     * Drop the records up to a sequence number, once a snapshot covers
+     * them.  The records after them are copied to a new file, which is
+     * forced to disk and moved into place of the old one.  Callers may
+     * keep appending while this runs; they wait for the new file.
+     *
+     * @param sequence the sequence number of the last record to drop
+     * @param position the end of that record, from getEndPosition()
+     * @throws IOException if the journal can't be rewritten
+     */
+    public void compact(final long sequence, final long position) throws IOException {
+
+        synchronized (commitLock) {
+            synchronized (this) {
+                writeBuffer();
+                if (lastSequence < sequence) {
+                    throw new IllegalArgumentException("Journal has no record " + sequence);
+                }
+
+                // Copy the records after the snapshot to the new file
+                final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    final long end = channel.size();
+                    long copied = 0L;
+                    while (position + copied < end) {
+                        copied += channel.transferTo(position + copied, end - position - copied, target);
+                    }
+                    target.force(false);
+                }
+
+                channel.close();
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                durableSequence = lastSequence;
+            }
+        }
+    }
+
+    /**
+     * Append a hold record.
+     *
+     * @param id the hold ID
+     * @param email the customer's email
+     * @param startingSeat the first seat of the hold
+     * @param numberSeats the number of seats
+     * @param createdTime the time the hold was made (milliseconds)
+     * @return the sequence number of the record
+     */
+    public synchronized long appendHold(final int id, final String email, final int startingSeat,
+                                        final int numberSeats, final long createdTime) {
+
+        final byte[] emailBytes = email.getBytes(StandardCharsets.UTF_8);
+        final int length = HOLD_SIZE + emailBytes.length;
+        final ByteBuffer out = startRecord(length);
+        final int recordStart = out.position() - HEADER_SIZE;
+        out.put(HOLD).putLong(++lastSequence)
+                .putInt(id).putInt(startingSeat).putInt(numberSeats).putLong(createdTime)
+                .putInt(emailBytes.length).put(emailBytes);
+        endRecord(out, recordStart, length);
+        return lastSequence;
+    }
+
+    /**
+     * Append a split hold record.
+     *
+     * @param id the hold ID
+     * @param email the customer's email
+     * @param segments the first seat and number of seats of each run, in pairs
+     * @param createdTime the time the hold was made (milliseconds)
+     * @return the sequence number of the record
+     */
+    public synchronized long appendSplitHold(final int id, final String email, final int[] segments,
+                                             final long createdTime) {
+
+        final byte[] emailBytes = email.getBytes(StandardCharsets.UTF_8);
+        final int length = SPLIT_HOLD_SIZE + 4 * segments.length + emailBytes.length;
+        final ByteBuffer out = startRecord(length);
+        final int recordStart = out.position() - HEADER_SIZE;
+        out.put(SPLIT_HOLD).putLong(++lastSequence)
+                .putInt(id).putLong(createdTime).putInt(segments.length >> 1);
+        for (int segment : segments) {
+            out.putInt(segment);
+        }
+        out.putInt(emailBytes.length).put(emailBytes);
+        endRecord(out, recordStart, length);
+        return lastSequence;
+    }
+
+    /**
+     * Append a reserve record.
+     *
+     * @param id the hold ID
+     * @param reservedTime the time the hold was reserved (milliseconds)
+     * @return the sequence number of the record
+     */
+    public synchronized long appendReserve(final int id, final long reservedTime) {
+        final ByteBuffer out = startRecord(RESERVE_SIZE);
+        final int recordStart = out.position() - HEADER_SIZE;
+        out.put(RESERVE).putLong(++lastSequence).putInt(id).putLong(reservedTime);
+        endRecord(out, recordStart, RESERVE_SIZE);
+        return lastSequence;
+    }
+
+    /**
+     * Append a release record.
+     *
+     * @param id the hold ID
+     * @return the sequence number of the record
+     */
+    public synchronized long appendRelease(final int id) {
+        return appendId(RELEASE, id);
+    }
+
+    /**
+     * Append a cancel record.
+     *
+     * @param id the reservation ID
+     * @return the sequence number of the record
+     */
+    public synchronized long appendCancel(final int id) {
+        return appendId(CANCEL, id);
+    }
+
+    /**
+     * Append an extend record.
+     *
+     * @param id the hold ID
+     * @param createdTime the time the hold's timeout restarts from (milliseconds)
+     * @return the sequence number of the record
+     */
+    public synchronized long appendExtend(final int id, final long createdTime) {
+        final ByteBuffer out = startRecord(EXTEND_SIZE);
+        final int recordStart = out.position() - HEADER_SIZE;
+        out.put(EXTEND).putLong(++lastSequence).putInt(id).putLong(createdTime);
+        endRecord(out, recordStart, EXTEND_SIZE);
+        return lastSequence;
+    }
+
+    /**
+     * Wait until a record is persisted as far as the durability level
+     * requires.  Call this without holding the service's lock, so other
+     * threads can append while this one waits for the disk.  With BATCHED
+     * durability this doesn't wait, but throws once the background
+     * committer has failed.
+     *
+     * @param sequence the sequence number of the record
+     * @throws UncheckedIOException if the record can't be persisted
+     */
+    public void await(final long sequence) {
+        switch (durability) {
+            case SYNC:
+                commit(sequence, true);
+                break;
+            case OS_BUFFERED:
+                commit(sequence, false);
+                break;
+            default:
+                // The background committer forces the journal; once it has failed, no record is safe
+                final UncheckedIOException failure = commitFailure;
+                if (failure != null) {
+                    throw new UncheckedIOException("Unable to commit the journal", failure.getCause());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Write and force every record appended so far, then close the file.
+     * Throws if the background committer failed at any point.
+     */
+    @Override
+    public void close() throws IOException {
+        // Don't interrupt the committer: an interrupt during I/O closes the channel
+        if (committer != null) {
+            committer.shutdown();
+            try {
+                committer.awaitTermination(1L, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            commit(getLastSequence(), true);
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        } finally {
+            channel.close();
+        }
+
+        // Report a failure of the background committer, even if the last commit worked
+        if (commitFailure != null) {
+            throw commitFailure.getCause();
+        }
+    }
+
+    /**
+     * Helper method to append a record holding only a hold ID.
+     * The caller must hold the monitor.
+     *
+     * @param type the record type
+     * @param id the hold ID
+     * @return the sequence number of the record
+     */
+    private long appendId(final byte type, final int id) {
+        final ByteBuffer out = startRecord(ID_SIZE);
+        final int recordStart = out.position() - HEADER_SIZE;
+        out.put(type).putLong(++lastSequence).putInt(id);
+        endRecord(out, recordStart, ID_SIZE);
+        return lastSequence;
+    }
+
+    /**
+     * Helper method to make room for a record and write its header,
+     * leaving the CRC to be filled in by endRecord().  A record too big
+     * for the write buffer gets a buffer of its own.
+     *
+     * @param length the payload length
+     * @return the buffer to write the payload to
+     */
+    private ByteBuffer startRecord(final int length) {
+        final int size = HEADER_SIZE + length;
+        if (buffer.remaining() < size) {
+            writeBuffer();
+        }
+
+        final ByteBuffer out = (size <= buffer.capacity()) ? buffer : ByteBuffer.allocate(size);
+        out.putInt(length).putInt(0);
+        return out;
+    }
+
+    /**
+     * Helper method to fill in a record's CRC, and write the record if it
+     * has a buffer of its own.
+     *
+     * @param out the buffer holding the record
+     * @param recordStart the position of the record in the buffer
+     * @param length the payload length
+     */
+    private void endRecord(final ByteBuffer out, final int recordStart, final int length) {
+        crc.reset();
+        crc.update(out.array(), out.arrayOffset() + recordStart + HEADER_SIZE, length);
+        out.putInt(recordStart + 4, (int) crc.getValue());
+
+        if (out != buffer) {
+            out.flip();
+            writeFully(out);
+            writtenSequence = lastSequence;
+        }
+    }
+
+    /**
+     * Helper method to write the buffered records to the file.
+     * The caller must hold the monitor.
+     */
+    private void writeBuffer() {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+        writtenSequence = lastSequence;
+    }
+
+    /**
+     * Helper method to write all of a buffer to the file.
+     *
+     * @param source the bytes to write
+     */
+    private void writeFully(final ByteBuffer source) {
+        try {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write the journal", ioe);
+        }
+    }
+
+    /**
+     * Helper method to write, and optionally force, the records up to a
+     * sequence number.  One thread commits at a time, and each commit
+     * covers every record appended before it started.
+     *
+     * @param sequence the sequence number to commit up to
+     * @param force whether to force the records to disk
+     */
+    private void commit(final long sequence, final boolean force) {
+
+        if ((force ? durableSequence : writtenSequence) >= sequence) {
+            return;
+        }
+
+        synchronized (commitLock) {
+
+            // Another thread may have committed our record while we waited
+            if ((force ? durableSequence : writtenSequence) >= sequence) {
+                return;
+            }
+
+            final long upTo;
+            synchronized (this) {
+                writeBuffer();
+                upTo = lastSequence;
+            }
+
+            // Force outside the monitor, so other threads can keep appending
+            if (force) {
+                try {
+                    channel.force(false);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException("Unable to force the journal", ioe);
+                }
+                durableSequence = upTo;
+            }
+        }
+    }
+
+    /**
+     * Helper method to read the records in the file and pass them to the
+     * handler.  Stops at the first torn or corrupt record, and truncates
+     * the file there so new records follow the last good one.
+     *
+     * @param handler the callback for each record
+     * @throws IOException if the file can't be read
+     */
+    private void replay(final RecordHandler handler) throws IOException {
+
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        in.flip();
+        long readPosition = 0L;
+        long recordPosition = 0L;
+
+        while (true) {
+
+            // Read the header
+            if (in.remaining() < HEADER_SIZE) {
+                readPosition = fill(in, readPosition);
+                if (in.remaining() < HEADER_SIZE) {
+                    break;
+                }
+            }
+
+            final int length = in.getInt(in.position());
+            final int checksum = in.getInt(in.position() + 4);
+            if ((length < ID_SIZE) || (length > MAX_PAYLOAD_SIZE)) {
+                break;
+            }
+
+            // Read the payload, growing the buffer for an oversized record
+            final int size = HEADER_SIZE + length;
+            if (size > in.capacity()) {
+                final ByteBuffer larger = ByteBuffer.allocate(size);
+                larger.put(in);
+                larger.flip();
+                in = larger;
+            }
+            if (in.remaining() < size) {
+                readPosition = fill(in, readPosition);
+                if (in.remaining() < size) {
+                    break;
+                }
+            }
+
+            crc.reset();
+            crc.update(in.array(), in.arrayOffset() + in.position() + HEADER_SIZE, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            in.position(in.position() + HEADER_SIZE);
+            final int payloadEnd = in.position() + length;
+            if (!dispatch(in, length, handler)) {
+                break;
+            }
+            in.position(payloadEnd);
+            recordPosition += size;
+        }
+
+        // Drop anything after the last good record
+        if (channel.size() > recordPosition) {
+            channel.truncate(recordPosition);
+        }
+        channel.position(recordPosition);
+    }
+
+    /**
+     * Helper method to read more of the file into the replay buffer.
+     *
+     * @param in the replay buffer, ready for reading
+     * @param readPosition the file position to read from
+     * @return the file position after the bytes read
+     * @throws IOException if the file can't be read
+     */
+    private long fill(final ByteBuffer in, final long readPosition) throws IOException {
+        in.compact();
+        long position = readPosition;
+        int count = 0;
+        while (in.hasRemaining() && (count >= 0)) {
+            count = channel.read(in, position);
+            if (count > 0) {
+                position += count;
+            }
+        }
+        in.flip();
+        return position;
+    }
+
+    /**
+     * Helper method to pass one record's payload to the handler.
+     *
+     * @param in the buffer, positioned at the start of the payload
+     * @param length the payload length
+     * @param handler the callback for the record
+     * @return false if the payload isn't a valid record
+     */
+    private boolean dispatch(final ByteBuffer in, final int length, final RecordHandler handler) {
+
+        final byte type = in.get();
+        final long sequence = in.getLong();
+        if (sequence <= replayedSequence) {
+            return false;
+        }
+        replayedSequence = sequence;
+
+        // Skip the records a snapshot already covers
+        if (sequence <= lastSequence) {
+            return true;
+        }
+
+        switch (type) {
+            case HOLD:
+                if (length < HOLD_SIZE) {
+                    return false;
+                }
+                final int id = in.getInt();
+                final int startingSeat = in.getInt();
+                final int numberSeats = in.getInt();
+                final long createdTime = in.getLong();
+                final int emailLength = in.getInt();
+                if (emailLength != length - HOLD_SIZE) {
+                    return false;
+                }
+                final String email = new String(in.array(), in.arrayOffset() + in.position(),
+                        emailLength, StandardCharsets.UTF_8);
+                handler.hold(id, email, startingSeat, numberSeats, createdTime);
+                break;
+            case SPLIT_HOLD:
+                if (!dispatchSplitHold(in, length, handler)) {
+                    return false;
+                }
+                break;
+            case RESERVE:
+                if (length < RESERVE_SIZE) {
+                    return false;
+                }
+                handler.reserve(in.getInt(), in.getLong());
+                break;
+            case RELEASE:
+                handler.release(in.getInt());
+                break;
+            case CANCEL:
+                handler.cancel(in.getInt());
+                break;
+            case EXTEND:
+                if (length < EXTEND_SIZE) {
+                    return false;
+                }
+                handler.extend(in.getInt(), in.getLong());
+                break;
+            default:
+                return false;
+        }
+
+        lastSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Helper method to pass a split hold record to the handler.
+     *
+     * @param in the buffer, positioned after the type and sequence number
+     * @param length the payload length
+     * @param handler the callback for the record
+     * @return false if the payload isn't a valid record
+     */
+    private static boolean dispatchSplitHold(final ByteBuffer in, final int length, final RecordHandler handler) {
+
+        if (length < SPLIT_HOLD_SIZE) {
+            return false;
+        }
+        final int id = in.getInt();
+        final long createdTime = in.getLong();
+        final int segmentCount = in.getInt();
+        if ((segmentCount < 1) || (segmentCount > (length - SPLIT_HOLD_SIZE) / 8)) {
+            return false;
+        }
+        final int[] segments = new int[2 * segmentCount];
+        for (int index = 0; index < segments.length; ++index) {
+            segments[index] = in.getInt();
+        }
+        final int emailLength = in.getInt();
+        if (emailLength != length - SPLIT_HOLD_SIZE - 4 * segments.length) {
+            return false;
+        }
+        final String email = new String(in.array(), in.arrayOffset() + in.position(),
+                emailLength, StandardCharsets.UTF_8);
+        handler.splitHold(id, email, segments, createdTime);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "HoldJournal{" +
+                "durability=" + durability +
+                ", lastSequence=" + lastSequence +
+                ", durableSequence=" + durableSequence +
+                '}';
+    }
+}
@@ -0,0 +1,20 @@
+package ticketservice;
+
+import java.util.List;
+
+/**
+ * Callback for seat holds that are released back into the venue, either
+ * because they expired before being reserved or because their customer
+ * released them early with releaseHold().
+ */
+@FunctionalInterface
+public interface HoldReleaseListener {
+
+    /**
+     * Called with a batch of holds that were just released.  This is
+     * called while the service's lock is held, so it should return quickly.
+     *
+     * @param released the holds that were released
+     */
+    void holdsReleased(List<SeatBlock> released);
+}
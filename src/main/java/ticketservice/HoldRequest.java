@@ -0,0 +1,40 @@
+package ticketservice;
+
+/**
+ * A request to find and hold seats, for use in a batch of requests.
+ */
+public final class HoldRequest {
+
+    /** The number of seats to find and hold. */
+    private final int numSeats;
+
+    /** The customer's email. */
+    private final String customerEmail;
+
+    /**
+     * Constructor taking the request fields.
+     *
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     */
+    public HoldRequest(final int numSeats, final String customerEmail) {
+        this.numSeats = numSeats;
+        this.customerEmail = customerEmail;
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    public String getCustomerEmail() {
+        return customerEmail;
+    }
+
+    @Override
+    public String toString() {
+        return "HoldRequest{" +
+                "numSeats=" + numSeats +
+                ", customerEmail='" + customerEmail + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,553 @@
+package ticketservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The holds of a service, keyed by hold ID.
+ *
+ * Each hold is a slot in a set of parallel primitive arrays: ID, created
+ * time, email, and up to MAX_SEGMENTS runs of seats.  The slots of holds
+ * that are reserved or released go on a free list and are reused, and
+ * the index by ID is an open-addressing table of ints that shifts entries
+ * back on removal rather than leaving tombstones.  A second table counts
+ * each customer's holds and seats (matching emails ignoring case), for
+ * the per-customer limits.  So adding and removing holds doesn't create
+ * garbage once the arrays have grown to the peak number of holds; a hold
+ * is only copied out as a SeatBlock when someone asks for it.
+ *
+ * This class is not thread-safe; callers are expected to synchronize.
+ */
+final class HoldTable {
+
+    /** The most runs of seats in a hold. */
+    static final int MAX_SEGMENTS = SplitPartySearch.MAX_SEGMENTS;
+
+    /** The number of holds room is made for at first. */
+    private static final int INITIAL_HOLDS = 16;
+
+    /** Marks an empty slot in an index table. */
+    private static final int EMPTY = 0;
+
+    /** The ID of each hold. */
+    private int[] ids = new int[INITIAL_HOLDS];
+
+    /** The time each hold was created, or last extended (milliseconds). */
+    private long[] createdTimes = new long[INITIAL_HOLDS];
+
+    /** The customer's email for each hold. */
+    private String[] emails = new String[INITIAL_HOLDS];
+
+    /** The number of runs of seats in each hold. */
+    private int[] numSegments = new int[INITIAL_HOLDS];
+
+    /** The total number of seats in each hold. */
+    private int[] numberSeats = new int[INITIAL_HOLDS];
+
+    /** The first seat and number of seats of each run, MAX_SEGMENTS pairs per hold. */
+    private int[] segments = new int[2 * MAX_SEGMENTS * INITIAL_HOLDS];
+
+    /** The next free slot after each free slot, or -1. */
+    private int[] nextFree = new int[INITIAL_HOLDS];
+
+    /** The first free slot, or -1 to use a slot never used before. */
+    private int freeHead = -1;
+
+    /** The number of slots ever used. */
+    private int usedSlots;
+
+    /** The number of holds. */
+    private int size;
+
+    /** Slot + 1 of each hold, by hash of its ID (EMPTY if the entry is free). */
+    private int[] idTable = new int[2 * INITIAL_HOLDS];
+
+    /** The email of each customer with holds, by hash of the email ignoring case (null if free). */
+    private String[] customerEmails = new String[2 * INITIAL_HOLDS];
+
+    /** The number of holds of each customer in the customer table. */
+    private int[] customerHolds = new int[2 * INITIAL_HOLDS];
+
+    /** The number of seats held by each customer in the customer table. */
+    private int[] customerSeats = new int[2 * INITIAL_HOLDS];
+
+    /** The number of customers with holds. */
+    private int numCustomers;
+
+    /**
+     * Get the number of holds.
+     *
+     * @return the number of holds
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add a hold of one run of consecutive seats.
+     *
+     * @param id the hold ID
+     * @param email the customer's email
+     * @param createdTime the time the hold was created (milliseconds)
+     * @param startingSeat the first seat
+     * @param numSeats the number of seats
+     * @return the hold's slot
+     */
+    int add(final int id, final String email, final long createdTime, final int startingSeat, final int numSeats) {
+        final int slot = addSlot(id, email, createdTime, 1);
+        segments[2 * MAX_SEGMENTS * slot] = startingSeat;
+        segments[2 * MAX_SEGMENTS * slot + 1] = numSeats;
+        return finishAdd(slot, numSeats);
+    }
+
+    /**
+     * Add a hold of several runs of seats.
+     *
+     * @param id the hold ID
+     * @param email the customer's email
+     * @param createdTime the time the hold was created (milliseconds)
+     * @param runs the first seat and number of seats of each run, in pairs
+     * @return the hold's slot
+     */
+    int add(final int id, final String email, final long createdTime, final int[] runs) {
+        checkSegments(runs.length / 2);
+        final int slot = addSlot(id, email, createdTime, runs.length / 2);
+        int total = 0;
+        for (int index = 0; index < runs.length; index += 2) {
+            segments[2 * MAX_SEGMENTS * slot + index] = runs[index];
+            segments[2 * MAX_SEGMENTS * slot + index + 1] = runs[index + 1];
+            total += runs[index + 1];
+        }
+        return finishAdd(slot, total);
+    }
+
+    /**
+     * Add a hold saved earlier as a SeatBlock.
+     *
+     * @param block the hold
+     * @return the hold's slot
+     */
+    int add(final SeatBlock block) {
+        checkSegments(block.getNumSegments());
+        final int slot = addSlot(block.getId(), block.getEmail(), block.getCreatedTime(), block.getNumSegments());
+        for (int segment = 0; segment < block.getNumSegments(); ++segment) {
+            segments[2 * MAX_SEGMENTS * slot + 2 * segment] = block.getSegmentStart(segment);
+            segments[2 * MAX_SEGMENTS * slot + 2 * segment + 1] = block.getSegmentLength(segment);
+        }
+        return finishAdd(slot, block.getNumberSeats());
+    }
+
+    /**
+     * Find the slot of a hold.
+     *
+     * @param id the hold ID
+     * @return the slot, or -1 if there's no such hold
+     */
+    int find(final int id) {
+        return idTable[findIdEntry(idTable, id)] - 1;
+    }
+
+    /**
+     * Remove a hold, and free its slot for reuse.
+     *
+     * @param slot the hold's slot
+     */
+    void remove(final int slot) {
+        removeEntry(findIdEntry(idTable, ids[slot]), true);
+        updateCustomer(emails[slot], -1, -numberSeats[slot]);
+        emails[slot] = null;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        --size;
+    }
+
+    /**
+     * Get the ID of a hold.
+     *
+     * @param slot the hold's slot
+     * @return the hold ID
+     */
+    int getId(final int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Get the customer's email for a hold.
+     *
+     * @param slot the hold's slot
+     * @return the email
+     */
+    String getEmail(final int slot) {
+        return emails[slot];
+    }
+
+    /**
+     * Get the time a hold was created, or last extended.
+     *
+     * @param slot the hold's slot
+     * @return the time (milliseconds)
+     */
+    long getCreatedTime(final int slot) {
+        return createdTimes[slot];
+    }
+
+    /**
+     * Set the time a hold's timeout runs from, when it's extended.
+     *
+     * @param slot the hold's slot
+     * @param createdTime the time (milliseconds)
+     */
+    void setCreatedTime(final int slot, final long createdTime) {
+        createdTimes[slot] = createdTime;
+    }
+
+    /**
+     * Get the number of runs of seats in a hold.
+     *
+     * @param slot the hold's slot
+     * @return the number of segments
+     */
+    int getNumSegments(final int slot) {
+        return numSegments[slot];
+    }
+
+    /**
+     * Get the first seat of a run of seats in a hold.
+     *
+     * @param slot the hold's slot
+     * @param segment the segment index
+     * @return the first seat
+     */
+    int getSegmentStart(final int slot, final int segment) {
+        return segments[2 * MAX_SEGMENTS * slot + 2 * segment];
+    }
+
+    /**
+     * Get the number of seats in a run of seats in a hold.
+     *
+     * @param slot the hold's slot
+     * @param segment the segment index
+     * @return the number of seats
+     */
+    int getSegmentLength(final int slot, final int segment) {
+        return segments[2 * MAX_SEGMENTS * slot + 2 * segment + 1];
+    }
+
+    /**
+     * Get the number of holds a customer has.
+     *
+     * @param email the customer's email (matched ignoring case)
+     * @return the number of holds
+     */
+    int getNumHolds(final String email) {
+        final int entry = findCustomerEntry(customerEmails, email);
+        return (customerEmails[entry] == null) ? 0 : customerHolds[entry];
+    }
+
+    /**
+     * Get the number of seats a customer has on hold.
+     *
+     * @param email the customer's email (matched ignoring case)
+     * @return the number of seats held
+     */
+    int getHeldSeats(final String email) {
+        final int entry = findCustomerEntry(customerEmails, email);
+        return (customerEmails[entry] == null) ? 0 : customerSeats[entry];
+    }
+
+    /**
+     * Copy a hold out as a SeatBlock.
+     *
+     * @param slot the hold's slot
+     * @return the hold
+     */
+    SeatBlock toSeatBlock(final int slot) {
+        if (numSegments[slot] == 1) {
+            return new SeatBlock(ids[slot], emails[slot], getSegmentStart(slot, 0),
+                    getSegmentLength(slot, 0), createdTimes[slot]);
+        }
+
+        return new SeatBlock(ids[slot], emails[slot],
+                Arrays.copyOfRange(segments, 2 * MAX_SEGMENTS * slot,
+                        2 * MAX_SEGMENTS * slot + 2 * numSegments[slot]), createdTimes[slot]);
+    }
+
+    /**
+     * Copy every hold out as a SeatBlock, oldest first.
+     *
+     * @return the holds
+     */
+    List<SeatBlock> toSeatBlocks() {
+        return findByCustomer(null);
+    }
+
+    /**
+     * Copy a customer's holds out as SeatBlocks, oldest first.  This looks
+     * at every hold, so it's meant for occasional queries.
+     *
+     * @param email the customer's email (matched ignoring case), or null for every customer
+     * @return the holds
+     */
+    List<SeatBlock> findByCustomer(final String email) {
+        final List<SeatBlock> blocks = new ArrayList<>((email == null) ? size : 4);
+        for (int slot = 0; slot < usedSlots; ++slot) {
+            if ((emails[slot] != null) && ((email == null) || email.equalsIgnoreCase(emails[slot]))) {
+                blocks.add(toSeatBlock(slot));
+            }
+        }
+
+        // Hold IDs go up over time
+        blocks.sort(Comparator.comparingInt(SeatBlock::getId));
+        return blocks;
+    }
+
+    /**
+     * Helper method to take a slot for a new hold and fill in its details.
+     *
+     * @param id the hold ID
+     * @param email the customer's email
+     * @param createdTime the time the hold was created (milliseconds)
+     * @param count the number of segments
+     * @return the slot
+     */
+    private int addSlot(final int id, final String email, final long createdTime, final int count) {
+        final int slot;
+        if (freeHead >= 0) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (usedSlots == ids.length) {
+                growSlots(2 * ids.length);
+            }
+            slot = usedSlots++;
+        }
+
+        ids[slot] = id;
+        emails[slot] = email;
+        createdTimes[slot] = createdTime;
+        numSegments[slot] = count;
+        return slot;
+    }
+
+    /**
+     * Helper method to index a new hold by ID and count it for its customer.
+     *
+     * @param slot the hold's slot
+     * @param numSeats the total number of seats in the hold
+     * @return the slot
+     */
+    private int finishAdd(final int slot, final int numSeats) {
+        numberSeats[slot] = numSeats;
+        ++size;
+        if (2 * size > idTable.length) {
+            idTable = rehashIds(2 * idTable.length);
+        }
+        idTable[findIdEntry(idTable, ids[slot])] = slot + 1;
+        updateCustomer(emails[slot], 1, numSeats);
+        return slot;
+    }
+
+    /**
+     * Helper method to change a customer's counts, adding them to the
+     * customer table on their first hold and dropping them after their last.
+     *
+     * @param email the customer's email
+     * @param holdsDelta the change in the number of holds
+     * @param seatsDelta the change in the number of seats held
+     */
+    private void updateCustomer(final String email, final int holdsDelta, final int seatsDelta) {
+        int entry = findCustomerEntry(customerEmails, email);
+        if (customerEmails[entry] == null) {
+            if (2 * (numCustomers + 1) > customerEmails.length) {
+                rehashCustomers(2 * customerEmails.length);
+                entry = findCustomerEntry(customerEmails, email);
+            }
+            customerEmails[entry] = email;
+            ++numCustomers;
+        }
+
+        customerHolds[entry] += holdsDelta;
+        customerSeats[entry] += seatsDelta;
+        if (customerHolds[entry] == 0) {
+            removeEntry(entry, false);
+            --numCustomers;
+        }
+    }
+
+    /**
+     * Helper method to find the entry for a hold ID: the one holding its
+     * slot, or the empty entry where it would go.
+     *
+     * @param table the ID table
+     * @param id the hold ID
+     * @return the index of the entry
+     */
+    private int findIdEntry(final int[] table, final int id) {
+        final int mask = table.length - 1;
+        for (int entry = mix(id) & mask; ; entry = (entry + 1) & mask) {
+            if ((table[entry] == EMPTY) || (ids[table[entry] - 1] == id)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Helper method to find the entry for a customer: the one holding their
+     * counts, or the empty entry where they would go.
+     *
+     * @param table the customer emails table
+     * @param email the customer's email (matched ignoring case)
+     * @return the index of the entry
+     */
+    private static int findCustomerEntry(final String[] table, final String email) {
+        final int mask = table.length - 1;
+        for (int entry = mix(CustomerIndex.hashIgnoreCase(email)) & mask; ; entry = (entry + 1) & mask) {
+            if ((table[entry] == null) || email.equalsIgnoreCase(table[entry])) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Helper method to empty an entry of an index table, shifting back any
+     * later entries in the same run that belong at or before it.
+     *
+     * @param removed the index of the entry to empty
+     * @param byId whether it's the ID table (else the customer table)
+     */
+    private void removeEntry(final int removed, final boolean byId) {
+        final int length = byId ? idTable.length : customerEmails.length;
+        final int mask = length - 1;
+        int hole = removed;
+        for (int entry = (hole + 1) & mask; !isEmptyEntry(entry, byId); entry = (entry + 1) & mask) {
+            final int home = byId ? (mix(ids[idTable[entry] - 1]) & mask)
+                    : (mix(CustomerIndex.hashIgnoreCase(customerEmails[entry])) & mask);
+            if (((entry - home) & mask) >= ((entry - hole) & mask)) {
+                moveEntry(entry, hole, byId);
+                hole = entry;
+            }
+        }
+
+        if (byId) {
+            idTable[hole] = EMPTY;
+        } else {
+            customerEmails[hole] = null;
+            customerHolds[hole] = 0;
+            customerSeats[hole] = 0;
+        }
+    }
+
+    /**
+     * Helper method to check if an entry of an index table is empty.
+     *
+     * @param entry the index of the entry
+     * @param byId whether it's the ID table (else the customer table)
+     * @return whether the entry is empty
+     */
+    private boolean isEmptyEntry(final int entry, final boolean byId) {
+        return byId ? (idTable[entry] == EMPTY) : (customerEmails[entry] == null);
+    }
+
+    /**
+     * Helper method to move an entry of an index table into an empty one.
+     *
+     * @param from the index of the entry to move
+     * @param to the index of the empty entry
+     * @param byId whether it's the ID table (else the customer table)
+     */
+    private void moveEntry(final int from, final int to, final boolean byId) {
+        if (byId) {
+            idTable[to] = idTable[from];
+        } else {
+            customerEmails[to] = customerEmails[from];
+            customerHolds[to] = customerHolds[from];
+            customerSeats[to] = customerSeats[from];
+        }
+    }
+
+    /**
+     * Helper method to copy the ID table into a larger one.
+     *
+     * @param length the new number of entries
+     * @return the new table
+     */
+    private int[] rehashIds(final int length) {
+        final int[] larger = new int[length];
+        for (int value : idTable) {
+            if (value != EMPTY) {
+                larger[findIdEntry(larger, ids[value - 1])] = value;
+            }
+        }
+        return larger;
+    }
+
+    /**
+     * Helper method to copy the customer table into a larger one.
+     *
+     * @param length the new number of entries
+     */
+    private void rehashCustomers(final int length) {
+        final String[] largerEmails = new String[length];
+        final int[] largerHolds = new int[length];
+        final int[] largerSeats = new int[length];
+        for (int entry = 0; entry < customerEmails.length; ++entry) {
+            if (customerEmails[entry] != null) {
+                final int target = findCustomerEntry(largerEmails, customerEmails[entry]);
+                largerEmails[target] = customerEmails[entry];
+                largerHolds[target] = customerHolds[entry];
+                largerSeats[target] = customerSeats[entry];
+            }
+        }
+        customerEmails = largerEmails;
+        customerHolds = largerHolds;
+        customerSeats = largerSeats;
+    }
+
+    /**
+     * Helper method to make room for more holds.
+     *
+     * @param capacity the new number of slots
+     */
+    private void growSlots(final int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        createdTimes = Arrays.copyOf(createdTimes, capacity);
+        emails = Arrays.copyOf(emails, capacity);
+        numSegments = Arrays.copyOf(numSegments, capacity);
+        numberSeats = Arrays.copyOf(numberSeats, capacity);
+        segments = Arrays.copyOf(segments, 2 * MAX_SEGMENTS * capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+    }
+
+    /**
+     * Helper method to check the number of segments in a hold.
+     *
+     * @param count the number of segments
+     */
+    private static void checkSegments(final int count) {
+        if ((count < 1) || (count > MAX_SEGMENTS)) {
+            throw new IllegalArgumentException("A hold must have between 1 and " + MAX_SEGMENTS + " segments");
+        }
+    }
+
+    /**
+     * Helper method to spread the bits of a hash code, for the tables.
+     *
+     * @param hash the hash code
+     * @return the mixed hash
+     */
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "HoldTable{" +
+                "holds=" + size +
+                ", customers=" + numCustomers +
+                ", slots=" + ids.length +
+                '}';
+    }
+}
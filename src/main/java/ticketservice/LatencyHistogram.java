@@ -0,0 +1,122 @@
+package ticketservice;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values (usually latencies in nanoseconds),
+ * with buckets in the style of HdrHistogram.
+ *
+ * Values below 128 get a bucket each.  Above that, each power of two is
+ * split into 64 buckets, so every value is counted in a bucket no wider
+ * than 1/64 (about 1.6%) of the value.  That covers the whole range of a
+ * long in under 4,000 buckets, and recording a value is a couple of shifts
+ * and an atomic increment, so it's cheap enough to leave on.
+ *
+ * Recording is thread-safe and doesn't lock.  A snapshot taken while
+ * values are being recorded may miss some of them.
+ */
+final class LatencyHistogram {
+
+    /** The number of bits of precision in each bucket. */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of buckets for each power of two. */
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of values with a bucket each. */
+    private static final int SUB_BUCKET_COUNT = 2 * SUB_BUCKET_HALF_COUNT;
+
+    /** The total number of buckets, enough for Long.MAX_VALUE. */
+    static final int NUM_BUCKETS = indexFor(Long.MAX_VALUE) + 1;
+
+    /** The count of values in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    /** The sum of the recorded values. */
+    private final LongAdder sum = new LongAdder();
+
+    /** The smallest recorded value. */
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /** The largest recorded value. */
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Record a value.  Negative values are counted as zero.
+     *
+     * @param value the value
+     */
+    public void record(final long value) {
+
+        final long v = Math.max(0L, value);
+        counts.incrementAndGet(indexFor(v));
+        sum.add(v);
+
+        // Only write the extremes when they change, so most calls don't touch them
+        long current = min.get();
+        while ((v < current) && !min.compareAndSet(current, v)) {
+            current = min.get();
+        }
+        current = max.get();
+        while ((v > current) && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Take an immutable copy of the histogram.
+     *
+     * @return the snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] copy = new long[NUM_BUCKETS];
+        for (int index = 0; index < NUM_BUCKETS; ++index) {
+            copy[index] = counts.get(index);
+        }
+        return new HistogramSnapshot(copy, sum.sum(), min.get(), max.get());
+    }
+
+    /**
+     * Get the bucket for a value.
+     *
+     * @param value the value (not negative)
+     * @return the bucket index
+     */
+    static int indexFor(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // Shift the value so it's in [64, 128), and count the shifts
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + ((shift - 1) << SUB_BUCKET_BITS) +
+                (int) ((value >>> shift) - SUB_BUCKET_HALF_COUNT);
+    }
+
+    /**
+     * Get the largest value counted in a bucket.
+     *
+     * @param index the bucket index
+     * @return the largest value that maps to the bucket
+     */
+    static long highestValueFor(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int offset = index - SUB_BUCKET_COUNT;
+        final int shift = (offset >> SUB_BUCKET_BITS) + 1;
+        final long subBucket = (offset & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1L) << shift) - 1L;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "min=" + min.get() +
+                ", max=" + max.get() +
+                '}';
+    }
+}
@@ -0,0 +1,201 @@
+package ticketservice;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the metrics of a ticket service: latency of
+ * each operation, time spent waiting for the lock, the length of
+ * each search for open seats, and counts of holds and reservations
+ * by outcome.
+ *
+ * Each value is copied separately, so a snapshot taken while the
+ * service is busy may not be exactly consistent across values.
+ */
+public final class MetricsSnapshot {
+
+    /** The service operations that are timed. */
+    public enum Operation {
+        NUM_SEATS_AVAILABLE, FIND_AND_HOLD_SEATS, FIND_AND_HOLD_SEATS_BATCH, RESERVE_SEATS, RESERVE_SEATS_BATCH,
+        RELEASE_HOLD, CANCEL_RESERVATION, EXTEND_HOLD
+    }
+
+    /** The latency of each operation (nanoseconds), indexed by Operation ordinal. */
+    private final HistogramSnapshot[] latencies;
+
+    /** The time spent waiting for the lock (nanoseconds). */
+    private final HistogramSnapshot lockWait;
+
+    /** The number of index nodes visited by each search for open seats. */
+    private final HistogramSnapshot scanLength;
+
+    /** The number of holds made. */
+    private final long holdsSucceeded;
+
+    /** The number of holds split across several runs of seats. */
+    private final long holdsSplit;
+
+    /** The number of failed holds, indexed by FailureReason ordinal. */
+    private final long[] holdFailures;
+
+    /** The number of reservations made. */
+    private final long reservesSucceeded;
+
+    /** The number of failed reservations, indexed by FailureReason ordinal. */
+    private final long[] reserveFailures;
+
+    /** The number of holds that expired without being reserved. */
+    private final long holdsExpired;
+
+    /** The number of holds released early by their customer. */
+    private final long holdsReleased;
+
+    /** The number of reservations cancelled. */
+    private final long reservationsCancelled;
+
+    /** The number of holds extended. */
+    private final long holdsExtended;
+
+    /**
+     * Constructor taking the copied values.  The arrays are kept, so the
+     * caller must not change them afterwards.
+     *
+     * @param latencies the latency of each operation
+     * @param lockWait the time spent waiting for the lock
+     * @param scanLength the length of each search for open seats
+     * @param holdsSucceeded the number of holds made
+     * @param holdsSplit the number of holds split across several runs of seats
+     * @param holdFailures the number of failed holds by reason
+     * @param reservesSucceeded the number of reservations made
+     * @param reserveFailures the number of failed reservations by reason
+     * @param holdsExpired the number of holds that expired
+     * @param holdsReleased the number of holds released early
+     * @param reservationsCancelled the number of reservations cancelled
+     * @param holdsExtended the number of holds extended
+     */
+    MetricsSnapshot(final HistogramSnapshot[] latencies, final HistogramSnapshot lockWait,
+                    final HistogramSnapshot scanLength, final long holdsSucceeded,
+                    final long holdsSplit, final long[] holdFailures, final long reservesSucceeded,
+                    final long[] reserveFailures, final long holdsExpired, final long holdsReleased,
+                    final long reservationsCancelled, final long holdsExtended) {
+        this.latencies = latencies;
+        this.lockWait = lockWait;
+        this.scanLength = scanLength;
+        this.holdsSucceeded = holdsSucceeded;
+        this.holdsSplit = holdsSplit;
+        this.holdFailures = holdFailures;
+        this.reservesSucceeded = reservesSucceeded;
+        this.reserveFailures = reserveFailures;
+        this.holdsExpired = holdsExpired;
+        this.holdsReleased = holdsReleased;
+        this.reservationsCancelled = reservationsCancelled;
+        this.holdsExtended = holdsExtended;
+    }
+
+    /**
+     * Get the latency histogram of an operation.
+     *
+     * @param operation the operation
+     * @return the latencies (nanoseconds)
+     */
+    public HistogramSnapshot getLatency(final Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public HistogramSnapshot getLockWait() {
+        return lockWait;
+    }
+
+    public HistogramSnapshot getScanLength() {
+        return scanLength;
+    }
+
+    public long getHoldsSucceeded() {
+        return holdsSucceeded;
+    }
+
+    /**
+     * Get the number of holds split across several runs of seats.  These
+     * are included in getHoldsSucceeded().
+     *
+     * @return the number of split holds
+     */
+    public long getHoldsSplit() {
+        return holdsSplit;
+    }
+
+    /**
+     * Get the number of holds that failed for a reason.
+     *
+     * @param reason the failure reason
+     * @return the number of failed holds
+     */
+    public long getHoldFailures(final FailureReason reason) {
+        return holdFailures[reason.ordinal()];
+    }
+
+    /**
+     * Get the number of holds that failed for any reason.
+     *
+     * @return the number of failed holds
+     */
+    public long getHoldFailures() {
+        return Arrays.stream(holdFailures).sum();
+    }
+
+    public long getReservesSucceeded() {
+        return reservesSucceeded;
+    }
+
+    /**
+     * Get the number of reservations that failed for a reason.
+     *
+     * @param reason the failure reason
+     * @return the number of failed reservations
+     */
+    public long getReserveFailures(final FailureReason reason) {
+        return reserveFailures[reason.ordinal()];
+    }
+
+    /**
+     * Get the number of reservations that failed for any reason.
+     *
+     * @return the number of failed reservations
+     */
+    public long getReserveFailures() {
+        return Arrays.stream(reserveFailures).sum();
+    }
+
+    public long getHoldsExpired() {
+        return holdsExpired;
+    }
+
+    public long getHoldsReleased() {
+        return holdsReleased;
+    }
+
+    public long getReservationsCancelled() {
+        return reservationsCancelled;
+    }
+
+    public long getHoldsExtended() {
+        return holdsExtended;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "findAndHoldSeats=" + getLatency(Operation.FIND_AND_HOLD_SEATS) +
+                ", reserveSeats=" + getLatency(Operation.RESERVE_SEATS) +
+                ", lockWait=" + lockWait +
+                ", holdsSucceeded=" + holdsSucceeded +
+                ", holdsSplit=" + holdsSplit +
+                ", holdFailures=" + getHoldFailures() +
+                ", reservesSucceeded=" + reservesSucceeded +
+                ", reserveFailures=" + getReserveFailures() +
+                ", holdsExpired=" + holdsExpired +
+                ", holdsReleased=" + holdsReleased +
+                ", reservationsCancelled=" + reservationsCancelled +
+                ", holdsExtended=" + holdsExtended +
+                '}';
+    }
+}
@@ -0,0 +1,552 @@
+package ticketservice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for a service's reservations, so the heap doesn't grow
+ * with the number of seats sold.
+ *
+ * Each reservation is a fixed-size record in a direct buffer, in the order
+ * they were made: created time, ID, where its email is, the record of the
+ * customer's previous reservation, whether it's been cancelled, and up to
+ * MAX_SEGMENTS runs of seats.
+ * Emails are kept as UTF-8 in a second buffer, and a customer's next
+ * reservation reuses the bytes of the last one if the email is the same.
+ * Two open-addressing tables of ints, also off-heap, index the records:
+ * one by reservation ID, and one by customer (lower-case email), which
+ * points at the customer's latest record, so their reservations can be
+ * found by following the chain back.  The buffers double when they fill.
+ *
+ * Records are read through ReservationView flyweights, or copied out as
+ * SeatBlocks.  Changes are made under the service's lock; the buffers are
+ * replaced, not changed, when they grow, so a view can read a record
+ * without the lock.
+ */
+final class ReservationStore {
+
+    /** The most runs of seats in a reservation. */
+    static final int MAX_SEGMENTS = SplitPartySearch.MAX_SEGMENTS;
+
+    /** Offset of the created time (long). */
+    private static final int CREATED_TIME = 0;
+
+    /** Offset of the reservation ID (int). */
+    private static final int ID = 8;
+
+    /** Offset of the email's position in the email buffer (int). */
+    private static final int EMAIL_OFFSET = 12;
+
+    /** Offset of the record of the customer's previous reservation, or -1 (int). */
+    private static final int PREVIOUS = 16;
+
+    /** Offset of the email's length in bytes (short). */
+    private static final int EMAIL_LENGTH = 20;
+
+    /** Offset of the number of segments (byte). */
+    private static final int SEGMENT_COUNT = 22;
+
+    /** Offset of the flags (byte). */
+    private static final int FLAGS = 23;
+
+    /** Flag set on a cancelled reservation. */
+    private static final byte CANCELLED = 1;
+
+    /** Offset of the segments: first seat and number of seats (ints), in pairs. */
+    private static final int SEGMENTS = 24;
+
+    /** The size of a record. */
+    static final int RECORD_SIZE = SEGMENTS + 8 * MAX_SEGMENTS;
+
+    /** The number of records room is made for at first. */
+    private static final int INITIAL_RECORDS = 64;
+
+    /** Marks an empty slot in an index table. */
+    private static final int EMPTY = 0;
+
+    /** The records. */
+    private volatile ByteBuffer records;
+
+    /** The number of records, including cancelled ones. */
+    private int numRecords;
+
+    /** The number of cancelled records. */
+    private int numCancelled;
+
+    /** The emails, as UTF-8. */
+    private volatile ByteBuffer emails;
+
+    /** The number of bytes used in the email buffer. */
+    private int emailsEnd;
+
+    /** Record number + 1 for each reservation ID, by hash of the ID (EMPTY if the slot is free). */
+    private ByteBuffer idTable;
+
+    /** Record number + 1 of each customer's latest reservation, by hash of the lower-case email. */
+    private ByteBuffer customerTable;
+
+    /** The number of customers in the customer table. */
+    private int numCustomers;
+
+    /**
+     * Default constructor.
+     */
+    ReservationStore() {
+        records = allocate(INITIAL_RECORDS * RECORD_SIZE);
+        emails = allocate(INITIAL_RECORDS * 32);
+        idTable = allocate(4 * 2 * INITIAL_RECORDS);
+        customerTable = allocate(4 * 2 * INITIAL_RECORDS);
+    }
+
+    /**
+     * Get the number of reservations that haven't been cancelled.
+     *
+     * @return the number of reservations
+     */
+    int size() {
+        return numRecords - numCancelled;
+    }
+
+    /**
+     * Get the number of off-heap bytes the store uses.
+     *
+     * @return the capacity of the buffers, in bytes
+     */
+    long getOffHeapBytes() {
+        return (long) records.capacity() + emails.capacity() + idTable.capacity() + customerTable.capacity();
+    }
+
+    /**
+     * Add a reservation.
+     *
+     * @param block the reservation
+     * @return its record number
+     */
+    int add(final SeatBlock block) {
+
+        if (block.getNumSegments() > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("A reservation can't have more than " + MAX_SEGMENTS + " segments");
+        }
+
+        final int record = addRecord(block.getId(), block.getEmail(), block.getCreatedTime(), block.getNumSegments());
+        for (int segment = 0; segment < block.getNumSegments(); ++segment) {
+            putSegment(record, segment, block.getSegmentStart(segment), block.getSegmentLength(segment));
+        }
+        return record;
+    }
+
+    /**
+     * Add a reservation for a hold, copying it straight from the hold
+     * table.
+     *
+     * @param holds the hold table
+     * @param slot the hold's slot
+     * @param createdTime the time the reservation was made (milliseconds)
+     * @return its record number
+     */
+    int add(final HoldTable holds, final int slot, final long createdTime) {
+        final int numSegments = holds.getNumSegments(slot);
+        final int record = addRecord(holds.getId(slot), holds.getEmail(slot), createdTime, numSegments);
+        for (int segment = 0; segment < numSegments; ++segment) {
+            putSegment(record, segment, holds.getSegmentStart(slot, segment), holds.getSegmentLength(slot, segment));
+        }
+        return record;
+    }
+
+    /**
+     * Helper method to add a record, without its segments, and index it.
+     *
+     * @param id the reservation ID
+     * @param email the customer's email
+     * @param createdTime the time the reservation was made (milliseconds)
+     * @param numSegments the number of segments
+     * @return the record number
+     */
+    private int addRecord(final int id, final String email, final long createdTime, final int numSegments) {
+
+        if ((numRecords + 1) * RECORD_SIZE > records.capacity()) {
+            records = grow(records, records.capacity() * 2);
+        }
+        if (2 * (numRecords + 1) > idTable.capacity() / 4) {
+            idTable = rehash(idTable, idTable.capacity() * 2, true);
+        }
+        if (2 * (numCustomers + 1) > customerTable.capacity() / 4) {
+            customerTable = rehash(customerTable, customerTable.capacity() * 2, false);
+        }
+
+        // Find the customer's latest reservation, to chain this one to it
+        final int customerSlot = findCustomerSlot(customerTable, email);
+        final int previous = customerTable.getInt(customerSlot) - 1;
+
+        // Reuse the bytes of the customer's last email if it's the same
+        final boolean sameEmail = (previous >= 0) && matchesEmail(previous, email, false);
+        final byte[] bytes = sameEmail ? null : email.getBytes(StandardCharsets.UTF_8);
+        if ((bytes != null) && (bytes.length > 0xFFFF)) {
+            throw new IllegalArgumentException("Email is too long to store");
+        }
+
+        final int record = numRecords++;
+        final int base = record * RECORD_SIZE;
+        final ByteBuffer buffer = records;
+        buffer.putLong(base + CREATED_TIME, createdTime);
+        buffer.putInt(base + ID, id);
+        buffer.putInt(base + PREVIOUS, previous);
+        if (sameEmail) {
+            buffer.putInt(base + EMAIL_OFFSET, buffer.getInt(previous * RECORD_SIZE + EMAIL_OFFSET));
+            buffer.putShort(base + EMAIL_LENGTH, buffer.getShort(previous * RECORD_SIZE + EMAIL_LENGTH));
+        } else {
+            if (emailsEnd + bytes.length > emails.capacity()) {
+                emails = grow(emails, Math.max(emails.capacity() * 2, emailsEnd + bytes.length));
+            }
+            final ByteBuffer target = emails.duplicate();
+            target.position(emailsEnd);
+            target.put(bytes);
+            buffer.putInt(base + EMAIL_OFFSET, emailsEnd);
+            buffer.putShort(base + EMAIL_LENGTH, (short) bytes.length);
+            emailsEnd += bytes.length;
+        }
+        buffer.put(base + SEGMENT_COUNT, (byte) numSegments);
+
+        // Index the record by ID, and make it the customer's latest
+        idTable.putInt(findIdSlot(idTable, id), record + 1);
+        if (previous < 0) {
+            ++numCustomers;
+        }
+        customerTable.putInt(customerSlot, record + 1);
+        return record;
+    }
+
+    /**
+     * Find the record of a reservation.
+     *
+     * @param id the reservation ID
+     * @return the record number, or -1 if there's no such reservation (or it was cancelled)
+     */
+    int find(final int id) {
+        final int record = idTable.getInt(findIdSlot(idTable, id)) - 1;
+        return ((record >= 0) && !isCancelled(record)) ? record : -1;
+    }
+
+    /**
+     * Find a customer's reservations, not counting cancelled ones.
+     *
+     * @param email the customer's email (matched ignoring case)
+     * @return the record numbers, oldest first
+     */
+    int[] findByCustomer(final String email) {
+
+        int count = 0;
+        final int latest = customerTable.getInt(findCustomerSlot(customerTable, email)) - 1;
+        for (int record = latest; record >= 0; record = getPrevious(record)) {
+            if (!isCancelled(record)) {
+                ++count;
+            }
+        }
+
+        final int[] found = new int[count];
+        for (int record = latest; record >= 0; record = getPrevious(record)) {
+            if (!isCancelled(record)) {
+                found[--count] = record;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Cancel a reservation.  Its record stays in the store, so views of
+     * it can still be read, but it's no longer found or copied out.
+     *
+     * @param record the record number
+     */
+    void cancel(final int record) {
+        if (!isCancelled(record)) {
+            records.put(record * RECORD_SIZE + FLAGS, CANCELLED);
+            ++numCancelled;
+        }
+    }
+
+    /**
+     * Check if a reservation was cancelled.
+     *
+     * @param record the record number
+     * @return whether it was cancelled
+     */
+    boolean isCancelled(final int record) {
+        return (records.get(record * RECORD_SIZE + FLAGS) & CANCELLED) != 0;
+    }
+
+    /**
+     * Check if a reservation is a customer's, without decoding its email
+     * when it's ASCII.
+     *
+     * @param record the record number
+     * @param email the customer's email (matched ignoring case)
+     * @return whether the reservation is the customer's
+     */
+    boolean isCustomer(final int record, final String email) {
+        return matchesEmail(record, email, true);
+    }
+
+    /**
+     * Copy every reservation that hasn't been cancelled out as a
+     * SeatBlock, oldest first.
+     *
+     * @return the reservations
+     */
+    List<SeatBlock> toSeatBlocks() {
+        final List<SeatBlock> blocks = new ArrayList<>(size());
+        for (int record = 0; record < numRecords; ++record) {
+            if (!isCancelled(record)) {
+                blocks.add(toSeatBlock(record));
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Copy a reservation out as a SeatBlock.
+     *
+     * @param record the record number
+     * @return the reservation
+     */
+    SeatBlock toSeatBlock(final int record) {
+        final int numSegments = getNumSegments(record);
+        if (numSegments == 1) {
+            return new SeatBlock(getId(record), getEmail(record), getSegmentStart(record, 0),
+                    getSegmentLength(record, 0), getCreatedTime(record));
+        }
+
+        final int[] segments = new int[2 * numSegments];
+        for (int segment = 0; segment < numSegments; ++segment) {
+            segments[2 * segment] = getSegmentStart(record, segment);
+            segments[2 * segment + 1] = getSegmentLength(record, segment);
+        }
+        return new SeatBlock(getId(record), getEmail(record), segments, getCreatedTime(record));
+    }
+
+    /**
+     * Get the ID of a reservation.
+     *
+     * @param record the record number
+     * @return the reservation ID
+     */
+    int getId(final int record) {
+        return records.getInt(record * RECORD_SIZE + ID);
+    }
+
+    /**
+     * Get the time a reservation was made.
+     *
+     * @param record the record number
+     * @return the time (milliseconds)
+     */
+    long getCreatedTime(final int record) {
+        return records.getLong(record * RECORD_SIZE + CREATED_TIME);
+    }
+
+    /**
+     * Get the customer's email for a reservation.
+     *
+     * @param record the record number
+     * @return the email
+     */
+    String getEmail(final int record) {
+        final ByteBuffer buffer = records;
+        final int offset = buffer.getInt(record * RECORD_SIZE + EMAIL_OFFSET);
+        final int length = buffer.getShort(record * RECORD_SIZE + EMAIL_LENGTH) & 0xFFFF;
+        final byte[] bytes = new byte[length];
+        final ByteBuffer source = emails.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of runs of seats in a reservation.
+     *
+     * @param record the record number
+     * @return the number of segments
+     */
+    int getNumSegments(final int record) {
+        return records.get(record * RECORD_SIZE + SEGMENT_COUNT);
+    }
+
+    /**
+     * Get the first seat of a run of seats in a reservation.
+     *
+     * @param record the record number
+     * @param segment the segment index
+     * @return the first seat
+     */
+    int getSegmentStart(final int record, final int segment) {
+        return records.getInt(record * RECORD_SIZE + SEGMENTS + 8 * segment);
+    }
+
+    /**
+     * Get the number of seats in a run of seats in a reservation.
+     *
+     * @param record the record number
+     * @param segment the segment index
+     * @return the number of seats
+     */
+    int getSegmentLength(final int record, final int segment) {
+        return records.getInt(record * RECORD_SIZE + SEGMENTS + 8 * segment + 4);
+    }
+
+    /**
+     * Helper method to set a run of seats in a record.
+     *
+     * @param record the record number
+     * @param segment the segment index
+     * @param startingSeat the first seat
+     * @param numberSeats the number of seats
+     */
+    private void putSegment(final int record, final int segment, final int startingSeat, final int numberSeats) {
+        records.putInt(record * RECORD_SIZE + SEGMENTS + 8 * segment, startingSeat);
+        records.putInt(record * RECORD_SIZE + SEGMENTS + 8 * segment + 4, numberSeats);
+    }
+
+    /**
+     * Helper method to check a record's email against a customer's,
+     * comparing the stored bytes directly when they're ASCII, so probing
+     * the customer table doesn't decode every email it passes.
+     *
+     * @param record the record number
+     * @param email the customer's email
+     * @param ignoreCase whether to ignore case
+     * @return whether the emails match
+     */
+    private boolean matchesEmail(final int record, final String email, final boolean ignoreCase) {
+        final ByteBuffer source = emails;
+        final int offset = records.getInt(record * RECORD_SIZE + EMAIL_OFFSET);
+        final int length = records.getShort(record * RECORD_SIZE + EMAIL_LENGTH) & 0xFFFF;
+        for (int index = 0; (index < length) && (index < email.length()); ++index) {
+            final byte stored = source.get(offset + index);
+            final char wanted = email.charAt(index);
+            if ((stored < 0) || (wanted >= 0x80)) {
+                // Not ASCII, so decode it
+                return ignoreCase ? email.equalsIgnoreCase(getEmail(record)) : email.equals(getEmail(record));
+            } else if ((stored != wanted) &&
+                    (!ignoreCase || (Character.toLowerCase((char) stored) != Character.toLowerCase(wanted)))) {
+                return false;
+            }
+        }
+        return length == email.length();
+    }
+
+    /**
+     * Helper method to get the record of the customer's previous reservation.
+     *
+     * @param record the record number
+     * @return the previous record number, or -1 if there's none
+     */
+    private int getPrevious(final int record) {
+        return records.getInt(record * RECORD_SIZE + PREVIOUS);
+    }
+
+    /**
+     * Helper method to find the slot for a reservation ID: the one holding
+     * its record, or the empty slot where it would go.
+     *
+     * @param table the ID table
+     * @param id the reservation ID
+     * @return the byte offset of the slot
+     */
+    private int findIdSlot(final ByteBuffer table, final int id) {
+        final int mask = table.capacity() / 4 - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table.getInt(4 * slot);
+            if ((entry == EMPTY) || (getId(entry - 1) == id)) {
+                return 4 * slot;
+            }
+        }
+    }
+
+    /**
+     * Helper method to find the slot for a customer: the one holding their
+     * latest record, or the empty slot where it would go.
+     *
+     * @param table the customer table
+     * @param email the customer's email (matched ignoring case)
+     * @return the byte offset of the slot
+     */
+    private int findCustomerSlot(final ByteBuffer table, final String email) {
+        final int mask = table.capacity() / 4 - 1;
+        for (int slot = mix(CustomerIndex.hashIgnoreCase(email)) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table.getInt(4 * slot);
+            if ((entry == EMPTY) || matchesEmail(entry - 1, email, true)) {
+                return 4 * slot;
+            }
+        }
+    }
+
+    /**
+     * Helper method to copy an index table into a larger one.
+     *
+     * @param table the table
+     * @param capacity the new size, in bytes
+     * @param byId whether it's the ID table (else the customer table)
+     * @return the new table
+     */
+    private ByteBuffer rehash(final ByteBuffer table, final int capacity, final boolean byId) {
+        final ByteBuffer larger = allocate(capacity);
+        for (int offset = 0; offset < table.capacity(); offset += 4) {
+            final int entry = table.getInt(offset);
+            if (entry != EMPTY) {
+                final int slot = byId ? findIdSlot(larger, getId(entry - 1))
+                        : findCustomerSlot(larger, getEmail(entry - 1));
+                larger.putInt(slot, entry);
+            }
+        }
+        return larger;
+    }
+
+    /**
+     * Helper method to copy a buffer into a larger one.
+     *
+     * @param buffer the buffer
+     * @param capacity the new size, in bytes
+     * @return the new buffer
+     */
+    private static ByteBuffer grow(final ByteBuffer buffer, final int capacity) {
+        final ByteBuffer larger = allocate(capacity);
+        final ByteBuffer source = buffer.duplicate();
+        source.clear();
+        larger.put(source);
+        larger.clear();
+        return larger;
+    }
+
+    /**
+     * Helper method to allocate a zeroed, off-heap buffer.
+     *
+     * @param capacity the size, in bytes
+     * @return the buffer
+     */
+    private static ByteBuffer allocate(final int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Helper method to spread the bits of a hash code, for the tables.
+     *
+     * @param hash the hash code
+     * @return the mixed hash
+     */
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationStore{" +
+                "reservations=" + size() +
+                ", customers=" + numCustomers +
+                ", offHeapBytes=" + getOffHeapBytes() +
+                '}';
+    }
+}
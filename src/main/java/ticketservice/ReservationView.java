@@ -0,0 +1,136 @@
+package ticketservice;
+
+/**
+ * A read-only view of one reservation in a service's off-heap reservation
+ * store.  The view holds no copy of the reservation: each getter reads
+ * the store's record, so the view is cheap to hand out.  Use toSeatBlock()
+ * to keep a copy.
+ */
+public final class ReservationView {
+
+    /** The store holding the reservation. */
+    private final ReservationStore store;
+
+    /** The reservation's record number in the store. */
+    private final int record;
+
+    /**
+     * Constructor taking the store and record.
+     *
+     * @param store the store holding the reservation
+     * @param record the reservation's record number
+     */
+    ReservationView(final ReservationStore store, final int record) {
+        this.store = store;
+        this.record = record;
+    }
+
+    public int getId() {
+        return store.getId(record);
+    }
+
+    public long getCreatedTime() {
+        return store.getCreatedTime(record);
+    }
+
+    /**
+     * Get the customer's email.  Each call decodes it from the store.
+     *
+     * @return the email
+     */
+    public String getEmail() {
+        return store.getEmail(record);
+    }
+
+    public int getStartingSeat() {
+        return store.getSegmentStart(record, 0);
+    }
+
+    /**
+     * Get the total number of seats reserved.
+     *
+     * @return the number of seats, across all segments
+     */
+    public int getNumberSeats() {
+        int total = 0;
+        for (int segment = store.getNumSegments(record) - 1; segment >= 0; --segment) {
+            total += store.getSegmentLength(record, segment);
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of runs of consecutive seats reserved.
+     *
+     * @return the number of segments
+     */
+    public int getNumSegments() {
+        return store.getNumSegments(record);
+    }
+
+    /**
+     * Get the first seat of a segment.
+     *
+     * @param index the segment index
+     * @return the first seat of the segment
+     */
+    public int getSegmentStart(final int index) {
+        return store.getSegmentStart(record, checkSegment(index));
+    }
+
+    /**
+     * Get the number of seats in a segment.
+     *
+     * @param index the segment index
+     * @return the number of seats in the segment
+     */
+    public int getSegmentLength(final int index) {
+        return store.getSegmentLength(record, checkSegment(index));
+    }
+
+    /**
+     * Check if the reservation has been cancelled since the view was
+     * handed out.
+     *
+     * @return whether the reservation was cancelled
+     */
+    public boolean isCancelled() {
+        return store.isCancelled(record);
+    }
+
+    /**
+     * Copy the reservation out of the store.
+     *
+     * @return the reservation
+     */
+    public SeatBlock toSeatBlock() {
+        return store.toSeatBlock(record);
+    }
+
+    /**
+     * Helper method to check a segment index.
+     *
+     * @param index the segment index
+     * @return the index
+     */
+    private int checkSegment(final int index) {
+        if ((index < 0) || (index >= store.getNumSegments(record))) {
+            throw new IndexOutOfBoundsException("Segment " + index + " of a " +
+                    store.getNumSegments(record) + "-segment reservation");
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationView{" +
+                "id=" + getId() +
+                ", createdTime=" + getCreatedTime() +
+                ", email='" + getEmail() + '\'' +
+                ", startingSeat=" + getStartingSeat() +
+                ", numberSeats=" + getNumberSeats() +
+                ", segments=" + getNumSegments() +
+                ", cancelled=" + isCancelled() +
+                '}';
+    }
+}
@@ -0,0 +1,40 @@
+package ticketservice;
+
+/**
+ * A request to commit held seats, for use in a batch of requests.
+ */
+public final class ReserveRequest {
+
+    /** The seat hold identifier. */
+    private final int seatHoldId;
+
+    /** The email of the customer the hold is assigned to. */
+    private final String customerEmail;
+
+    /**
+     * Constructor taking the request fields.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     */
+    public ReserveRequest(final int seatHoldId, final String customerEmail) {
+        this.seatHoldId = seatHoldId;
+        this.customerEmail = customerEmail;
+    }
+
+    public int getSeatHoldId() {
+        return seatHoldId;
+    }
+
+    public String getCustomerEmail() {
+        return customerEmail;
+    }
+
+    @Override
+    public String toString() {
+        return "ReserveRequest{" +
+                "seatHoldId=" + seatHoldId +
+                ", customerEmail='" + customerEmail + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package ticketservice;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A strategy for choosing which seats to hold.  The allocator keeps its
+ * own index of the open seats: the service tells it whenever seats are
+ * taken or freed, and asks it for a block when a customer wants seats.
+ *
+ * Each service needs its own allocator, created for its venue.
+ * Allocators are not thread-safe; the service calls them under its lock.
+ */
+public interface SeatAllocator {
+
+    /**
+     * Get the number of seats the allocator covers.
+     *
+     * @return the number of seats
+     */
+    int getNumSeats();
+
+    /**
+     * Choose a block of consecutive open seats.  The seats aren't taken
+     * until markUsed() is called.
+     *
+     * @param numSeats the number of seats needed
+     * @return the first seat of the block, or -1 if there's no suitable block
+     */
+    int findSeats(int numSeats);
+
+    /**
+     * Mark a block of consecutive seats as used (held or reserved).
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    void markUsed(int startingSeat, int numberSeats);
+
+    /**
+     * Mark a block of consecutive seats as free.
+     *
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     */
+    void markFree(int startingSeat, int numberSeats);
+
+    /**
+     * Set every seat to free or used at once, e.g. when loading a snapshot.
+     *
+     * @param free whether each seat is free
+     */
+    void rebuild(IntPredicate free);
+
+    /**
+     * Get the amount of work done by the last call to findSeats(), in
+     * whatever unit suits the allocator, for the service's metrics.
+     *
+     * @return the length of the last search
+     */
+    int getLastSearchLength();
+
+    /**
+     * Get the longest block findSeats() could find now, so the service can
+     * turn away larger requests without searching.  It may overstate the
+     * longest block, but never understate it.
+     *
+     * @return the longest block of open seats, or Integer.MAX_VALUE if the
+     *         allocator doesn't keep track of it
+     */
+    default int getLongestRun() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -1,7 +1,9 @@
 package ticketservice;
 
 /**
- * Details on a hold or reservation for a collection of seats.
+ * Details on a hold or reservation for a collection of seats.  Most
+ * blocks are one run of consecutive seats; a split party's block has
+ * several runs (segments).
  */
 public final class SeatBlock {
 
@@ -11,6 +13,9 @@ public final class SeatBlock {
     private final int startingSeat;
     private final int numberSeats;
 
+    /** The first seat and length of each segment, or null if there's only one. */
+    private final int[] segments;
+
     /**
      * Make the default constructor private.
      */
@@ -29,11 +34,53 @@ public final class SeatBlock {
      * @param numberSeats the number of seats
      */
     public SeatBlock(final int id, final String email, final int startingSeat, final int numberSeats) {
+        this(id, email, startingSeat, numberSeats, System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor taking the time the block was created, for restoring
+     * a block that was saved earlier.
+     *
+     * @param id the block ID
+     * @param email the customer's email
+     * @param startingSeat the starting seat number
+     * @param numberSeats the number of seats
+     * @param createdTime the time the block was created (milliseconds)
+     */
+    public SeatBlock(final int id, final String email, final int startingSeat, final int numberSeats,
+                     final long createdTime) {
         this.id = id;
-        createdTime = System.currentTimeMillis();
+        this.createdTime = createdTime;
         this.email = email;
         this.startingSeat = startingSeat;
         this.numberSeats = numberSeats;
+        this.segments = null;
+    }
+
+    /**
+     * Constructor for a block made of several runs of consecutive seats.
+     *
+     * @param id the block ID
+     * @param email the customer's email
+     * @param segments the first seat and number of seats of each run, in pairs
+     * @param createdTime the time the block was created (milliseconds)
+     */
+    public SeatBlock(final int id, final String email, final int[] segments, final long createdTime) {
+
+        if ((segments == null) || (segments.length < 2) || ((segments.length & 1) != 0)) {
+            throw new IllegalArgumentException("Illegal argument to SeatBlock c'tor: segments must be pairs of seat and count");
+        }
+
+        this.id = id;
+        this.createdTime = createdTime;
+        this.email = email;
+        this.startingSeat = segments[0];
+        int total = 0;
+        for (int index = 1; index < segments.length; index += 2) {
+            total += segments[index];
+        }
+        this.numberSeats = total;
+        this.segments = (segments.length == 2) ? null : segments.clone();
     }
 
     public int getId() {
@@ -56,10 +103,58 @@ public final class SeatBlock {
         return startingSeat;
     }
 
+    /**
+     * Get the total number of seats in the block.
+     *
+     * @return the number of seats, across all segments
+     */
     public int getNumberSeats() {
         return numberSeats;
     }
 
+    /**
+     * Get the number of runs of consecutive seats in the block.
+     *
+     * @return the number of segments
+     */
+    public int getNumSegments() {
+        return (segments == null) ? 1 : (segments.length >> 1);
+    }
+
+    /**
+     * Get the first seat of a segment.
+     *
+     * @param index the segment index
+     * @return the first seat of the segment
+     */
+    public int getSegmentStart(final int index) {
+        return (segments == null) ? checkSingle(index, startingSeat) : segments[2 * index];
+    }
+
+    /**
+     * Get the number of seats in a segment.
+     *
+     * @param index the segment index
+     * @return the number of seats in the segment
+     */
+    public int getSegmentLength(final int index) {
+        return (segments == null) ? checkSingle(index, numberSeats) : segments[2 * index + 1];
+    }
+
+    /**
+     * Helper method to check the segment index of a single-segment block.
+     *
+     * @param index the segment index
+     * @param value the value to return
+     * @return the value
+     */
+    private static int checkSingle(final int index, final int value) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException("Segment " + index + " of a single-segment block");
+        }
+        return value;
+    }
+
     @Override
     public String toString() {
         return "SeatBlock{" +
@@ -68,6 +163,7 @@ public final class SeatBlock {
                 ", email='" + email + '\'' +
                 ", startingSeat=" + startingSeat +
                 ", numberSeats=" + numberSeats +
+                ", segments=" + getNumSegments() +
                 '}';
     }
 }
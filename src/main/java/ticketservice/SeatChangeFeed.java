@@ -0,0 +1,157 @@
+package ticketservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The change feed of a service's seat map: the runs of seats changed in
+ * the current batch, and a ring of the most recent deltas.
+ *
+ * Changes are recorded, and deltas published, under the service's lock.
+ * The ring can be read from any thread without the lock: each slot holds
+ * an immutable delta that knows its own version, so a reader can tell if
+ * a slot it wants has been overwritten.  Runs recorded next to the last
+ * one, with the same status, are merged.
+ */
+final class SeatChangeFeed {
+
+    /** The retained deltas, by version modulo the capacity. */
+    private final AtomicReferenceArray<SeatMapDelta> ring;
+
+    /** Mask to turn a version into a ring slot. */
+    private final int mask;
+
+    /** The runs changed in the current batch: first seat, number of seats and status ordinal. */
+    private int[] runs = new int[3 * 16];
+
+    /** The number of runs in the current batch. */
+    private int numRuns;
+
+    /** The version of the latest delta. */
+    private volatile long latestVersion;
+
+    /** The earliest version the feed can resume from (it has no deltas up to it). */
+    private volatile long restartVersion;
+
+    /**
+     * Constructor taking the number of deltas to retain.
+     *
+     * @param capacity the number of deltas to retain (a power of two)
+     * @param version the version of the seat map when the feed starts
+     */
+    SeatChangeFeed(final int capacity, final long version) {
+        if ((capacity < 1) || (Integer.bitCount(capacity) != 1)) {
+            throw new IllegalArgumentException("Illegal argument to SeatChangeFeed c'tor: capacity must be a power of two");
+        }
+        ring = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        latestVersion = version;
+        restartVersion = version;
+    }
+
+    /**
+     * Record a run of seats that changed status in the current batch.
+     *
+     * @param startingSeat the first seat of the run
+     * @param numberSeats the number of seats in the run
+     * @param status the new status
+     */
+    void record(final int startingSeat, final int numberSeats, final SeatStatus.Status status) {
+
+        // Extend the last run if this one carries straight on from it
+        if (numRuns > 0) {
+            final int last = 3 * (numRuns - 1);
+            if ((runs[last + 2] == status.ordinal()) && (runs[last] + runs[last + 1] == startingSeat)) {
+                runs[last + 1] += numberSeats;
+                return;
+            }
+        }
+
+        if (3 * (numRuns + 1) > runs.length) {
+            runs = Arrays.copyOf(runs, 2 * runs.length);
+        }
+        runs[3 * numRuns] = startingSeat;
+        runs[3 * numRuns + 1] = numberSeats;
+        runs[3 * numRuns + 2] = status.ordinal();
+        ++numRuns;
+    }
+
+    /**
+     * Encode the runs of the current batch as the delta for a new version,
+     * and add it to the ring.
+     *
+     * @param version the new version (one more than the latest)
+     * @return the delta
+     */
+    SeatMapDelta publish(final long version) {
+        final SeatMapDelta delta = SeatMapDelta.encode(version, runs, numRuns);
+        numRuns = 0;
+        ring.set((int) version & mask, delta);
+        latestVersion = version;
+        return delta;
+    }
+
+    /**
+     * Start the feed again at a new version that has no delta, dropping
+     * the runs of the current batch, e.g. when the changes that led to it
+     * weren't recorded.  Subscribers behind that version have to start
+     * again from the seat map.
+     *
+     * @param version the new version (one more than the latest)
+     */
+    void restart(final long version) {
+        numRuns = 0;
+        restartVersion = version;
+        latestVersion = version;
+    }
+
+    /**
+     * Get the deltas after a version, in order.
+     *
+     * @param afterVersion the version the caller has
+     * @return the deltas up to the latest version (empty if the caller is
+     *         up to date), or null if some have dropped out of the ring or
+     *         the version is unknown
+     */
+    List<SeatMapDelta> getChangesSince(final long afterVersion) {
+
+        final long latest = latestVersion;
+        if ((afterVersion > latest) || (afterVersion < restartVersion) || (latest - afterVersion > ring.length())) {
+            return null;
+        } else if (afterVersion == latest) {
+            return Collections.emptyList();
+        }
+
+        final List<SeatMapDelta> deltas = new ArrayList<>((int) (latest - afterVersion));
+        for (long version = afterVersion + 1L; version <= latest; ++version) {
+            final SeatMapDelta delta = ring.get((int) version & mask);
+            if ((delta == null) || (delta.getVersion() != version)) {
+                // Overwritten by a newer delta while we read
+                return null;
+            }
+            deltas.add(delta);
+        }
+
+        return deltas;
+    }
+
+    /**
+     * Get the number of deltas retained.
+     *
+     * @return the capacity of the ring
+     */
+    int getCapacity() {
+        return ring.length();
+    }
+
+    @Override
+    public String toString() {
+        return "SeatChangeFeed{" +
+                "capacity=" + ring.length() +
+                ", latestVersion=" + latestVersion +
+                '}';
+    }
+}
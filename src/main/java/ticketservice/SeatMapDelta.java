@@ -0,0 +1,208 @@
+package ticketservice;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * The seats that changed status in one version of a service's seat map,
+ * as runs of consecutive seats, in a compact binary encoding.
+ *
+ * The encoding is a sequence of unsigned varints (7 bits per byte, low
+ * bits first, high bit set on all but the last byte): the version, the
+ * number of runs, then for each run the distance from the end of the
+ * previous run to its first seat (zigzag-encoded, since runs needn't be
+ * in seat order) and its length shifted left two bits, with the new
+ * status's ordinal in the low two bits.  Runs are in the order the
+ * changes were made, so applying them in order gives the new seat map,
+ * even if a seat changed twice.  A hold of a few seats takes about five
+ * bytes.
+ */
+public final class SeatMapDelta {
+
+    /** The number of bits used for the status in a run's length. */
+    private static final int STATUS_BITS = 2;
+
+    /** The status values, indexed by ordinal. */
+    private static final SeatStatus.Status[] STATUSES = SeatStatus.Status.values();
+
+    /** The version of the seat map this delta leads to. */
+    private final long version;
+
+    /** The number of runs. */
+    private final int numRuns;
+
+    /** The encoded delta. */
+    private final byte[] encoded;
+
+    /**
+     * Constructor taking the fields.
+     *
+     * @param version the version of the seat map this delta leads to
+     * @param numRuns the number of runs
+     * @param encoded the encoded delta
+     */
+    private SeatMapDelta(final long version, final int numRuns, final byte[] encoded) {
+        this.version = version;
+        this.numRuns = numRuns;
+        this.encoded = encoded;
+    }
+
+    /**
+     * Encode a list of runs as a delta.
+     *
+     * @param version the version of the seat map the delta leads to
+     * @param runs the first seat, number of seats and status ordinal of each run, in triples
+     * @param numRuns the number of runs
+     * @return the delta
+     */
+    static SeatMapDelta encode(final long version, final int[] runs, final int numRuns) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8 + 4 * numRuns);
+        writeVarint(out, version);
+        writeVarint(out, numRuns);
+        int previousEnd = 0;
+        for (int run = 0; run < numRuns; ++run) {
+            final int start = runs[3 * run];
+            final int gap = start - previousEnd;
+            writeVarint(out, ((long) gap << 1) ^ (gap >> 31));
+            writeVarint(out, ((long) runs[3 * run + 1] << STATUS_BITS) | runs[3 * run + 2]);
+            previousEnd = start + runs[3 * run + 1];
+        }
+        return new SeatMapDelta(version, numRuns, out.toByteArray());
+    }
+
+    /**
+     * Decode a delta from its encoding, e.g. as received by a client.
+     *
+     * @param encoded the encoded delta
+     * @return the delta
+     * @throws IllegalArgumentException if the encoding is truncated
+     */
+    public static SeatMapDelta decode(final byte[] encoded) {
+        final int[] position = new int[1];
+        final long version = readVarint(encoded, position);
+        final int numRuns = (int) readVarint(encoded, position);
+        final SeatMapDelta delta = new SeatMapDelta(version, numRuns, encoded.clone());
+
+        // Check the runs are all there
+        delta.forEachRun((startingSeat, numberSeats, status) -> { });
+        return delta;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getNumRuns() {
+        return numRuns;
+    }
+
+    /**
+     * Get the encoded delta.  The array is a copy.
+     *
+     * @return the encoded delta
+     */
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    /**
+     * Get the size of the encoded delta.
+     *
+     * @return the number of bytes
+     */
+    public int getEncodedLength() {
+        return encoded.length;
+    }
+
+    /**
+     * Pass each run to a consumer, in the order the changes were made.
+     *
+     * @param consumer the consumer
+     */
+    public void forEachRun(final RunConsumer consumer) {
+        final int[] position = new int[1];
+        readVarint(encoded, position);
+        readVarint(encoded, position);
+        int previousEnd = 0;
+        for (int run = 0; run < numRuns; ++run) {
+            final long zigzag = readVarint(encoded, position);
+            final int start = previousEnd + (int) ((zigzag >>> 1) ^ -(zigzag & 1L));
+            final long lengthAndStatus = readVarint(encoded, position);
+            final int length = (int) (lengthAndStatus >>> STATUS_BITS);
+            consumer.accept(start, length, STATUSES[(int) (lengthAndStatus & ((1L << STATUS_BITS) - 1L))]);
+            previousEnd = start + length;
+        }
+    }
+
+    /**
+     * Apply the delta to a client's copy of the seat map.
+     *
+     * @param seatMap the status of each seat, updated in place
+     */
+    public void applyTo(final SeatStatus.Status[] seatMap) {
+        forEachRun((startingSeat, numberSeats, status) ->
+                Arrays.fill(seatMap, startingSeat, startingSeat + numberSeats, status));
+    }
+
+    /**
+     * Helper method to write an unsigned varint.
+     *
+     * @param out the output
+     * @param value the value
+     */
+    private static void writeVarint(final ByteArrayOutputStream out, final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0L) {
+            out.write((int) ((remaining & 0x7FL) | 0x80L));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    /**
+     * Helper method to read an unsigned varint.
+     *
+     * @param bytes the encoded bytes
+     * @param position the position to read from; advanced past the varint
+     * @return the value
+     */
+    private static long readVarint(final byte[] bytes, final int[] position) {
+        long value = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated seat map delta");
+            }
+            final byte next = bytes[position[0]++];
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in seat map delta");
+    }
+
+    @Override
+    public String toString() {
+        return "SeatMapDelta{" +
+                "version=" + version +
+                ", numRuns=" + numRuns +
+                ", encodedLength=" + encoded.length +
+                '}';
+    }
+
+    /**
+     * Receives the runs of a delta.
+     */
+    @FunctionalInterface
+    public interface RunConsumer {
+
+        /**
+         * Called for each run of seats that changed.
+         *
+         * @param startingSeat the first seat of the run
+         * @param numberSeats the number of seats in the run
+         * @param status the new status of the seats
+         */
+        void accept(int startingSeat, int numberSeats, SeatStatus.Status status);
+    }
+}
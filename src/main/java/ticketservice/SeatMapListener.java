@@ -0,0 +1,16 @@
+package ticketservice;
+
+/**
+ * Callback for changes to a service's seat map, as a feed of deltas.
+ */
+@FunctionalInterface
+public interface SeatMapListener {
+
+    /**
+     * Called with each new version of the seat map, in order.  This is
+     * called while the service's lock is held, so it should return quickly.
+     *
+     * @param delta the seats that changed
+     */
+    void seatMapChanged(SeatMapDelta delta);
+}
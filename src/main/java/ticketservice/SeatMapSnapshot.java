@@ -0,0 +1,87 @@
+package ticketservice;
+
+/**
+ * An immutable view of the status of every seat in a venue, as of one
+ * version of a service's seat map, for rendering without the service's
+ * lock.
+ *
+ * A new snapshot is published after each batch of changes, with the next
+ * version number, so two snapshots with the same version show the same
+ * seats.  Snapshots share the pages of seat status that didn't change
+ * between them, so publishing one costs a page reference per 1024 seats
+ * plus the pages changed since the last one, however often they're taken.
+ */
+public final class SeatMapSnapshot {
+
+    /** The version of the seat map. */
+    private final long version;
+
+    /** The number of seats in the venue. */
+    private final int numSeats;
+
+    /** The number of open seats. */
+    private final int seatsAvailable;
+
+    /** The packed status of each seat, in pages shared with the seat store. */
+    private final long[][] pages;
+
+    /**
+     * Constructor taking the fields.
+     *
+     * @param version the version of the seat map
+     * @param numSeats the number of seats in the venue
+     * @param seatsAvailable the number of open seats
+     * @param pages the pages of seat status, from SeatStore.sharePages()
+     */
+    SeatMapSnapshot(final long version, final int numSeats, final int seatsAvailable, final long[][] pages) {
+        this.version = version;
+        this.numSeats = numSeats;
+        this.seatsAvailable = seatsAvailable;
+        this.pages = pages;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    /**
+     * Get the status of a seat.
+     *
+     * @param seatId the seat number
+     * @return the status of the seat
+     */
+    public SeatStatus.Status getStatus(final int seatId) {
+        if ((seatId < 0) || (seatId >= numSeats)) {
+            throw new IndexOutOfBoundsException("Seat " + seatId + " is outside the venue");
+        }
+        return SeatStore.getStatus(pages, seatId);
+    }
+
+    /**
+     * Check if this snapshot shares a page of seats with another, for tests.
+     *
+     * @param other the other snapshot
+     * @param seatId a seat on the page
+     * @return whether the page is the same object in both
+     */
+    boolean sharesPage(final SeatMapSnapshot other, final int seatId) {
+        return pages[seatId / SeatStore.SEATS_PER_PAGE] == other.pages[seatId / SeatStore.SEATS_PER_PAGE];
+    }
+
+    @Override
+    public String toString() {
+        return "SeatMapSnapshot{" +
+                "version=" + version +
+                ", numSeats=" + numSeats +
+                ", seatsAvailable=" + seatsAvailable +
+                '}';
+    }
+}
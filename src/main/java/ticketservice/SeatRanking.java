@@ -0,0 +1,131 @@
+package ticketservice;
+
+/**
+ * A precomputed ranking of the seats in a venue by quality, from the
+ * venue's geometry: front rows are better than back rows, and seats
+ * near the center of a row are better than seats near the aisles.
+ *
+ * A seat's score (lower is better) is its row times the row weight,
+ * plus its distance from the center of the row in half-seats.  Scores
+ * are additive, so the score of a block of seats in one row is found
+ * in constant time from prefix sums of the column scores.
+ */
+final class SeatRanking {
+
+    /** The number of rows in the venue. */
+    private final int numRows;
+
+    /** The number of seats in each row. */
+    private final int numCols;
+
+    /** The score added for each row back from the front. */
+    private final int rowWeight;
+
+    /** The sum of the column scores before each column. */
+    private final long[] colPrefix;
+
+    /** The score of each seat. */
+    private final int[] seatScores;
+
+    /**
+     * Constructor taking the venue and the row weight.
+     *
+     * @param venue the venue
+     * @param rowWeight the score added for each row back from the front
+     */
+    SeatRanking(final Venue venue, final int rowWeight) {
+
+        if (rowWeight < 0) {
+            throw new IllegalArgumentException("Illegal argument to SeatRanking c'tor: rowWeight can't be negative");
+        }
+
+        numRows = venue.getNumRows();
+        numCols = venue.getNumCols();
+        this.rowWeight = rowWeight;
+
+        colPrefix = new long[numCols + 1];
+        for (int col = 0; col < numCols; ++col) {
+            colPrefix[col + 1] = colPrefix[col] + getColScore(col);
+        }
+
+        seatScores = new int[numRows * numCols];
+        for (int row = 0; row < numRows; ++row) {
+            for (int col = 0; col < numCols; ++col) {
+                seatScores[row * numCols + col] = getRowScore(row) + getColScore(col);
+            }
+        }
+    }
+
+    /**
+     * Get the score of a seat.
+     *
+     * @param seatId the seat number
+     * @return the seat's score (lower is better)
+     */
+    public int getSeatScore(final int seatId) {
+        return seatScores[seatId];
+    }
+
+    /**
+     * Get the score of a block of seats in one row.
+     *
+     * @param row the row
+     * @param startCol the first seat of the block, within the row
+     * @param count the number of seats
+     * @return the sum of the seats' scores
+     */
+    public long getBlockScore(final int row, final int startCol, final int count) {
+        return ((long) count * getRowScore(row)) + colPrefix[startCol + count] - colPrefix[startCol];
+    }
+
+    /**
+     * Get the start of the best block in a row, ignoring which seats are free.
+     *
+     * @param count the number of seats
+     * @return the first seat of the centered block, within the row
+     */
+    public int getIdealStart(final int count) {
+        return (numCols - count) / 2;
+    }
+
+    /**
+     * Get the best score any block of seats in a row could have.
+     *
+     * @param row the row
+     * @param count the number of seats
+     * @return the score of the centered block
+     */
+    public long getLowerBound(final int row, final int count) {
+        return getBlockScore(row, getIdealStart(count), count);
+    }
+
+    /**
+     * Helper method to get the score for a seat's row.
+     *
+     * @param row the row
+     * @return the row score
+     */
+    private int getRowScore(final int row) {
+        return row * rowWeight;
+    }
+
+    /**
+     * Helper method to get the score for a seat's distance from the
+     * center of its row, in half-seats.
+     *
+     * @param col the seat, within the row
+     * @return the column score
+     */
+    private int getColScore(final int col) {
+        return Math.abs(2 * col - (numCols - 1));
+    }
+
+    @Override
+    public String toString() {
+        return "SeatRanking{" +
+                "numRows=" + numRows +
+                ", numCols=" + numCols +
+                ", rowWeight=" + rowWeight +
+                '}';
+    }
+}
@@ -0,0 +1,252 @@
+package ticketservice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A point-in-time copy of a service's reservations and holds, as of a
+ * journal sequence number.  Restarting from a snapshot only needs the
+ * journal records after that sequence number.
+ *
+ * The file is a fixed header (magic, version, sequence number, number
+ * of seats, next hold ID and block counts), then one record per block
+ * (ID, created time, segments as pairs of first seat and number of seats,
+ * email), then a CRC32
+ * of everything before it.  The file is memory-mapped to read it.  It's
+ * written to a temporary file and renamed into place, so a crash while
+ * writing leaves the previous snapshot intact.
+ */
+final class SeatSnapshot {
+
+    /** Marks the start of a snapshot file ("TSNP"). */
+    private static final int MAGIC = 0x54534E50;
+
+    /** The version of the file format. */
+    private static final int VERSION = 2;
+
+    /** The version before blocks could have several segments; still readable. */
+    private static final int SINGLE_SEGMENT_VERSION = 1;
+
+    /** The size of the file header. */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 4;
+
+    /** The size of a block record, not counting the segments or the email bytes. */
+    private static final int BLOCK_SIZE = 4 + 8 + 4 + 4;
+
+    /** The size of each segment of a block record. */
+    private static final int SEGMENT_SIZE = 4 + 4;
+
+    /** The size of the trailing CRC. */
+    private static final int CRC_SIZE = 4;
+
+    /** The sequence number of the last journal record included. */
+    private final long sequence;
+
+    /** The number of seats in the venue. */
+    private final int numSeats;
+
+    /** The ID of the next hold. */
+    private final int nextHoldId;
+
+    /** The reserved blocks. */
+    private final List<SeatBlock> reserved;
+
+    /** The held blocks. */
+    private final List<SeatBlock> holds;
+
+    /**
+     * Constructor taking the saved state.
+     *
+     * @param sequence the sequence number of the last journal record included
+     * @param numSeats the number of seats in the venue
+     * @param nextHoldId the ID of the next hold
+     * @param reserved the reserved blocks
+     * @param holds the held blocks
+     */
+    SeatSnapshot(final long sequence, final int numSeats, final int nextHoldId,
+                 final List<SeatBlock> reserved, final List<SeatBlock> holds) {
+        this.sequence = sequence;
+        this.numSeats = numSeats;
+        this.nextHoldId = nextHoldId;
+        this.reserved = Collections.unmodifiableList(reserved);
+        this.holds = Collections.unmodifiableList(holds);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    public int getNextHoldId() {
+        return nextHoldId;
+    }
+
+    public List<SeatBlock> getReserved() {
+        return reserved;
+    }
+
+    public List<SeatBlock> getHolds() {
+        return holds;
+    }
+
+    /**
+     * Write the snapshot to a file, replacing any earlier snapshot.  The
+     * new file is forced to disk before it replaces the old one.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the file can't be written
+     */
+    public void write(final Path file) throws IOException {
+
+        // Reserved blocks come first, then holds; encode the emails first, to size the buffer
+        final List<SeatBlock> blocks = new ArrayList<>(reserved.size() + holds.size());
+        blocks.addAll(reserved);
+        blocks.addAll(holds);
+        final byte[][] emails = new byte[blocks.size()][];
+        int size = HEADER_SIZE + CRC_SIZE;
+        for (int index = 0; index < emails.length; ++index) {
+            emails[index] = blocks.get(index).getEmail().getBytes(StandardCharsets.UTF_8);
+            size += BLOCK_SIZE + SEGMENT_SIZE * blocks.get(index).getNumSegments() + emails[index].length;
+        }
+
+        final ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(numSeats).putInt(nextHoldId)
+                .putInt(reserved.size()).putInt(holds.size());
+        for (int index = 0; index < emails.length; ++index) {
+            final SeatBlock block = blocks.get(index);
+            out.putInt(block.getId()).putLong(block.getCreatedTime()).putInt(block.getNumSegments());
+            for (int segment = 0; segment < block.getNumSegments(); ++segment) {
+                out.putInt(block.getSegmentStart(segment)).putInt(block.getSegmentLength(segment));
+            }
+            out.putInt(emails[index].length).put(emails[index]);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        out.flip();
+
+        // Write a temporary file, then move it into place
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot from a file.
+     *
+     * @param file the snapshot file
+     * @return the snapshot, or null if the file doesn't exist
+     * @throws IOException if the file can't be read, or isn't a valid snapshot
+     */
+    public static SeatSnapshot read(final Path file) throws IOException {
+
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        final MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + CRC_SIZE) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            } else if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " is too large");
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+
+        // Check the header and the CRC
+        final int crcPosition = in.limit() - CRC_SIZE;
+        final int version = in.getInt(4);
+        if ((in.getInt(0) != MAGIC) || ((version != VERSION) && (version != SINGLE_SEGMENT_VERSION))) {
+            throw new IOException("Snapshot " + file + " has an unknown format");
+        }
+        final CRC32 crc = new CRC32();
+        final ByteBuffer body = in.duplicate();
+        body.limit(crcPosition);
+        crc.update(body);
+        if ((int) crc.getValue() != in.getInt(crcPosition)) {
+            throw new IOException("Snapshot " + file + " is corrupt");
+        }
+
+        in.position(8);
+        final long sequence = in.getLong();
+        final int numSeats = in.getInt();
+        final int nextHoldId = in.getInt();
+        final int reservedCount = in.getInt();
+        final int holdCount = in.getInt();
+        try {
+            final List<SeatBlock> reserved = readBlocks(in, reservedCount, version);
+            final List<SeatBlock> holds = readBlocks(in, holdCount, version);
+            return new SeatSnapshot(sequence, numSeats, nextHoldId, reserved, holds);
+        } catch (RuntimeException re) {
+            throw new IOException("Snapshot " + file + " is corrupt", re);
+        }
+    }
+
+    /**
+     * Helper method to read a list of block records.
+     *
+     * @param in the file contents, positioned at the first record
+     * @param count the number of records
+     * @param version the file format version
+     * @return the blocks
+     */
+    private static List<SeatBlock> readBlocks(final ByteBuffer in, final int count, final int version) {
+        final List<SeatBlock> blocks = new ArrayList<>(count);
+        byte[] email = new byte[64];
+        for (int i = 0; i < count; ++i) {
+            final int id = in.getInt();
+            final int[] segments;
+            final long createdTime;
+            if (version == SINGLE_SEGMENT_VERSION) {
+                segments = new int[] {in.getInt(), in.getInt()};
+                createdTime = in.getLong();
+            } else {
+                createdTime = in.getLong();
+                segments = new int[2 * in.getInt()];
+                for (int index = 0; index < segments.length; ++index) {
+                    segments[index] = in.getInt();
+                }
+            }
+            final int emailLength = in.getInt();
+            if (emailLength > email.length) {
+                email = new byte[emailLength];
+            }
+            in.get(email, 0, emailLength);
+            blocks.add(new SeatBlock(id, new String(email, 0, emailLength, StandardCharsets.UTF_8),
+                    segments, createdTime));
+        }
+        return blocks;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatSnapshot{" +
+                "sequence=" + sequence +
+                ", numSeats=" + numSeats +
+                ", reserved=" + reserved.size() +
+                ", holds=" + holds.size() +
+                '}';
+    }
+}
@@ -0,0 +1,196 @@
+package ticketservice;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for the status of every seat in a venue.
+ *
+ * Rather than one SeatStatus object per seat, the status of each seat is
+ * packed into two bits of a long[] (32 seats per word), and the lookup ID
+ * of the hold or reservation is kept in an int[].  That's about 4.25 bytes
+ * per seat, with no per-seat objects to allocate or chase.  SeatStatus
+ * instances are only created on demand, as copies.
+ *
+ * The status words are split into pages of SEATS_PER_PAGE seats, which
+ * are copied on write once they've been shared: sharePages() hands out
+ * the current pages for an immutable SeatMapSnapshot, and the next change
+ * to each page copies it first.  So a snapshot costs one reference per
+ * page, plus a copy of each page changed before the next one.
+ *
+ * This class is not thread-safe; callers are expected to synchronize.
+ */
+final class SeatStore {
+
+    /** The number of bits used for the status of a seat. */
+    private static final int BITS_PER_SEAT = 2;
+
+    /** The number of seats whose status fits in one long. */
+    private static final int SEATS_PER_WORD = Long.SIZE / BITS_PER_SEAT;
+
+    /** The number of status words in a page. */
+    private static final int PAGE_WORDS = 32;
+
+    /** The number of seats in a page. */
+    static final int SEATS_PER_PAGE = PAGE_WORDS * SEATS_PER_WORD;
+
+    /** Mask for the status bits of one seat. */
+    private static final long STATUS_MASK = (1L << BITS_PER_SEAT) - 1L;
+
+    /** The lookup ID of a seat that's not held or reserved. */
+    private static final int NO_LOOKUP_ID = -1;
+
+    /** The status values, indexed by ordinal. */
+    private static final SeatStatus.Status[] STATUSES = SeatStatus.Status.values();
+
+    /** The number of seats. */
+    private final int numSeats;
+
+    /** The packed status of each seat (the ordinal of its SeatStatus.Status), in pages. */
+    private final long[][] pages;
+
+    /** The share count when each page was last copied; a page is only written if it's current. */
+    private final int[] pageEpochs;
+
+    /** The number of times the pages have been shared. */
+    private int epoch;
+
+    /** The hold or reservation ID of each seat, or -1 if the seat is open. */
+    private final int[] lookupIds;
+
+    /**
+     * Constructor taking the number of seats.  All seats start as open.
+     *
+     * @param numSeats the number of seats in the venue
+     */
+    SeatStore(final int numSeats) {
+
+        if (numSeats <= 0) {
+            throw new IllegalArgumentException("Illegal argument to SeatStore c'tor: the number of seats must be positive");
+        }
+
+        this.numSeats = numSeats;
+
+        // OPEN has ordinal 0, so a zeroed array means every seat is open
+        pages = new long[(numSeats + SEATS_PER_PAGE - 1) / SEATS_PER_PAGE][PAGE_WORDS];
+        pageEpochs = new int[pages.length];
+        lookupIds = new int[numSeats];
+        Arrays.fill(lookupIds, NO_LOOKUP_ID);
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    /**
+     * Get the status of a seat.
+     *
+     * @param seatId the seat number
+     * @return the status of the seat
+     */
+    public SeatStatus.Status getStatus(final int seatId) {
+        checkSeat(seatId);
+        return getStatus(pages, seatId);
+    }
+
+    /**
+     * Get the status of a seat from a set of pages.
+     *
+     * @param pages the pages
+     * @param seatId the seat number
+     * @return the status of the seat
+     */
+    static SeatStatus.Status getStatus(final long[][] pages, final int seatId) {
+        final long word = pages[seatId / SEATS_PER_PAGE][(seatId % SEATS_PER_PAGE) / SEATS_PER_WORD];
+        final int shift = (seatId % SEATS_PER_WORD) * BITS_PER_SEAT;
+        return STATUSES[(int) ((word >>> shift) & STATUS_MASK)];
+    }
+
+    /**
+     * Set the status of a seat.  Making the seat open also clears its
+     * lookup ID, the same as SeatStatus.setSeatStatus().
+     *
+     * @param seatId the seat number
+     * @param status the new status
+     */
+    public void setStatus(final int seatId, final SeatStatus.Status status) {
+        checkSeat(seatId);
+        final int page = seatId / SEATS_PER_PAGE;
+        if (pageEpochs[page] != epoch) {
+            // The page is shared with a snapshot, so change a copy
+            pages[page] = pages[page].clone();
+            pageEpochs[page] = epoch;
+        }
+
+        final long[] words = pages[page];
+        final int word = (seatId % SEATS_PER_PAGE) / SEATS_PER_WORD;
+        final int shift = (seatId % SEATS_PER_WORD) * BITS_PER_SEAT;
+        words[word] = (words[word] & ~(STATUS_MASK << shift)) | ((long) status.ordinal() << shift);
+
+        if (SeatStatus.Status.OPEN.equals(status)) {
+            lookupIds[seatId] = NO_LOOKUP_ID;
+        }
+    }
+
+    /**
+     * Get the lookup ID of a seat (the key of its hold or reservation).
+     *
+     * @param seatId the seat number
+     * @return the lookup ID, or -1 if the seat is open
+     */
+    public int getLookupId(final int seatId) {
+        return lookupIds[seatId];
+    }
+
+    /**
+     * Set the lookup ID of a seat.
+     *
+     * @param seatId the seat number
+     * @param lookupId the key of the hold or reservation
+     */
+    public void setLookupId(final int seatId, final int lookupId) {
+        lookupIds[seatId] = lookupId;
+    }
+
+    /**
+     * Get a copy of a seat's status as a SeatStatus object.  Changes to
+     * the returned object don't affect the store.
+     *
+     * @param seatId the seat number
+     * @return a new SeatStatus for the seat
+     */
+    public SeatStatus getSeatStatus(final int seatId) {
+        final SeatStatus seatStatus = new SeatStatus(seatId, getStatus(seatId));
+        seatStatus.setSeatLookupId(lookupIds[seatId]);
+        return seatStatus;
+    }
+
+    /**
+     * Share the current pages, for an immutable snapshot.  The pages
+     * returned are never changed: the store copies a page before its next
+     * change.
+     *
+     * @return the pages (read them with getStatus(long[][], int))
+     */
+    public long[][] sharePages() {
+        ++epoch;
+        return pages.clone();
+    }
+
+    /**
+     * Helper method to validate a seat number.
+     *
+     * @param seatId the seat number
+     */
+    private void checkSeat(final int seatId) {
+        if ((seatId < 0) || (seatId >= numSeats)) {
+            throw new IndexOutOfBoundsException("Seat " + seatId + " is outside the venue");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SeatStore{" +
+                "numSeats=" + numSeats +
+                '}';
+    }
+}
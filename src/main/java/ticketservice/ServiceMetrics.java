@@ -0,0 +1,173 @@
+package ticketservice;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the metrics of a ticket service.  Recording is thread-safe
+ * and doesn't lock, so it can be called with or without the service's
+ * lock held.  Read the metrics with snapshot().
+ */
+final class ServiceMetrics {
+
+    /** The latency of each operation (nanoseconds), indexed by Operation ordinal. */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[MetricsSnapshot.Operation.values().length];
+
+    /** The time spent waiting for the lock (nanoseconds). */
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+
+    /** The number of index nodes visited by each search for open seats. */
+    private final LatencyHistogram scanLength = new LatencyHistogram();
+
+    /** The number of holds made. */
+    private final LongAdder holdsSucceeded = new LongAdder();
+
+    /** The number of holds split across several runs of seats. */
+    private final LongAdder holdsSplit = new LongAdder();
+
+    /** The number of failed holds, indexed by FailureReason ordinal. */
+    private final LongAdder[] holdFailures = newCounters();
+
+    /** The number of reservations made. */
+    private final LongAdder reservesSucceeded = new LongAdder();
+
+    /** The number of failed reservations, indexed by FailureReason ordinal. */
+    private final LongAdder[] reserveFailures = newCounters();
+
+    /** The number of holds that expired without being reserved. */
+    private final LongAdder holdsExpired = new LongAdder();
+
+    /** The number of holds released early by their customer. */
+    private final LongAdder holdsReleased = new LongAdder();
+
+    /** The number of reservations cancelled. */
+    private final LongAdder reservationsCancelled = new LongAdder();
+
+    /** The number of holds extended. */
+    private final LongAdder holdsExtended = new LongAdder();
+
+    /**
+     * Default constructor.
+     */
+    ServiceMetrics() {
+        for (int index = 0; index < latencies.length; ++index) {
+            latencies[index] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the latency of a call.
+     *
+     * @param operation the operation called
+     * @param startNanos the System.nanoTime() when the call started
+     */
+    public void recordLatency(final MetricsSnapshot.Operation operation, final long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record the time spent waiting for the lock.
+     *
+     * @param startNanos the System.nanoTime() before asking for the lock
+     */
+    public void recordLockWait(final long startNanos) {
+        lockWait.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record the length of a search for open seats.
+     *
+     * @param nodesVisited the number of index nodes visited
+     */
+    public void recordScanLength(final int nodesVisited) {
+        scanLength.record(nodesVisited);
+    }
+
+    public void holdSucceeded() {
+        holdsSucceeded.increment();
+    }
+
+    public void holdSplit() {
+        holdsSplit.increment();
+    }
+
+    public void holdFailed(final FailureReason reason) {
+        holdFailures[reason.ordinal()].increment();
+    }
+
+    public void reserveSucceeded() {
+        reservesSucceeded.increment();
+    }
+
+    public void reserveFailed(final FailureReason reason) {
+        reserveFailures[reason.ordinal()].increment();
+    }
+
+    public void holdExpired() {
+        holdsExpired.increment();
+    }
+
+    public void holdReleased() {
+        holdsReleased.increment();
+    }
+
+    public void reservationCancelled() {
+        reservationsCancelled.increment();
+    }
+
+    public void holdExtended() {
+        holdsExtended.increment();
+    }
+
+    /**
+     * Take an immutable copy of the metrics.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        final HistogramSnapshot[] latencyCopies = new HistogramSnapshot[latencies.length];
+        for (int index = 0; index < latencies.length; ++index) {
+            latencyCopies[index] = latencies[index].snapshot();
+        }
+
+        return new MetricsSnapshot(latencyCopies, lockWait.snapshot(), scanLength.snapshot(),
+                holdsSucceeded.sum(), holdsSplit.sum(), sums(holdFailures), reservesSucceeded.sum(),
+                sums(reserveFailures), holdsExpired.sum(), holdsReleased.sum(), reservationsCancelled.sum(),
+                holdsExtended.sum());
+    }
+
+    /**
+     * Helper method to create a counter for each failure reason.
+     *
+     * @return the counters
+     */
+    private static LongAdder[] newCounters() {
+        final LongAdder[] counters = new LongAdder[FailureReason.values().length];
+        for (int index = 0; index < counters.length; ++index) {
+            counters[index] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Helper method to read a set of counters.
+     *
+     * @param counters the counters
+     * @return the value of each counter
+     */
+    private static long[] sums(final LongAdder[] counters) {
+        final long[] values = new long[counters.length];
+        for (int index = 0; index < counters.length; ++index) {
+            values[index] = counters[index].sum();
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceMetrics{" +
+                "holdsSucceeded=" + holdsSucceeded.sum() +
+                ", reservesSucceeded=" + reservesSucceeded.sum() +
+                ", holdsExpired=" + holdsExpired.sum() +
+                '}';
+    }
+}
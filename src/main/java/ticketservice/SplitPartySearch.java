@@ -0,0 +1,248 @@
+package ticketservice;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Finds seats for a party that doesn't fit in any one run of open seats,
+ * by splitting it across a few runs close together: in one row, or in a
+ * row and the row behind it.
+ *
+ * Rows are tried front to back, each alone and then with the next row,
+ * skipping any window without enough open seats by the per-row counts.
+ * In each window, the free runs are sorted by column, and every group of
+ * up to MAX_SEGMENTS runs in a row of that order is a candidate: the runs
+ * are used in full except the last, which gives only the seats needed.
+ * The best candidate has the fewest segments, then spans the fewest
+ * columns, then is nearest the front.  Only MAX_WINDOWS windows are
+ * looked at, so a search reads at most 2 * MAX_WINDOWS rows.
+ *
+ * This class is not thread-safe; callers are expected to synchronize.
+ */
+final class SplitPartySearch {
+
+    /** The most segments a party is split into. */
+    static final int MAX_SEGMENTS = 4;
+
+    /** The most row windows looked at by one search. */
+    static final int MAX_WINDOWS = 8;
+
+    /** The number of rows in the venue. */
+    private final int numRows;
+
+    /** The number of seats in each row. */
+    private final int numCols;
+
+    /** The free runs of the front row of a window: first column and length, in pairs. */
+    private final int[] frontRuns;
+
+    /** The free runs of the back row of a window. */
+    private final int[] backRuns;
+
+    /** The free runs of a window, sorted by column: row offset, first column and length. */
+    private final int[] windowRuns;
+
+    /** The number of rows read by the last search. */
+    private int lastSearchLength;
+
+    /**
+     * Constructor taking the venue.
+     *
+     * @param venue the venue
+     */
+    SplitPartySearch(final Venue venue) {
+        numRows = venue.getNumRows();
+        numCols = venue.getNumCols();
+        final int maxRuns = (numCols + 1) / 2;
+        frontRuns = new int[2 * maxRuns];
+        backRuns = new int[2 * maxRuns];
+        windowRuns = new int[3 * 2 * maxRuns];
+    }
+
+    /**
+     * Find a group of free runs for a party.
+     *
+     * @param numSeats the number of seats needed
+     * @param rowSeatsAvailable the number of open seats in each row
+     * @param isOpen whether a seat is open
+     * @return the first seat and number of seats of each segment, in pairs and
+     *         in seat order, or null if there's no group nearby
+     */
+    int[] find(final int numSeats, final int[] rowSeatsAvailable, final IntPredicate isOpen) {
+
+        lastSearchLength = 0;
+        if ((numSeats < 2) || (numSeats > 2 * numCols)) {
+            return null;
+        }
+
+        final int[] best = new int[2];
+        best[0] = Integer.MAX_VALUE;
+        int[] bestSegments = null;
+        int windows = 0;
+        for (int row = 0; (row < numRows) && (windows < MAX_WINDOWS); ++row) {
+            for (int depth = 1; (depth <= 2) && (row + depth <= numRows) && (windows < MAX_WINDOWS); ++depth) {
+                final int open = rowSeatsAvailable[row] + ((depth == 2) ? rowSeatsAvailable[row + 1] : 0);
+                if (open < numSeats) {
+                    continue;
+                }
+
+                ++windows;
+                final int runCount = collectRuns(row, depth, isOpen);
+                final int[] segments = searchWindow(row, runCount, numSeats, best);
+                if (segments != null) {
+                    bestSegments = segments;
+                }
+            }
+        }
+
+        return bestSegments;
+    }
+
+    /**
+     * Get the number of rows read by the last search.
+     *
+     * @return the length of the last search
+     */
+    int getLastSearchLength() {
+        return lastSearchLength;
+    }
+
+    /**
+     * Helper method to collect the free runs of a window, sorted by column.
+     *
+     * @param row the front row of the window
+     * @param depth the number of rows in the window (1 or 2)
+     * @param isOpen whether a seat is open
+     * @return the number of runs
+     */
+    private int collectRuns(final int row, final int depth, final IntPredicate isOpen) {
+
+        final int frontCount = scanRow(row, frontRuns, isOpen);
+        final int backCount = (depth == 2) ? scanRow(row + 1, backRuns, isOpen) : 0;
+
+        // Merge the two rows' runs by first column
+        int front = 0;
+        int back = 0;
+        int count = 0;
+        while ((front < frontCount) || (back < backCount)) {
+            final boolean takeFront = (back >= backCount) ||
+                    ((front < frontCount) && (frontRuns[2 * front] <= backRuns[2 * back]));
+            final int[] runs = takeFront ? frontRuns : backRuns;
+            final int index = takeFront ? front++ : back++;
+            windowRuns[3 * count] = takeFront ? 0 : 1;
+            windowRuns[3 * count + 1] = runs[2 * index];
+            windowRuns[3 * count + 2] = runs[2 * index + 1];
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Helper method to find the free runs in a row.
+     *
+     * @param row the row
+     * @param runs receives the first column and length of each run
+     * @param isOpen whether a seat is open
+     * @return the number of runs
+     */
+    private int scanRow(final int row, final int[] runs, final IntPredicate isOpen) {
+
+        ++lastSearchLength;
+        final int rowStart = row * numCols;
+        int count = 0;
+        int runStart = -1;
+        for (int col = 0; col <= numCols; ++col) {
+            final boolean open = (col < numCols) && isOpen.test(rowStart + col);
+            if (open && (runStart < 0)) {
+                runStart = col;
+            } else if (!open && (runStart >= 0)) {
+                runs[2 * count] = runStart;
+                runs[2 * count + 1] = col - runStart;
+                ++count;
+                runStart = -1;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Helper method to find the best group of runs in a window, if it's
+     * better than the best so far.
+     *
+     * @param row the front row of the window
+     * @param runCount the number of runs in the window
+     * @param numSeats the number of seats needed
+     * @param best the number of segments and the column span of the best
+     *             group so far; updated if this window has a better one
+     * @return the segments of the better group, or null if there isn't one
+     */
+    private int[] searchWindow(final int row, final int runCount, final int numSeats, final int[] best) {
+
+        int bestFirst = -1;
+        int bestLast = -1;
+        for (int first = 0; first < runCount; ++first) {
+            int total = 0;
+            int end = 0;
+            final int limit = Math.min(runCount, first + MAX_SEGMENTS);
+            for (int last = first; last < limit; ++last) {
+                final int take = Math.min(windowRuns[3 * last + 2], numSeats - total);
+                total += take;
+                end = Math.max(end, windowRuns[3 * last + 1] + take);
+                if (total == numSeats) {
+                    final int segmentCount = last - first + 1;
+                    final int span = end - windowRuns[3 * first + 1];
+                    if ((segmentCount < best[0]) || ((segmentCount == best[0]) && (span < best[1]))) {
+                        best[0] = segmentCount;
+                        best[1] = span;
+                        bestFirst = first;
+                        bestLast = last;
+                    }
+                    break;
+                }
+            }
+        }
+
+        return (bestFirst < 0) ? null : toSegments(row, bestFirst, bestLast, numSeats);
+    }
+
+    /**
+     * Helper method to turn a group of runs into segments in seat order.
+     *
+     * @param row the front row of the window
+     * @param first the index of the first run in the group
+     * @param last the index of the last run in the group
+     * @param numSeats the number of seats needed
+     * @return the first seat and number of seats of each segment, in pairs
+     */
+    private int[] toSegments(final int row, final int first, final int last, final int numSeats) {
+
+        final int[] segments = new int[2 * (last - first + 1)];
+        int total = 0;
+        for (int index = first; index <= last; ++index) {
+            final int take = Math.min(windowRuns[3 * index + 2], numSeats - total);
+            total += take;
+            final int seat = (row + windowRuns[3 * index]) * numCols + windowRuns[3 * index + 1];
+
+            // Insert in seat order (there are only a few segments)
+            int position = 2 * (index - first);
+            while ((position > 0) && (segments[position - 2] > seat)) {
+                segments[position] = segments[position - 2];
+                segments[position + 1] = segments[position - 1];
+                position -= 2;
+            }
+            segments[position] = seat;
+            segments[position + 1] = take;
+        }
+
+        return segments;
+    }
+
+    @Override
+    public String toString() {
+        return "SplitPartySearch{" +
+                "numRows=" + numRows +
+                ", numCols=" + numCols +
+                '}';
+    }
+}
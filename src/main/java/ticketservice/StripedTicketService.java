@@ -0,0 +1,671 @@
+package ticketservice;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * A TicketService that splits the venue into stripes of consecutive rows,
+ * each with its own lock, so hold requests for different parts of the
+ * house don't queue behind one monitor.
+ *
+ * Each stripe has its own seat store, free-seat index and expiry wheel.
+ * A block of seats inside one stripe only takes that stripe's lock.  A
+ * block that crosses from one stripe into the next takes the locks of
+ * every stripe it touches, always in ascending stripe order, so there
+ * can't be a deadlock.  A hold is scheduled for expiry in the wheel of
+ * its first stripe, and that stripe's lock guards the hold's changes:
+ * reserving, releasing, extending and expiring it.  A reservation is
+ * cancelled under the lock of its first stripe too.
+ *
+ * Stripes are searched in seat order, so with no concurrent changes the
+ * result is the same first-fit block as TicketServiceImpl.  To keep
+ * searches from piling onto the front stripes, each stripe publishes a
+ * summary of its free runs, and a stripe that can't possibly satisfy a
+ * request (and has no holds due to expire) is skipped without locking.
+ *
+ * @author Mike Wallace
+ */
+public class StripedTicketService implements TicketService {
+
+    /** Default timeout value (in milliseconds) for a seat hold. */
+    private static final long DEFAULT_HOLD_TIMEOUT = 2_000L;
+
+    /** Default number of rows in each stripe. */
+    private static final int DEFAULT_ROWS_PER_STRIPE = 1;
+
+    /** The number of buckets in each stripe's expiry wheel. */
+    private static final int EXPIRY_WHEEL_BUCKETS = 512;
+
+    /** The number of expiry wheel ticks in one hold timeout. */
+    private static final long EXPIRY_TICKS_PER_TIMEOUT = 256L;
+
+    /** The current map of seat holds, keyed by hold ID. */
+    private final Map<Integer, SeatBlock> holds = new ConcurrentHashMap<>(20);
+
+    /** The current map of reserved seats. */
+    private final Map<Integer, SeatBlock> reserved = new ConcurrentHashMap<>(20);
+
+    /** The maximum age for a seat hold before the seats become available again. */
+    private final long holdTimeout;
+
+    /** The stripes of the venue, in seat order. */
+    private final Stripe[] stripes;
+
+    /** The number of seats in each stripe (the last stripe may be smaller). */
+    private final int seatsPerStripe;
+
+    /** Callback for the expiry wheels to release an expired hold. */
+    private final IntConsumer expireHold = this::expireHold;
+
+    /** The number of open seats in the venue. */
+    private final AtomicInteger seatsAvailable;
+
+    /** The ID of the next hold. */
+    private final AtomicInteger holdId = new AtomicInteger(Integer.MIN_VALUE);
+
+    /**
+     * Public constructor.  Uses the default venue, with one stripe per row.
+     */
+    public StripedTicketService() {
+        this(DEFAULT_HOLD_TIMEOUT, new Venue(), DEFAULT_ROWS_PER_STRIPE);
+    }
+
+    /**
+     * Constructor taking the timeout value (in milliseconds) for a seat
+     * hold, the venue, and the number of rows covered by each lock.
+     *
+     * @param holdTimeout the length of time a seat can be held (milliseconds)
+     * @param venue the venue customers are buying tickets for
+     * @param rowsPerStripe the number of consecutive rows sharing a lock
+     */
+    public StripedTicketService(final long holdTimeout, final Venue venue, final int rowsPerStripe) {
+
+        if (rowsPerStripe <= 0) {
+            throw new IllegalArgumentException("Illegal argument to StripedTicketService c'tor: rows per stripe must be positive");
+        }
+
+        this.holdTimeout = holdTimeout;
+
+        // Split the rows of the venue into stripes
+        final int numStripes = (venue.getNumRows() + rowsPerStripe - 1) / rowsPerStripe;
+        final int numSeats = venue.getNumberOfSeats();
+        seatsPerStripe = rowsPerStripe * venue.getNumCols();
+        stripes = new Stripe[numStripes];
+        final long now = System.currentTimeMillis();
+        final long tickMillis = Math.max(1L, holdTimeout / EXPIRY_TICKS_PER_TIMEOUT);
+        for (int i = 0; i < numStripes; ++i) {
+            final int firstSeat = i * seatsPerStripe;
+            stripes[i] = new Stripe(firstSeat, Math.min(seatsPerStripe, numSeats - firstSeat),
+                    new HoldExpiryWheel(tickMillis, EXPIRY_WHEEL_BUCKETS, now));
+        }
+
+        seatsAvailable = new AtomicInteger(numSeats);
+    }
+
+    public int getNumStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * The number of seats in the venue that are neither held nor reserved
+     *
+     * @return the number of tickets available in the venue
+     */
+    @Override
+    public int numSeatsAvailable() {
+
+        // Release any holds that are due in each stripe, then return the live count
+        final long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            if (now >= stripe.nextDeadline) {
+                stripe.lock.lock();
+                try {
+                    releaseExpiredHolds(stripe, now);
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+
+        return seatsAvailable.get();
+    }
+
+    /**
+     * Find and hold the best available seats for a customer.
+     *
+     * @param numSeats      the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return a SeatHold object identifying the specific seats and related information
+     */
+    @Override
+    public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
+
+        // Check the input
+        if ((customerEmail == null) || (numSeats < 1)) {
+            return null;
+        }
+
+        // Search the stripes in seat order, for a block inside the stripe or crossing into the next ones
+        final long now = System.currentTimeMillis();
+        for (int index = 0; index < stripes.length; ++index) {
+            final Stripe stripe = stripes[index];
+            if ((now < stripe.nextDeadline) && (stripe.longestRun < numSeats) &&
+                    !mayCrossBoundary(index, numSeats, now)) {
+                // This stripe can't help, and locking it won't change that
+                continue;
+            }
+
+            stripe.lock.lock();
+            try {
+                releaseExpiredHolds(stripe, now);
+
+                // Look for a block inside the stripe
+                final int localSeat = stripe.freeSeats.findFirstFit(numSeats);
+                if (localSeat >= 0) {
+                    return holdSeats(index, index, stripe.firstSeat + localSeat, numSeats, customerEmail);
+                }
+
+                // Look for a block starting at the end of this stripe and crossing into the next ones
+                final SeatHold seatHold = holdAcrossStripes(index, numSeats, customerEmail, now);
+                if (seatHold != null) {
+                    return seatHold;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        // No block of seats was found
+        return null;
+    }
+
+    /**
+     * Helper method to check, without locking, whether a block could start
+     * at the end of a stripe and cross into the following stripes.
+     *
+     * @param index the index of the stripe
+     * @param numSeats the number of seats needed
+     * @param now the current time
+     * @return whether it's worth locking the stripes to look
+     */
+    private boolean mayCrossBoundary(final int index, final int numSeats, final long now) {
+
+        int seats = stripes[index].trailingRun;
+        for (int next = index + 1; (seats > 0) && (next < stripes.length); ++next) {
+            final Stripe stripe = stripes[next];
+            if (now >= stripe.nextDeadline) {
+                return true;
+            }
+
+            seats += stripe.leadingRun;
+            if (seats >= numSeats) {
+                return true;
+            } else if (stripe.leadingRun < stripe.numSeats) {
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Helper method to hold a block of seats that starts with the free run
+     * at the end of a stripe and continues into the following stripes.
+     * The caller holds the lock of the first stripe; the locks of the
+     * following stripes are taken in order.
+     *
+     * @param index the index of the first stripe
+     * @param numSeats the number of seats needed
+     * @param customerEmail the customer's email
+     * @param now the current time
+     * @return the hold, or null if there's no such block
+     */
+    private SeatHold holdAcrossStripes(final int index, final int numSeats,
+                                       final String customerEmail, final long now) {
+
+        final Stripe first = stripes[index];
+        final int trailing = first.freeSeats.getTrailingRun();
+        if (trailing == 0) {
+            return null;
+        }
+
+        // Lock the following stripes in order until the run is long enough or breaks
+        int lastLocked = index;
+        try {
+            int seats = trailing;
+            for (int next = index + 1; next < stripes.length; ++next) {
+                final Stripe stripe = stripes[next];
+                stripe.lock.lock();
+                lastLocked = next;
+                releaseExpiredHolds(stripe, now);
+
+                final int leading = stripe.freeSeats.getLeadingRun();
+                if (seats + leading >= numSeats) {
+                    final int startingSeat = first.firstSeat + first.numSeats - trailing;
+                    return holdSeats(index, next, startingSeat, numSeats, customerEmail);
+                } else if (leading < stripe.numSeats) {
+                    return null;
+                }
+                seats += leading;
+            }
+
+            return null;
+        } finally {
+            for (int locked = lastLocked; locked > index; --locked) {
+                stripes[locked].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Helper method to hold a block of open seats.  The caller holds the
+     * locks of the stripes the block covers.
+     *
+     * @param firstStripe the index of the block's first stripe
+     * @param lastStripe the index of the block's last stripe
+     * @param startingSeat the first seat in the block
+     * @param numSeats the number of seats
+     * @param customerEmail the customer's email
+     * @return the new hold
+     */
+    private SeatHold holdSeats(final int firstStripe, final int lastStripe, final int startingSeat,
+                               final int numSeats, final String customerEmail) {
+
+        final int id = holdId.getAndIncrement();
+        final SeatBlock block = new SeatBlock(id, customerEmail, startingSeat, numSeats);
+        holds.put(id, block);
+        updateSeatStatus(firstStripe, lastStripe, startingSeat, numSeats, SeatStatus.Status.HELD, id);
+        stripes[firstStripe].expiryWheel.schedule(id, block.getCreatedTime() + holdTimeout);
+        stripes[firstStripe].publish();
+        return new SeatHold(id);
+    }
+
+    /**
+     * Commit seats held for a specific customer
+     *
+     * @param seatHoldId    the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return a reservation confirmation code
+     */
+    @Override
+    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+
+        // Check the input
+        if (customerEmail == null) {
+            return null;
+        }
+
+        // Check if we have a seat-hold with the provided ID
+        final SeatBlock block = holds.get(seatHoldId);
+        if (block == null) {
+            return null;
+        }
+
+        // Lock the stripes covered by the hold, in order
+        final int firstStripe = getStripeIndex(block.getStartingSeat());
+        final int lastStripe = getStripeIndex(block.getStartingSeat() + block.getNumberSeats() - 1);
+        lockStripes(firstStripe, lastStripe);
+        try {
+            if (holds.get(seatHoldId) != block) {
+                // The hold expired or was reserved while we waited for the locks
+                return null;
+            } else if (block.getAge() >= holdTimeout) {
+                // The seat hold has expired but the wheel hasn't released it yet, so do it now
+                holds.remove(seatHoldId);
+                openSeats(block);
+                return null;
+            } else if (!customerEmail.equalsIgnoreCase(block.getEmail())) {
+                // The customer email does not match
+                return null;
+            }
+
+            // Mark the seats as reserved
+            updateSeatStatus(firstStripe, lastStripe, block.getStartingSeat(), block.getNumberSeats(),
+                    SeatStatus.Status.RESERVED, seatHoldId);
+            reserved.put(seatHoldId, block);
+            holds.remove(seatHoldId);
+        } finally {
+            unlockStripes(firstStripe, lastStripe);
+        }
+
+        // Return the reservation ID (reuse the hold ID)
+        return Integer.toString(block.getId());
+    }
+
+    /**
+     * Release a hold before it times out, so its seats are available
+     * again straight away.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released
+     */
+    @Override
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+
+        final SeatBlock block = (customerEmail == null) ? null : holds.get(seatHoldId);
+        if (block == null) {
+            return false;
+        }
+
+        final Stripe stripe = stripes[getStripeIndex(block.getStartingSeat())];
+        stripe.lock.lock();
+        try {
+            if (!isLiveHold(block, customerEmail)) {
+                return false;
+            }
+
+            holds.remove(seatHoldId);
+            openSeats(block);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Cancel a reservation, so its seats are available again straight
+     * away.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled
+     */
+    @Override
+    public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+
+        final long code = TicketServiceImpl.parseConfirmationCode(confirmationCode);
+        final SeatBlock block = ((customerEmail == null) || (code == TicketServiceImpl.NO_RESERVATION)) ?
+                null : reserved.get((int) code);
+        if (block == null) {
+            return false;
+        }
+
+        final Stripe stripe = stripes[getStripeIndex(block.getStartingSeat())];
+        stripe.lock.lock();
+        try {
+            if (!customerEmail.equalsIgnoreCase(block.getEmail()) || !reserved.remove(block.getId(), block)) {
+                // Not the customer's reservation, or another thread cancelled it first
+                return false;
+            }
+
+            openSeats(block);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Extend a hold, so its timeout starts again from now.  The hold is
+     * replaced with a renewed copy and scheduled again; the wheel's entry
+     * for the old deadline is skipped when it comes due.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was extended
+     */
+    @Override
+    public boolean extendHold(final int seatHoldId, final String customerEmail) {
+
+        final SeatBlock block = (customerEmail == null) ? null : holds.get(seatHoldId);
+        if (block == null) {
+            return false;
+        }
+
+        final Stripe stripe = stripes[getStripeIndex(block.getStartingSeat())];
+        stripe.lock.lock();
+        try {
+            if (!isLiveHold(block, customerEmail)) {
+                return false;
+            }
+
+            final SeatBlock renewed = new SeatBlock(seatHoldId, block.getEmail(), block.getStartingSeat(),
+                    block.getNumberSeats(), System.currentTimeMillis());
+            holds.put(seatHoldId, renewed);
+            stripe.expiryWheel.schedule(seatHoldId, renewed.getCreatedTime() + holdTimeout);
+            stripe.publish();
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method to check that a hold is still in the holds map, hasn't
+     * expired, and belongs to the customer.  An expired hold is released.
+     * The caller holds the lock of the hold's first stripe.
+     *
+     * @param block the hold
+     * @param customerEmail the email address of the customer
+     * @return whether the hold is the customer's live hold
+     */
+    private boolean isLiveHold(final SeatBlock block, final String customerEmail) {
+        if (holds.get(block.getId()) != block) {
+            // The hold expired, or was reserved, released or extended, while we waited for the lock
+            return false;
+        } else if (block.getAge() >= holdTimeout) {
+            // The seat hold has expired but the wheel hasn't released it yet, so do it now
+            holds.remove(block.getId());
+            openSeats(block);
+            return false;
+        }
+
+        return customerEmail.equalsIgnoreCase(block.getEmail());
+    }
+
+    /**
+     * Helper method to release the expired holds in a stripe's wheel.
+     * The caller holds the stripe's lock.
+     *
+     * @param stripe the stripe
+     * @param now the current time
+     */
+    private void releaseExpiredHolds(final Stripe stripe, final long now) {
+        if (now >= stripe.nextDeadline) {
+            stripe.expiryWheel.advance(now, expireHold);
+            stripe.publish();
+        }
+    }
+
+    /**
+     * Helper method for the expiry wheels to release a hold.  The hold
+     * may have been reserved or released since it was scheduled, in which
+     * case there's nothing to do, or extended, in which case it's been
+     * scheduled again.  The caller holds the lock of the hold's first
+     * stripe.
+     *
+     * @param expiredHoldId the ID of the expired hold
+     */
+    private void expireHold(final int expiredHoldId) {
+        final SeatBlock block = holds.get(expiredHoldId);
+        if ((block != null) && (block.getAge() >= holdTimeout)) {
+            holds.remove(expiredHoldId);
+            openSeats(block);
+        }
+    }
+
+    /**
+     * Helper method to open up the seats of a hold or reservation that has
+     * been removed from its map.  The caller holds the lock of the block's
+     * first stripe; the locks of any other stripes are taken here, in order.
+     *
+     * @param block the hold or reservation being released
+     */
+    private void openSeats(final SeatBlock block) {
+        final int firstStripe = getStripeIndex(block.getStartingSeat());
+        final int lastStripe = getStripeIndex(block.getStartingSeat() + block.getNumberSeats() - 1);
+        lockStripes(firstStripe + 1, lastStripe);
+        try {
+            updateSeatStatus(firstStripe, lastStripe, block.getStartingSeat(), block.getNumberSeats(),
+                    SeatStatus.Status.OPEN, -1);
+        } finally {
+            unlockStripes(firstStripe + 1, lastStripe);
+        }
+    }
+
+    /**
+     * Helper method to mark a block of seats as having a specific status.
+     * The caller holds the locks of the stripes.
+     *
+     * @param firstStripe the index of the block's first stripe
+     * @param lastStripe the index of the block's last stripe
+     * @param startingSeat the first seat in the block
+     * @param numberSeats the number of seats in the block
+     * @param seatStatus the new seat status
+     * @param lookupId the hold or reservation ID of the seats
+     */
+    private void updateSeatStatus(final int firstStripe, final int lastStripe, final int startingSeat,
+                                  final int numberSeats, final SeatStatus.Status seatStatus, final int lookupId) {
+
+        final boolean open = SeatStatus.Status.OPEN.equals(seatStatus);
+        final int endSeat = startingSeat + numberSeats;
+        for (int index = firstStripe; index <= lastStripe; ++index) {
+            final Stripe stripe = stripes[index];
+            final int from = Math.max(startingSeat, stripe.firstSeat) - stripe.firstSeat;
+            final int to = Math.min(endSeat, stripe.firstSeat + stripe.numSeats) - stripe.firstSeat;
+
+            int delta = 0;
+            for (int seat = from; seat < to; ++seat) {
+                final boolean wasOpen = SeatStatus.Status.OPEN.equals(stripe.seats.getStatus(seat));
+                if (wasOpen != open) {
+                    delta += open ? 1 : -1;
+                }
+                stripe.seats.setStatus(seat, seatStatus);
+                if (!open) {
+                    stripe.seats.setLookupId(seat, lookupId);
+                }
+            }
+            if (delta != 0) {
+                seatsAvailable.addAndGet(delta);
+            }
+
+            if (open) {
+                stripe.freeSeats.markFree(from, to - from);
+            } else {
+                stripe.freeSeats.markUsed(from, to - from);
+            }
+            stripe.publish();
+        }
+    }
+
+    /**
+     * Helper method to lock a range of stripes in ascending order.
+     *
+     * @param firstStripe the first stripe to lock
+     * @param lastStripe the last stripe to lock
+     */
+    private void lockStripes(final int firstStripe, final int lastStripe) {
+        for (int index = firstStripe; index <= lastStripe; ++index) {
+            stripes[index].lock.lock();
+        }
+    }
+
+    /**
+     * Helper method to unlock a range of stripes locked by lockStripes().
+     *
+     * @param firstStripe the first stripe to unlock
+     * @param lastStripe the last stripe to unlock
+     */
+    private void unlockStripes(final int firstStripe, final int lastStripe) {
+        for (int index = lastStripe; index >= firstStripe; --index) {
+            stripes[index].lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method to get the index of the stripe containing a seat.
+     *
+     * @param seatId the seat number
+     * @return the stripe index
+     */
+    private int getStripeIndex(final int seatId) {
+        return seatId / seatsPerStripe;
+    }
+
+    /**
+     * Helper method to get the hold information by ID.
+     *
+     * @param hold the hold key
+     * @return the corresponding value in the hold map, or null
+     */
+    public SeatBlock getHoldById(final SeatHold hold) {
+        return holds.get(hold.getId());
+    }
+
+    /**
+     * Helper method to get the reserve information by ID.
+     *
+     * @param reservedId the reserve key
+     * @return the corresponding value in the reserved map, or null
+     */
+    public SeatBlock getReservedById(final int reservedId) {
+        return reserved.get(reservedId);
+    }
+
+    /**
+     * A range of consecutive rows that share a lock.
+     */
+    private static final class Stripe {
+
+        /** The lock guarding the stripe's seats, index and wheel. */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /** The first seat in the stripe. */
+        final int firstSeat;
+
+        /** The number of seats in the stripe. */
+        final int numSeats;
+
+        /** The status of the stripe's seats (numbered from 0 within the stripe). */
+        final SeatStore seats;
+
+        /** Index of the stripe's open seats. */
+        final FreeSeatIndex freeSeats;
+
+        /** Timing wheel of the holds that start in this stripe. */
+        final HoldExpiryWheel expiryWheel;
+
+        /** Published copy of the longest free run, read without the lock. */
+        volatile int longestRun;
+
+        /** Published copy of the free run at the start of the stripe. */
+        volatile int leadingRun;
+
+        /** Published copy of the free run at the end of the stripe. */
+        volatile int trailingRun;
+
+        /** Published copy of the wheel's next deadline. */
+        volatile long nextDeadline;
+
+        /**
+         * Constructor taking the stripe's range of seats and expiry wheel.
+         *
+         * @param firstSeat the first seat in the stripe
+         * @param numSeats the number of seats in the stripe
+         * @param expiryWheel the wheel for holds starting in the stripe
+         */
+        Stripe(final int firstSeat, final int numSeats, final HoldExpiryWheel expiryWheel) {
+            this.firstSeat = firstSeat;
+            this.numSeats = numSeats;
+            this.expiryWheel = expiryWheel;
+            seats = new SeatStore(numSeats);
+            freeSeats = new FreeSeatIndex(numSeats);
+            publish();
+        }
+
+        /**
+         * Publish the summary of the stripe's free runs for lock-free reads.
+         * The caller holds the stripe's lock.
+         */
+        void publish() {
+            longestRun = freeSeats.getLongestRun();
+            leadingRun = freeSeats.getLeadingRun();
+            trailingRun = freeSeats.getTrailingRun();
+            nextDeadline = expiryWheel.getNextDeadline();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package ticketservice;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface TicketService {
 
     /**
@@ -26,4 +29,65 @@ public interface TicketService {
      * @return a reservation confirmation code
      */
     String reserveSeats(int seatHoldId, String customerEmail);
+
+    /**
+     * Find and hold seats for a batch of requests.  The default
+     * implementation serves each request in turn; implementations may
+     * serve the whole batch under one lock.
+     *
+     * @param requests the hold requests
+     * @return the hold for each request (or null if it failed), in the same order
+     */
+    default List<SeatHold> findAndHoldSeatsBatch(List<HoldRequest> requests) {
+        final List<SeatHold> results = new ArrayList<>(requests.size());
+        for (HoldRequest request : requests) {
+            results.add(findAndHoldSeats(request.getNumSeats(), request.getCustomerEmail()));
+        }
+        return results;
+    }
+
+    /**
+     * Commit the seats of a batch of holds.  The default implementation
+     * reserves each hold in turn; implementations may serve the whole
+     * batch under one lock.
+     *
+     * @param requests the reserve requests
+     * @return the confirmation code for each request (or null if it failed), in the same order
+     */
+    default List<String> reserveSeatsBatch(List<ReserveRequest> requests) {
+        final List<String> results = new ArrayList<>(requests.size());
+        for (ReserveRequest request : requests) {
+            results.add(reserveSeats(request.getSeatHoldId(), request.getCustomerEmail()));
+        }
+        return results;
+    }
+
+    /**
+     * Release a hold before it times out, so its seats are available
+     * again straight away.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released
+     */
+    boolean releaseHold(int seatHoldId, String customerEmail);
+
+    /**
+     * Cancel a reservation, so its seats are available again straight
+     * away.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled
+     */
+    boolean cancelReservation(String confirmationCode, String customerEmail);
+
+    /**
+     * Extend a hold, so its timeout starts again from now.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was extended
+     */
+    boolean extendHold(int seatHoldId, String customerEmail);
 }
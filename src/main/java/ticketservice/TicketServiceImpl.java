@@ -1,9 +1,19 @@
 package ticketservice;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * Implement the TicketService interface to provide methods to
@@ -11,26 +21,128 @@ import java.util.Map;
  *
  * @author Mike Wallace
  */
-public class TicketServiceImpl implements TicketService {
+public class TicketServiceImpl implements TicketService, Closeable {
 
     /** Default timeout value (in milliseconds) for a seat hold. */
     private static final long DEFAULT_HOLD_TIMEOUT = 2_000L;
 
-    /** The current map of seat holds. */
-    private final Map<SeatHold, SeatBlock> holds = new HashMap<>(20);
+    /** The number of buckets in the hold expiry wheel. */
+    private static final int EXPIRY_WHEEL_BUCKETS = 512;
 
-    /** The current map of reserved seats. */
-    private final Map<Integer, SeatBlock> reserved = new HashMap<>(20);
+    /** The number of expiry wheel ticks in one hold timeout. */
+    private static final long EXPIRY_TICKS_PER_TIMEOUT = 256L;
+
+    /** Marks a confirmation code that isn't a reservation ID (every int is a valid ID). */
+    static final long NO_RESERVATION = Long.MIN_VALUE;
+
+    /** The number of seat map deltas kept for subscribers catching up. */
+    private static final int CHANGE_FEED_CAPACITY = 1024;
+
+    /** The current seat holds, in primitive arrays indexed by hold ID. */
+    private final HoldTable holds = new HoldTable();
+
+    /** The reservations, kept off-heap and indexed by ID and by customer. */
+    private final ReservationStore reserved = new ReservationStore();
 
     /** The maximum age for a seat hold before the seats become available again. */
     private final long holdTimeout;
 
+    /** The venue customers are buying tickets for. */
+    private final Venue venue;
+
+    /** The venue's general-admission sections, which are sold without the lock. */
+    private final GeneralAdmissionSection[] admissionSections;
+
     /** Store info on which seats are held. */
-    private final List<SeatStatus> seats;
+    private final SeatStore seats;
+
+    /** Chooses which open seats to hold, and keeps its own index of them. */
+    private final SeatAllocator allocator;
+
+    /** The number of open seats in each row, kept up to date as seats change status. */
+    private final int[] rowSeatsAvailable;
+
+    /** The number of open seats in the venue, kept up to date as seats change status. */
+    private int seatsAvailable;
+
+    /** Published copy of the allocator's longest run of open seats, read without the lock. */
+    private volatile int largestFreeRun;
+
+    /** Published copy of the number of open seats, read without the lock. */
+    private volatile int openSeats;
+
+    /** Published copy of the expiry wheel's next deadline, read without the lock. */
+    private volatile long nextDeadline;
+
+    /** The reason each thread's last hold failed, or null if it succeeded. */
+    private final ThreadLocal<FailureReason> lastHoldFailure = new ThreadLocal<>();
+
+    /** The latest seat map, published after each batch of changes, for readers without the lock. */
+    private volatile SeatMapSnapshot seatMap;
+
+    /** Whether any seat has changed since the seat map was last published. */
+    private boolean seatMapStale;
+
+    /** The seat runs changed since the seat map was last published, and the recent deltas. */
+    private final SeatChangeFeed changeFeed = new SeatChangeFeed(CHANGE_FEED_CAPACITY, 0L);
 
-    /** The ID of the next entry in the holds map. */
+    /** Listeners to tell about each new version of the seat map. */
+    private final List<SeatMapListener> seatMapListeners = new CopyOnWriteArrayList<>();
+
+    /** Timing wheel of hold deadlines, used to release expired holds. */
+    private final HoldExpiryWheel expiryWheel;
+
+    /** Callback for the expiry wheel to release an expired hold. */
+    private final IntConsumer expireHold = this::expireHold;
+
+    /** Holds released since the listeners were last told, passed to them in a batch. */
+    private final List<SeatBlock> releasedHolds = new ArrayList<>(20);
+
+    /** Listeners to notify when holds are released. */
+    private final List<HoldReleaseListener> releaseListeners = new CopyOnWriteArrayList<>();
+
+    /** The background thread that releases expired holds, if started. */
+    private ScheduledExecutorService expiryReaper;
+
+    /** The ID of the next hold. */
     private int holdId = Integer.MIN_VALUE;
 
+    /** Each customer's holds, readable without the lock (not kept in zero-garbage mode). */
+    private final CustomerIndex customers = new CustomerIndex();
+
+    /** Whether the service avoids creating garbage on its hot paths. */
+    private volatile boolean zeroGarbage;
+
+    /** The most holds a customer may have at once. */
+    private int maxHoldsPerCustomer = Integer.MAX_VALUE;
+
+    /** The most seats a customer may have on hold at once. */
+    private int maxSeatsPerCustomer = Integer.MAX_VALUE;
+
+    /** Whether a party with no run of open seats long enough may be split across nearby runs. */
+    private volatile boolean splitParties;
+
+    /** Finds nearby runs of open seats for a split party; created when splitting is turned on. */
+    private SplitPartySearch splitSearch;
+
+    /** Whether a seat is open, for the split party search. */
+    private final IntPredicate isOpen = this::isSeatOpen;
+
+    /** Latency histograms and outcome counts for the service's operations. */
+    private final ServiceMetrics metrics = new ServiceMetrics();
+
+    /** The journal of holds, reservations and releases, or null if the service isn't persistent. */
+    private HoldJournal journal;
+
+    /** The snapshot file, or null if the service isn't persistent. */
+    private Path snapshotFile;
+
+    /** Held while taking a snapshot, so only one is taken at a time. */
+    private final Object snapshotLock = new Object();
+
+    /** The background thread that takes snapshots, if started. */
+    private ScheduledExecutorService snapshotter;
+
     /**
      * Public constructor.  Used to inject the necessary fields (venue, etc.).
      */
@@ -46,15 +158,98 @@ public class TicketServiceImpl implements TicketService {
      * @param venue the venue customers are buying tickets for
      */
     public TicketServiceImpl(final long holdTimeout, final Venue venue) {
+        this(holdTimeout, venue, FirstFitAllocator::new);
+    }
+
+    /**
+     * Constructor taking the hold timeout and the seat allocation strategy.
+     *
+     * @param holdTimeout the length of time a seat can be held (milliseconds)
+     * @param venue the venue customers are buying tickets for
+     * @param allocatorFactory creates the allocator that chooses which seats to hold
+     */
+    public TicketServiceImpl(final long holdTimeout, final Venue venue,
+                             final Function<Venue, SeatAllocator> allocatorFactory) {
 
         // Save the timeout value for seat holds
         this.holdTimeout = holdTimeout;
+        this.venue = venue;
+        admissionSections = new GeneralAdmissionSection[venue.getNumAdmissionSections()];
+        for (int section = 0; section < admissionSections.length; ++section) {
+            admissionSections[section] = new GeneralAdmissionSection(section,
+                    venue.getAdmissionCapacity(section), holdTimeout);
+        }
 
-        // Initialize the list of seats, with a default status of OPEN
+        // Initialize the seat store, with a default status of OPEN
         final int numSeats = venue.getNumberOfSeats();
-        seats = new ArrayList<>(numSeats);
-        for (int i = 0; i < numSeats; ++i) {
-            seats.add(new SeatStatus(i, SeatStatus.Status.OPEN));
+        seats = new SeatStore(numSeats);
+        allocator = allocatorFactory.apply(venue);
+        if ((allocator == null) || (allocator.getNumSeats() != numSeats)) {
+            throw new IllegalArgumentException("Illegal argument to TicketServiceImpl c'tor: " +
+                    "the allocator doesn't match the venue");
+        }
+
+        // Every seat starts out open
+        seatsAvailable = numSeats;
+        rowSeatsAvailable = new int[venue.getNumRows()];
+        Arrays.fill(rowSeatsAvailable, venue.getNumCols());
+        seatMap = new SeatMapSnapshot(0L, numSeats, numSeats, seats.sharePages());
+
+        // Size the wheel's ticks so one turn of the wheel covers a couple of hold timeouts
+        expiryWheel = new HoldExpiryWheel(Math.max(1L, holdTimeout / EXPIRY_TICKS_PER_TIMEOUT),
+                EXPIRY_WHEEL_BUCKETS, System.currentTimeMillis());
+        publishFreeRuns();
+    }
+
+    /**
+     * Constructor for a persistent service.  Every hold, reservation,
+     * release, cancellation and extension is appended to a journal, and
+     * the service is rebuilt from the latest snapshot (if any) and the
+     * journal records after it when it's created.  The snapshot is kept
+     * next to the journal, with the suffix ".snapshot".  Holds that timed
+     * out while the service was down are released on the first call.
+     * General-admission sections aren't journaled, so the venue can't
+     * have any.
+     *
+     * @param holdTimeout the length of time a seat can be held (milliseconds)
+     * @param venue the venue customers are buying tickets for
+     * @param journalFile the journal file (created if it doesn't exist)
+     * @param durability how far each change is persisted before the call returns
+     * @throws IOException if the journal can't be opened or read
+     */
+    public TicketServiceImpl(final long holdTimeout, final Venue venue, final Path journalFile,
+                             final Durability durability) throws IOException {
+        this(holdTimeout, venue, FirstFitAllocator::new, journalFile, durability);
+    }
+
+    /**
+     * Constructor for a persistent service with a seat allocation strategy.
+     *
+     * @param holdTimeout the length of time a seat can be held (milliseconds)
+     * @param venue the venue customers are buying tickets for
+     * @param allocatorFactory creates the allocator that chooses which seats to hold
+     * @param journalFile the journal file (created if it doesn't exist)
+     * @param durability how far each change is persisted before the call returns
+     * @throws IOException if the journal can't be opened or read
+     */
+    public TicketServiceImpl(final long holdTimeout, final Venue venue,
+                             final Function<Venue, SeatAllocator> allocatorFactory,
+                             final Path journalFile, final Durability durability) throws IOException {
+        this(holdTimeout, venue, allocatorFactory);
+        if (venue.getNumAdmissionSections() > 0) {
+            throw new IllegalArgumentException("Illegal argument to TicketServiceImpl c'tor: " +
+                    "a persistent service can't have general-admission sections");
+        }
+        snapshotFile = journalFile.resolveSibling(journalFile.getFileName() + ".snapshot");
+        synchronized (this) {
+            final SeatSnapshot snapshot = SeatSnapshot.read(snapshotFile);
+            long startSequence = 0L;
+            if (snapshot != null) {
+                restoreSnapshot(snapshot);
+                startSequence = snapshot.getSequence();
+            }
+            journal = new HoldJournal(journalFile, durability, startSequence, new JournalReplay());
+            publishSeatMap();
         }
     }
 
@@ -65,22 +260,70 @@ public class TicketServiceImpl implements TicketService {
      */
     @Override
     public int numSeatsAvailable() {
-        // Return the number of venue seats that are either open, or held but expired
-        return (int) seats.stream().filter(s -> s.isAvailable(getSeatHoldBlock(s), holdTimeout)).count();
+        // Open up any expired holds, then return the live count of open seats
+        final long start = System.nanoTime();
+        final int available;
+        synchronized (this) {
+            metrics.recordLockWait(start);
+            releaseExpiredHolds();
+            publishSeatMap();
+            available = seatsAvailable;
+        }
+
+        metrics.recordLatency(MetricsSnapshot.Operation.NUM_SEATS_AVAILABLE, start);
+        return available;
+    }
+
+    /**
+     * Get the number of seats in a row that are neither held nor reserved.
+     *
+     * @param row the row number (0-based)
+     * @return the number of tickets available in the row
+     */
+    public int numSeatsAvailable(final int row) {
+        synchronized (this) {
+            releaseExpiredHolds();
+            publishSeatMap();
+            return rowSeatsAvailable[row];
+        }
     }
 
     /**
-     * Helper method to get the instance from the list of seat holdings, or null.
+     * Get one of the venue's general-admission sections.  Places there are
+     * held and reserved through the section, on striped counters, without
+     * the service's lock; they aren't seats, so they aren't counted by
+     * numSeatsAvailable().  They aren't journaled, so only a service
+     * without a journal can have them.
      *
-     * @param seat the seat of interest
-     * @return if the seat is held, return the info on the hold; else, return null
+     * @param section the section number (0-based)
+     * @return the section
      */
-    private SeatBlock getSeatHoldBlock(final SeatStatus seat) {
-        return holds.get(new SeatHold(seat.getSeatLookupId()));
+    public GeneralAdmissionSection getAdmissionSection(final int section) {
+        return admissionSections[section];
     }
 
     /**
-     * Find and hold the best available seats for a customer.
+     * Get the number of seats in each row that are neither held nor reserved.
+     *
+     * @return the number of tickets available, indexed by row
+     */
+    public int[] getRowSeatsAvailable() {
+        synchronized (this) {
+            releaseExpiredHolds();
+            publishSeatMap();
+            return rowSeatsAvailable.clone();
+        }
+    }
+
+    /**
+     * Find and hold the best available seats for a customer.  A request
+     * for more seats than the longest run of open seats is turned away
+     * without taking the lock, unless a hold is due to expire (or split
+     * parties are on and enough seats are open).  getLastHoldFailure()
+     * says why a hold failed.  A request turned away without the lock
+     * fails with NOT_ENOUGH_SEATS or NO_CONTIGUOUS_BLOCK even if the
+     * customer is also over their limits, since those are only checked
+     * under the lock; otherwise CUSTOMER_LIMIT comes first.
      *
      * @param numSeats      the number of seats to find and hold
      * @param customerEmail unique identifier for the customer
@@ -89,145 +332,1353 @@ public class TicketServiceImpl implements TicketService {
     @Override
     public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
 
-        // Check the input
-        if (customerEmail == null) {
-            // An email address is required
-            return null;
-        } else if ((numSeats < 1) || (numSeats > numSeatsAvailable())) {
-            // Either zero or negative seats requests, or user asked for more seats than are free
-            return null;
+        final long start = System.nanoTime();
+
+        // Check the input (an email address and a positive number of seats are required),
+        // then whether the request could possibly fit
+        FailureReason failure = checkHoldRequest(numSeats, customerEmail);
+        if (failure == null) {
+            failure = checkFreeRuns(numSeats);
         }
 
-        SeatHold seatHold = null;
-        synchronized (this) {
+        final SeatHold seatHold;
+        if (failure != null) {
+            seatHold = holdFailed(failure);
+        } else {
+            final long sequence;
+            synchronized (this) {
+                metrics.recordLockWait(start);
 
-            // Find the first available seat, and check if it has enough open consecutive seats
-            final int lastSeatIndex = seats.size() - numSeats;
-            for (int seatId = 0; seatId <= lastSeatIndex; ++seatId) {
+                // Free up the seats of any expired holds, so the index is current
+                releaseExpiredHolds();
+                seatHold = holdSeats(numSeats, customerEmail);
+                publishSeatMap();
+                sequence = journalSequence();
+            }
+            awaitJournal(sequence);
+        }
 
-                // If this seat is available, then check the next (n - 1) seats
-                // to see if we have a sufficiently large block of consecutive
-                // seats for the hold
-                final SeatStatus seat = seats.get(seatId);
-                if (seat.isAvailable(getSeatHoldBlock(seat), holdTimeout)) {
+        metrics.recordLatency(MetricsSnapshot.Operation.FIND_AND_HOLD_SEATS, start);
+        return seatHold;
+    }
 
-                    // See if the next (n - 1) seats are also available
-                    final int maxSeatId = seatId + numSeats;
-                    int nextSeatId = seatId + 1;
-                    boolean result = true;
-                    for (; nextSeatId < maxSeatId; ++nextSeatId) {
-                        final SeatStatus nextSeat = seats.get(nextSeatId);
-                        if (!nextSeat.isAvailable(getSeatHoldBlock(nextSeat), holdTimeout)) {
-                            result = false;
-                            break;
-                        }
-                    }
+    /**
+     * Find and hold seats for a batch of requests, taking the lock and
+     * releasing expired holds once for the whole batch.  Requests are
+     * served in order, so each sees the seats held by the ones before it.
+     *
+     * @param requests the hold requests
+     * @return the hold for each request (or null if it failed), in the same order
+     */
+    @Override
+    public List<SeatHold> findAndHoldSeatsBatch(final List<HoldRequest> requests) {
 
-                    // Check if we found enough consecutive available seats
-                    if (result) {
-                        // We found a block of open seats
-                        final int id = holdId++;
-                        seatHold = new SeatHold(id);
-                        holds.put(seatHold, new SeatBlock(id, customerEmail, seatId, numSeats));
-
-                        // Update the seats array
-                        final int lastSeatId = seatId + numSeats - 1;
-                        for (int currSeat = seatId; currSeat <= lastSeatId; ++currSeat) {
-                            seats.get(currSeat).setSeatStatus(SeatStatus.Status.HELD);
-                            seats.get(currSeat).setSeatLookupId(id);
-                        }
-
-                        // Break out of the loop since we held the seats
-                        break;
-                    } else {
-                        // No match found, so update the seatId iterator variable
-                        seatId = nextSeatId;
-                    }
-                }
+        final long start = System.nanoTime();
+        final List<SeatHold> results = new ArrayList<>(requests.size());
+        final long sequence;
+        synchronized (this) {
+            metrics.recordLockWait(start);
+            releaseExpiredHolds();
+            for (HoldRequest request : requests) {
+                results.add(holdSeats(request.getNumSeats(), request.getCustomerEmail()));
             }
+            publishSeatMap();
+            sequence = journalSequence();
+        }
+        awaitJournal(sequence);
+
+        metrics.recordLatency(MetricsSnapshot.Operation.FIND_AND_HOLD_SEATS_BATCH, start);
+        return results;
+    }
+
+    /**
+     * Helper method to find and hold a block of open seats, chosen by the
+     * allocator.  The caller must hold the lock.
+     *
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return the hold, or null if the input is invalid or there's no block of seats
+     */
+    private SeatHold holdSeats(final int numSeats, final String customerEmail) {
+
+        // Check the input (again, for batch requests)
+        final FailureReason invalid = checkHoldRequest(numSeats, customerEmail);
+        if (invalid != null) {
+            return holdFailed(invalid);
+        } else if ((holds.getNumHolds(customerEmail) >= maxHoldsPerCustomer) ||
+                (holds.getHeldSeats(customerEmail) > maxSeatsPerCustomer - numSeats)) {
+            // The customer is at their limit; refuse before looking for seats
+            return holdFailed(FailureReason.CUSTOMER_LIMIT);
+        } else if (numSeats > seatsAvailable) {
+            // The user asked for more seats than are open
+            return holdFailed(FailureReason.NOT_ENOUGH_SEATS);
+        }
+
+        // Ask the allocator for a block of enough consecutive open seats
+        final int seatId = allocator.findSeats(numSeats);
+        metrics.recordScanLength(allocator.getLastSearchLength());
+        if (seatId < 0) {
+            return splitParties ? holdSplitSeats(numSeats, customerEmail)
+                    : holdFailed(FailureReason.NO_CONTIGUOUS_BLOCK);
         }
 
-        // If we found a set of consecutive seats to hold, return the info now; else return null
+        // We found a block of open seats; journal it before changing anything
+        final long now = System.currentTimeMillis();
+        if (journal != null) {
+            journal.appendHold(holdId, customerEmail, seatId, numSeats, now);
+        }
+
+        final int slot = holds.add(holdId, customerEmail, now, seatId, numSeats);
+        ++holdId;
+        final SeatHold seatHold = addHold(slot);
+        metrics.holdSucceeded();
+        lastHoldFailure.set(null);
         return seatHold;
     }
 
     /**
-     * Commit seats held for a specific customer
+     * Helper method to hold seats for a party across a few nearby runs of
+     * open seats, when there's no single run long enough.  The caller must
+     * hold the lock.
      *
-     * @param seatHoldId    the seat hold identifier
-     * @param customerEmail the email address of the customer to which the seat hold is assigned
-     * @return a reservation confirmation code
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return the hold, or null if there's no group of runs nearby
      */
-    @Override
-    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+    private SeatHold holdSplitSeats(final int numSeats, final String customerEmail) {
 
-        // Check the input
-        if (customerEmail == null) {
-            return null;
+        final int[] segments = splitSearch.find(numSeats, rowSeatsAvailable, isOpen);
+        if (segments == null) {
+            return holdFailed(FailureReason.NO_CONTIGUOUS_BLOCK);
         }
 
-        // Check if we have a seat-hold with the provided ID
-        final SeatHold seatHold = new SeatHold(seatHoldId);
-        final SeatBlock block = holds.get(seatHold);
-        if (block == null) {
-            // The seat-hold was not found
+        final long now = System.currentTimeMillis();
+        if (journal != null) {
+            journal.appendSplitHold(holdId, customerEmail, segments, now);
+        }
+
+        final int slot = holds.add(holdId, customerEmail, now, segments);
+        ++holdId;
+        final SeatHold seatHold = addHold(slot);
+        metrics.holdSucceeded();
+        metrics.holdSplit();
+        lastHoldFailure.set(null);
+        return seatHold;
+    }
+
+    /**
+     * Helper method to count a failed hold, and keep the reason for the
+     * calling thread.
+     *
+     * @param reason the reason the hold failed
+     * @return null
+     */
+    private SeatHold holdFailed(final FailureReason reason) {
+        metrics.holdFailed(reason);
+        lastHoldFailure.set(reason);
+        return null;
+    }
+
+    /**
+     * Helper method to check, without the lock, whether a hold can't
+     * succeed: it's longer than the longest run of open seats, and no hold
+     * is due to expire that could make a longer one.  Reads the summary
+     * published by the last change, so a request that fails here would
+     * have failed under the lock at that point.
+     *
+     * @param numSeats the number of seats to find and hold
+     * @return NOT_ENOUGH_SEATS or NO_CONTIGUOUS_BLOCK, or null if the hold may succeed
+     */
+    private FailureReason checkFreeRuns(final int numSeats) {
+        if ((numSeats <= largestFreeRun) || (System.currentTimeMillis() >= nextDeadline)) {
             return null;
-        } else if (block.getAge() > holdTimeout) {
+        } else if (numSeats > openSeats) {
+            return FailureReason.NOT_ENOUGH_SEATS;
+        }
+
+        // A split party may still fit across several runs
+        return splitParties ? null : FailureReason.NO_CONTIGUOUS_BLOCK;
+    }
+
+    /**
+     * Get the reason the calling thread's last hold failed: the last call
+     * to findAndHoldSeats(), or the last request of a batch.  Holds made
+     * through an EventLoopTicketService run on its thread, so this doesn't
+     * see them.
+     *
+     * @return the reason, or null if the last hold succeeded (or there was none)
+     */
+    public FailureReason getLastHoldFailure() {
+        return lastHoldFailure.get();
+    }
+
+    /**
+     * Get the longest block of open seats the allocator could hold (see
+     * SeatAllocator.getLongestRun()).  A request for more seats than this
+     * fails, unless split parties are on, so clients can stop asking for
+     * a size that can't be met.  Doesn't take the lock; holds that have
+     * expired but haven't been released yet still count as held.
+     *
+     * @return the longest run of open seats
+     */
+    public int getLargestFreeRun() {
+        return largestFreeRun;
+    }
+
+    /**
+     * Get the longest run of open seats in a row.  This is worked out
+     * from the row's seats when it's asked for, rather than kept up to
+     * date on every change, since the hot paths don't need it.
+     *
+     * @param row the row number (0-based)
+     * @return the longest run of open seats in the row
+     */
+    public int getLargestFreeRun(final int row) {
+        synchronized (this) {
+            releaseExpiredHolds();
+            publishSeatMap();
 
-            // The seat hold has expired, so mark the seats as open
-            synchronized(this) {
-                updateSeatStatus(block.getStartingSeat(), block.getNumberSeats(), SeatStatus.Status.OPEN);
-                holds.remove(seatHold);
+            int longest = 0;
+            int run = 0;
+            final int firstSeat = venue.getFirstSeatInRow(row);
+            for (int seat = firstSeat; seat < firstSeat + venue.getNumCols(); ++seat) {
+                run = isSeatOpen(seat) ? (run + 1) : 0;
+                longest = Math.max(longest, run);
             }
+            return longest;
+        }
+    }
 
-            return null;
-        } else if (!customerEmail.equalsIgnoreCase(block.getEmail())) {
-            // The customer email does not match
-            return null;
+    /**
+     * Helper method to add a hold that's in the hold table to the customer
+     * index and the expiry wheel, and mark its seats as held.  The caller
+     * must hold the lock.
+     *
+     * @param slot the hold's slot in the hold table
+     * @return the key of the hold
+     */
+    private SeatHold addHold(final int slot) {
+
+        final int id = holds.getId(slot);
+        if (!zeroGarbage) {
+            customers.addHold(holds.toSeatBlock(slot));
+        }
+        expiryWheel.schedule(id, holds.getCreatedTime(slot) + holdTimeout);
+
+        // Update the seats array
+        updateHoldStatus(slot, SeatStatus.Status.HELD);
+        for (int segment = 0; segment < holds.getNumSegments(slot); ++segment) {
+            final int seatId = holds.getSegmentStart(slot, segment);
+            final int lastSeatId = seatId + holds.getSegmentLength(slot, segment) - 1;
+            for (int currSeat = seatId; currSeat <= lastSeatId; ++currSeat) {
+                seats.setLookupId(currSeat, id);
+            }
+        }
+
+        return new SeatHold(id);
+    }
+
+    /**
+     * Helper method to check the input to a hold request.
+     *
+     * @param numSeats the number of seats to find and hold
+     * @param customerEmail unique identifier for the customer
+     * @return the reason the request is invalid, or null if it's valid
+     */
+    private static FailureReason checkHoldRequest(final int numSeats, final String customerEmail) {
+        if (customerEmail == null) {
+            return FailureReason.NULL_EMAIL;
+        } else if (numSeats < 1) {
+            return FailureReason.INVALID_NUM_SEATS;
+        }
+
+        return null;
+    }
+
+    /**
+     * Helper method to release the seats of holds that have timed out,
+     * and tell the listeners.  The caller must hold the lock.
+     */
+    private void releaseExpiredHolds() {
+        expiryWheel.advance(System.currentTimeMillis(), expireHold);
+        notifyReleaseListeners();
+    }
+
+    /**
+     * Helper method for the expiry wheel to release a hold.  The hold
+     * may have been reserved or released since it was scheduled, in which
+     * case it's no longer in the hold table and there's nothing to do, or
+     * extended, in which case it's been scheduled again.
+     *
+     * @param expiredHoldId the ID of the expired hold
+     */
+    private void expireHold(final int expiredHoldId) {
+        final int slot = holds.find(expiredHoldId);
+        if ((slot >= 0) && (System.currentTimeMillis() - holds.getCreatedTime(slot) >= holdTimeout)) {
+            if (journal != null) {
+                journal.appendRelease(expiredHoldId);
+            }
+            metrics.holdExpired();
+            releaseHold(slot);
+        }
+    }
+
+    /**
+     * Helper method to open up the seats of a hold, remove it from the
+     * hold table, and queue it for the listeners.
+     *
+     * @param slot the hold's slot in the hold table
+     */
+    private void releaseHold(final int slot) {
+        if (!zeroGarbage) {
+            customers.removeHold(holds.getEmail(slot), holds.getId(slot));
+        }
+        updateHoldStatus(slot, SeatStatus.Status.OPEN);
+        if (!releaseListeners.isEmpty()) {
+            releasedHolds.add(holds.toSeatBlock(slot));
+        }
+        holds.remove(slot);
+    }
+
+    /**
+     * Helper method to pass the batch of released holds to the listeners.
+     */
+    private void notifyReleaseListeners() {
+        if (releasedHolds.isEmpty()) {
+            return;
+        }
+
+        final List<SeatBlock> batch = new ArrayList<>(releasedHolds);
+        releasedHolds.clear();
+        for (HoldReleaseListener listener : releaseListeners) {
+            listener.holdsReleased(batch);
+        }
+    }
+
+    /**
+     * Register a listener to be told when holds are released, because they
+     * expired or their customer released them.
+     *
+     * @param listener the listener
+     */
+    public void addHoldReleaseListener(final HoldReleaseListener listener) {
+        releaseListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addHoldReleaseListener().
+     *
+     * @param listener the listener
+     */
+    public void removeHoldReleaseListener(final HoldReleaseListener listener) {
+        releaseListeners.remove(listener);
+    }
+
+    /**
+     * Limit how much each customer may hold at once (unlimited by default).
+     * A hold that would take a customer past either limit fails with
+     * CUSTOMER_LIMIT, before any search for seats, unless it's longer
+     * than any run of open seats: findAndHoldSeats() turns that away
+     * without the lock, and with a seat failure.  Reservations don't
+     * count towards the limits.
+     *
+     * @param maxHolds the most holds a customer may have
+     * @param maxSeats the most seats a customer may have on hold
+     */
+    public void setCustomerLimits(final int maxHolds, final int maxSeats) {
+        if ((maxHolds < 1) || (maxSeats < 1)) {
+            throw new IllegalArgumentException("Customer limits must be positive");
         }
 
-        // Mark the seats as reserved
         synchronized (this) {
-            updateSeatStatus(block.getStartingSeat(), block.getNumberSeats(), SeatStatus.Status.RESERVED);
-            reserved.put(block.getId(), new SeatBlock(block.getId(), block.getEmail(),
-                       block.getStartingSeat(), block.getNumberSeats()));
-            holds.remove(seatHold);
+            maxHoldsPerCustomer = maxHolds;
+            maxSeatsPerCustomer = maxSeats;
         }
+    }
 
-        // Return the reservation ID (reuse the hold ID)
-        return Integer.toString(block.getId());
+    /**
+     * Get a customer's current holds, oldest first, from the index of
+     * holds by customer.  Doesn't take the lock, except in zero-garbage
+     * mode, where there's no index and the hold table is searched.
+     *
+     * @param customerEmail the customer's email (case doesn't matter)
+     * @return the holds that haven't timed out
+     */
+    public List<SeatBlock> getCustomerHolds(final String customerEmail) {
+        final List<SeatBlock> current;
+        if (!zeroGarbage) {
+            current = new ArrayList<>(customers.getHolds(customerEmail));
+        } else if (customerEmail == null) {
+            return Collections.emptyList();
+        } else {
+            synchronized (this) {
+                current = holds.findByCustomer(customerEmail);
+            }
+        }
+        final long now = System.currentTimeMillis();
+        current.removeIf(block -> block.getCreatedTime() + holdTimeout <= now);
+        return current;
     }
 
     /**
-     * Helper method to mark a block of seats as having a specific status.
+     * Get a customer's reservations, oldest first, from the reservation
+     * store's index by customer.
      *
-     * @param startingSeat the starting seat index
-     * @param numberSeats the number of consecutive seats
-     * @param seatStatus the new seat status
+     * @param customerEmail the customer's email (case doesn't matter)
+     * @return views of the reservations
      */
-    private void updateSeatStatus(final int startingSeat, final int numberSeats, SeatStatus.Status seatStatus) {
-        for (int index = startingSeat; index < (startingSeat + numberSeats); ++index) {
-            seats.get(index).setSeatStatus(seatStatus);
+    public List<ReservationView> getCustomerReservations(final String customerEmail) {
+        if (customerEmail == null) {
+            return Collections.emptyList();
+        }
+
+        final int[] records;
+        synchronized (this) {
+            records = reserved.findByCustomer(customerEmail);
+        }
+
+        final List<ReservationView> views = new ArrayList<>(records.length);
+        for (int record : records) {
+            views.add(new ReservationView(reserved, record));
         }
+        return views;
     }
 
     /**
-     * Helper method to get the hold information by ID.
+     * Turn split parties on or off (off by default).  When on, a party
+     * that doesn't fit in any one run of open seats is held across a few
+     * runs close together (in one row, or in two adjacent rows) as one
+     * hold with several segments, in the same pass, rather than failing.
      *
-     * @param hold the hold key
-     * @return the corresponding value in the hold map, or null
+     * @param splitParties whether to split parties
      */
-    public SeatBlock getHoldById(final SeatHold hold) {
-        return holds.get(hold);
+    public void setSplitParties(final boolean splitParties) {
+        synchronized (this) {
+            this.splitParties = splitParties;
+            if (splitParties && (splitSearch == null)) {
+                splitSearch = new SplitPartySearch(venue);
+            }
+        }
     }
 
     /**
-     * Helper method to get the reserve information by ID.
+     * Turn zero-garbage mode on or off (off by default).  In zero-garbage
+     * mode, numSeatsAvailable(), findAndHoldSeats() and reserveSeats()
+     * don't create garbage once the service has warmed up, apart from the
+     * hold and confirmation code they return, so a busy on-sale doesn't
+     * trigger collections.  The price is the copies the service otherwise
+     * makes for lock-free readers: the seat map is only published when
+     * it's read, so getSeatMap() and getSeatMapChanges() take the lock;
+     * seat map deltas are only recorded while there are listeners; and
+     * there's no index of holds by customer, so getCustomerHolds() takes
+     * the lock and searches every hold.  Writing the journal of a
+     * persistent service still creates garbage.
      *
-     * @param reservedId the reserve key
-     * @return the corresponding value in the reserved map, or null
+     * @param zeroGarbage whether to avoid creating garbage
+     */
+    public void setZeroGarbage(final boolean zeroGarbage) {
+        synchronized (this) {
+            if (zeroGarbage == this.zeroGarbage) {
+                return;
+            }
+
+            // Publish the changes made in the old mode, then switch the customer index
+            flushSeatMap();
+            if (zeroGarbage) {
+                this.zeroGarbage = true;
+                customers.clear();
+            } else {
+                for (SeatBlock block : holds.toSeatBlocks()) {
+                    customers.addHold(block);
+                }
+                this.zeroGarbage = false;
+            }
+        }
+    }
+
+    /**
+     * Get whether the service is in zero-garbage mode.
+     *
+     * @return whether zero-garbage mode is on
      */
-    public SeatBlock getReservedById(final int reservedId) {
-        return reserved.get(reservedId);
+    public boolean isZeroGarbage() {
+        return zeroGarbage;
+    }
+
+    /**
+     * Get whether parties are split when there's no run of seats long enough.
+     *
+     * @return whether split parties are on
+     */
+    public boolean isSplitParties() {
+        synchronized (this) {
+            return splitParties;
+        }
+    }
+
+    /**
+     * Start a background thread that releases expired holds on a fixed
+     * schedule, rather than waiting for the next call into the service.
+     * Does nothing if the thread is already running.
+     *
+     * @param periodMillis how often to release expired holds (milliseconds)
+     */
+    public synchronized void startExpiryReaper(final long periodMillis) {
+
+        if (expiryReaper != null) {
+            return;
+        }
+
+        expiryReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ticketservice-expiry-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryReaper.scheduleAtFixedRate(() -> {
+            try {
+                reapExpiredHolds();
+            } catch (RuntimeException re) {
+                // Keep the reaper running if a listener fails, and hand the failure to the uncaught exception handler
+                final Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, re);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Release the holds that have expired, including those of the
+     * general-admission sections, without waiting for the next call into
+     * the service.  Used by background threads.
+     */
+    void reapExpiredHolds() {
+        synchronized (this) {
+            releaseExpiredHolds();
+            publishSeatMap();
+        }
+        for (GeneralAdmissionSection section : admissionSections) {
+            section.reapExpiredHolds();
+        }
+    }
+
+    /**
+     * Check if the service could be closed and created again without
+     * losing anything: it has no holds, either it's persistent or it has
+     * no reservations, and nothing has been sold in its general-admission
+     * sections (which aren't journaled).
+     *
+     * @return whether the service can be evicted
+     */
+    boolean isEvictable() {
+        for (GeneralAdmissionSection section : admissionSections) {
+            if (!section.isUnsold()) {
+                return false;
+            }
+        }
+
+        synchronized (this) {
+            return (holds.size() == 0) && ((journal != null) || (reserved.size() == 0));
+        }
+    }
+
+    /**
+     * Stop the background thread started by startExpiryReaper(), if any.
+     */
+    public synchronized void stopExpiryReaper() {
+        if (expiryReaper != null) {
+            expiryReaper.shutdownNow();
+            expiryReaper = null;
+        }
+    }
+
+    /**
+     * Commit seats held for a specific customer
+     *
+     * @param seatHoldId    the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return a reservation confirmation code
+     */
+    @Override
+    public String reserveSeats(final int seatHoldId, final String customerEmail) {
+
+        final long start = System.nanoTime();
+
+        // Check the input
+        final String confirmation;
+        if (customerEmail == null) {
+            metrics.reserveFailed(FailureReason.NULL_EMAIL);
+            confirmation = null;
+        } else {
+            final long sequence;
+            synchronized (this) {
+                metrics.recordLockWait(start);
+                confirmation = reserveHold(seatHoldId, customerEmail);
+                notifyReleaseListeners();
+                publishSeatMap();
+                sequence = journalSequence();
+            }
+            awaitJournal(sequence);
+        }
+
+        metrics.recordLatency(MetricsSnapshot.Operation.RESERVE_SEATS, start);
+        return confirmation;
+    }
+
+    /**
+     * Commit the seats of a batch of holds, taking the lock once for the
+     * whole batch.
+     *
+     * @param requests the reserve requests
+     * @return the confirmation code for each request (or null if it failed), in the same order
+     */
+    @Override
+    public List<String> reserveSeatsBatch(final List<ReserveRequest> requests) {
+
+        final long start = System.nanoTime();
+        final List<String> results = new ArrayList<>(requests.size());
+        final long sequence;
+        synchronized (this) {
+            metrics.recordLockWait(start);
+            for (ReserveRequest request : requests) {
+                results.add(reserveHold(request.getSeatHoldId(), request.getCustomerEmail()));
+            }
+            notifyReleaseListeners();
+            publishSeatMap();
+            sequence = journalSequence();
+        }
+        awaitJournal(sequence);
+
+        metrics.recordLatency(MetricsSnapshot.Operation.RESERVE_SEATS_BATCH, start);
+        return results;
+    }
+
+    /**
+     * Helper method to commit the seats of a hold.  The caller must hold
+     * the lock, and tell the release listeners afterwards.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return the reservation confirmation code, or null
+     */
+    private String reserveHold(final int seatHoldId, final String customerEmail) {
+
+        // Check the input (again, for batch requests)
+        if (customerEmail == null) {
+            metrics.reserveFailed(FailureReason.NULL_EMAIL);
+            return null;
+        }
+
+        // Check if we have a live seat-hold with the provided ID, for this customer
+        final int slot = holds.find(seatHoldId);
+        final FailureReason failure = checkHold(slot, customerEmail);
+        if (failure != null) {
+            metrics.reserveFailed(failure);
+            return null;
+        }
+
+        // Mark the seats as reserved
+        final long now = System.currentTimeMillis();
+        if (journal != null) {
+            journal.appendReserve(seatHoldId, now);
+        }
+        commitHold(slot, now);
+        metrics.reserveSucceeded();
+
+        // Return the reservation ID (reuse the hold ID)
+        return Integer.toString(seatHoldId);
+    }
+
+    /**
+     * Helper method to check that a customer can reserve, release or extend
+     * a hold.  A hold that has expired but that the wheel hasn't released
+     * yet is released now.  The caller must hold the lock, and tell the
+     * release listeners afterwards.
+     *
+     * @param slot the hold's slot in the hold table, or -1 if there's no such hold
+     * @param customerEmail the email address of the customer
+     * @return the reason the customer can't use the hold, or null if they can
+     */
+    private FailureReason checkHold(final int slot, final String customerEmail) {
+        if (slot < 0) {
+            // The seat-hold was not found
+            return FailureReason.HOLD_NOT_FOUND;
+        } else if (System.currentTimeMillis() - holds.getCreatedTime(slot) >= holdTimeout) {
+
+            // The seat hold has expired but the wheel hasn't released it yet, so do it now
+            if (journal != null) {
+                journal.appendRelease(holds.getId(slot));
+            }
+            metrics.holdExpired();
+            releaseHold(slot);
+            return FailureReason.HOLD_EXPIRED;
+        } else if (!customerEmail.equalsIgnoreCase(holds.getEmail(slot))) {
+            // The customer email does not match
+            return FailureReason.EMAIL_MISMATCH;
+        }
+
+        return null;
+    }
+
+    /**
+     * Release a hold before it times out.  Its seats are open again
+     * straight away, and join up with any open seats next to them in the
+     * index of open seats, so the next hold can use them.  The release
+     * listeners are told, as for an expired hold.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was released; false if there's no such
+     *         hold, it has expired, or it's another customer's
+     */
+    @Override
+    public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+
+        final long start = System.nanoTime();
+        boolean released = false;
+        if (customerEmail != null) {
+            final long sequence;
+            synchronized (this) {
+                metrics.recordLockWait(start);
+                final int slot = holds.find(seatHoldId);
+                if (checkHold(slot, customerEmail) == null) {
+                    if (journal != null) {
+                        journal.appendRelease(seatHoldId);
+                    }
+                    releaseHold(slot);
+                    metrics.holdReleased();
+                    released = true;
+                }
+                notifyReleaseListeners();
+                publishSeatMap();
+                sequence = journalSequence();
+            }
+            awaitJournal(sequence);
+        }
+
+        metrics.recordLatency(MetricsSnapshot.Operation.RELEASE_HOLD, start);
+        return released;
+    }
+
+    /**
+     * Cancel a reservation.  Its seats are open again straight away, and
+     * join up with any open seats next to them in the index of open seats.
+     *
+     * @param confirmationCode the reservation confirmation code
+     * @param customerEmail the email address of the customer who made the reservation
+     * @return whether the reservation was cancelled; false if there's no
+     *         such reservation (or it was already cancelled), or it's
+     *         another customer's
+     */
+    @Override
+    public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+
+        final long start = System.nanoTime();
+        boolean cancelled = false;
+        final long code = parseConfirmationCode(confirmationCode);
+        if ((customerEmail != null) && (code != NO_RESERVATION)) {
+            final int id = (int) code;
+            final long sequence;
+            synchronized (this) {
+                metrics.recordLockWait(start);
+                final int record = reserved.find(id);
+                if ((record >= 0) && reserved.isCustomer(record, customerEmail)) {
+                    if (journal != null) {
+                        journal.appendCancel(id);
+                    }
+                    cancelRecord(record);
+                    metrics.reservationCancelled();
+                    cancelled = true;
+                }
+                publishSeatMap();
+                sequence = journalSequence();
+            }
+            awaitJournal(sequence);
+        }
+
+        metrics.recordLatency(MetricsSnapshot.Operation.CANCEL_RESERVATION, start);
+        return cancelled;
+    }
+
+    /**
+     * Extend a hold: its timeout starts again from now, as if it had just
+     * been made.  A hold can be extended any number of times, as long as
+     * it hasn't expired yet.
+     *
+     * @param seatHoldId the seat hold identifier
+     * @param customerEmail the email address of the customer to which the seat hold is assigned
+     * @return whether the hold was extended; false if there's no such
+     *         hold, it has expired, or it's another customer's
+     */
+    @Override
+    public boolean extendHold(final int seatHoldId, final String customerEmail) {
+
+        final long start = System.nanoTime();
+        boolean extended = false;
+        if (customerEmail != null) {
+            final long sequence;
+            synchronized (this) {
+                metrics.recordLockWait(start);
+                final int slot = holds.find(seatHoldId);
+                if (checkHold(slot, customerEmail) == null) {
+                    final long now = System.currentTimeMillis();
+                    if (journal != null) {
+                        journal.appendExtend(seatHoldId, now);
+                    }
+                    renewHold(slot, now);
+                    metrics.holdExtended();
+                    extended = true;
+                }
+                notifyReleaseListeners();
+                publishSeatMap();
+                sequence = journalSequence();
+            }
+            awaitJournal(sequence);
+        }
+
+        metrics.recordLatency(MetricsSnapshot.Operation.EXTEND_HOLD, start);
+        return extended;
+    }
+
+    /**
+     * Helper method to restart a hold's timeout, and schedule it on the
+     * expiry wheel again.  The old wheel entry is ignored when it comes
+     * due.  The caller must hold the lock.
+     *
+     * @param slot the hold's slot in the hold table
+     * @param createdTime the time the timeout restarts from (milliseconds)
+     */
+    private void renewHold(final int slot, final long createdTime) {
+        holds.setCreatedTime(slot, createdTime);
+        if (!zeroGarbage) {
+            customers.replaceHold(holds.toSeatBlock(slot));
+        }
+        expiryWheel.schedule(holds.getId(slot), createdTime + holdTimeout);
+    }
+
+    /**
+     * Helper method to open up the seats of a reservation, and mark it as
+     * cancelled in the reservation store.  The caller must hold the lock.
+     *
+     * @param record the reservation's record in the store
+     */
+    private void cancelRecord(final int record) {
+        for (int segment = 0; segment < reserved.getNumSegments(record); ++segment) {
+            updateSeatStatus(reserved.getSegmentStart(record, segment),
+                    reserved.getSegmentLength(record, segment), SeatStatus.Status.OPEN);
+        }
+        reserved.cancel(record);
+    }
+
+    /**
+     * Helper method to get the reservation ID from a confirmation code.
+     * The other services use it too, since their codes are the same.
+     *
+     * @param confirmationCode the confirmation code from reserveSeats()
+     * @return the reservation ID, or NO_RESERVATION if the code isn't valid
+     */
+    static long parseConfirmationCode(final String confirmationCode) {
+        if (confirmationCode == null) {
+            return NO_RESERVATION;
+        }
+
+        try {
+            final long id = Long.parseLong(confirmationCode);
+            return ((id < Integer.MIN_VALUE) || (id > Integer.MAX_VALUE)) ? NO_RESERVATION : id;
+        } catch (NumberFormatException nfe) {
+            return NO_RESERVATION;
+        }
+    }
+
+    /**
+     * Helper method to move a hold from the hold table to the reservation
+     * store, and mark its seats as reserved.  The caller must hold the lock.
+     *
+     * @param slot the hold's slot in the hold table
+     * @param reservedTime the time the hold was reserved (milliseconds)
+     */
+    private void commitHold(final int slot, final long reservedTime) {
+        updateHoldStatus(slot, SeatStatus.Status.RESERVED);
+        reserved.add(holds, slot, reservedTime);
+        if (!zeroGarbage) {
+            customers.removeHold(holds.getEmail(slot), holds.getId(slot));
+        }
+        holds.remove(slot);
+    }
+
+    /**
+     * Helper method to get the sequence number of the last journal record.
+     * The caller must hold the lock.
+     *
+     * @return the last sequence number, or 0 if the service isn't persistent
+     */
+    private long journalSequence() {
+        return (journal == null) ? 0L : journal.getLastSequence();
+    }
+
+    /**
+     * Helper method to wait for the journal to persist the records up to
+     * a sequence number.  Called without the lock, so other threads can
+     * make changes (and share the next disk force) in the meantime.
+     *
+     * @param sequence the sequence number from journalSequence()
+     */
+    private void awaitJournal(final long sequence) {
+        if (sequence > 0L) {
+            journal.await(sequence);
+        }
+    }
+
+    /**
+     * Save a snapshot of the reservations and holds, then drop the journal
+     * records it covers, so a restart only replays the changes made since.
+     * The state is copied under the lock, but written without it.  Does
+     * nothing if the service isn't persistent.
+     *
+     * @throws IOException if the snapshot or journal can't be written
+     */
+    public void takeSnapshot() throws IOException {
+
+        if (journal == null) {
+            return;
+        }
+
+        synchronized (snapshotLock) {
+            final SeatSnapshot snapshot;
+            final long position;
+            synchronized (this) {
+                releaseExpiredHolds();
+                publishSeatMap();
+                snapshot = new SeatSnapshot(journal.getLastSequence(), seats.getNumSeats(), holdId,
+                        reserved.toSeatBlocks(), holds.toSeatBlocks());
+                position = journal.getEndPosition();
+            }
+
+            snapshot.write(snapshotFile);
+            journal.compact(snapshot.getSequence(), position);
+        }
+    }
+
+    /**
+     * Start a background thread that takes a snapshot on a fixed schedule.
+     * Does nothing if the thread is already running, or the service isn't
+     * persistent.
+     *
+     * @param periodMillis how often to take a snapshot (milliseconds)
+     */
+    public synchronized void startSnapshots(final long periodMillis) {
+
+        if ((snapshotter != null) || (journal == null)) {
+            return;
+        }
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ticketservice-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (IOException | RuntimeException e) {
+                // Keep taking snapshots (the journal still has the changes), and hand the failure to the
+                // uncaught exception handler
+                final Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background thread started by startSnapshots(), if any.
+     * Waits for a snapshot in progress, rather than interrupting it,
+     * since an interrupt during I/O closes the journal.
+     */
+    public void stopSnapshots() {
+
+        final ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = snapshotter;
+            snapshotter = null;
+        }
+
+        if (stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(1L, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Helper method to restore the reservations and holds in a snapshot.
+     * The caller must hold the lock.
+     *
+     * @param snapshot the snapshot
+     * @throws IOException if the snapshot is for a different venue
+     */
+    private void restoreSnapshot(final SeatSnapshot snapshot) throws IOException {
+
+        if (snapshot.getNumSeats() != seats.getNumSeats()) {
+            throw new IOException("Snapshot is for a venue of " + snapshot.getNumSeats() +
+                    " seats, not " + seats.getNumSeats());
+        }
+
+        // Set the seats directly, then recount the open seats and rebuild the index in one pass
+        for (SeatBlock block : snapshot.getReserved()) {
+            restoreSeats(block, SeatStatus.Status.RESERVED);
+            reserved.add(block);
+        }
+        for (SeatBlock block : snapshot.getHolds()) {
+            restoreSeats(block, SeatStatus.Status.HELD);
+            holds.add(block);
+            customers.addHold(block);
+            expiryWheel.schedule(block.getId(), block.getCreatedTime() + holdTimeout);
+        }
+
+        seatsAvailable = 0;
+        Arrays.fill(rowSeatsAvailable, 0);
+        for (int seat = 0; seat < seats.getNumSeats(); ++seat) {
+            if (seats.getStatus(seat) == SeatStatus.Status.OPEN) {
+                ++seatsAvailable;
+                ++rowSeatsAvailable[venue.getRowForSeat(seat)];
+            }
+        }
+        allocator.rebuild(isOpen);
+        holdId = snapshot.getNextHoldId();
+    }
+
+    /**
+     * Helper method to set the status and lookup ID of a block's seats,
+     * without updating the counters or the index of open seats.
+     *
+     * @param block the block
+     * @param seatStatus the new seat status
+     */
+    private void restoreSeats(final SeatBlock block, final SeatStatus.Status seatStatus) {
+        for (int segment = 0; segment < block.getNumSegments(); ++segment) {
+            final int lastSeat = block.getSegmentStart(segment) + block.getSegmentLength(segment);
+            if (isFeedLive()) {
+                changeFeed.record(block.getSegmentStart(segment), block.getSegmentLength(segment), seatStatus);
+            }
+            for (int currSeat = block.getSegmentStart(segment); currSeat < lastSeat; ++currSeat) {
+                seats.setStatus(currSeat, seatStatus);
+                seats.setLookupId(currSeat, block.getId());
+            }
+        }
+        seatMapStale = true;
+    }
+
+    /**
+     * Stop the expiry reaper and snapshots (if running), and write and
+     * close the journal (if the service is persistent).
+     *
+     * @throws IOException if the journal can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        stopExpiryReaper();
+        stopSnapshots();
+        synchronized (this) {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Helper method to check whether a seat is open.
+     *
+     * @param seatId the seat number
+     * @return whether the seat is neither held nor reserved
+     */
+    private boolean isSeatOpen(final int seatId) {
+        return seats.getStatus(seatId) == SeatStatus.Status.OPEN;
+    }
+
+    /**
+     * Helper method to mark every segment of a hold as having a specific
+     * status.
+     *
+     * @param slot the hold's slot in the hold table
+     * @param seatStatus the new seat status
+     */
+    private void updateHoldStatus(final int slot, final SeatStatus.Status seatStatus) {
+        for (int segment = 0; segment < holds.getNumSegments(slot); ++segment) {
+            updateSeatStatus(holds.getSegmentStart(slot, segment), holds.getSegmentLength(slot, segment), seatStatus);
+        }
+    }
+
+    /**
+     * Helper method to mark a block of seats as having a specific status.
+     *
+     * @param startingSeat the starting seat index
+     * @param numberSeats the number of consecutive seats
+     * @param seatStatus the new seat status
+     */
+    private void updateSeatStatus(final int startingSeat, final int numberSeats, SeatStatus.Status seatStatus) {
+        final boolean open = SeatStatus.Status.OPEN.equals(seatStatus);
+        for (int index = startingSeat; index < (startingSeat + numberSeats); ++index) {
+
+            // Update the open-seat counters if the seat is changing between open and not open
+            final boolean wasOpen = SeatStatus.Status.OPEN.equals(seats.getStatus(index));
+            if (wasOpen != open) {
+                final int delta = open ? 1 : -1;
+                seatsAvailable += delta;
+                rowSeatsAvailable[venue.getRowForSeat(index)] += delta;
+            }
+
+            seats.setStatus(index, seatStatus);
+        }
+        if (isFeedLive()) {
+            changeFeed.record(startingSeat, numberSeats, seatStatus);
+        }
+        seatMapStale = true;
+
+        // Keep the index of open seats in step with the seat list
+        if (open) {
+            allocator.markFree(startingSeat, numberSeats);
+        } else {
+            allocator.markUsed(startingSeat, numberSeats);
+        }
+    }
+
+    /**
+     * Helper method to publish the summary of the open seats read by
+     * findAndHoldSeats() without the lock.  The caller must hold the lock.
+     */
+    private void publishFreeRuns() {
+        nextDeadline = expiryWheel.getNextDeadline();
+        openSeats = seatsAvailable;
+        largestFreeRun = allocator.getLongestRun();
+    }
+
+    /**
+     * Get the status of a seat.  The returned object is a copy, so
+     * changing it doesn't affect the venue.
+     *
+     * @param seatId the seat number
+     * @return the status of the seat
+     */
+    public SeatStatus getSeatStatus(final int seatId) {
+        synchronized (this) {
+            releaseExpiredHolds();
+            publishSeatMap();
+            return seats.getSeatStatus(seatId);
+        }
+    }
+
+    /**
+     * Get the latest seat map: an immutable, versioned snapshot of every
+     * seat's status.  Reading it doesn't take the lock, so any number of
+     * threads can render the map without holding up changes (except in
+     * zero-garbage mode, where the map is only published when it's read).
+     * Holds that have expired but haven't been released yet still show as
+     * held.
+     *
+     * @return the seat map
+     */
+    public SeatMapSnapshot getSeatMap() {
+        if (zeroGarbage) {
+            synchronized (this) {
+                flushSeatMap();
+            }
+        }
+        return seatMap;
+    }
+
+    /**
+     * Helper method to check if the change feed is recording deltas: always,
+     * except in zero-garbage mode with no seat map listeners.
+     *
+     * @return whether changes are recorded and published as they're made
+     */
+    private boolean isFeedLive() {
+        return !zeroGarbage || !seatMapListeners.isEmpty();
+    }
+
+    /**
+     * Helper method to publish a new version of the seat map, if any seat
+     * has changed since the last one, unless the change feed isn't live.
+     * The summary of open seats is always published.  The caller must
+     * hold the lock.
+     */
+    private void publishSeatMap() {
+        publishFreeRuns();
+        if (seatMapStale && isFeedLive()) {
+            final long version = seatMap.getVersion() + 1L;
+            final SeatMapDelta delta = changeFeed.publish(version);
+            seatMap = new SeatMapSnapshot(version, seats.getNumSeats(), seatsAvailable, seats.sharePages());
+            seatMapStale = false;
+            for (SeatMapListener listener : seatMapListeners) {
+                listener.seatMapChanged(delta);
+            }
+        }
+    }
+
+    /**
+     * Helper method to publish a new version of the seat map now, if any
+     * seat has changed since the last one.  If the changes weren't
+     * recorded, the change feed starts again at the new version.  The
+     * caller must hold the lock.
+     */
+    private void flushSeatMap() {
+        if (!seatMapStale) {
+            return;
+        } else if (isFeedLive()) {
+            publishSeatMap();
+            return;
+        }
+
+        final long version = seatMap.getVersion() + 1L;
+        changeFeed.restart(version);
+        seatMap = new SeatMapSnapshot(version, seats.getNumSeats(), seatsAvailable, seats.sharePages());
+        seatMapStale = false;
+    }
+
+    /**
+     * Get the changes to the seat map after a version, as deltas with
+     * consecutive version numbers.  Reading them doesn't take the lock,
+     * except in zero-garbage mode.  Only the last 1024 deltas are kept; a
+     * client further behind than that should start again from
+     * getSeatMap().  In zero-garbage mode, deltas are only kept while
+     * there are listeners.
+     *
+     * @param afterVersion the version the client has
+     * @return the deltas up to the latest version (empty if the client is
+     *         up to date), or null if the client has fallen too far behind
+     */
+    public List<SeatMapDelta> getSeatMapChanges(final long afterVersion) {
+        if (zeroGarbage) {
+            synchronized (this) {
+                flushSeatMap();
+            }
+        }
+        return changeFeed.getChangesSince(afterVersion);
+    }
+
+    /**
+     * Subscribe to the seat map changes after a version.  The retained
+     * deltas after that version are passed to the listener straight away,
+     * then each new delta as it's published, with no gaps.
+     *
+     * @param afterVersion the version the subscriber has (e.g. from getSeatMap())
+     * @param listener the listener
+     * @return whether the listener was added; false if the subscriber has
+     *         fallen too far behind, and should start again from getSeatMap()
+     */
+    public boolean addSeatMapListener(final long afterVersion, final SeatMapListener listener) {
+        synchronized (this) {
+            flushSeatMap();
+            final List<SeatMapDelta> missed = changeFeed.getChangesSince(afterVersion);
+            if (missed == null) {
+                return false;
+            }
+
+            for (SeatMapDelta delta : missed) {
+                listener.seatMapChanged(delta);
+            }
+            seatMapListeners.add(listener);
+            return true;
+        }
+    }
+
+    /**
+     * Remove a listener added with addSeatMapListener().
+     *
+     * @param listener the listener
+     */
+    public void removeSeatMapListener(final SeatMapListener listener) {
+        seatMapListeners.remove(listener);
+    }
+
+    /**
+     * Get a snapshot of the service's metrics: the latency of each
+     * operation, lock wait time, search length, and counts of holds
+     * and reservations by outcome.  Reading the metrics doesn't take
+     * the lock.
+     *
+     * @return the metrics
+     */
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Rebuilds the service from the records in the journal.
+     */
+    private final class JournalReplay implements HoldJournal.RecordHandler {
+
+        @Override
+        public void hold(final int id, final String email, final int startingSeat,
+                         final int numberSeats, final long createdTime) {
+            addHold(holds.add(id, email, createdTime, startingSeat, numberSeats));
+            holdId = id + 1;
+        }
+
+        @Override
+        public void splitHold(final int id, final String email, final int[] segments, final long createdTime) {
+            addHold(holds.add(id, email, createdTime, segments));
+            holdId = id + 1;
+        }
+
+        @Override
+        public void reserve(final int id, final long reservedTime) {
+            final int slot = holds.find(id);
+            if (slot >= 0) {
+                commitHold(slot, reservedTime);
+            }
+        }
+
+        @Override
+        public void release(final int id) {
+            final int slot = holds.find(id);
+            if (slot >= 0) {
+                releaseHold(slot);
+            }
+        }
+
+        @Override
+        public void cancel(final int id) {
+            final int record = reserved.find(id);
+            if (record >= 0) {
+                cancelRecord(record);
+            }
+        }
+
+        @Override
+        public void extend(final int id, final long createdTime) {
+            final int slot = holds.find(id);
+            if (slot >= 0) {
+                renewHold(slot, createdTime);
+            }
+        }
+    }
+
+    /**
+     * Helper method to get the hold information by ID.
+     *
+     * @param hold the hold key
+     * @return a copy of the hold from the hold table, or null
+     */
+    public SeatBlock getHoldById(final SeatHold hold) {
+        synchronized (this) {
+            final int slot = holds.find(hold.getId());
+            return (slot < 0) ? null : holds.toSeatBlock(slot);
+        }
+    }
+
+    /**
+     * Helper method to get the reserve information by ID.
+     *
+     * @param reservedId the reserve key
+     * @return a view of the reservation in the reservation store, or null
+     */
+    public ReservationView getReservedById(final int reservedId) {
+        final int record;
+        synchronized (this) {
+            record = reserved.find(reservedId);
+        }
+        return (record < 0) ? null : new ReservationView(reserved, record);
     }
 }
@@ -1,7 +1,11 @@
 package ticketservice;
 
+import java.util.Arrays;
+
 /**
- * POJO representing a concert venue.
+ * POJO representing a concert venue: a block of reserved seating, in
+ * rows of seats, and any number of general-admission sections, where
+ * a ticket is a place in the section rather than a particular seat.
  */
 final class Venue {
 
@@ -18,6 +22,9 @@ final class Venue {
     /** The computed total number of seats. */
     private int totalNumberOfSeats;
 
+    /** The capacity of each general-admission section. */
+    private final int[] admissionCapacities;
+
     /**
      * Default constructor.
      */
@@ -32,16 +39,35 @@ final class Venue {
      * @param numCols the number of seats per row in the venue
      */
     public Venue(final int numRows, final int numCols) {
+        this(numRows, numCols, new int[0]);
+    }
+
+    /**
+     * Constructor taking the number of rows and columns of reserved
+     * seating, and the capacity of each general-admission section.
+     *
+     * @param numRows the number of rows in the venue
+     * @param numCols the number of seats per row in the venue
+     * @param admissionCapacities the capacity of each general-admission section
+     */
+    public Venue(final int numRows, final int numCols, final int... admissionCapacities) {
 
         // The inputs must be positive
         if (numRows <= 0 || numCols <= 0) {
             throw new IllegalArgumentException("Illegal argument to Venue c'tor: rows and columns must be positive");
         }
+        for (int capacity : admissionCapacities) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Illegal argument to Venue c'tor: " +
+                        "general-admission capacities must be positive");
+            }
+        }
 
         // Save the inputs and compute the total number of seats
         this.numRows = numRows;
         this.numCols = numCols;
         totalNumberOfSeats = numRows * numCols;
+        this.admissionCapacities = admissionCapacities.clone();
     }
 
     public int getNumRows() {
@@ -52,12 +78,54 @@ final class Venue {
         return numCols;
     }
 
+    /**
+     * Get the number of reserved seats (general-admission places aren't
+     * seats, and aren't counted).
+     *
+     * @return the number of seats in the rows
+     */
     public int getNumberOfSeats() {
         return totalNumberOfSeats;
     }
 
+    public int getNumAdmissionSections() {
+        return admissionCapacities.length;
+    }
+
+    /**
+     * Get the number of places in a general-admission section.
+     *
+     * @param section the section number (0-based)
+     * @return the capacity of the section
+     */
+    public int getAdmissionCapacity(final int section) {
+        return admissionCapacities[section];
+    }
+
+    /**
+     * Get the row containing a seat.  Seats are numbered left-to-right
+     * starting with the first row.
+     *
+     * @param seatId the seat number
+     * @return the row number (0-based)
+     */
+    public int getRowForSeat(final int seatId) {
+        return seatId / numCols;
+    }
+
+    /**
+     * Get the number of the left-most seat in a row.
+     *
+     * @param row the row number (0-based)
+     * @return the number of the first seat in the row
+     */
+    public int getFirstSeatInRow(final int row) {
+        return row * numCols;
+    }
+
     @Override
     public String toString() {
-        return String.format("Venue {rows: %d, columns: %d", numRows, numCols);
+        return String.format("Venue {rows: %d, columns: %d, admission sections: %s",
+                numRows, numCols, Arrays.toString(admissionCapacities));
     }
 }
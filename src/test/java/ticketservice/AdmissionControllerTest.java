@@ -0,0 +1,205 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test the behavior of the AdmissionController class.
+ */
+public class AdmissionControllerTest {
+
+    /**
+     * Test that requests are turned away, without reaching the service,
+     * once the venue is sold out.
+     */
+    @Test
+    public void testSoldOut() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(1, 10));
+        final AdmissionController controller = new AdmissionController(service, 4, 100);
+        Assert.assertNotNull(controller.findAndHoldSeats(10, "a@example.com"));
+        Assert.assertEquals(1L, controller.getAdmitted());
+
+        // At most one more request reaches the service, and finds the venue full
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertNull(controller.findAndHoldSeats(2, "b@example.com"));
+        }
+        Assert.assertTrue(controller.getAdmitted() <= 2L);
+        Assert.assertTrue(service.getMetrics().getHoldFailures(FailureReason.NOT_ENOUGH_SEATS) <= 1L);
+        Assert.assertEquals(100L, controller.getRejected(FailureReason.NOT_ENOUGH_SEATS)
+                + service.getMetrics().getHoldFailures(FailureReason.NOT_ENOUGH_SEATS));
+
+        // Invalid requests and reservations still go to the service
+        Assert.assertNull(controller.findAndHoldSeats(0, "a@example.com"));
+        Assert.assertEquals(1L, service.getMetrics().getHoldFailures(FailureReason.INVALID_NUM_SEATS));
+        Assert.assertEquals(0, controller.numSeatsAvailable());
+    }
+
+    /**
+     * Test the concurrency cap, the FIFO queue and the queue positions.
+     */
+    @Test
+    public void testQueue() throws Exception {
+
+        final BlockingService service = new BlockingService();
+        final AdmissionController controller = new AdmissionController(service, 1, 2);
+
+        // The first caller is admitted, and blocks in the service
+        final CompletableFuture<SeatHold> first = async(controller, "a@example.com");
+        Assert.assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, controller.getActiveCount());
+
+        // The next two wait in the queue, in order
+        final CompletableFuture<SeatHold> second = async(controller, "b@example.com");
+        awaitQueueLength(controller, 1);
+        final CompletableFuture<SeatHold> third = async(controller, "C@example.com");
+        awaitQueueLength(controller, 2);
+        Assert.assertEquals(1, controller.getQueuePosition("b@example.com"));
+        Assert.assertEquals(2, controller.getQueuePosition("c@example.com"));
+        Assert.assertEquals(0, controller.getQueuePosition("a@example.com"));
+
+        // The queue is full, so the next caller is turned away at once
+        Assert.assertNull(controller.findAndHoldSeats(1, "d@example.com"));
+        Assert.assertEquals(1L, controller.getRejected(FailureReason.QUEUE_FULL));
+
+        // Let the service run; everyone is served in order of arrival
+        service.gate.release(3);
+        Assert.assertNotNull(first.get(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(second.get(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(third.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3L, controller.getAdmitted());
+        Assert.assertEquals(0, controller.getQueueLength());
+        Assert.assertEquals(0, controller.getActiveCount());
+        synchronized (service.order) {
+            Assert.assertEquals("[a@example.com, b@example.com, C@example.com]", service.order.toString());
+        }
+    }
+
+    /**
+     * Test that a customer with several queued requests keeps a place in
+     * the queue until the last of them is admitted.
+     */
+    @Test
+    public void testQueuePositionOfRepeatCustomer() throws Exception {
+
+        final BlockingService service = new BlockingService();
+        final AdmissionController controller = new AdmissionController(service, 1, 2);
+        final CompletableFuture<SeatHold> first = async(controller, "a@example.com");
+        Assert.assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+
+        final CompletableFuture<SeatHold> second = async(controller, "b@example.com");
+        awaitQueueLength(controller, 1);
+        final CompletableFuture<SeatHold> third = async(controller, "B@example.com");
+        awaitQueueLength(controller, 2);
+        Assert.assertEquals(1, controller.getQueuePosition("b@example.com"));
+
+        // Once the first is served, the customer's second request is still waiting, now at the front
+        service.gate.release();
+        Assert.assertNotNull(first.get(5, TimeUnit.SECONDS));
+        awaitQueueLength(controller, 1);
+        Assert.assertEquals(1, controller.getQueuePosition("b@example.com"));
+
+        service.gate.release(2);
+        Assert.assertNotNull(second.get(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(third.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, controller.getQueuePosition("b@example.com"));
+    }
+
+    /**
+     * Test that the constructor rejects bad limits.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLimits() {
+        new AdmissionController(new BlockingService(), 0, 10);
+    }
+
+    /**
+     * Helper method to request a hold on another thread.
+     *
+     * @param controller the controller
+     * @param email the customer's email
+     * @return the hold
+     */
+    private static CompletableFuture<SeatHold> async(final AdmissionController controller, final String email) {
+        final CompletableFuture<SeatHold> future = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> future.complete(controller.findAndHoldSeats(1, email)));
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Helper method to wait until the queue reaches a length.
+     *
+     * @param controller the controller
+     * @param length the length
+     */
+    private static void awaitQueueLength(final AdmissionController controller, final int length) {
+        final long deadline = System.currentTimeMillis() + 5_000L;
+        while ((controller.getQueueLength() < length) && (System.currentTimeMillis() < deadline)) {
+            Thread.yield();
+        }
+        Assert.assertEquals(length, controller.getQueueLength());
+    }
+
+    /**
+     * A service whose holds each block until the gate lets them through, and which
+     * records the order of its callers.
+     */
+    private static final class BlockingService implements TicketService {
+
+        /** Counted down when the first hold enters the service. */
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        /** Released to let holds finish, one per permit. */
+        private final Semaphore gate = new Semaphore(0);
+
+        /** The emails of the holds, in the order they entered. */
+        private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public int numSeatsAvailable() {
+            return 100;
+        }
+
+        @Override
+        public SeatHold findAndHoldSeats(final int numSeats, final String customerEmail) {
+            order.add(customerEmail);
+            entered.countDown();
+            try {
+                gate.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SeatHold(order.size());
+        }
+
+        @Override
+        public String reserveSeats(final int seatHoldId, final String customerEmail) {
+            return null;
+        }
+
+        @Override
+        public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+            return false;
+        }
+
+        @Override
+        public boolean cancelReservation(final String confirmationCode, final String customerEmail) {
+            return false;
+        }
+
+        @Override
+        public boolean extendHold(final int seatHoldId, final String customerEmail) {
+            return false;
+        }
+    }
+}
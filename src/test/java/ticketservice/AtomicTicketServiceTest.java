@@ -0,0 +1,250 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Test the behavior of the AtomicTicketService class.  The first tests
+ * follow the TicketServiceImpl tests, since both should behave the same
+ * from a single thread.
+ */
+public class AtomicTicketServiceTest {
+
+    /**
+     * Test the logic for getting the number of available seats.
+     */
+    @Test
+    public void testNumAvailableSeats() {
+
+        // Create a service and confirm that we get the correct number of seats
+        final AtomicTicketService service = new AtomicTicketService(100L, new Venue(20, 25));
+        Assert.assertEquals(500, service.numSeatsAvailable());
+
+        // Hold some seats
+        final SeatHold hold = service.findAndHoldSeats(10, "a@example.com");
+        Assert.assertNotNull(hold);
+        Assert.assertEquals(490, service.numSeatsAvailable());
+
+        // Sleep for more time than the timeout above.  This should cause the held seats to get freed.
+        sleep(250L);
+        Assert.assertEquals(500, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test the logic for finding and holding seats.
+     */
+    @Test
+    public void testFindAndHoldSeats() {
+
+        // Create a service and confirm that we can hold seats
+        final AtomicTicketService service = new AtomicTicketService(300L, new Venue(20, 25));
+
+        // Hold some seats and then confirm the data is as expected
+        final SeatHold hold1 = service.findAndHoldSeats(20, "a@example.com");
+        Assert.assertNotNull(hold1);
+        final SeatBlock block1 = service.getHoldById(hold1);
+        Assert.assertEquals(0, block1.getStartingSeat());
+        Assert.assertEquals(20, block1.getNumberSeats());
+        Assert.assertEquals(480, service.numSeatsAvailable());
+
+        // Confirm we can't hold zero seats, or hold with a null email
+        Assert.assertNull(service.findAndHoldSeats(0, "a@example.com"));
+        Assert.assertNull(service.findAndHoldSeats(10, null));
+
+        // Hold some more seats
+        final SeatHold hold2 = service.findAndHoldSeats(30, "b@example.com");
+        Assert.assertNotNull(hold2);
+        final SeatBlock block2 = service.getHoldById(hold2);
+        Assert.assertEquals(20, block2.getStartingSeat());
+        Assert.assertEquals(30, block2.getNumberSeats());
+        Assert.assertEquals(450, service.numSeatsAvailable());
+
+        // Hold all of the remaining seats
+        final SeatHold hold3 = service.findAndHoldSeats(450, "b@example.com");
+        Assert.assertNotNull(hold3);
+        Assert.assertEquals(50, service.getHoldById(hold3).getStartingSeat());
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        // Try to hold 1 seat - this should fail as no seats are available
+        Assert.assertNull(service.findAndHoldSeats(1, "b@example.com"));
+
+        // Sleep more than the timeout; the seats at the front are free again
+        sleep(400L);
+        final SeatHold hold5 = service.findAndHoldSeats(5, "b@example.com");
+        Assert.assertNotNull(hold5);
+        Assert.assertEquals(0, service.getHoldById(hold5).getStartingSeat());
+        Assert.assertEquals(495, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test the logic for reserving seats.
+     */
+    @Test
+    public void testReserveSeats() {
+
+        // Create a service and hold some seats
+        final AtomicTicketService service = new AtomicTicketService(300L, new Venue(20, 25));
+        final SeatHold hold1 = service.findAndHoldSeats(20, "a@example.com");
+        Assert.assertNotNull(hold1);
+
+        // Confirm that we can't reserve with a different email address or ID
+        Assert.assertNull(service.reserveSeats(hold1.getId(), "b@example.com"));
+        Assert.assertNull(service.reserveSeats(hold1.getId() + 1, "a@example.com"));
+
+        // Confirm that we can reserve with the same info, but only once
+        Assert.assertNotNull(service.reserveSeats(hold1.getId(), "a@example.com"));
+        Assert.assertNull(service.reserveSeats(hold1.getId(), "a@example.com"));
+        Assert.assertEquals(20, service.getReservedById(hold1.getId()).getNumberSeats());
+
+        // Reserved seats don't come back when the hold would have expired
+        sleep(400L);
+        Assert.assertEquals(480, service.numSeatsAvailable());
+    }
+
+    /**
+     * Stress test: many threads hold, reserve and let holds expire at the
+     * same time.  Afterwards, no seat may belong to two blocks, and the
+     * open-seat count must match the blocks that are still live.
+     */
+    @Test
+    public void linearizabilityStressTest() {
+
+        final int numSeats = 2_000;
+        final AtomicTicketService service = new AtomicTicketService(5L, new Venue(40, 50));
+        final int numThreads = 8;
+        final int opsPerThread = 5_000;
+
+        // Each thread holds 1-8 seats at a time, and reserves about one hold in twenty
+        final List<CompletableFuture<List<Integer>>> futures = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; ++t) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final List<Integer> reservations = new ArrayList<>();
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < opsPerThread; ++i) {
+                    final SeatHold hold = service.findAndHoldSeats(1 + random.nextInt(8), "a@example.com");
+                    if ((hold != null) && (random.nextInt(20) == 0) &&
+                            (service.reserveSeats(hold.getId(), "a@example.com") != null)) {
+                        reservations.add(hold.getId());
+                    }
+                }
+                return reservations;
+            }));
+        }
+
+        // Every seat may appear in at most one reservation
+        final boolean[] taken = new boolean[numSeats];
+        int reservedSeats = 0;
+        try {
+            for (CompletableFuture<List<Integer>> future : futures) {
+                for (int id : future.get()) {
+                    final SeatBlock block = service.getReservedById(id);
+                    for (int seat = block.getStartingSeat(); seat < block.getStartingSeat() + block.getNumberSeats(); ++seat) {
+                        Assert.assertFalse("Seat " + seat + " reserved twice", taken[seat]);
+                        taken[seat] = true;
+                    }
+                    reservedSeats += block.getNumberSeats();
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Assert.fail("Exception in CompletableFuture test: " + e.getMessage());
+        }
+
+        // Once every hold has expired, only the reserved seats are unavailable
+        sleep(50L);
+        Assert.assertEquals(numSeats - reservedSeats, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test the logic for holding seats in a multithreaded test.
+     */
+    @Test
+    public void multiThreadedTest() {
+
+        // 200 threads each try to hold 5 seats in a 1000-seat venue
+        final AtomicTicketService service = new AtomicTicketService(10_000L, new Venue(20, 50));
+        final int numThreads = 200;
+        final List<CompletableFuture<SeatHold>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; ++i) {
+            futures.add(CompletableFuture.supplyAsync(() -> service.findAndHoldSeats(5, "sam@example.com")));
+        }
+
+        // Every hold should succeed, with a unique ID
+        final Set<Integer> holdIdSet = new HashSet<>(numThreads);
+        try {
+            for (CompletableFuture<SeatHold> future : futures) {
+                Assert.assertTrue(holdIdSet.add(future.get().getId()));
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Assert.fail("Exception in CompletableFuture test: " + e.getMessage());
+        }
+
+        Assert.assertEquals(0, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test releasing holds, cancelling reservations and extending holds.
+     */
+    @Test
+    public void testReleaseCancelAndExtend() {
+
+        final AtomicTicketService service = new AtomicTicketService(200L, new Venue(2, 5));
+
+        // Fill the venue with three holds; the middle one crosses from row 0 into row 1
+        final SeatHold first = service.findAndHoldSeats(3, "a@example.com");
+        final SeatHold second = service.findAndHoldSeats(4, "b@example.com");
+        final SeatHold third = service.findAndHoldSeats(3, "c@example.com");
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        // Only the hold's customer can release it, and only once
+        Assert.assertFalse(service.releaseHold(second.getId(), "a@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), null));
+        Assert.assertTrue(service.releaseHold(second.getId(), "B@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), "b@example.com"));
+        Assert.assertNull(service.reserveSeats(second.getId(), "b@example.com"));
+        Assert.assertEquals(4, service.numSeatsAvailable());
+
+        // Only the reservation's customer can cancel it, and only once
+        final String code = service.reserveSeats(first.getId(), "a@example.com");
+        Assert.assertFalse(service.cancelReservation(code, "b@example.com"));
+        Assert.assertFalse(service.cancelReservation("not a code", "a@example.com"));
+        Assert.assertTrue(service.cancelReservation(code, "A@example.com"));
+        Assert.assertFalse(service.cancelReservation(code, "a@example.com"));
+        Assert.assertNull(service.getReservedById(first.getId()));
+        Assert.assertEquals(7, service.numSeatsAvailable());
+
+        // The released and cancelled seats are one block again
+        final SeatHold joined = service.findAndHoldSeats(7, "d@example.com");
+        Assert.assertEquals(0, service.getHoldById(joined).getStartingSeat());
+
+        // An extended hold outlives its first timeout; the others expire
+        sleep(150L);
+        Assert.assertFalse(service.extendHold(third.getId(), "d@example.com"));
+        Assert.assertTrue(service.extendHold(third.getId(), "c@example.com"));
+        sleep(120L);
+        Assert.assertEquals(7, service.numSeatsAvailable());
+        Assert.assertNotNull(service.reserveSeats(third.getId(), "c@example.com"));
+        Assert.assertFalse(service.extendHold(third.getId(), "c@example.com"));
+        Assert.assertFalse(service.extendHold(joined.getId(), "d@example.com"));
+    }
+
+    /**
+     * Helper method to sleep for the specified number of milliseconds.
+     *
+     * @param delay the number of milliseconds to sleep
+     */
+    private void sleep(final long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            // Nothing to do here
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the behavior of the BestFitAllocator class.
+ */
+public class BestFitAllocatorTest {
+
+    /**
+     * Test that parties go in the smallest run that fits.
+     */
+    @Test
+    public void testSmallestRun() {
+
+        // Use seats 4, 7 and 15.  This leaves runs of 4, 2, 7 and 24 seats.
+        final BestFitAllocator allocator = new BestFitAllocator(new Venue(4, 10));
+        Assert.assertEquals(40, allocator.getNumSeats());
+        allocator.markUsed(4, 1);
+        allocator.markUsed(7, 1);
+        allocator.markUsed(15, 1);
+
+        // First-fit would put a pair at seat 0; best-fit fills the gap at 5-6
+        Assert.assertEquals(5, allocator.findSeats(2));
+        allocator.markUsed(5, 2);
+        Assert.assertEquals(0, allocator.findSeats(3));
+        Assert.assertEquals(8, allocator.findSeats(5));
+        Assert.assertEquals(16, allocator.findSeats(8));
+        Assert.assertEquals(-1, allocator.findSeats(25));
+        Assert.assertEquals(-1, allocator.findSeats(0));
+    }
+
+    /**
+     * Test that freed seats merge with the runs on either side.
+     */
+    @Test
+    public void testMerge() {
+
+        final BestFitAllocator allocator = new BestFitAllocator(new Venue(1, 100));
+        Assert.assertEquals(100, allocator.getLongestRun());
+        allocator.markUsed(10, 80);
+        Assert.assertEquals(-1, allocator.findSeats(11));
+        Assert.assertEquals(10, allocator.getLongestRun());
+
+        // Free the middle, then the seats between it and each end
+        allocator.markFree(40, 20);
+        Assert.assertEquals(40, allocator.findSeats(20));
+        allocator.markFree(10, 30);
+        Assert.assertEquals(0, allocator.findSeats(60));
+        Assert.assertEquals(60, allocator.getLongestRun());
+        allocator.markFree(60, 30);
+        Assert.assertEquals(0, allocator.findSeats(100));
+
+        // Marking a block that covers free and used seats alike
+        allocator.markUsed(0, 50);
+        allocator.markFree(25, 50);
+        Assert.assertEquals(25, allocator.findSeats(75));
+
+        // A run of 75 is in the bin for [64, 128), so that's all the venue's 100 seats at most
+        Assert.assertEquals(100, allocator.getLongestRun());
+        allocator.markUsed(75, 25);
+        Assert.assertEquals(50, allocator.getLongestRun());
+    }
+
+    /**
+     * Compare the allocator against a brute-force best fit after random updates.
+     */
+    @Test
+    public void testMatchesBruteForce() {
+
+        final Venue venue = new Venue(11, 23);
+        final BestFitAllocator allocator = new BestFitAllocator(venue);
+        final boolean[] free = new boolean[venue.getNumberOfSeats()];
+        Arrays.fill(free, true);
+
+        final Random random = new Random(11L);
+        for (int i = 0; i < 3_000; ++i) {
+
+            // Randomly free or use a block of seats
+            final int start = random.nextInt(free.length);
+            final int count = 1 + random.nextInt(Math.min(90, free.length - start));
+            final boolean markFree = random.nextInt(3) == 0;
+            if (markFree) {
+                allocator.markFree(start, count);
+            } else {
+                allocator.markUsed(start, count);
+            }
+            for (int seat = start; seat < start + count; ++seat) {
+                free[seat] = markFree;
+            }
+
+            // The allocator must pick the start of a smallest run that fits
+            final int size = 1 + random.nextInt(100);
+            final int found = allocator.findSeats(size);
+            final int best = smallestRun(free, size);
+            if (best < 0) {
+                Assert.assertEquals(-1, found);
+            } else {
+                Assert.assertTrue((found == 0) || !free[found - 1]);
+                Assert.assertEquals(best, runLength(free, found));
+            }
+
+            // Rebuilding from the seats finds a run of the same length
+            if ((i % 500 == 0) && (best >= 0)) {
+                allocator.rebuild(seat -> free[seat]);
+                Assert.assertEquals(best, runLength(free, allocator.findSeats(size)));
+            }
+        }
+    }
+
+    /**
+     * Helper method to find the length of the smallest free run that fits.
+     *
+     * @param free which seats are free
+     * @param count the number of seats needed
+     * @return the run length, or -1 if no run is long enough
+     */
+    private int smallestRun(final boolean[] free, final int count) {
+
+        int best = -1;
+        for (int seat = 0; seat < free.length; ++seat) {
+            if (free[seat] && ((seat == 0) || !free[seat - 1])) {
+                final int length = runLength(free, seat);
+                if ((length >= count) && ((best < 0) || (length < best))) {
+                    best = length;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Helper method to get the length of the free run starting at a seat.
+     *
+     * @param free which seats are free
+     * @param start the first seat of the run
+     * @return the run length
+     */
+    private int runLength(final boolean[] free, final int start) {
+        int seat = start;
+        while ((seat < free.length) && free[seat]) {
+            ++seat;
+        }
+        return seat - start;
+    }
+}
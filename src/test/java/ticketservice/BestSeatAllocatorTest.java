@@ -0,0 +1,174 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the behavior of the BestSeatAllocator class.
+ */
+public class BestSeatAllocatorTest {
+
+    /**
+     * Test that the first blocks go to the center of the front row.
+     */
+    @Test
+    public void testCenterOfFrontRow() {
+
+        // A 4x10 venue: the best 4 seats are 3-6 of row 0
+        final BestSeatAllocator allocator = new BestSeatAllocator(new Venue(4, 10));
+        Assert.assertEquals(40, allocator.getNumSeats());
+        Assert.assertEquals(3, allocator.findSeats(4));
+        allocator.markUsed(3, 4);
+
+        // The next 2 seats go on either side of them, still in row 0
+        final int next = allocator.findSeats(2);
+        Assert.assertTrue((next == 1) || (next == 7));
+        allocator.markUsed(next, 2);
+
+        // The middle seats are better than the aisle seats
+        Assert.assertTrue(allocator.getSeatScore(4) < allocator.getSeatScore(0));
+        Assert.assertTrue(allocator.getSeatScore(5) < allocator.getSeatScore(9));
+        Assert.assertEquals(allocator.getSeatScore(4), allocator.getSeatScore(5));
+    }
+
+    /**
+     * Test that blocks never span rows, and that parties wider than a row
+     * are refused.
+     */
+    @Test
+    public void testNoRowWrap() {
+
+        final BestSeatAllocator allocator = new BestSeatAllocator(new Venue(3, 10));
+        Assert.assertEquals(-1, allocator.findSeats(11));
+        Assert.assertEquals(-1, allocator.findSeats(0));
+        Assert.assertEquals(10, allocator.getLongestRun());
+
+        // Leave seats 7-9 of row 0 and 0-2 of row 1 open: six in a row, across the row break
+        allocator.markUsed(0, 7);
+        allocator.markUsed(13, 7);
+        Assert.assertEquals(22, allocator.findSeats(6));
+
+        // Fill row 2, so there's no room for six seats at all
+        allocator.markUsed(20, 10);
+        Assert.assertEquals(-1, allocator.findSeats(6));
+        Assert.assertEquals(3, allocator.getLongestRun());
+        Assert.assertEquals(7, allocator.findSeats(3));
+
+        // A block marked across the row break frees both rows
+        allocator.markFree(5, 10);
+        Assert.assertEquals(5, allocator.findSeats(5));
+    }
+
+    /**
+     * Test that the row weight trades row against distance from the center.
+     */
+    @Test
+    public void testRowWeight() {
+
+        // Use the middle of row 0, leaving 3 seats at each aisle
+        final Venue venue = new Venue(2, 10);
+        final BestSeatAllocator nearFront = new BestSeatAllocator(venue, 100);
+        final BestSeatAllocator nearCenter = new BestSeatAllocator(venue, 1);
+        nearFront.markUsed(3, 4);
+        nearCenter.markUsed(3, 4);
+
+        // A heavy row weight keeps the party in row 0, at an aisle
+        final int front = nearFront.findSeats(3);
+        Assert.assertTrue((front == 0) || (front == 7));
+
+        // A light one moves them back to the center of row 1
+        Assert.assertEquals(13, nearCenter.findSeats(3));
+    }
+
+    /**
+     * Compare the allocator against a brute-force search over every block
+     * of seats, after random updates.
+     */
+    @Test
+    public void testMatchesBruteForce() {
+
+        final Venue venue = new Venue(13, 17);
+        final BestSeatAllocator allocator = new BestSeatAllocator(venue);
+        final boolean[] free = new boolean[venue.getNumberOfSeats()];
+        Arrays.fill(free, true);
+
+        final Random random = new Random(7L);
+        for (int i = 0; i < 2_000; ++i) {
+
+            // Randomly free or use a block of seats
+            final int start = random.nextInt(free.length);
+            final int count = 1 + random.nextInt(Math.min(9, free.length - start));
+            final boolean markFree = random.nextInt(3) == 0;
+            if (markFree) {
+                allocator.markFree(start, count);
+            } else {
+                allocator.markUsed(start, count);
+            }
+            for (int seat = start; seat < start + count; ++seat) {
+                free[seat] = markFree;
+            }
+
+            // The allocator's block must score as well as the best one
+            final int size = 1 + random.nextInt(8);
+            final long best = bestScore(allocator, venue, free, size);
+            final int found = allocator.findSeats(size);
+            if (best == Long.MAX_VALUE) {
+                Assert.assertEquals(-1, found);
+            } else {
+                Assert.assertEquals(best, score(allocator, found, size));
+                for (int seat = found; seat < found + size; ++seat) {
+                    Assert.assertTrue(free[seat]);
+                }
+                Assert.assertEquals(found / venue.getNumCols(), (found + size - 1) / venue.getNumCols());
+            }
+        }
+    }
+
+    /**
+     * Helper method to find the best score of any free block within a row.
+     *
+     * @param allocator the allocator, for the seat scores
+     * @param venue the venue
+     * @param free which seats are free
+     * @param count the number of seats
+     * @return the best score, or Long.MAX_VALUE if there's no free block
+     */
+    private long bestScore(final BestSeatAllocator allocator, final Venue venue,
+                           final boolean[] free, final int count) {
+
+        long best = Long.MAX_VALUE;
+        final int cols = venue.getNumCols();
+        for (int row = 0; row < venue.getNumRows(); ++row) {
+            for (int col = 0; col + count <= cols; ++col) {
+                boolean fits = true;
+                for (int seat = row * cols + col; fits && (seat < row * cols + col + count); ++seat) {
+                    fits = free[seat];
+                }
+                if (fits) {
+                    best = Math.min(best, score(allocator, row * cols + col, count));
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Helper method to add up the scores of a block of seats.
+     *
+     * @param allocator the allocator, for the seat scores
+     * @param start the first seat
+     * @param count the number of seats
+     * @return the block's score
+     */
+    private long score(final BestSeatAllocator allocator, final int start, final int count) {
+        long total = 0L;
+        for (int seat = start; seat < start + count; ++seat) {
+            total += allocator.getSeatScore(seat);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,46 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the behavior of the CustomerIndex class.
+ */
+public class CustomerIndexTest {
+
+    /**
+     * Test tracking a customer's holds.
+     */
+    @Test
+    public void testHolds() {
+
+        final CustomerIndex index = new CustomerIndex();
+        final SeatBlock first = new SeatBlock(1, "a@example.com", 0, 4);
+        final SeatBlock second = new SeatBlock(2, "A@Example.com", 10, 2);
+        index.addHold(first);
+        index.addHold(second);
+        index.addHold(new SeatBlock(3, "b@example.com", 20, 1));
+
+        // Emails match ignoring case
+        Assert.assertEquals(2, index.getNumCustomers());
+        Assert.assertEquals(2, index.getNumHolds("a@EXAMPLE.com"));
+        Assert.assertEquals(6, index.getHeldSeats("a@example.com"));
+        Assert.assertEquals(0, index.getNumHolds("c@example.com"));
+        Assert.assertEquals(0, index.getNumHolds(null));
+
+        // Reserving or releasing a hold removes it
+        index.removeHold(first);
+        Assert.assertEquals(1, index.getNumHolds("a@example.com"));
+        Assert.assertEquals(2, index.getHeldSeats("a@example.com"));
+        Assert.assertEquals(2, index.getHolds("a@example.com").get(0).getId());
+
+        // Removing a hold twice does nothing the second time
+        index.removeHold(second);
+        index.removeHold(second);
+        Assert.assertEquals(0, index.getHeldSeats("a@example.com"));
+
+        // A customer with nothing left drops out of the index
+        Assert.assertEquals(1, index.getNumCustomers());
+        Assert.assertTrue(index.getHolds("a@example.com").isEmpty());
+    }
+}
@@ -0,0 +1,224 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Test the behavior of the EventLoopTicketService class.
+ */
+public class EventLoopTicketServiceTest {
+
+    /**
+     * Test holding and reserving seats through the event loop.
+     */
+    @Test
+    public void testHoldAndReserve() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(2, 10));
+        try (EventLoopTicketService loop = new EventLoopTicketService(service, 8)) {
+            Assert.assertEquals(8, loop.getRingSize());
+            Assert.assertSame(service, loop.getService());
+
+            final SeatHold hold = loop.findAndHoldSeatsAsync(5, "a@example.com").join();
+            Assert.assertNotNull(hold);
+            Assert.assertEquals(15, loop.numSeatsAvailableAsync().join().intValue());
+
+            // Invalid requests fail as they do on the service
+            Assert.assertNull(loop.findAndHoldSeats(0, "a@example.com"));
+            Assert.assertNull(loop.findAndHoldSeats(5, null));
+            Assert.assertNull(loop.reserveSeats(hold.getId(), "b@example.com"));
+
+            Assert.assertNotNull(loop.reserveSeatsAsync(hold.getId(), "a@example.com").join());
+            Assert.assertEquals(15, loop.numSeatsAvailable());
+            Assert.assertEquals(SeatStatus.Status.RESERVED, service.getSeatStatus(0).getSeatStatus());
+        }
+    }
+
+    /**
+     * Test releasing, extending and cancelling through the event loop.
+     */
+    @Test
+    public void testReleaseExtendAndCancel() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(2, 10));
+        try (EventLoopTicketService loop = new EventLoopTicketService(service, 8)) {
+            final SeatHold released = loop.findAndHoldSeats(5, "a@example.com");
+            final SeatHold reserved = loop.findAndHoldSeats(5, "a@example.com");
+            Assert.assertFalse(loop.releaseHold(released.getId(), "b@example.com"));
+            Assert.assertTrue(loop.releaseHoldAsync(released.getId(), "a@example.com").join());
+            Assert.assertTrue(loop.extendHold(reserved.getId(), "a@example.com"));
+            Assert.assertFalse(loop.extendHoldAsync(released.getId(), "a@example.com").join());
+
+            final String code = loop.reserveSeats(reserved.getId(), "a@example.com");
+            Assert.assertTrue(loop.cancelReservationAsync(code, "a@example.com").join());
+            Assert.assertFalse(loop.cancelReservation(code, "a@example.com"));
+            Assert.assertEquals(20, loop.numSeatsAvailable());
+        }
+    }
+
+    /**
+     * Test that a change that throws fails only its own request, and that
+     * an Error closes the event loop without leaving any caller waiting.
+     */
+    @Test
+    public void testFailures() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(2, 10)) {
+            @Override
+            public boolean releaseHold(final int seatHoldId, final String customerEmail) {
+                if ("bad@example.com".equals(customerEmail)) {
+                    throw new IllegalStateException("Bad release");
+                }
+                return super.releaseHold(seatHoldId, customerEmail);
+            }
+
+            @Override
+            public boolean extendHold(final int seatHoldId, final String customerEmail) {
+                if ("bad@example.com".equals(customerEmail)) {
+                    throw new Error("Bad extension");
+                }
+                return super.extendHold(seatHoldId, customerEmail);
+            }
+        };
+
+        try (EventLoopTicketService loop = new EventLoopTicketService(service, 8)) {
+            final SeatHold hold = loop.findAndHoldSeats(5, "a@example.com");
+            final CompletableFuture<Boolean> bad = loop.releaseHoldAsync(hold.getId(), "bad@example.com");
+            final CompletableFuture<Boolean> good = loop.releaseHoldAsync(hold.getId(), "a@example.com");
+            Assert.assertTrue(good.join());
+            assertFailure(bad, IllegalStateException.class);
+
+            // An Error stops the event loop, and every later request is rejected
+            final CompletableFuture<Boolean> fatal = loop.extendHoldAsync(hold.getId(), "bad@example.com");
+            final CompletableFuture<Integer> after = loop.numSeatsAvailableAsync();
+            assertFailure(fatal, Error.class);
+            try {
+                after.join();
+                Assert.fail("A request after the Error was served");
+            } catch (CompletionException e) {
+                Assert.assertTrue((e.getCause() instanceof Error) || (e.getCause() instanceof RejectedExecutionException));
+            }
+            assertFailure(loop.numSeatsAvailableAsync(), RejectedExecutionException.class);
+        }
+    }
+
+    /**
+     * Helper method to check that a future failed with an exception of a type.
+     *
+     * @param future the future
+     * @param type the exception type
+     */
+    private static void assertFailure(final CompletableFuture<?> future, final Class<? extends Throwable> type) {
+        try {
+            future.join();
+            Assert.fail("The request didn't fail");
+        } catch (CompletionException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), type.isInstance(e.getCause()));
+        }
+    }
+
+    /**
+     * Test that the constructor rejects a missing service, or a ring size
+     * that isn't a power of two.
+     */
+    @Test
+    public void testBadArguments() {
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(2, 10));
+        for (int ringSize : new int[] {0, 3, 100}) {
+            try {
+                new EventLoopTicketService(service, ringSize).close();
+                Assert.fail("Ring size " + ringSize + " was accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        try {
+            new EventLoopTicketService(null).close();
+            Assert.fail("A null service was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test many threads holding seats through a small ring, so callers
+     * wait for free slots, and confirm no seat is held twice.
+     */
+    @Test
+    public void multiThreadedTest() {
+
+        // 200 threads each try to hold 5 seats in a 1000-seat venue, through a ring of 4 slots
+        final TicketServiceImpl service = new TicketServiceImpl(10_000L, new Venue(20, 50));
+        try (EventLoopTicketService loop = new EventLoopTicketService(service, 4)) {
+            final int numThreads = 200;
+            final List<CompletableFuture<SeatHold>> futures = new ArrayList<>(numThreads);
+            for (int i = 0; i < numThreads; ++i) {
+                futures.add(CompletableFuture.supplyAsync(() -> loop.findAndHoldSeats(5, "sam@example.com")));
+            }
+
+            // Wait for every thread, since the service's hold map is only safe to read once they're done
+            final List<SeatHold> holds = new ArrayList<>(numThreads);
+            try {
+                for (CompletableFuture<SeatHold> future : futures) {
+                    holds.add(future.get());
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                Assert.fail("Exception in CompletableFuture test: " + e.getMessage());
+            }
+
+            // Every thread should get a hold, and every seat should be held exactly once
+            final boolean[] held = new boolean[1000];
+            for (SeatHold hold : holds) {
+                final SeatBlock block = service.getHoldById(hold);
+                for (int seat = block.getStartingSeat();
+                     seat < block.getStartingSeat() + block.getNumberSeats(); ++seat) {
+                    Assert.assertFalse(held[seat]);
+                    held[seat] = true;
+                }
+            }
+
+            Assert.assertEquals(0, loop.numSeatsAvailable());
+            Assert.assertEquals(200L, service.getMetrics().getHoldsSucceeded());
+        }
+    }
+
+    /**
+     * Test that requests queued before close() are served, and later
+     * ones are rejected.
+     */
+    @Test
+    public void testClose() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(10, 10));
+        final EventLoopTicketService loop = new EventLoopTicketService(service, 64);
+        final List<CompletableFuture<SeatHold>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            futures.add(loop.findAndHoldSeatsAsync(2, "a@example.com"));
+        }
+        loop.close();
+
+        for (CompletableFuture<SeatHold> future : futures) {
+            Assert.assertTrue(future.isDone());
+            Assert.assertNotNull(future.join());
+        }
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        try {
+            loop.findAndHoldSeats(1, "a@example.com");
+            Assert.fail("A request was accepted after close()");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        // Closing again does nothing
+        loop.close();
+    }
+}
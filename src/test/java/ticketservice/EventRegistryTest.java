@@ -0,0 +1,185 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the behavior of the EventRegistry class.
+ */
+public class EventRegistryTest {
+
+    /**
+     * Test that calls are routed to each event's own service, and events
+     * are created on first use.
+     */
+    @Test
+    public void testRouting() throws IOException {
+
+        final AtomicInteger created = new AtomicInteger();
+        try (EventRegistry registry = new EventRegistry(4, 0L, eventId -> {
+            if (eventId.startsWith("unknown")) {
+                return null;
+            }
+            created.incrementAndGet();
+            return new TicketServiceImpl(60_000L, new Venue(2, 10));
+        })) {
+            Assert.assertEquals(0, registry.getNumEvents());
+
+            // Holds at one event don't affect another
+            final SeatHold hold = registry.findAndHoldSeats("show-a", 5, "a@example.com");
+            Assert.assertNotNull(hold);
+            Assert.assertEquals(15, registry.numSeatsAvailable("show-a"));
+            Assert.assertEquals(20, registry.numSeatsAvailable("show-b"));
+            Assert.assertEquals(2, created.get());
+
+            // A hold can only be reserved at its own event
+            Assert.assertNull(registry.reserveSeats("show-b", hold.getId(), "a@example.com"));
+            Assert.assertNotNull(registry.reserveSeats("show-a", hold.getId(), "a@example.com"));
+
+            // Unknown events and null IDs
+            Assert.assertNull(registry.findAndHoldSeats("unknown-1", 1, "a@example.com"));
+            Assert.assertNull(registry.findAndHoldSeats(null, 1, "a@example.com"));
+            Assert.assertEquals(0, registry.numSeatsAvailable("unknown-1"));
+            Assert.assertNull(registry.getService("unknown-1"));
+            Assert.assertEquals(2, registry.getNumEvents());
+
+            // Each event is pinned to one shard
+            final int shard = registry.getShardForEvent("show-a");
+            Assert.assertTrue((shard >= 0) && (shard < registry.getNumShards()));
+            Assert.assertEquals(shard, registry.getShardForEvent("show-a"));
+            Assert.assertSame(registry.getService("show-a"), registry.getService("show-a"));
+        }
+    }
+
+    /**
+     * Test the availability across events, and dropping an event.
+     */
+    @Test
+    public void testAggregateAndDrop() throws IOException {
+
+        try (EventRegistry registry = new EventRegistry(2, 0L,
+                eventId -> new TicketServiceImpl(60_000L, new Venue(1, 10)))) {
+            for (int index = 0; index < 10; ++index) {
+                registry.findAndHoldSeats("show-" + index, index, "a@example.com");
+            }
+
+            Assert.assertEquals(10, registry.getNumEvents());
+            Assert.assertEquals(100L - 45L, registry.numSeatsAvailable());
+            final Map<String, Integer> byEvent = registry.getSeatsAvailableByEvent();
+            Assert.assertEquals(10, byEvent.size());
+            Assert.assertEquals(7, (int) byEvent.get("show-3"));
+
+            // A dropped event starts again from scratch
+            Assert.assertTrue(registry.dropEvent("show-3"));
+            Assert.assertFalse(registry.dropEvent("show-3"));
+            Assert.assertEquals(9, registry.getNumEvents());
+            Assert.assertEquals(10, registry.numSeatsAvailable("show-3"));
+        }
+    }
+
+    /**
+     * Test that idle events are evicted only when nothing would be lost,
+     * and that the shard workers release expired holds.
+     */
+    @Test
+    public void testIdleEviction() throws IOException {
+
+        try (EventRegistry registry = new EventRegistry(2, 150L,
+                eventId -> new TicketServiceImpl(100L, new Venue(1, 10)))) {
+
+            // One event with a reservation, one with a hold, one never used beyond a query
+            final SeatHold reservedHold = registry.findAndHoldSeats("reserved", 2, "a@example.com");
+            registry.reserveSeats("reserved", reservedHold.getId(), "a@example.com");
+            registry.findAndHoldSeats("held", 3, "a@example.com");
+            registry.numSeatsAvailable("empty");
+            final TicketServiceImpl held = registry.getService("held");
+            Assert.assertEquals(3, registry.getNumEvents());
+
+            sleep(600L);
+
+            // The hold was released by the worker, so that event was evicted too;
+            // the in-memory event with a reservation is kept
+            Assert.assertEquals(10, held.getRowSeatsAvailable()[0]);
+            Assert.assertEquals(1, registry.getNumEvents());
+            Assert.assertEquals(8, registry.numSeatsAvailable("reserved"));
+        }
+    }
+
+    /**
+     * Test that an event with general-admission sales isn't evicted, and
+     * that the shard workers release its expired general-admission holds.
+     */
+    @Test
+    public void testAdmissionEviction() throws IOException {
+
+        try (EventRegistry registry = new EventRegistry(1, 100L,
+                eventId -> new TicketServiceImpl(100L, new Venue(1, 10, 500)))) {
+
+            final GeneralAdmissionSection held = registry.getService("held").getAdmissionSection(0);
+            final GeneralAdmissionSection sold = registry.getService("sold").getAdmissionSection(0);
+            Assert.assertNotNull(held.findAndHoldPlaces(5, "a@example.com"));
+            final SeatHold hold = sold.findAndHoldPlaces(5, "a@example.com");
+            Assert.assertNotNull(sold.reservePlaces(hold.getId(), "a@example.com"));
+
+            // The hold expires and is released by the worker, and then that event is evicted
+            sleep(600L);
+            Assert.assertTrue(held.isUnsold());
+            Assert.assertEquals(1, registry.getNumEvents());
+            Assert.assertSame(sold, registry.getService("sold").getAdmissionSection(0));
+        }
+    }
+
+    /**
+     * Test that an evicted persistent event is closed before it's created
+     * again, and that calls made while it's being evicted wait for that.
+     */
+    @Test
+    public void testPersistentEviction() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        final AtomicInteger created = new AtomicInteger();
+        try (EventRegistry registry = new EventRegistry(1, 100L, eventId -> {
+            created.incrementAndGet();
+            try {
+                return new TicketServiceImpl(60_000L, new Venue(1, 10), file, Durability.OS_BUFFERED);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        })) {
+
+            final SeatHold hold = registry.findAndHoldSeats("show", 4, "a@example.com");
+            Assert.assertNotNull(registry.reserveSeats("show", hold.getId(), "a@example.com"));
+
+            // Keep calling while the worker evicts the event; each call sees the reservation
+            final long end = System.currentTimeMillis() + 500L;
+            while (System.currentTimeMillis() < end) {
+                Assert.assertEquals(6, registry.numSeatsAvailable("show"));
+                sleep(120L);
+            }
+            Assert.assertTrue(created.get() > 1);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".snapshot"));
+        }
+    }
+
+    /**
+     * Sleep for the given number of milliseconds.
+     *
+     * @param millis the number of milliseconds to sleep
+     */
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test the behavior of the FreeSeatIndex class.
+ */
+public class FreeSeatIndexTest {
+
+    /**
+     * Test finding the first block of free seats.
+     */
+    @Test
+    public void testFindFirstFit() {
+
+        // All seats start free, so the first block starts at seat 0
+        final FreeSeatIndex index = new FreeSeatIndex(20);
+        Assert.assertEquals(20, index.getLongestRun());
+        Assert.assertEquals(0, index.findFirstFit(5));
+        Assert.assertEquals(0, index.findFirstFit(20));
+        Assert.assertEquals(-1, index.findFirstFit(21));
+        Assert.assertEquals(-1, index.findFirstFit(0));
+
+        // Use seats 3-5 and 12.  This leaves runs of 3, 6 and 7 seats.
+        index.markUsed(3, 3);
+        index.markUsed(12, 1);
+        Assert.assertEquals(7, index.getLongestRun());
+        Assert.assertEquals(0, index.findFirstFit(3));
+        Assert.assertEquals(6, index.findFirstFit(4));
+        Assert.assertEquals(6, index.findFirstFit(6));
+        Assert.assertEquals(13, index.findFirstFit(7));
+        Assert.assertEquals(-1, index.findFirstFit(8));
+        Assert.assertFalse(index.isFree(4));
+        Assert.assertTrue(index.isFree(6));
+
+        // Confirm the runs at either end of the venue
+        Assert.assertEquals(3, index.getLeadingRun());
+        Assert.assertEquals(7, index.getTrailingRun());
+
+        // Free seat 12 again.  The runs on either side should merge.
+        index.markFree(12, 1);
+        Assert.assertEquals(14, index.getLongestRun());
+        Assert.assertEquals(6, index.findFirstFit(8));
+    }
+
+    /**
+     * Test finding the nearest block of free seats on either side of a seat.
+     */
+    @Test
+    public void testDirectionalFit() {
+
+        // Use seats 3-5 and 12.  This leaves runs at 0-2, 6-11 and 13-19.
+        final FreeSeatIndex index = new FreeSeatIndex(20);
+        index.markUsed(3, 3);
+        index.markUsed(12, 1);
+
+        // Searching forward from a seat finds the first block starting there or later
+        Assert.assertEquals(0, index.findFirstFit(3, 0));
+        Assert.assertEquals(6, index.findFirstFit(3, 1));
+        Assert.assertEquals(8, index.findFirstFit(3, 8));
+        Assert.assertEquals(13, index.findFirstFit(3, 10));
+        Assert.assertEquals(13, index.findFirstFit(7, 7));
+        Assert.assertEquals(-1, index.findFirstFit(3, 18));
+
+        // Searching backward finds the last block starting at or before a seat
+        Assert.assertEquals(15, index.findLastFit(5, 19));
+        Assert.assertEquals(7, index.findLastFit(5, 12));
+        Assert.assertEquals(6, index.findLastFit(6, 12));
+        Assert.assertEquals(2, index.findLastFit(1, 5));
+        Assert.assertEquals(-1, index.findLastFit(4, 5));
+    }
+
+    /**
+     * Test that seat blocks outside the venue are rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() {
+        new FreeSeatIndex(10).markUsed(8, 3);
+    }
+
+    /**
+     * Compare the index against a simple linear scan after random updates.
+     */
+    @Test
+    public void testMatchesLinearScan() {
+
+        final int numSeats = 157;
+        final FreeSeatIndex index = new FreeSeatIndex(numSeats);
+        final boolean[] free = new boolean[numSeats];
+        Arrays.fill(free, true);
+
+        final Random random = new Random(42L);
+        for (int i = 0; i < 2_000; ++i) {
+
+            // Randomly free or use a block of seats
+            final int start = random.nextInt(numSeats);
+            final int count = 1 + random.nextInt(Math.min(12, numSeats - start));
+            final boolean markFree = random.nextBoolean();
+            if (markFree) {
+                index.markFree(start, count);
+            } else {
+                index.markUsed(start, count);
+            }
+            for (int seat = start; seat < start + count; ++seat) {
+                free[seat] = markFree;
+            }
+
+            // Confirm the first fit for a random size matches the scan
+            final int size = 1 + random.nextInt(20);
+            Assert.assertEquals(linearFirstFit(free, size), index.findFirstFit(size));
+
+            // Confirm the directional searches from a random seat match the scan
+            final int from = random.nextInt(numSeats);
+            Assert.assertEquals(linearFit(free, size, from, 1), index.findFirstFit(size, from));
+            Assert.assertEquals(linearFit(free, size, from, -1), index.findLastFit(size, from));
+
+            // Confirm the trailing run matches a scan back from the last seat
+            int trailing = 0;
+            while ((trailing < numSeats) && free[numSeats - 1 - trailing]) {
+                ++trailing;
+            }
+            Assert.assertEquals(trailing, index.getTrailingRun());
+        }
+    }
+
+    /**
+     * Helper method to find the first block of free seats with a linear scan.
+     *
+     * @param free which seats are free
+     * @param count the number of consecutive seats needed
+     * @return the starting seat of the block, or -1
+     */
+    private int linearFirstFit(final boolean[] free, final int count) {
+
+        int run = 0;
+        for (int seat = 0; seat < free.length; ++seat) {
+            run = free[seat] ? (run + 1) : 0;
+            if (run == count) {
+                return seat - count + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Helper method to find the nearest block of free seats starting at
+     * or after (or at or before) a seat, with a linear scan.
+     *
+     * @param free which seats are free
+     * @param count the number of consecutive seats needed
+     * @param from the seat to start from
+     * @param step 1 to search forward, -1 to search backward
+     * @return the starting seat of the block, or -1
+     */
+    private int linearFit(final boolean[] free, final int count, final int from, final int step) {
+
+        final int first = (step < 0) ? Math.min(from, free.length - count) : from;
+        for (int start = first; (start >= 0) && (start + count <= free.length); start += step) {
+            boolean fits = true;
+            for (int seat = start; fits && (seat < start + count); ++seat) {
+                fits = free[seat];
+            }
+            if (fits) {
+                return start;
+            }
+        }
+
+        return -1;
+    }
+}
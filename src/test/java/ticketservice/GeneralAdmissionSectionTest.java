@@ -0,0 +1,181 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Test the behavior of the GeneralAdmissionSection class.
+ */
+public class GeneralAdmissionSectionTest {
+
+    /**
+     * Test holding, reserving and releasing places.
+     */
+    @Test
+    public void testHoldAndReserve() {
+
+        // Split the places across eight stripes, so holds have to gather them from several
+        final GeneralAdmissionSection section = new GeneralAdmissionSection(2, 100, 60_000L, 8);
+        Assert.assertEquals(2, section.getSection());
+        Assert.assertEquals(100, section.getCapacity());
+        Assert.assertEquals(100, section.numPlacesAvailable());
+
+        // Invalid input
+        Assert.assertNull(section.findAndHoldPlaces(0, "a@example.com"));
+        Assert.assertNull(section.findAndHoldPlaces(101, "a@example.com"));
+        Assert.assertNull(section.findAndHoldPlaces(5, null));
+
+        final SeatHold first = section.findAndHoldPlaces(60, "a@example.com");
+        final SeatHold second = section.findAndHoldPlaces(30, "b@example.com");
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertEquals(10, section.numPlacesAvailable());
+
+        // Not enough places left, and a failed hold takes nothing
+        Assert.assertNull(section.findAndHoldPlaces(11, "c@example.com"));
+        Assert.assertEquals(10, section.numPlacesAvailable());
+
+        // Only the customer who made the hold can reserve it, and only once
+        Assert.assertNull(section.reservePlaces(first.getId(), "b@example.com"));
+        Assert.assertEquals("GA2-" + first.getId(), section.reservePlaces(first.getId(), "A@example.com"));
+        Assert.assertNull(section.reservePlaces(first.getId(), "a@example.com"));
+        Assert.assertFalse(section.releaseHold(first.getId(), "a@example.com"));
+        Assert.assertEquals(60, section.getNumReserved());
+
+        // Releasing a hold gives its places back
+        Assert.assertFalse(section.releaseHold(second.getId(), "a@example.com"));
+        Assert.assertTrue(section.releaseHold(second.getId(), "b@example.com"));
+        Assert.assertNull(section.reservePlaces(second.getId(), "b@example.com"));
+        Assert.assertEquals(40, section.numPlacesAvailable());
+        Assert.assertNotNull(section.findAndHoldPlaces(40, "c@example.com"));
+        Assert.assertEquals(0, section.numPlacesAvailable());
+    }
+
+    /**
+     * Test that a small section has no more stripes than places.
+     */
+    @Test
+    public void testSmallSection() {
+
+        final GeneralAdmissionSection section = new GeneralAdmissionSection(0, 3, 60_000L, 64);
+        Assert.assertTrue(section.toString().contains("stripes=2"));
+        Assert.assertNotNull(section.findAndHoldPlaces(3, "a@example.com"));
+        Assert.assertEquals(0, section.numPlacesAvailable());
+    }
+
+    /**
+     * Test that holds expire.
+     */
+    @Test
+    public void testExpiry() {
+
+        final GeneralAdmissionSection section = new GeneralAdmissionSection(0, 10, 100L);
+        final SeatHold hold = section.findAndHoldPlaces(10, "a@example.com");
+        Assert.assertNotNull(hold);
+        Assert.assertNull(section.findAndHoldPlaces(1, "b@example.com"));
+
+        sleep(150L);
+        Assert.assertNull(section.reservePlaces(hold.getId(), "a@example.com"));
+        Assert.assertEquals(10, section.numPlacesAvailable());
+        Assert.assertNotNull(section.findAndHoldPlaces(10, "b@example.com"));
+    }
+
+    /**
+     * Test that holds made on other threads' stripes can be reserved and
+     * expire like any other.
+     */
+    @Test
+    public void testHoldsAcrossStripes() {
+
+        final GeneralAdmissionSection section = new GeneralAdmissionSection(0, 16, 100L, 8);
+        final List<CompletableFuture<SeatHold>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            futures.add(CompletableFuture.supplyAsync(() -> section.findAndHoldPlaces(2, "a@example.com")));
+        }
+
+        // Every hold has its own ID, and can be reserved from this thread
+        final Set<Integer> ids = new HashSet<>();
+        for (CompletableFuture<SeatHold> future : futures) {
+            ids.add(future.join().getId());
+        }
+        Assert.assertEquals(8, ids.size());
+        Assert.assertEquals(0, section.numPlacesAvailable());
+
+        int reserved = 0;
+        for (int id : ids) {
+            if (reserved < 4) {
+                Assert.assertNotNull(section.reservePlaces(id, "a@example.com"));
+                reserved += 2;
+            }
+        }
+
+        // The rest expire, whichever stripe they're in
+        sleep(150L);
+        Assert.assertEquals(12, section.numPlacesAvailable());
+        Assert.assertEquals(4, section.getNumReserved());
+        Assert.assertFalse(section.isUnsold());
+    }
+
+    /**
+     * Test that threads holding and releasing at once never sell more
+     * places than there are, and that every place comes back.
+     */
+    @Test
+    public void testConcurrentHolds() {
+
+        final int capacity = 1_000;
+        final GeneralAdmissionSection section = new GeneralAdmissionSection(0, capacity, 60_000L, 8);
+        final int numThreads = 8;
+        final int opsPerThread = 5_000;
+
+        // Each thread holds parties, reserving some and releasing the rest, and reports what it reserved
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; ++t) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                int reserved = 0;
+                for (int i = 0; i < opsPerThread; ++i) {
+                    final int numPlaces = 1 + random.nextInt(8);
+                    final SeatHold hold = section.findAndHoldPlaces(numPlaces, "a@example.com");
+                    if (hold == null) {
+                        continue;
+                    } else if (random.nextInt(100) == 0) {
+                        Assert.assertNotNull(section.reservePlaces(hold.getId(), "a@example.com"));
+                        reserved += numPlaces;
+                    } else {
+                        Assert.assertTrue(section.releaseHold(hold.getId(), "a@example.com"));
+                    }
+                }
+                return reserved;
+            }));
+        }
+
+        int reserved = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            reserved += future.join();
+        }
+        Assert.assertTrue(reserved <= capacity);
+        Assert.assertEquals(reserved, section.getNumReserved());
+        Assert.assertEquals(capacity - reserved, section.numPlacesAvailable());
+    }
+
+    /**
+     * Helper method to sleep for the specified number of milliseconds.
+     *
+     * @param delay the number of milliseconds to sleep
+     */
+    private void sleep(final long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            // Nothing to do here
+        }
+    }
+}
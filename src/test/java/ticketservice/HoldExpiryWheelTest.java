@@ -0,0 +1,71 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the behavior of the HoldExpiryWheel class.
+ */
+public class HoldExpiryWheelTest {
+
+    /**
+     * Test that holds expire once their deadline is reached, and not before.
+     */
+    @Test
+    public void testAdvance() {
+
+        // Create a wheel with 10ms ticks, and schedule some holds
+        final HoldExpiryWheel wheel = new HoldExpiryWheel(10L, 8, 1_000L);
+        wheel.schedule(1, 1_025L);
+        wheel.schedule(2, 1_025L);
+        wheel.schedule(3, 1_029L);
+        wheel.schedule(4, 1_050L);
+        Assert.assertEquals(4, wheel.size());
+        Assert.assertEquals(1_025L, wheel.getNextDeadline());
+
+        // Nothing is due yet
+        final List<Integer> expired = new ArrayList<>();
+        Assert.assertEquals(0, wheel.advance(1_024L, expired::add));
+
+        // The first two holds are due.  The third is in the same tick, but not yet due.
+        Assert.assertEquals(2, wheel.advance(1_025L, expired::add));
+        Assert.assertTrue(expired.contains(1) && expired.contains(2));
+
+        // The third hold is picked up on the next advance in the same tick
+        Assert.assertEquals(1, wheel.advance(1_029L, expired::add));
+        Assert.assertEquals(3, (int) expired.get(2));
+        Assert.assertEquals(1, wheel.size());
+
+        // The next deadline is a lower bound, from the start of the last hold's tick
+        Assert.assertEquals(1_050L, wheel.getNextDeadline());
+        Assert.assertEquals(1, wheel.advance(1_050L, expired::add));
+        Assert.assertEquals(Long.MAX_VALUE, wheel.getNextDeadline());
+    }
+
+    /**
+     * Test holds whose deadlines are more than one turn of the wheel away,
+     * and deadlines that have already passed.
+     */
+    @Test
+    public void testWrapAround() {
+
+        // A turn of this wheel is 4 ticks (40ms)
+        final HoldExpiryWheel wheel = new HoldExpiryWheel(10L, 4, 0L);
+        wheel.schedule(1, 95L);
+        wheel.schedule(2, -5L);
+
+        // The past deadline is due right away, but the far deadline survives a full turn
+        final List<Integer> expired = new ArrayList<>();
+        Assert.assertEquals(1, wheel.advance(0L, expired::add));
+        Assert.assertEquals(2, (int) expired.get(0));
+        Assert.assertEquals(0, wheel.advance(60L, expired::add));
+
+        // Jump more than one turn ahead; every bucket is visited once
+        Assert.assertEquals(1, wheel.advance(500L, expired::add));
+        Assert.assertEquals(1, (int) expired.get(1));
+        Assert.assertEquals(0, wheel.size());
+    }
+}
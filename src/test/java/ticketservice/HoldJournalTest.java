@@ -0,0 +1,183 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the behavior of the HoldJournal class.
+ */
+public class HoldJournalTest {
+
+    /**
+     * Test that records are replayed in order when the journal is reopened,
+     * for each durability level.
+     */
+    @Test
+    public void testReplay() throws IOException {
+
+        for (Durability durability : Durability.values()) {
+            final Path file = Files.createTempFile("journal", ".bin");
+            try {
+                try (HoldJournal journal = new HoldJournal(file, durability, 0L, new Recorder())) {
+                    Assert.assertEquals(1L, journal.appendHold(7, "a@example.com", 10, 4, 1_000L));
+                    Assert.assertEquals(2L, journal.appendHold(8, "b\u00e9@example.com", 14, 2, 1_001L));
+                    Assert.assertEquals(3L, journal.appendReserve(7, 1_200L));
+                    journal.await(3L);
+                    Assert.assertEquals(4L, journal.appendRelease(8));
+                    Assert.assertEquals(5L, journal.appendSplitHold(9, "c@example.com", new int[] {20, 2, 40, 3}, 1_002L));
+                    Assert.assertEquals(6L, journal.appendExtend(9, 1_500L));
+                    Assert.assertEquals(7L, journal.appendCancel(7));
+                }
+
+                final Recorder recorder = new Recorder();
+                try (HoldJournal journal = new HoldJournal(file, durability, 0L, recorder)) {
+                    Assert.assertEquals(7L, journal.getLastSequence());
+                    Assert.assertEquals(7L, journal.getDurableSequence());
+                    Assert.assertEquals(8L, journal.appendReserve(9, 1_600L));
+                }
+                Assert.assertEquals(7, recorder.records.size());
+                Assert.assertEquals("hold 7 a@example.com 10 4 1000", recorder.records.get(0));
+                Assert.assertEquals("hold 8 b\u00e9@example.com 14 2 1001", recorder.records.get(1));
+                Assert.assertEquals("reserve 7 1200", recorder.records.get(2));
+                Assert.assertEquals("release 8", recorder.records.get(3));
+                Assert.assertEquals("split 9 c@example.com [20, 2, 40, 3] 1002", recorder.records.get(4));
+                Assert.assertEquals("extend 9 1500", recorder.records.get(5));
+                Assert.assertEquals("cancel 7", recorder.records.get(6));
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Test that a torn record at the end of the journal is dropped, and
+     * new records are written after the last good one.
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 0L, new Recorder())) {
+                journal.appendHold(1, "a@example.com", 0, 2, 1_000L);
+                journal.appendReserve(1, 1_000L);
+            }
+
+            // Simulate a crash part way through writing a record, then garbage
+            final long goodSize = Files.size(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+            }
+
+            Recorder recorder = new Recorder();
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 0L, recorder)) {
+                Assert.assertEquals(goodSize, Files.size(file));
+                journal.appendRelease(2);
+            }
+            Assert.assertEquals(2, recorder.records.size());
+
+            // Corrupt a byte of the last record; the replay stops before it
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {99}), Files.size(file) - 1L);
+            }
+            recorder = new Recorder();
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 0L, recorder)) {
+                Assert.assertEquals(2L, journal.getLastSequence());
+            }
+            Assert.assertEquals(2, recorder.records.size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that compacting drops the records covered by a snapshot, and
+     * keeps the rest.
+     */
+    @Test
+    public void testCompact() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 0L, new Recorder())) {
+                journal.appendHold(1, "a@example.com", 0, 2, 1_000L);
+                journal.appendHold(2, "b@example.com", 2, 2, 1_000L);
+                final long position = journal.getEndPosition();
+                journal.await(journal.appendReserve(1, 1_000L));
+
+                // Compact up to the second record, then keep appending
+                final long size = Files.size(file);
+                journal.compact(2L, position);
+                Assert.assertTrue(Files.size(file) < size);
+                journal.appendRelease(2);
+            }
+
+            // Reopen from the snapshot's sequence number; only the later records are replayed
+            final Recorder recorder = new Recorder();
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 2L, recorder)) {
+                Assert.assertEquals(4L, journal.getLastSequence());
+            }
+            Assert.assertEquals(2, recorder.records.size());
+            Assert.assertEquals("reserve 1 1000", recorder.records.get(0));
+            Assert.assertEquals("release 2", recorder.records.get(1));
+
+            // Records already covered by a snapshot are skipped, if the journal wasn't compacted
+            final Recorder skipped = new Recorder();
+            try (HoldJournal journal = new HoldJournal(file, Durability.SYNC, 3L, skipped)) {
+                Assert.assertEquals(4L, journal.getLastSequence());
+            }
+            Assert.assertEquals(1, skipped.records.size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Collects the records passed to the handler as strings.
+     */
+    private static final class Recorder implements HoldJournal.RecordHandler {
+
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void hold(final int id, final String email, final int startingSeat,
+                         final int numberSeats, final long createdTime) {
+            records.add("hold " + id + " " + email + " " + startingSeat + " " + numberSeats + " " + createdTime);
+        }
+
+        @Override
+        public void splitHold(final int id, final String email, final int[] segments, final long createdTime) {
+            records.add("split " + id + " " + email + " " + Arrays.toString(segments) + " " + createdTime);
+        }
+
+        @Override
+        public void reserve(final int id, final long reservedTime) {
+            records.add("reserve " + id + " " + reservedTime);
+        }
+
+        @Override
+        public void release(final int id) {
+            records.add("release " + id);
+        }
+
+        @Override
+        public void cancel(final int id) {
+            records.add("cancel " + id);
+        }
+
+        @Override
+        public void extend(final int id, final long createdTime) {
+            records.add("extend " + id + " " + createdTime);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test the behavior of the HoldTable class.
+ */
+public class HoldTableTest {
+
+    /**
+     * Test adding, finding and removing holds.
+     */
+    @Test
+    public void testAddAndRemove() {
+
+        final HoldTable table = new HoldTable();
+        final int slot = table.add(7, "a@example.com", 1000L, 12, 3);
+        Assert.assertEquals(1, table.size());
+        Assert.assertEquals(slot, table.find(7));
+        Assert.assertEquals(-1, table.find(8));
+        Assert.assertEquals("a@example.com", table.getEmail(slot));
+        Assert.assertEquals(1000L, table.getCreatedTime(slot));
+        Assert.assertEquals(12, table.getSegmentStart(slot, 0));
+        Assert.assertEquals(3, table.getSegmentLength(slot, 0));
+
+        final SeatBlock block = table.toSeatBlock(slot);
+        Assert.assertEquals(7, block.getId());
+        Assert.assertEquals(3, block.getNumberSeats());
+
+        // A removed hold's slot is reused
+        table.remove(slot);
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(-1, table.find(7));
+        Assert.assertEquals(slot, table.add(9, "b@example.com", 2000L, 0, 1));
+    }
+
+    /**
+     * Test the ID index against a map, through many adds and removes.
+     */
+    @Test
+    public void testIndex() {
+
+        final HoldTable table = new HoldTable();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        final Random random = new Random(42L);
+        for (int i = 0; i < 20_000; ++i) {
+            final int id = random.nextInt(500);
+            final int slot = table.find(id);
+            if (expected.containsKey(id)) {
+                Assert.assertEquals(id, table.getId(slot));
+                Assert.assertEquals(expected.get(id).intValue(), table.getSegmentStart(slot, 0));
+                table.remove(slot);
+                expected.remove(id);
+            } else {
+                Assert.assertEquals(-1, slot);
+                table.add(id, "c" + (id % 7) + "@example.com", 0L, i, 1);
+                expected.put(id, i);
+            }
+            Assert.assertEquals(expected.size(), table.size());
+        }
+    }
+
+    /**
+     * Test counting each customer's holds and seats.
+     */
+    @Test
+    public void testCustomerCounts() {
+
+        final HoldTable table = new HoldTable();
+        final int first = table.add(1, "a@example.com", 0L, 0, 4);
+        table.add(2, "A@Example.com", 0L, 10, 2);
+        table.add(3, "b@example.com", 0L, 20, 1);
+
+        Assert.assertEquals(2, table.getNumHolds("a@EXAMPLE.com"));
+        Assert.assertEquals(6, table.getHeldSeats("a@example.com"));
+        Assert.assertEquals(0, table.getNumHolds("c@example.com"));
+
+        table.remove(first);
+        Assert.assertEquals(1, table.getNumHolds("a@example.com"));
+        Assert.assertEquals(2, table.getHeldSeats("a@example.com"));
+
+        // Lots of customers, to grow the customer table
+        for (int id = 10; id < 200; ++id) {
+            table.add(id, "customer" + id + "@example.com", 0L, id, 1);
+        }
+        Assert.assertEquals(1, table.getNumHolds("CUSTOMER150@example.com"));
+        Assert.assertEquals(1, table.getNumHolds("b@example.com"));
+    }
+
+    /**
+     * Test holds split across segments, and copying holds out.
+     */
+    @Test
+    public void testSegments() {
+
+        final HoldTable table = new HoldTable();
+        table.add(5, "a@example.com", 0L, 30, 1);
+        final int slot = table.add(4, "a@example.com", 0L, new int[]{10, 2, 20, 3});
+        Assert.assertEquals(2, table.getNumSegments(slot));
+        Assert.assertEquals(6, table.getHeldSeats("a@example.com"));
+
+        final SeatBlock block = table.toSeatBlock(slot);
+        Assert.assertEquals(2, block.getNumSegments());
+        Assert.assertEquals(20, block.getSegmentStart(1));
+        Assert.assertEquals(5, block.getNumberSeats());
+
+        // A copied-out hold can be added back, e.g. from a snapshot
+        final HoldTable restored = new HoldTable();
+        final int restoredSlot = restored.add(block);
+        Assert.assertEquals(3, restored.getSegmentLength(restoredSlot, 1));
+        Assert.assertEquals(5, restored.getHeldSeats("a@example.com"));
+
+        // Oldest (lowest ID) first
+        final List<SeatBlock> blocks = table.findByCustomer("A@example.com");
+        Assert.assertEquals(2, blocks.size());
+        Assert.assertEquals(4, blocks.get(0).getId());
+        Assert.assertEquals(5, table.toSeatBlocks().get(1).getId());
+
+        try {
+            table.add(6, "a@example.com", 0L, new int[]{0, 1, 2, 1, 4, 1, 6, 1, 8, 1});
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertEquals(2, table.size());
+        }
+    }
+}
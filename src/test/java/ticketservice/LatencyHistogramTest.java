@@ -0,0 +1,73 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the behavior of the LatencyHistogram class.
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Test that bucket indexes are in order, and that every value falls
+     * in a bucket no wider than 1/64 of the value.
+     */
+    @Test
+    public void testBuckets() {
+
+        // Small values get a bucket each
+        for (long value = 0L; value < 128L; ++value) {
+            Assert.assertEquals(value, LatencyHistogram.highestValueFor(LatencyHistogram.indexFor(value)));
+        }
+
+        // Larger values share buckets, but the error is bounded
+        long lastIndex = -1L;
+        for (long value = 128L; value < 10_000_000_000L; value = value * 3L / 2L + 7L) {
+            final int index = LatencyHistogram.indexFor(value);
+            final long highest = LatencyHistogram.highestValueFor(index);
+            Assert.assertTrue(index > lastIndex);
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue(highest - value <= value / 64L);
+            Assert.assertEquals(index, LatencyHistogram.indexFor(highest));
+            Assert.assertEquals(index + 1, LatencyHistogram.indexFor(highest + 1L));
+            lastIndex = index;
+        }
+
+        Assert.assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.indexFor(Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueFor(LatencyHistogram.NUM_BUCKETS - 1));
+    }
+
+    /**
+     * Test the statistics of a snapshot.
+     */
+    @Test
+    public void testSnapshot() {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0L, histogram.snapshot().getCount());
+        Assert.assertEquals(0L, histogram.snapshot().getValueAtPercentile(99.0));
+
+        // Record 1..1000, then one outlier
+        for (long value = 1L; value <= 1_000L; ++value) {
+            histogram.record(value);
+        }
+        histogram.record(1_000_000L);
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1_001L, snapshot.getCount());
+        Assert.assertEquals(1L, snapshot.getMin());
+        Assert.assertEquals(1_000_000L, snapshot.getMax());
+        Assert.assertEquals((500_500.0 + 1_000_000.0) / 1_001.0, snapshot.getMean(), 0.001);
+
+        // Percentiles are within a bucket's width of the true value
+        Assert.assertEquals(501.0, snapshot.getValueAtPercentile(50.0), 501.0 / 64.0);
+        Assert.assertEquals(991.0, snapshot.getValueAtPercentile(99.0), 991.0 / 64.0);
+        Assert.assertEquals(1_000_000L, snapshot.getValueAtPercentile(100.0));
+        Assert.assertEquals(1L, snapshot.getValueAtPercentile(0.0));
+
+        // The snapshot doesn't change when more values are recorded
+        histogram.record(5L);
+        Assert.assertEquals(1_001L, snapshot.getCount());
+        Assert.assertEquals(1_002L, histogram.snapshot().getCount());
+    }
+}
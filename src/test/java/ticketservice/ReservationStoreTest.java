@@ -0,0 +1,154 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Test the behavior of the ReservationStore class.
+ */
+public class ReservationStoreTest {
+
+    /**
+     * Test adding reservations and finding them by ID.
+     */
+    @Test
+    public void testAddAndFind() {
+
+        final ReservationStore store = new ReservationStore();
+        final int record = store.add(new SeatBlock(7, "a@example.com", 12, 3, 1000L));
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(record, store.find(7));
+        Assert.assertEquals(-1, store.find(8));
+
+        final ReservationView view = new ReservationView(store, record);
+        Assert.assertEquals(7, view.getId());
+        Assert.assertEquals("a@example.com", view.getEmail());
+        Assert.assertEquals(12, view.getStartingSeat());
+        Assert.assertEquals(3, view.getNumberSeats());
+        Assert.assertEquals(1, view.getNumSegments());
+        Assert.assertEquals(1000L, view.getCreatedTime());
+    }
+
+    /**
+     * Test finding a customer's reservations.
+     */
+    @Test
+    public void testFindByCustomer() {
+
+        final ReservationStore store = new ReservationStore();
+        store.add(new SeatBlock(1, "a@example.com", 0, 2));
+        store.add(new SeatBlock(2, "b@example.com", 2, 2));
+        store.add(new SeatBlock(3, "A@Example.com", 4, 2));
+
+        // Emails match ignoring case, and come back oldest first
+        final int[] found = store.findByCustomer("a@EXAMPLE.com");
+        Assert.assertEquals(2, found.length);
+        Assert.assertEquals(1, store.getId(found[0]));
+        Assert.assertEquals(3, store.getId(found[1]));
+        Assert.assertEquals("A@Example.com", store.getEmail(found[1]));
+        Assert.assertEquals(0, store.findByCustomer("c@example.com").length);
+    }
+
+    /**
+     * Test that a cancelled reservation is no longer found or copied out,
+     * but its view can still be read.
+     */
+    @Test
+    public void testCancel() {
+
+        final ReservationStore store = new ReservationStore();
+        final int first = store.add(new SeatBlock(1, "a@example.com", 0, 2));
+        store.add(new SeatBlock(2, "a@example.com", 2, 2));
+        final ReservationView view = new ReservationView(store, first);
+
+        store.cancel(first);
+        store.cancel(first);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(-1, store.find(1));
+        Assert.assertTrue(view.isCancelled());
+        Assert.assertEquals(2, view.getNumberSeats());
+
+        final int[] found = store.findByCustomer("a@example.com");
+        Assert.assertEquals(1, found.length);
+        Assert.assertEquals(2, store.getId(found[0]));
+        Assert.assertFalse(store.isCancelled(found[0]));
+        Assert.assertTrue(store.isCustomer(found[0], "A@example.COM"));
+
+        final List<SeatBlock> blocks = store.toSeatBlocks();
+        Assert.assertEquals(1, blocks.size());
+        Assert.assertEquals(2, blocks.get(0).getId());
+    }
+
+    /**
+     * Test the store grows past its first buffers.
+     */
+    @Test
+    public void testGrowth() {
+
+        final ReservationStore store = new ReservationStore();
+        final long initialBytes = store.getOffHeapBytes();
+        for (int id = 1; id <= 1000; ++id) {
+            store.add(new SeatBlock(id, "customer" + (id % 300) + "@example.com", id, 1));
+        }
+
+        Assert.assertEquals(1000, store.size());
+        Assert.assertTrue(store.getOffHeapBytes() > initialBytes);
+        for (int id = 1; id <= 1000; ++id) {
+            Assert.assertEquals(id, store.getId(store.find(id)));
+            Assert.assertEquals(id, store.getSegmentStart(store.find(id), 0));
+        }
+        Assert.assertEquals(4, store.findByCustomer("customer1@example.com").length);
+        Assert.assertEquals(3, store.findByCustomer("customer0@example.com").length);
+    }
+
+    /**
+     * Test storing a reservation split across segments.
+     */
+    @Test
+    public void testSegments() {
+
+        final ReservationStore store = new ReservationStore();
+        final int record = store.add(new SeatBlock(1, "a@example.com", new int[]{10, 2, 20, 3}, 5L));
+
+        final ReservationView view = new ReservationView(store, record);
+        Assert.assertEquals(2, view.getNumSegments());
+        Assert.assertEquals(5, view.getNumberSeats());
+        Assert.assertEquals(20, view.getSegmentStart(1));
+        Assert.assertEquals(3, view.getSegmentLength(1));
+
+        final SeatBlock block = view.toSeatBlock();
+        Assert.assertEquals(2, block.getNumSegments());
+        Assert.assertEquals(20, block.getSegmentStart(1));
+        Assert.assertEquals(5L, block.getCreatedTime());
+
+        // Too many segments to fit a record
+        try {
+            store.add(new SeatBlock(2, "a@example.com", new int[]{0, 1, 2, 1, 4, 1, 6, 1, 8, 1}, 0L));
+            Assert.fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertEquals(1, store.size());
+        }
+    }
+
+    /**
+     * Test copying every reservation out, and sharing a customer's email.
+     */
+    @Test
+    public void testToSeatBlocks() {
+
+        final ReservationStore store = new ReservationStore();
+        store.add(new SeatBlock(1, "a@example.com", 0, 2));
+        final long bytes = store.getOffHeapBytes();
+        store.add(new SeatBlock(2, "a@example.com", 2, 2));
+        store.add(new SeatBlock(3, "b@example.com", 4, 1));
+        Assert.assertEquals(bytes, store.getOffHeapBytes());
+
+        final List<SeatBlock> blocks = store.toSeatBlocks();
+        Assert.assertEquals(3, blocks.size());
+        Assert.assertEquals(1, blocks.get(0).getId());
+        Assert.assertEquals("a@example.com", blocks.get(1).getEmail());
+        Assert.assertEquals(4, blocks.get(2).getStartingSeat());
+    }
+}
@@ -27,4 +27,35 @@ public class SeatBlockTest {
             // Nothing to do here
         }
     }
+
+    /**
+     * Test a block made of several segments.
+     */
+    @Test
+    public void testSegments() {
+
+        // A single run is one segment
+        final SeatBlock single = new SeatBlock(1, "a@b.com", 5, 3);
+        Assert.assertEquals(1, single.getNumSegments());
+        Assert.assertEquals(5, single.getSegmentStart(0));
+        Assert.assertEquals(3, single.getSegmentLength(0));
+
+        // A split block reports the total across its segments
+        final int[] segments = {10, 2, 30, 3};
+        final SeatBlock split = new SeatBlock(2, "a@b.com", segments, 1_000L);
+        segments[0] = 99;
+        Assert.assertEquals(2, split.getNumSegments());
+        Assert.assertEquals(10, split.getStartingSeat());
+        Assert.assertEquals(5, split.getNumberSeats());
+        Assert.assertEquals(30, split.getSegmentStart(1));
+        Assert.assertEquals(3, split.getSegmentLength(1));
+    }
+
+    /**
+     * Test that segments must come in pairs.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOddSegments() {
+        new SeatBlock(1, "a@b.com", new int[] {1, 2, 3}, 1_000L);
+    }
 }
@@ -0,0 +1,68 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test the behavior of the SeatMapDelta class.
+ */
+public class SeatMapDeltaTest {
+
+    /**
+     * Test encoding and decoding runs, including ones out of seat order.
+     */
+    @Test
+    public void testRoundTrip() {
+
+        final int[] runs = {
+                100, 5, SeatStatus.Status.HELD.ordinal(),
+                20, 3, SeatStatus.Status.RESERVED.ordinal(),
+                100_000, 200, SeatStatus.Status.OPEN.ordinal()};
+        final SeatMapDelta delta = SeatMapDelta.encode(1L << 40, runs, 3);
+        Assert.assertEquals(1L << 40, delta.getVersion());
+        Assert.assertEquals(3, delta.getNumRuns());
+
+        // Small runs near the last one take a few bytes each
+        Assert.assertTrue(delta.getEncodedLength() < 20);
+
+        final SeatMapDelta decoded = SeatMapDelta.decode(delta.getEncoded());
+        Assert.assertEquals(delta.getVersion(), decoded.getVersion());
+        final List<String> seen = new ArrayList<>();
+        decoded.forEachRun((startingSeat, numberSeats, status) ->
+                seen.add(startingSeat + "+" + numberSeats + "=" + status));
+        Assert.assertEquals(Arrays.asList("100+5=HELD", "20+3=RESERVED", "100000+200=OPEN"), seen);
+    }
+
+    /**
+     * Test applying a delta to a client's seat map, where a later run
+     * overrides an earlier one.
+     */
+    @Test
+    public void testApplyTo() {
+
+        final SeatStatus.Status[] seatMap = new SeatStatus.Status[10];
+        Arrays.fill(seatMap, SeatStatus.Status.OPEN);
+        final int[] runs = {
+                2, 4, SeatStatus.Status.HELD.ordinal(),
+                3, 2, SeatStatus.Status.OPEN.ordinal()};
+        SeatMapDelta.encode(1L, runs, 2).applyTo(seatMap);
+        Assert.assertEquals(SeatStatus.Status.HELD, seatMap[2]);
+        Assert.assertEquals(SeatStatus.Status.OPEN, seatMap[3]);
+        Assert.assertEquals(SeatStatus.Status.OPEN, seatMap[4]);
+        Assert.assertEquals(SeatStatus.Status.HELD, seatMap[5]);
+        Assert.assertEquals(SeatStatus.Status.OPEN, seatMap[6]);
+    }
+
+    /**
+     * Test that a truncated encoding is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        final byte[] encoded = SeatMapDelta.encode(7L, new int[] {300, 5, 1}, 1).getEncoded();
+        SeatMapDelta.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+}
@@ -0,0 +1,81 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Test the behavior of the SeatSnapshot class.
+ */
+public class SeatSnapshotTest {
+
+    /**
+     * Test that a snapshot reads back the same as it was written.
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+
+        final Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            Files.delete(file);
+            Assert.assertNull(SeatSnapshot.read(file));
+
+            new SeatSnapshot(42L, 100, 17,
+                    Arrays.asList(new SeatBlock(3, "a@example.com", 0, 10, 1_000L),
+                            new SeatBlock(5, "b@example.com", 20, 4, 1_001L)),
+                    Collections.singletonList(new SeatBlock(16, "c@example.com", new int[] {50, 2, 60, 3}, 1_002L)))
+                    .write(file);
+
+            final SeatSnapshot snapshot = SeatSnapshot.read(file);
+            Assert.assertEquals(42L, snapshot.getSequence());
+            Assert.assertEquals(100, snapshot.getNumSeats());
+            Assert.assertEquals(17, snapshot.getNextHoldId());
+            Assert.assertEquals(2, snapshot.getReserved().size());
+            Assert.assertEquals(1, snapshot.getHolds().size());
+
+            final SeatBlock block = snapshot.getReserved().get(1);
+            Assert.assertEquals(5, block.getId());
+            Assert.assertEquals("b@example.com", block.getEmail());
+            Assert.assertEquals(20, block.getStartingSeat());
+            Assert.assertEquals(4, block.getNumberSeats());
+            Assert.assertEquals(1_001L, block.getCreatedTime());
+
+            // A split hold keeps its segments
+            final SeatBlock hold = snapshot.getHolds().get(0);
+            Assert.assertEquals("c@example.com", hold.getEmail());
+            Assert.assertEquals(2, hold.getNumSegments());
+            Assert.assertEquals(60, hold.getSegmentStart(1));
+            Assert.assertEquals(5, hold.getNumberSeats());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Test that a corrupt snapshot is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testCorrupt() throws IOException {
+
+        final Path file = Files.createTempFile("snapshot", ".bin");
+        try {
+            new SeatSnapshot(1L, 10, 2, Collections.singletonList(new SeatBlock(1, "a@example.com", 0, 2)),
+                    Collections.emptyList()).write(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {7}), 40L);
+            }
+
+            SeatSnapshot.read(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
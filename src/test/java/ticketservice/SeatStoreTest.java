@@ -0,0 +1,89 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the behavior of the SeatStore class.
+ */
+public class SeatStoreTest {
+
+    /**
+     * Test getting and setting seat status values.
+     */
+    @Test
+    public void testStatusChange() {
+
+        // All seats start open, with no lookup ID
+        final SeatStore store = new SeatStore(100);
+        Assert.assertEquals(SeatStatus.Status.OPEN, store.getStatus(0));
+        Assert.assertEquals(SeatStatus.Status.OPEN, store.getStatus(99));
+        Assert.assertEquals(-1, store.getLookupId(50));
+
+        // Set seats on either side of a word boundary, and confirm the neighbors are unchanged
+        store.setStatus(31, SeatStatus.Status.HELD);
+        store.setLookupId(31, 7);
+        store.setStatus(32, SeatStatus.Status.RESERVED);
+        Assert.assertEquals(SeatStatus.Status.OPEN, store.getStatus(30));
+        Assert.assertEquals(SeatStatus.Status.HELD, store.getStatus(31));
+        Assert.assertEquals(SeatStatus.Status.RESERVED, store.getStatus(32));
+        Assert.assertEquals(SeatStatus.Status.OPEN, store.getStatus(33));
+        Assert.assertEquals(7, store.getLookupId(31));
+
+        // Making a seat open clears its lookup ID
+        store.setStatus(31, SeatStatus.Status.OPEN);
+        Assert.assertEquals(-1, store.getLookupId(31));
+    }
+
+    /**
+     * Test the SeatStatus view of a seat.
+     */
+    @Test
+    public void testSeatStatusView() {
+
+        final SeatStore store = new SeatStore(10);
+        store.setStatus(4, SeatStatus.Status.HELD);
+        store.setLookupId(4, 12);
+
+        // The view has the seat's values, but changing it doesn't change the store
+        final SeatStatus view = store.getSeatStatus(4);
+        Assert.assertEquals(4, view.getSeatId());
+        Assert.assertEquals(SeatStatus.Status.HELD, view.getSeatStatus());
+        Assert.assertEquals(12, view.getSeatLookupId());
+        view.setSeatStatus(SeatStatus.Status.OPEN);
+        Assert.assertEquals(SeatStatus.Status.HELD, store.getStatus(4));
+    }
+
+    /**
+     * Test that seats outside the venue are rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfRange() {
+        new SeatStore(10).getStatus(10);
+    }
+
+    /**
+     * Test that shared pages are copied on the next change, and left alone.
+     */
+    @Test
+    public void testSharePages() {
+
+        final SeatStore store = new SeatStore(3 * SeatStore.SEATS_PER_PAGE);
+        store.setStatus(5, SeatStatus.Status.HELD);
+        final long[][] shared = store.sharePages();
+        Assert.assertEquals(3, shared.length);
+
+        // Change a seat on the first page; the shared copy keeps the old status
+        store.setStatus(5, SeatStatus.Status.RESERVED);
+        store.setStatus(6, SeatStatus.Status.HELD);
+        Assert.assertEquals(SeatStatus.Status.HELD, SeatStore.getStatus(shared, 5));
+        Assert.assertEquals(SeatStatus.Status.OPEN, SeatStore.getStatus(shared, 6));
+        Assert.assertEquals(SeatStatus.Status.RESERVED, store.getStatus(5));
+
+        // Only the changed page was copied
+        final long[][] next = store.sharePages();
+        Assert.assertNotSame(shared[0], next[0]);
+        Assert.assertSame(shared[1], next[1]);
+        Assert.assertSame(shared[2], next[2]);
+    }
+}
@@ -0,0 +1,79 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the behavior of the SplitPartySearch class.
+ */
+public class SplitPartySearchTest {
+
+    /**
+     * Test that the group with the fewest segments wins, then the narrowest.
+     */
+    @Test
+    public void testTightestGroup() {
+
+        // Row 0: ..XX.XXX..  Row 1: XXX..XXXXX  (X = taken)
+        final Venue venue = new Venue(2, 10);
+        final boolean[] open = openSeats("..XX.XXX..", "XXX..XXXXX");
+        final SplitPartySearch search = new SplitPartySearch(venue);
+
+        // Five seats take three segments either way, but using row 1 spans fewer columns
+        final int[] segments = search.find(5, rowCounts(venue, open), seat -> open[seat]);
+        Assert.assertArrayEquals(new int[] {0, 2, 4, 1, 13, 2}, segments);
+
+        // Three seats fit in row 0 in two segments, but the seat behind row 1's pair is tighter
+        Assert.assertArrayEquals(new int[] {4, 1, 13, 2}, search.find(3, rowCounts(venue, open), seat -> open[seat]));
+        Assert.assertTrue(search.getLastSearchLength() <= 2 * SplitPartySearch.MAX_WINDOWS);
+    }
+
+    /**
+     * Test that a party is never split into more than MAX_SEGMENTS segments.
+     */
+    @Test
+    public void testSegmentLimit() {
+
+        // Single open seats only: five seats would need five segments
+        final Venue venue = new Venue(1, 10);
+        final boolean[] open = openSeats(".X.X.X.X.X");
+        final SplitPartySearch search = new SplitPartySearch(venue);
+        Assert.assertNull(search.find(5, rowCounts(venue, open), seat -> open[seat]));
+        Assert.assertEquals(4, search.find(4, rowCounts(venue, open), seat -> open[seat]).length / 2);
+        Assert.assertNull(search.find(1, rowCounts(venue, open), seat -> open[seat]));
+    }
+
+    /**
+     * Helper method to build the open seats from a picture of each row.
+     *
+     * @param rows each row, with '.' for an open seat
+     * @return which seats are open
+     */
+    private static boolean[] openSeats(final String... rows) {
+        final int cols = rows[0].length();
+        final boolean[] open = new boolean[rows.length * cols];
+        for (int row = 0; row < rows.length; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                open[row * cols + col] = rows[row].charAt(col) == '.';
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Helper method to count the open seats in each row.
+     *
+     * @param venue the venue
+     * @param open which seats are open
+     * @return the count for each row
+     */
+    private static int[] rowCounts(final Venue venue, final boolean[] open) {
+        final int[] counts = new int[venue.getNumRows()];
+        for (int seat = 0; seat < open.length; ++seat) {
+            if (open[seat]) {
+                ++counts[seat / venue.getNumCols()];
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,180 @@
+package ticketservice;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Test the behavior of the StripedTicketService class.
+ */
+public class StripedTicketServiceTest {
+
+    /**
+     * Test finding and holding seats, including blocks that cross stripes.
+     */
+    @Test
+    public void testFindAndHoldSeats() {
+
+        // Create a service with one stripe per row, so most blocks cross stripes
+        final StripedTicketService service = new StripedTicketService(300L, new Venue(20, 25), 1);
+        Assert.assertEquals(20, service.getNumStripes());
+        Assert.assertEquals(500, service.numSeatsAvailable());
+
+        // Hold a block inside the first stripe, then one that crosses into the next three
+        final SeatHold hold1 = service.findAndHoldSeats(20, "a@example.com");
+        final SeatHold hold2 = service.findAndHoldSeats(60, "b@example.com");
+        Assert.assertEquals(0, service.getHoldById(hold1).getStartingSeat());
+        Assert.assertEquals(20, service.getHoldById(hold2).getStartingSeat());
+        Assert.assertEquals(420, service.numSeatsAvailable());
+
+        // Confirm we can't hold zero seats, or hold with a null email
+        Assert.assertNull(service.findAndHoldSeats(0, "a@example.com"));
+        Assert.assertNull(service.findAndHoldSeats(10, null));
+
+        // Hold all of the remaining seats; then no more seats can be held
+        final SeatHold hold3 = service.findAndHoldSeats(420, "c@example.com");
+        Assert.assertEquals(80, service.getHoldById(hold3).getStartingSeat());
+        Assert.assertEquals(0, service.numSeatsAvailable());
+        Assert.assertNull(service.findAndHoldSeats(1, "c@example.com"));
+
+        // Reserve the second block, then let the others expire
+        Assert.assertNull(service.reserveSeats(hold2.getId(), "a@example.com"));
+        Assert.assertNotNull(service.reserveSeats(hold2.getId(), "B@example.com"));
+        sleep(400L);
+        Assert.assertEquals(440, service.numSeatsAvailable());
+        Assert.assertNull(service.reserveSeats(hold1.getId(), "a@example.com"));
+
+        // The first free block is at the front again, and the reserved seats are skipped
+        final SeatHold hold4 = service.findAndHoldSeats(21, "d@example.com");
+        Assert.assertEquals(80, service.getHoldById(hold4).getStartingSeat());
+        Assert.assertEquals(20, service.getReservedById(hold2.getId()).getStartingSeat());
+    }
+
+    /**
+     * Confirm the striped service picks the same seats as TicketServiceImpl
+     * for a random series of requests from one thread.
+     */
+    @Test
+    public void testMatchesTicketServiceImpl() {
+
+        final Venue venue = new Venue(12, 10);
+        final StripedTicketService striped = new StripedTicketService(60_000L, venue, 3);
+        final TicketServiceImpl simple = new TicketServiceImpl(60_000L, venue);
+
+        final Random random = new Random(7L);
+        for (int i = 0; i < 200; ++i) {
+            final int numSeats = 1 + random.nextInt(25);
+            final SeatHold stripedHold = striped.findAndHoldSeats(numSeats, "a@example.com");
+            final SeatHold simpleHold = simple.findAndHoldSeats(numSeats, "a@example.com");
+            if (simpleHold == null) {
+                Assert.assertNull(stripedHold);
+                continue;
+            }
+
+            Assert.assertEquals(simple.getHoldById(simpleHold).getStartingSeat(),
+                    striped.getHoldById(stripedHold).getStartingSeat());
+
+            // Reserve some of the holds in both services
+            if (random.nextBoolean()) {
+                Assert.assertNotNull(striped.reserveSeats(stripedHold.getId(), "a@example.com"));
+                Assert.assertNotNull(simple.reserveSeats(simpleHold.getId(), "a@example.com"));
+            }
+            Assert.assertEquals(simple.numSeatsAvailable(), striped.numSeatsAvailable());
+        }
+    }
+
+    /**
+     * Test holding seats from many threads, and confirm no seat is held twice.
+     */
+    @Test
+    public void multiThreadedTest() {
+
+        // 200 threads each try to hold 5 seats in a 1000-seat venue
+        final StripedTicketService service = new StripedTicketService(10_000L, new Venue(20, 50), 2);
+        final int numThreads = 200;
+        final List<CompletableFuture<SeatHold>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; ++i) {
+            futures.add(CompletableFuture.supplyAsync(() -> service.findAndHoldSeats(5, "sam@example.com")));
+        }
+
+        // Every thread should get a hold, and every seat should be held exactly once
+        final boolean[] held = new boolean[1000];
+        try {
+            for (CompletableFuture<SeatHold> future : futures) {
+                final SeatBlock block = service.getHoldById(future.get());
+                for (int seat = block.getStartingSeat(); seat < block.getStartingSeat() + block.getNumberSeats(); ++seat) {
+                    Assert.assertFalse(held[seat]);
+                    held[seat] = true;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            Assert.fail("Exception in CompletableFuture test: " + e.getMessage());
+        }
+
+        Assert.assertEquals(0, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test releasing holds, cancelling reservations and extending holds.
+     */
+    @Test
+    public void testReleaseCancelAndExtend() {
+
+        final StripedTicketService service = new StripedTicketService(200L, new Venue(2, 5), 1);
+
+        // Fill the venue with three holds; the middle one crosses from row 0 into row 1
+        final SeatHold first = service.findAndHoldSeats(3, "a@example.com");
+        final SeatHold second = service.findAndHoldSeats(4, "b@example.com");
+        final SeatHold third = service.findAndHoldSeats(3, "c@example.com");
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        // Only the hold's customer can release it, and only once
+        Assert.assertFalse(service.releaseHold(second.getId(), "a@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), null));
+        Assert.assertTrue(service.releaseHold(second.getId(), "B@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), "b@example.com"));
+        Assert.assertNull(service.reserveSeats(second.getId(), "b@example.com"));
+        Assert.assertEquals(4, service.numSeatsAvailable());
+
+        // Only the reservation's customer can cancel it, and only once
+        final String code = service.reserveSeats(first.getId(), "a@example.com");
+        Assert.assertFalse(service.cancelReservation(code, "b@example.com"));
+        Assert.assertFalse(service.cancelReservation("not a code", "a@example.com"));
+        Assert.assertTrue(service.cancelReservation(code, "A@example.com"));
+        Assert.assertFalse(service.cancelReservation(code, "a@example.com"));
+        Assert.assertNull(service.getReservedById(first.getId()));
+        Assert.assertEquals(7, service.numSeatsAvailable());
+
+        // The released and cancelled seats are one block again
+        final SeatHold joined = service.findAndHoldSeats(7, "d@example.com");
+        Assert.assertEquals(0, service.getHoldById(joined).getStartingSeat());
+
+        // An extended hold outlives its first timeout; the others expire
+        sleep(150L);
+        Assert.assertFalse(service.extendHold(third.getId(), "d@example.com"));
+        Assert.assertTrue(service.extendHold(third.getId(), "c@example.com"));
+        sleep(120L);
+        Assert.assertEquals(7, service.numSeatsAvailable());
+        Assert.assertNotNull(service.reserveSeats(third.getId(), "c@example.com"));
+        Assert.assertFalse(service.extendHold(third.getId(), "c@example.com"));
+        Assert.assertFalse(service.extendHold(joined.getId(), "d@example.com"));
+    }
+
+    /**
+     * Helper method to sleep for the specified number of milliseconds.
+     *
+     * @param delay the number of milliseconds to sleep
+     */
+    private void sleep(final long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            // Nothing to do here
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package ticketservice;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -35,6 +42,100 @@ public class TicketServiceImplTest {
         Assert.assertEquals(500, service.numSeatsAvailable());
     }
 
+    /**
+     * Test holding seats with the best-seat allocator.
+     */
+    @Test
+    public void testBestSeatAllocator() {
+
+        // The best-seat allocator keeps each block within a row
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(4, 10), BestSeatAllocator::new);
+        Assert.assertNotNull(service.findAndHoldSeats(6, "a@example.com"));
+        Assert.assertNotNull(service.findAndHoldSeats(6, "b@example.com"));
+        Assert.assertArrayEquals(new int[] {4, 4, 10, 10}, service.getRowSeatsAvailable());
+
+        // Parties wider than a row can't be seated
+        Assert.assertNull(service.findAndHoldSeats(11, "c@example.com"));
+        Assert.assertEquals(1L, service.getMetrics().getHoldFailures(FailureReason.NO_CONTIGUOUS_BLOCK));
+    }
+
+    /**
+     * Test that an allocator for a different venue is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAllocatorVenueMismatch() {
+        new TicketServiceImpl(100L, new Venue(4, 10), venue -> new FirstFitAllocator(new Venue(5, 10)));
+    }
+
+    /**
+     * Test the per-customer limits on holds and held seats, and the
+     * queries for a customer's holds and reservations.
+     */
+    @Test
+    public void testCustomerLimits() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(200L, new Venue(4, 10));
+        service.setCustomerLimits(2, 5);
+
+        // The third hold is over the hold limit, and six seats are over the seat limit
+        final SeatHold first = service.findAndHoldSeats(2, "a@example.com");
+        Assert.assertNotNull(first);
+        Assert.assertNull(service.findAndHoldSeats(4, "A@example.com"));
+        final SeatHold second = service.findAndHoldSeats(3, "a@example.com");
+        Assert.assertNotNull(second);
+        Assert.assertNull(service.findAndHoldSeats(1, "a@example.com"));
+        Assert.assertEquals(2L, service.getMetrics().getHoldFailures(FailureReason.CUSTOMER_LIMIT));
+
+        // Other customers aren't affected
+        Assert.assertNotNull(service.findAndHoldSeats(5, "b@example.com"));
+        Assert.assertEquals(2, service.getCustomerHolds("A@EXAMPLE.COM").size());
+
+        // Reserving a hold frees up room under the limits
+        Assert.assertNotNull(service.reserveSeats(first.getId(), "a@example.com"));
+        Assert.assertEquals(1, service.getCustomerHolds("a@example.com").size());
+        Assert.assertEquals(first.getId(), service.getCustomerReservations("a@example.com").get(0).getId());
+        Assert.assertNotNull(service.findAndHoldSeats(2, "a@example.com"));
+
+        // So does a hold expiring
+        sleep(300L);
+        Assert.assertTrue(service.getCustomerHolds("a@example.com").isEmpty());
+        Assert.assertNotNull(service.findAndHoldSeats(5, "a@example.com"));
+        Assert.assertEquals(1, service.getCustomerReservations("a@example.com").size());
+
+        // A request that can't fit is turned away without the lock, before the limits are checked
+        Assert.assertNull(service.findAndHoldSeats(34, "a@example.com"));
+        Assert.assertEquals(FailureReason.NOT_ENOUGH_SEATS, service.getLastHoldFailure());
+        Assert.assertNull(service.findAndHoldSeats(1, "a@example.com"));
+        Assert.assertEquals(FailureReason.CUSTOMER_LIMIT, service.getLastHoldFailure());
+    }
+
+    /**
+     * Test the per-row counts of available seats.
+     */
+    @Test
+    public void testRowSeatsAvailable() {
+
+        // Create a service and hold a block that wraps from the first row into the second
+        final TicketServiceImpl service = new TicketServiceImpl(100L, new Venue(4, 10));
+        final SeatHold hold = service.findAndHoldSeats(15, "a@example.com");
+        Assert.assertNotNull(hold);
+        Assert.assertEquals(0, service.numSeatsAvailable(0));
+        Assert.assertEquals(5, service.numSeatsAvailable(1));
+        Assert.assertArrayEquals(new int[] {0, 5, 10, 10}, service.getRowSeatsAvailable());
+
+        // Reserving the seats keeps them unavailable
+        Assert.assertNotNull(service.reserveSeats(hold.getId(), "a@example.com"));
+        Assert.assertEquals(25, service.numSeatsAvailable());
+        Assert.assertArrayEquals(new int[] {0, 5, 10, 10}, service.getRowSeatsAvailable());
+
+        // Hold the rest of the second row, and let it expire
+        Assert.assertNotNull(service.findAndHoldSeats(5, "b@example.com"));
+        Assert.assertEquals(0, service.numSeatsAvailable(1));
+        sleep(250L);
+        Assert.assertEquals(5, service.numSeatsAvailable(1));
+        Assert.assertEquals(25, service.numSeatsAvailable());
+    }
+
     /**
      * Test the logic for finding and holding seats.
      */
@@ -51,6 +152,9 @@ public class TicketServiceImplTest {
         Assert.assertEquals(0, block1.getStartingSeat());
         Assert.assertEquals(20, block1.getNumberSeats());
         Assert.assertEquals(480, service.numSeatsAvailable());
+        Assert.assertEquals(SeatStatus.Status.HELD, service.getSeatStatus(19).getSeatStatus());
+        Assert.assertEquals(hold1.getId(), service.getSeatStatus(19).getSeatLookupId());
+        Assert.assertEquals(SeatStatus.Status.OPEN, service.getSeatStatus(20).getSeatStatus());
 
         // Confirm we can't hold zero seats
         final SeatHold emptyHold = service.findAndHoldSeats(0, "a@example.com");
@@ -92,6 +196,33 @@ public class TicketServiceImplTest {
         Assert.assertEquals(495, service.numSeatsAvailable());
     }
 
+    /**
+     * Test that expired holds are released by the background reaper, and
+     * passed to the release listeners.
+     */
+    @Test
+    public void testExpiryReaper() {
+
+        // Create a service with a listener that saves the released holds
+        final TicketServiceImpl service = new TicketServiceImpl(100L, new Venue(20, 25));
+        final List<SeatBlock> released = new CopyOnWriteArrayList<>();
+        service.addHoldReleaseListener(released::addAll);
+        service.startExpiryReaper(20L);
+
+        // Hold and reserve one block, and only hold another
+        final SeatHold hold1 = service.findAndHoldSeats(10, "a@example.com");
+        final SeatHold hold2 = service.findAndHoldSeats(5, "b@example.com");
+        Assert.assertNotNull(service.reserveSeats(hold1.getId(), "a@example.com"));
+
+        // After the timeout, the reaper should release the second hold without any other calls
+        sleep(250L);
+        service.stopExpiryReaper();
+        Assert.assertEquals(1, released.size());
+        Assert.assertEquals(hold2.getId(), released.get(0).getId());
+        Assert.assertNull(service.getHoldById(hold2));
+        Assert.assertEquals(490, service.numSeatsAvailable());
+    }
+
     /**
      * Test the logic for reserving seats.
      */
@@ -118,6 +249,397 @@ public class TicketServiceImplTest {
         Assert.assertNotNull(reserve3);
     }
 
+    /**
+     * Test that the longest runs of open seats are kept up to date, that a
+     * request longer than the longest run is turned away without the lock
+     * (unless a hold is due to expire), and that the caller is told why.
+     */
+    @Test
+    public void testLargestFreeRun() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(300L, new Venue(3, 10));
+        Assert.assertEquals(30, service.getLargestFreeRun());
+        Assert.assertEquals(10, service.getLargestFreeRun(2));
+
+        // Fill the first row with three holds, and the second and third with one each
+        Assert.assertNotNull(service.findAndHoldSeats(4, "a@example.com"));
+        final SeatHold middle = service.findAndHoldSeats(2, "a@example.com");
+        Assert.assertNotNull(service.findAndHoldSeats(4, "a@example.com"));
+        final SeatHold second = service.findAndHoldSeats(10, "b@example.com");
+        Assert.assertNotNull(service.reserveSeats(service.findAndHoldSeats(10, "b@example.com").getId(),
+                "b@example.com"));
+        Assert.assertNull(service.getLastHoldFailure());
+        Assert.assertEquals(0, service.getLargestFreeRun());
+
+        // Give back the second row, and seats 4-5 of the first
+        Assert.assertTrue(service.releaseHold(second.getId(), "b@example.com"));
+        Assert.assertEquals(10, service.getLargestFreeRun());
+        Assert.assertEquals(0, service.getLargestFreeRun(0));
+        Assert.assertEquals(10, service.getLargestFreeRun(1));
+        Assert.assertEquals(0, service.getLargestFreeRun(2));
+        Assert.assertTrue(service.releaseHold(middle.getId(), "a@example.com"));
+        Assert.assertEquals(2, service.getLargestFreeRun(0));
+
+        // Too long for any run, or for the open seats; neither takes the lock
+        final long lockWaits = service.getMetrics().getLockWait().getCount();
+        Assert.assertNull(service.findAndHoldSeats(11, "c@example.com"));
+        Assert.assertEquals(FailureReason.NO_CONTIGUOUS_BLOCK, service.getLastHoldFailure());
+        Assert.assertNull(service.findAndHoldSeats(13, "c@example.com"));
+        Assert.assertEquals(FailureReason.NOT_ENOUGH_SEATS, service.getLastHoldFailure());
+        Assert.assertEquals(lockWaits, service.getMetrics().getLockWait().getCount());
+
+        // With split parties on, a request that fits in the open seats still tries
+        service.setSplitParties(true);
+        Assert.assertNotNull(service.findAndHoldSeats(11, "c@example.com"));
+        Assert.assertNull(service.getLastHoldFailure());
+        Assert.assertEquals(lockWaits + 1L, service.getMetrics().getLockWait().getCount());
+        service.setSplitParties(false);
+
+        // Once the holds are due to expire, the request goes through and finds the seats
+        sleep(400L);
+        Assert.assertNotNull(service.findAndHoldSeats(20, "d@example.com"));
+        Assert.assertEquals(0, service.getLargestFreeRun());
+    }
+
+    /**
+     * Test releasing holds and cancelling reservations early, and that the
+     * seats they give back join up with the open seats next to them.
+     */
+    @Test
+    public void testReleaseAndCancel() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(1, 10));
+        final List<SeatBlock> released = new ArrayList<>();
+        service.addHoldReleaseListener(released::addAll);
+
+        // Fill the row with three holds
+        final SeatHold first = service.findAndHoldSeats(4, "a@example.com");
+        final SeatHold second = service.findAndHoldSeats(3, "b@example.com");
+        final SeatHold third = service.findAndHoldSeats(3, "c@example.com");
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        // Only the hold's customer can release it, and only once
+        Assert.assertFalse(service.releaseHold(second.getId(), "a@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), null));
+        Assert.assertTrue(service.releaseHold(second.getId(), "B@example.com"));
+        Assert.assertFalse(service.releaseHold(second.getId(), "b@example.com"));
+        Assert.assertNull(service.reserveSeats(second.getId(), "b@example.com"));
+        Assert.assertEquals(3, service.numSeatsAvailable());
+        Assert.assertEquals(1, released.size());
+        Assert.assertEquals(second.getId(), released.get(0).getId());
+        Assert.assertTrue(service.getCustomerHolds("b@example.com").isEmpty());
+
+        // Releasing the first hold joins its seats to the second's
+        Assert.assertNull(service.findAndHoldSeats(5, "d@example.com"));
+        Assert.assertTrue(service.releaseHold(first.getId(), "a@example.com"));
+        final SeatHold joined = service.findAndHoldSeats(7, "d@example.com");
+        Assert.assertEquals(0, service.getHoldById(joined).getStartingSeat());
+
+        // Only the reservation's customer can cancel it, and only once
+        final String code = service.reserveSeats(third.getId(), "c@example.com");
+        Assert.assertFalse(service.cancelReservation(code, "a@example.com"));
+        Assert.assertFalse(service.cancelReservation("not a code", "c@example.com"));
+        Assert.assertFalse(service.cancelReservation(null, "c@example.com"));
+        Assert.assertTrue(service.cancelReservation(code, "C@Example.com"));
+        Assert.assertFalse(service.cancelReservation(code, "c@example.com"));
+        Assert.assertNull(service.getReservedById(third.getId()));
+        Assert.assertTrue(service.getCustomerReservations("c@example.com").isEmpty());
+        Assert.assertEquals(SeatStatus.Status.OPEN, service.getSeatStatus(9).getSeatStatus());
+        Assert.assertEquals(3, service.numSeatsAvailable());
+
+        // The cancelled seats join up with the rest of the released hold
+        Assert.assertTrue(service.releaseHold(joined.getId(), "d@example.com"));
+        Assert.assertEquals(0, service.getHoldById(service.findAndHoldSeats(10, "e@example.com")).getStartingSeat());
+
+        final MetricsSnapshot metrics = service.getMetrics();
+        Assert.assertEquals(3L, metrics.getHoldsReleased());
+        Assert.assertEquals(1L, metrics.getReservationsCancelled());
+        Assert.assertEquals(6L, metrics.getLatency(MetricsSnapshot.Operation.RELEASE_HOLD).getCount());
+        Assert.assertEquals(5L, metrics.getLatency(MetricsSnapshot.Operation.CANCEL_RESERVATION).getCount());
+    }
+
+    /**
+     * Test that an extended hold outlives its first timeout, that an
+     * expired hold can't be extended, and that extensions and
+     * cancellations survive a restart.
+     */
+    @Test
+    public void testExtendHold() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            final int extendedId;
+            final int cancelledId;
+            try (TicketServiceImpl service = new TicketServiceImpl(500L, new Venue(2, 10), file, Durability.SYNC)) {
+                extendedId = service.findAndHoldSeats(4, "a@example.com").getId();
+                cancelledId = service.findAndHoldSeats(10, "b@example.com").getId();
+                final String code = service.reserveSeats(cancelledId, "b@example.com");
+                Assert.assertTrue(service.cancelReservation(code, "b@example.com"));
+
+                sleep(300L);
+                Assert.assertFalse(service.extendHold(extendedId, "b@example.com"));
+                Assert.assertTrue(service.extendHold(extendedId, "a@example.com"));
+                Assert.assertEquals(1L, service.getMetrics().getHoldsExtended());
+            }
+
+            // Restart past the first timeout; the hold is still there
+            sleep(300L);
+            try (TicketServiceImpl service = new TicketServiceImpl(500L, new Venue(2, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(16, service.numSeatsAvailable());
+                Assert.assertNull(service.getReservedById(cancelledId));
+                Assert.assertEquals(1, service.getCustomerHolds("a@example.com").size());
+
+                // Once it expires, it can't be extended
+                final SeatHold expiring = service.findAndHoldSeats(2, "c@example.com");
+                sleep(600L);
+                Assert.assertFalse(service.extendHold(expiring.getId(), "c@example.com"));
+                Assert.assertNull(service.reserveSeats(extendedId, "a@example.com"));
+                Assert.assertEquals(20, service.numSeatsAvailable());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test holding and reserving seats in batches.
+     */
+    @Test
+    public void testBatchRequests() {
+
+        // Hold a batch of seats, including two requests that should fail
+        final TicketServiceImpl service = new TicketServiceImpl(300L, new Venue(4, 10));
+        final List<SeatHold> holds = service.findAndHoldSeatsBatch(Arrays.asList(
+                new HoldRequest(10, "a@example.com"),
+                new HoldRequest(5, null),
+                new HoldRequest(20, "b@example.com"),
+                new HoldRequest(11, "c@example.com"),
+                new HoldRequest(10, "d@example.com")));
+
+        // The results are in request order, and later requests see the seats held by earlier ones
+        Assert.assertEquals(5, holds.size());
+        Assert.assertEquals(0, service.getHoldById(holds.get(0)).getStartingSeat());
+        Assert.assertNull(holds.get(1));
+        Assert.assertEquals(10, service.getHoldById(holds.get(2)).getStartingSeat());
+        Assert.assertNull(holds.get(3));
+        Assert.assertEquals(30, service.getHoldById(holds.get(4)).getStartingSeat());
+        Assert.assertEquals(0, service.numSeatsAvailable());
+
+        // Reserve a batch of the holds, with one wrong email
+        final List<String> confirmations = service.reserveSeatsBatch(Arrays.asList(
+                new ReserveRequest(holds.get(0).getId(), "a@example.com"),
+                new ReserveRequest(holds.get(2).getId(), "x@example.com"),
+                new ReserveRequest(holds.get(4).getId(), "d@example.com")));
+        Assert.assertEquals(Arrays.asList(Integer.toString(holds.get(0).getId()), null,
+                Integer.toString(holds.get(4).getId())), confirmations);
+
+        // Once the unreserved hold expires, only its seats come back
+        sleep(400L);
+        Assert.assertEquals(20, service.numSeatsAvailable());
+    }
+
+    /**
+     * Test the metrics of holds and reservations, by outcome.
+     */
+    @Test
+    public void testMetrics() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(200L, new Venue(2, 10));
+
+        // Two holds succeed; the others fail for different reasons
+        final SeatHold first = service.findAndHoldSeats(8, "a@example.com");
+        final SeatHold second = service.findAndHoldSeats(8, "b@example.com");
+        Assert.assertNull(service.findAndHoldSeats(2, null));
+        Assert.assertNull(service.findAndHoldSeats(0, "c@example.com"));
+        Assert.assertNull(service.findAndHoldSeats(5, "c@example.com"));
+        service.reserveSeats(first.getId(), "a@example.com");
+        service.reserveSeats(first.getId(), "a@example.com");
+        service.reserveSeats(second.getId(), "x@example.com");
+        service.reserveSeats(second.getId(), null);
+
+        MetricsSnapshot metrics = service.getMetrics();
+        Assert.assertEquals(2L, metrics.getHoldsSucceeded());
+        Assert.assertEquals(3L, metrics.getHoldFailures());
+        Assert.assertEquals(1L, metrics.getHoldFailures(FailureReason.NULL_EMAIL));
+        Assert.assertEquals(1L, metrics.getHoldFailures(FailureReason.INVALID_NUM_SEATS));
+        Assert.assertEquals(1L, metrics.getHoldFailures(FailureReason.NOT_ENOUGH_SEATS));
+        Assert.assertEquals(1L, metrics.getReservesSucceeded());
+        Assert.assertEquals(1L, metrics.getReserveFailures(FailureReason.HOLD_NOT_FOUND));
+        Assert.assertEquals(1L, metrics.getReserveFailures(FailureReason.EMAIL_MISMATCH));
+        Assert.assertEquals(1L, metrics.getReserveFailures(FailureReason.NULL_EMAIL));
+        Assert.assertEquals(5L, metrics.getLatency(MetricsSnapshot.Operation.FIND_AND_HOLD_SEATS).getCount());
+        Assert.assertEquals(4L, metrics.getLatency(MetricsSnapshot.Operation.RESERVE_SEATS).getCount());
+        Assert.assertEquals(2L, metrics.getScanLength().getCount());
+
+        // The request for more seats than are open was turned away without the lock
+        Assert.assertEquals(5L, metrics.getLockWait().getCount());
+
+        // Reserve two of the last four seats, then let the second hold expire before it's reserved
+        final SeatHold third = service.findAndHoldSeats(2, "d@example.com");
+        Assert.assertNotNull(service.reserveSeats(third.getId(), "d@example.com"));
+        sleep(300L);
+        Assert.assertNull(service.reserveSeats(second.getId(), "b@example.com"));
+        Assert.assertEquals(10, service.numSeatsAvailable());
+
+        // Ten seats are open, but not in one block
+        Assert.assertNull(service.findAndHoldSeats(9, "e@example.com"));
+        metrics = service.getMetrics();
+        Assert.assertEquals(1L, metrics.getHoldFailures(FailureReason.NO_CONTIGUOUS_BLOCK));
+        Assert.assertEquals(1L, metrics.getReserveFailures(FailureReason.HOLD_EXPIRED));
+        Assert.assertEquals(1L, metrics.getHoldsExpired());
+        Assert.assertEquals(1L, metrics.getLatency(MetricsSnapshot.Operation.NUM_SEATS_AVAILABLE).getCount());
+    }
+
+    /**
+     * Test that a persistent service is rebuilt from its journal.
+     */
+    @Test
+    public void testJournalRecovery() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            final int reservedId;
+            final int heldId;
+            final int expiringId;
+            try (TicketServiceImpl service = new TicketServiceImpl(300L, new Venue(4, 10), file, Durability.SYNC)) {
+                reservedId = service.findAndHoldSeats(5, "a@example.com").getId();
+                heldId = service.findAndHoldSeats(3, "b@example.com").getId();
+                Assert.assertNotNull(service.reserveSeats(reservedId, "a@example.com"));
+                expiringId = service.findAndHoldSeats(2, "c@example.com").getId();
+            }
+
+            // Restart: the reservation and the holds are back, and new holds get new IDs
+            try (TicketServiceImpl service = new TicketServiceImpl(300L, new Venue(4, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(30, service.numSeatsAvailable());
+                Assert.assertEquals(0, service.getReservedById(reservedId).getStartingSeat());
+                Assert.assertEquals(5, service.getHoldById(new SeatHold(heldId)).getStartingSeat());
+                Assert.assertEquals(SeatStatus.Status.HELD, service.getSeatStatus(8).getSeatStatus());
+                Assert.assertEquals(expiringId + 1, service.findAndHoldSeats(1, "d@example.com").getId());
+                Assert.assertNotNull(service.reserveSeats(heldId, "b@example.com"));
+            }
+
+            // Restart after the holds have timed out; only the reservations are left
+            sleep(400L);
+            try (TicketServiceImpl service = new TicketServiceImpl(300L, new Venue(4, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(32, service.numSeatsAvailable());
+                Assert.assertNull(service.getHoldById(new SeatHold(expiringId)));
+                Assert.assertNotNull(service.getReservedById(heldId));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that a party is split across nearby runs of seats when split
+     * parties are on, and that the split hold survives a restart.
+     */
+    @Test
+    public void testSplitParties() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            final int splitId;
+            try (TicketServiceImpl service = new TicketServiceImpl(200L, new Venue(4, 10), file, Durability.SYNC)) {
+
+                // Hold the whole venue in pairs, and reserve every other pair; the rest expire
+                final List<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < 20; ++i) {
+                    ids.add(service.findAndHoldSeats(2, "a@example.com").getId());
+                }
+                for (int i = 0; i < 20; i += 2) {
+                    Assert.assertNotNull(service.reserveSeats(ids.get(i), "a@example.com"));
+                }
+                sleep(300L);
+                Assert.assertEquals(20, service.numSeatsAvailable());
+
+                // No run of 4 open seats, so the hold fails unless the party can be split
+                Assert.assertFalse(service.isSplitParties());
+                Assert.assertNull(service.findAndHoldSeats(4, "b@example.com"));
+                service.setSplitParties(true);
+                final SeatHold hold = service.findAndHoldSeats(4, "b@example.com");
+                Assert.assertNotNull(hold);
+                splitId = hold.getId();
+
+                // The tightest group is a pair in the front row and the pair behind it
+                final SeatBlock block = service.getHoldById(hold);
+                Assert.assertEquals(2, block.getNumSegments());
+                Assert.assertEquals(2, block.getSegmentStart(0));
+                Assert.assertEquals(10, block.getSegmentStart(1));
+                Assert.assertEquals(4, block.getNumberSeats());
+                Assert.assertEquals(16, service.numSeatsAvailable());
+                Assert.assertEquals(1L, service.getMetrics().getHoldsSplit());
+                Assert.assertEquals(1L, service.getMetrics().getHoldFailures(FailureReason.NO_CONTIGUOUS_BLOCK));
+
+                // More than two rows' worth of seats can't be split
+                Assert.assertNull(service.findAndHoldSeats(16, "c@example.com"));
+                Assert.assertNotNull(service.reserveSeats(splitId, "b@example.com"));
+            }
+
+            // Restart: the split reservation is back, with both segments
+            try (TicketServiceImpl service = new TicketServiceImpl(200L, new Venue(4, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(16, service.numSeatsAvailable());
+                Assert.assertEquals(2, service.getReservedById(splitId).getNumSegments());
+                Assert.assertEquals(SeatStatus.Status.RESERVED, service.getSeatStatus(3).getSeatStatus());
+                Assert.assertEquals(SeatStatus.Status.RESERVED, service.getSeatStatus(11).getSeatStatus());
+                Assert.assertEquals(SeatStatus.Status.OPEN, service.getSeatStatus(14).getSeatStatus());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that a persistent service restarts from a snapshot and the
+     * journal records after it.
+     */
+    @Test
+    public void testSnapshotRecovery() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        final Path snapshotFile = file.resolveSibling(file.getFileName() + ".snapshot");
+        try {
+            final int firstId;
+            final int secondId;
+            final int thirdId;
+            try (TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(4, 10), file, Durability.SYNC)) {
+                firstId = service.findAndHoldSeats(5, "a@example.com").getId();
+                Assert.assertNotNull(service.reserveSeats(firstId, "a@example.com"));
+                secondId = service.findAndHoldSeats(3, "b@example.com").getId();
+
+                // The snapshot takes over from the journal
+                final long journalSize = Files.size(file);
+                service.takeSnapshot();
+                Assert.assertTrue(Files.exists(snapshotFile));
+                Assert.assertTrue(Files.size(file) < journalSize);
+
+                // Changes after the snapshot go to the journal
+                Assert.assertNotNull(service.reserveSeats(secondId, "b@example.com"));
+                thirdId = service.findAndHoldSeats(2, "c@example.com").getId();
+            }
+
+            try (TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(4, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(30, service.numSeatsAvailable());
+                Assert.assertEquals(0, service.getReservedById(firstId).getStartingSeat());
+                Assert.assertEquals(5, service.getReservedById(secondId).getStartingSeat());
+                Assert.assertEquals(8, service.getHoldById(new SeatHold(thirdId)).getStartingSeat());
+                Assert.assertEquals(firstId, service.getSeatStatus(4).getSeatLookupId());
+                Assert.assertEquals(thirdId + 1, service.findAndHoldSeats(1, "d@example.com").getId());
+
+                // A second snapshot, with nothing after it
+                service.takeSnapshot();
+            }
+
+            try (TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(4, 10), file, Durability.SYNC)) {
+                Assert.assertEquals(29, service.numSeatsAvailable());
+                Assert.assertEquals(0L, Files.size(file));
+            }
+        } finally {
+            Files.deleteIfExists(snapshotFile);
+            Files.delete(file);
+        }
+    }
+
     /**
      * Test the logic for holding seats in a multithreaded test.
      */
@@ -173,6 +695,235 @@ public class TicketServiceImplTest {
         }
     }
 
+    /**
+     * Test the versioned seat map: each batch of changes publishes a new
+     * version, older versions don't change, and unchanged pages are shared.
+     */
+    @Test
+    public void testSeatMap() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(100, 50));
+        final SeatMapSnapshot empty = service.getSeatMap();
+        Assert.assertEquals(0L, empty.getVersion());
+        Assert.assertEquals(5000, empty.getSeatsAvailable());
+
+        // A hold publishes a new version; the old one still shows the seats open
+        final SeatHold hold = service.findAndHoldSeats(10, "a@example.com");
+        final SeatMapSnapshot held = service.getSeatMap();
+        Assert.assertEquals(1L, held.getVersion());
+        Assert.assertEquals(4990, held.getSeatsAvailable());
+        Assert.assertEquals(SeatStatus.Status.HELD, held.getStatus(9));
+        Assert.assertEquals(SeatStatus.Status.OPEN, held.getStatus(10));
+        Assert.assertEquals(SeatStatus.Status.OPEN, empty.getStatus(9));
+
+        // Calls that change nothing don't publish
+        Assert.assertEquals(4990, service.numSeatsAvailable());
+        Assert.assertNull(service.findAndHoldSeats(6000, "a@example.com"));
+        Assert.assertSame(held, service.getSeatMap());
+
+        // A batch of holds is one version
+        service.findAndHoldSeatsBatch(Arrays.asList(new HoldRequest(5, "b@example.com"),
+                new HoldRequest(5, "c@example.com")));
+        Assert.assertEquals(2L, service.getSeatMap().getVersion());
+
+        Assert.assertNotNull(service.reserveSeats(hold.getId(), "a@example.com"));
+        final SeatMapSnapshot reserved = service.getSeatMap();
+        Assert.assertEquals(3L, reserved.getVersion());
+        Assert.assertEquals(SeatStatus.Status.RESERVED, reserved.getStatus(0));
+        Assert.assertEquals(SeatStatus.Status.HELD, held.getStatus(0));
+
+        // Only the page with the changed seats was copied
+        Assert.assertFalse(reserved.sharesPage(held, 0));
+        Assert.assertTrue(reserved.sharesPage(held, 4999));
+    }
+
+    /**
+     * Test the seat map change feed: a client that applies the deltas
+     * keeps an up-to-date copy of the seat map, and can resume from a
+     * version or start again when it falls behind.
+     */
+    @Test
+    public void testSeatMapChanges() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(50, 50));
+        final SeatStatus.Status[] clientMap = new SeatStatus.Status[2500];
+        Arrays.fill(clientMap, SeatStatus.Status.OPEN);
+        final List<Long> versions = new CopyOnWriteArrayList<>();
+        Assert.assertTrue(service.addSeatMapListener(0L, delta -> {
+            versions.add(delta.getVersion());
+            delta.applyTo(clientMap);
+        }));
+
+        final SeatHold hold1 = service.findAndHoldSeats(15, "a@example.com");
+        service.findAndHoldSeats(4, "b@example.com");
+        service.reserveSeats(hold1.getId(), "a@example.com");
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), versions);
+        final SeatMapSnapshot seatMap = service.getSeatMap();
+        for (int seat = 0; seat < 2500; ++seat) {
+            Assert.assertEquals(seatMap.getStatus(seat), clientMap[seat]);
+        }
+
+        // A polling client resumes from the version it has
+        final List<SeatMapDelta> changes = service.getSeatMapChanges(1L);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(2L, changes.get(0).getVersion());
+        Assert.assertEquals(3L, changes.get(1).getVersion());
+        Assert.assertTrue(service.getSeatMapChanges(3L).isEmpty());
+        Assert.assertNull(service.getSeatMapChanges(4L));
+
+        // Once the ring has moved on, an old version can't be resumed
+        for (int i = 0; i < 1100; ++i) {
+            Assert.assertNotNull(service.findAndHoldSeats(1, "c@example.com"));
+        }
+        Assert.assertNull(service.getSeatMapChanges(1L));
+        Assert.assertFalse(service.addSeatMapListener(1L, delta -> { }));
+        Assert.assertEquals(1024, service.getSeatMapChanges(service.getSeatMap().getVersion() - 1024L).size());
+    }
+
+    /**
+     * Test the service still behaves the same in zero-garbage mode, and
+     * that the seat map, change feed and customer holds catch up.
+     */
+    @Test
+    public void testZeroGarbageMode() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(20, 25));
+        service.setZeroGarbage(true);
+        Assert.assertTrue(service.isZeroGarbage());
+        service.setCustomerLimits(2, 10);
+
+        final SeatHold hold1 = service.findAndHoldSeats(4, "a@example.com");
+        final SeatHold hold2 = service.findAndHoldSeats(3, "A@Example.com");
+        Assert.assertNull(service.findAndHoldSeats(1, "a@example.com"));
+        Assert.assertEquals(493, service.numSeatsAvailable());
+        Assert.assertEquals(4, service.getHoldById(hold1).getNumberSeats());
+
+        // Customer holds are found without the index
+        final List<SeatBlock> holds = service.getCustomerHolds("a@EXAMPLE.com");
+        Assert.assertEquals(2, holds.size());
+        Assert.assertEquals(hold1.getId(), holds.get(0).getId());
+        Assert.assertEquals(hold2.getId(), holds.get(1).getId());
+
+        // The seat map is published when it's read, and the feed starts again from it
+        final SeatMapSnapshot seatMap = service.getSeatMap();
+        Assert.assertEquals(1L, seatMap.getVersion());
+        Assert.assertEquals(493, seatMap.getSeatsAvailable());
+        Assert.assertSame(seatMap, service.getSeatMap());
+        Assert.assertNull(service.getSeatMapChanges(0L));
+        Assert.assertTrue(service.getSeatMapChanges(1L).isEmpty());
+
+        // With a listener, deltas are recorded and published as before
+        final List<SeatMapDelta> deltas = new CopyOnWriteArrayList<>();
+        Assert.assertTrue(service.addSeatMapListener(1L, deltas::add));
+        Assert.assertNotNull(service.reserveSeats(hold1.getId(), "a@example.com"));
+        Assert.assertEquals(1, deltas.size());
+        Assert.assertEquals(2L, deltas.get(0).getVersion());
+        Assert.assertEquals(SeatStatus.Status.RESERVED, service.getSeatMap().getStatus(0));
+
+        // Turning it off again rebuilds the index of holds by customer
+        service.setZeroGarbage(false);
+        Assert.assertEquals(1, service.getCustomerHolds("a@example.com").size());
+        Assert.assertEquals(1, service.getCustomerReservations("a@example.com").size());
+        Assert.assertNotNull(service.findAndHoldSeats(1, "a@example.com"));
+        Assert.assertEquals(2, service.getCustomerHolds("a@example.com").size());
+    }
+
+    /**
+     * Test that holding, reserving and counting seats in zero-garbage mode
+     * only allocate the hold and confirmation code they return, once the
+     * service has warmed up.  Uses the JVM's per-thread allocation counter.
+     */
+    @Test
+    public void testZeroGarbageAllocation() {
+
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() &&
+                allocations.isThreadAllocatedMemoryEnabled());
+        final long thread = Thread.currentThread().getId();
+
+        final TicketServiceImpl service = new TicketServiceImpl(600_000L, new Venue(150, 100));
+        service.setZeroGarbage(true);
+        final String[] emails = new String[100];
+        for (int i = 0; i < emails.length; ++i) {
+            emails[i] = "customer" + i + "@example.com";
+        }
+
+        // Warm up, so the tables have grown and the code is compiled
+        for (int i = 0; i < 2100; ++i) {
+            final SeatHold hold = service.findAndHoldSeats(2, emails[i % 100]);
+            service.reserveSeats(hold.getId(), emails[i % 100]);
+            service.numSeatsAvailable();
+        }
+
+        // A SeatHold and a confirmation code are well under 128 bytes, where
+        // the seat map, delta and customer index copies add up to over 500;
+        // the best of a few rounds is used, in case one of them grows a table
+        long fewestBytes = Long.MAX_VALUE;
+        long countingBytes = Long.MAX_VALUE;
+        for (int round = 0; round < 5; ++round) {
+            final long start = allocations.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 1000; ++i) {
+                final SeatHold hold = service.findAndHoldSeats(2, emails[i % 100]);
+                Assert.assertNotNull(service.reserveSeats(hold.getId(), emails[i % 100]));
+            }
+            final long middle = allocations.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 1000; ++i) {
+                service.numSeatsAvailable();
+            }
+            final long end = allocations.getThreadAllocatedBytes(thread);
+            fewestBytes = Math.min(fewestBytes, middle - start);
+            countingBytes = Math.min(countingBytes, end - middle);
+        }
+
+        Assert.assertTrue("Allocated " + fewestBytes + " bytes", fewestBytes < 1000L * 128L);
+        Assert.assertTrue("Allocated " + countingBytes + " bytes", countingBytes < 1024L);
+    }
+
+    /**
+     * Test that general-admission sections are sold apart from the seats.
+     */
+    @Test
+    public void testAdmissionSections() {
+
+        final TicketServiceImpl service = new TicketServiceImpl(60_000L, new Venue(2, 5, 50_000, 20));
+        final GeneralAdmissionSection floor = service.getAdmissionSection(0);
+        Assert.assertEquals(50_000, floor.getCapacity());
+        Assert.assertEquals(20, service.getAdmissionSection(1).numPlacesAvailable());
+
+        // Places on the floor don't take seats, or the lock
+        final SeatHold hold = floor.findAndHoldPlaces(4, "a@example.com");
+        Assert.assertNotNull(hold);
+        Assert.assertEquals("GA0-" + hold.getId(), floor.reservePlaces(hold.getId(), "a@example.com"));
+        Assert.assertEquals(49_996, floor.numPlacesAvailable());
+        Assert.assertEquals(10, service.numSeatsAvailable());
+        Assert.assertEquals(20, service.getAdmissionSection(1).numPlacesAvailable());
+
+        // Only numSeatsAvailable() took the lock
+        Assert.assertEquals(1L, service.getMetrics().getLockWait().getCount());
+
+        // A general-admission confirmation code isn't a seat reservation
+        Assert.assertFalse(service.cancelReservation("GA0-" + hold.getId(), "a@example.com"));
+    }
+
+    /**
+     * Test that a persistent service can't have general-admission sections,
+     * since they aren't journaled.
+     *
+     * @throws IOException if the journal can't be written
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testPersistentAdmissionSections() throws IOException {
+
+        final Path file = Files.createTempFile("journal", ".bin");
+        try {
+            new TicketServiceImpl(60_000L, new Venue(2, 5, 50_000), file, Durability.SYNC).close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     /**
      * Helper method to sleep for the specified number of milliseconds.
      *
@@ -23,6 +23,42 @@ public class VenueTest {
         Assert.assertEquals(venue.getNumberOfSeats(), 18);
     }
 
+    /**
+     * Test the mapping between seats and rows.
+     */
+    @Test
+    public void testRowGeometry() {
+
+        // Seats are numbered left-to-right, one row after another
+        final Venue venue = new Venue(3, 6);
+        Assert.assertEquals(0, venue.getRowForSeat(0));
+        Assert.assertEquals(0, venue.getRowForSeat(5));
+        Assert.assertEquals(1, venue.getRowForSeat(6));
+        Assert.assertEquals(2, venue.getRowForSeat(17));
+        Assert.assertEquals(12, venue.getFirstSeatInRow(2));
+    }
+
+    /**
+     * Test a venue with general-admission sections.
+     */
+    @Test
+    public void testAdmissionSections() {
+
+        final Venue venue = new Venue(3, 6, 500, 50_000);
+        Assert.assertEquals(18, venue.getNumberOfSeats());
+        Assert.assertEquals(2, venue.getNumAdmissionSections());
+        Assert.assertEquals(500, venue.getAdmissionCapacity(0));
+        Assert.assertEquals(50_000, venue.getAdmissionCapacity(1));
+        Assert.assertEquals(0, new Venue(3, 6).getNumAdmissionSections());
+
+        try {
+            new Venue(3, 6, 500, 0);
+            Assert.fail("A general-admission section must have places");
+        } catch (IllegalArgumentException iae) {
+            Assert.assertTrue(iae.getMessage().startsWith("Illegal argument to Venue c'tor"));
+        }
+    }
+
     /**
      * Helper method to return whether creating the venue was successful
      * or threw an exception.